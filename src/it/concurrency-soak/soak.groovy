@@ -0,0 +1,210 @@
+//Soak and stress test for the caching decryptor, run inside the Maven build so that it uses the extension exactly as Maven loads it.
+//Fresh decryptor instances are created from the extension's component class so that the test controls their lifecycle, and they are
+//given a logger that records what they log.  Entries are read from the KDBX database file so that no KeepassXC is needed.
+//Measurements and violations are written to target/concurrency-soak.properties and checked by verify.groovy.
+
+import org.codehaus.plexus.logging.AbstractLogger
+import org.codehaus.plexus.logging.Logger
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class RecordingLogger extends AbstractLogger
+{
+    final List<String> messages = Collections.synchronizedList([])
+    final List<String> errors = Collections.synchronizedList([])
+
+    RecordingLogger()
+    {
+        super(Logger.LEVEL_DEBUG, 'soak')
+    }
+
+    void debug(String message, Throwable t) { messages << message }
+    void info(String message, Throwable t) { messages << message }
+    void warn(String message, Throwable t) { messages << message }
+    void error(String message, Throwable t) { errors << message }
+    void fatalError(String message, Throwable t) { errors << message }
+    Logger getChildLogger(String name) { this }
+}
+
+int threadCount = 64
+int iterationsPerThread = 500
+long deadlockTimeoutSeconds = 120L
+
+def config = [kdbxFile: new File(project.basedir, '../../../src/itdata/it.kdbx').canonicalPath,
+              kdbxPasswordEnvironmentVariable: 'KEEPASSXC_IT_KDBX_PASSWORD']
+
+//Overlapping requests - equivalent URLs share a cache slot so there are only 7 distinct keys
+def requests = [
+    [url: 'https://aserver.test.test.test', attributes: [type: 'keepassxc'], expected: 'thepassword'],
+    [url: 'https://AServer.test.test.test:443/', attributes: [type: 'keepassxc'], expected: 'thepassword'],
+    [url: 'https://aserver.test.test.test', attributes: [type: 'keepassxc', select: 'somethingCustom'], expected: 'customValue1'],
+    [url: 'https://multiserver.test.test.test', attributes: [type: 'keepassxc', 'where:username': 'user1'], expected: 'password1'],
+    [url: 'https://multiserver.test.test.test/', attributes: [type: 'keepassxc', 'where:username': 'user1'], expected: 'password1'],
+    [url: 'https://multiserver.test.test.test', attributes: [type: 'keepassxc', 'where:username': 'user2'], expected: 'password2'],
+    [url: 'https://multiserver.test.test.test', attributes: [type: 'keepassxc', 'where:title': 'multiserver3'], expected: 'password3'],
+    [url: 'https://multiserver.test.test.test', attributes: [type: 'keepassxc', 'where:myCustom': 'v1'], expected: 'password1'],
+    [url: 'https://thisisnotinkeepass.test.test.test', attributes: [type: 'keepassxc'], expected: ''],
+]
+int distinctKeys = 7
+
+def component = session.container.lookup('org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor', 'keepassxc')
+def newDecryptor = { RecordingLogger logger ->
+    def decryptor = component.getClass().getDeclaredConstructor().newInstance()
+    decryptor.enableLogging(logger)
+    return decryptor
+}
+
+def awaitThreads = { List<Thread> threads, long timeoutSeconds ->
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds)
+    threads.each { it.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))) }
+    def stuck = threads.findAll { it.alive }
+    if (!stuck.isEmpty())
+    {
+        log.error("${stuck.size()} soak thread(s) did not finish, thread dump follows")
+        Thread.allStackTraces.each { thread, stack ->
+            log.error("${thread.name} (${thread.state})\n    " + stack.join('\n    '))
+        }
+    }
+    return stuck.size()
+}
+
+//Stress: many threads reading overlapping entries concurrently, both synchronously and asynchronously
+
+def stressLogger = new RecordingLogger()
+def decryptor = newDecryptor(stressLogger)
+def latenciesNanos = new long[threadCount * iterationsPerThread]
+def latencyIndex = new AtomicInteger()
+def wrongValues = new AtomicInteger()
+def failures = new AtomicInteger()
+def inFlight = new AtomicInteger()
+def maxInFlight = new AtomicInteger()
+def startGate = new CountDownLatch(1)
+
+def stressThreads = (0..<threadCount).collect { threadIndex ->
+    Thread.start("soak-stress-${threadIndex}") {
+        def random = new Random(threadIndex)
+        startGate.await()
+        iterationsPerThread.times { iteration ->
+            def request = requests[random.nextInt(requests.size())]
+            long startTime = System.nanoTime()
+            int concurrent = inFlight.incrementAndGet()
+            maxInFlight.accumulateAndGet(concurrent, { x, y -> Math.max(x, y) } as java.util.function.IntBinaryOperator)
+            try
+            {
+                String value
+                if (iteration % 2 == 0)
+                    value = decryptor.decrypt(request.url, request.attributes, config)
+                else
+                    value = decryptor.decryptAsync(request.url, request.attributes, config).get()
+
+                if (value != request.expected)
+                    wrongValues.incrementAndGet()
+            }
+            catch (Exception e)
+            {
+                failures.incrementAndGet()
+                log.error("Soak lookup for ${request.url} failed: ${e}", e)
+            }
+            finally
+            {
+                inFlight.decrementAndGet()
+                latenciesNanos[latencyIndex.getAndIncrement()] = System.nanoTime() - startTime
+            }
+        }
+    }
+}
+
+long stressStartTime = System.nanoTime()
+startGate.countDown()
+int stuckStressThreads = awaitThreads(stressThreads, deadlockTimeoutSeconds)
+long stressElapsedNanos = System.nanoTime() - stressStartTime
+decryptor.dispose()
+
+long[] sortedLatencies = Arrays.copyOf(latenciesNanos, latencyIndex.get())
+Arrays.sort(sortedLatencies)
+def percentileMicros = { double percentile ->
+    sortedLatencies.length == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(sortedLatencies[(int)Math.min(sortedLatencies.length - 1, Math.floor(sortedLatencies.length * percentile))])
+}
+int slowOperations = (sortedLatencies as List).count { it > TimeUnit.MILLISECONDS.toNanos(10L) }
+
+//Dispose while lookups are in flight: every lookup is for a new URL so that it always goes to the backend
+
+def disposeLogger = new RecordingLogger()
+def disposingDecryptor = newDecryptor(disposeLogger)
+def stop = new AtomicBoolean()
+def disposeOperations = new AtomicLong()
+def disposeFailures = new AtomicLong()
+def disposeTimeouts = new AtomicLong()
+def disposeStartGate = new CountDownLatch(1)
+
+def disposeThreads = (0..<threadCount).collect { threadIndex ->
+    Thread.start("soak-dispose-${threadIndex}") {
+        disposeStartGate.await()
+        int n = 0
+        while (!stop.get())
+        {
+            try
+            {
+                String url = "https://notinkeepass-${threadIndex}-${n++}.test.test.test"
+                disposingDecryptor.decryptAsync(url, [type: 'keepassxc'], config).get(30L, TimeUnit.SECONDS)
+                disposeOperations.incrementAndGet()
+            }
+            catch (TimeoutException e)
+            {
+                //A lookup that was dropped by dispose without its future ever completing
+                disposeTimeouts.incrementAndGet()
+            }
+            catch (Exception e)
+            {
+                //Failures are expected once the decryptor is disposed, hanging is not
+                disposeFailures.incrementAndGet()
+            }
+        }
+    }
+}
+
+disposeStartGate.countDown()
+Thread.sleep(500L)
+long disposeStartTime = System.nanoTime()
+disposingDecryptor.dispose()
+long disposeElapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disposeStartTime)
+stop.set(true)
+int stuckDisposeThreads = awaitThreads(disposeThreads, deadlockTimeoutSeconds)
+
+//Results
+
+def backendLookups = stressLogger.messages.count { it.startsWith('Need to read entry') }
+def kdbxReads = stressLogger.messages.count { it.startsWith('Read ') && it.contains(' entries from KDBX file ') }
+
+def results = new Properties()
+results.threads = String.valueOf(threadCount)
+results.operations = String.valueOf(sortedLatencies.length)
+results.operationsPerSecond = String.valueOf(Math.round(sortedLatencies.length / (stressElapsedNanos / 1_000_000_000.0)))
+results.p50Micros = String.valueOf(percentileMicros(0.50))
+results.p99Micros = String.valueOf(percentileMicros(0.99))
+results.maxMicros = String.valueOf(percentileMicros(1.0))
+results.maxInFlight = String.valueOf(maxInFlight.get())
+results.slowOperations = String.valueOf(slowOperations)
+results.wrongValues = String.valueOf(wrongValues.get())
+results.failures = String.valueOf(failures.get())
+results.backendLookups = String.valueOf(backendLookups)
+results.expectedBackendLookups = String.valueOf(distinctKeys)
+results.kdbxReads = String.valueOf(kdbxReads)
+results.errorsLogged = String.valueOf(stressLogger.errors.size())
+results.missingEntryErrors = String.valueOf(stressLogger.errors.count { it.contains('thisisnotinkeepass') })
+results.stuckStressThreads = String.valueOf(stuckStressThreads)
+results.disposeOperations = String.valueOf(disposeOperations.get())
+results.disposeFailures = String.valueOf(disposeFailures.get())
+results.disposeTimeouts = String.valueOf(disposeTimeouts.get())
+results.disposeMillis = String.valueOf(disposeElapsedMillis)
+results.stuckDisposeThreads = String.valueOf(stuckDisposeThreads)
+
+new File(project.build.directory).mkdirs()
+new File(project.build.directory, 'concurrency-soak.properties').withOutputStream {
+    results.store(it, 'Concurrency soak results')
+}
@@ -0,0 +1,43 @@
+//The build ran soak.groovy, which hammered the caching decryptor from many threads and wrote its measurements to concurrency-soak.properties
+//This script reports the measurements and fails on any violation: wrong values, repeated lookups of the same entry, more than one
+//database read, errors such as unlock prompts, threads that never finished, or a dispose that left lookups hanging
+
+Properties results = new Properties()
+new File(basedir, 'target/concurrency-soak.properties').withInputStream {
+    results.load(it)
+}
+
+def report = """\
+Concurrency soak                        ${results.threads} threads
+Operations                              ${results.operations}
+Throughput (ops/s)                      ${results.operationsPerSecond}
+Latency p50 / p99 / max (us)            ${results.p50Micros} / ${results.p99Micros} / ${results.maxMicros}
+Max concurrent lookups                  ${results.maxInFlight}
+Lookups slower than 10 ms               ${results.slowOperations}
+Backend lookups (expected)              ${results.backendLookups} (${results.expectedBackendLookups})
+KDBX file reads                         ${results.kdbxReads}
+Dispose with lookups in flight (ms)     ${results.disposeMillis}
+Lookups completed / failed around it    ${results.disposeOperations} / ${results.disposeFailures}
+"""
+println report
+new File(basedir, 'target/concurrency-soak.txt').text = report
+
+assert results.stuckStressThreads == '0' : 'Deadlock - soak threads never finished, see thread dump in build.log'
+assert results.wrongValues == '0'
+assert results.failures == '0'
+
+//Each distinct entry is looked up exactly once however many threads want it at the same time
+assert results.backendLookups == results.expectedBackendLookups
+
+//One backend for the configuration, which reads the database once
+assert results.kdbxReads == '1'
+
+//Unlock prompts and failures are logged as errors - the only one expected is for the entry that is not in the database, once
+assert results.errorsLogged == '1'
+assert results.missingEntryErrors == '1'
+
+//Disposing must not leave any thread waiting forever on a lookup
+assert results.stuckDisposeThreads == '0' : 'Lookups hung after dispose, see thread dump in build.log'
+assert results.disposeTimeouts == '0'
+
+return
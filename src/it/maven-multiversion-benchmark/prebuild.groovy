@@ -0,0 +1,22 @@
+//Starts the stand-in for KeepassXC used by the proxy scenario.  It runs in this JVM for all the builds and verify.groovy stops it.
+//UNIX domain socket paths are limited to around 100 characters, so the socket is created in a short temporary directory and the builds find
+//it through a link in the project directory.
+
+import au.net.causal.maven.plugins.keepassxc.connection.FakeKeepassXcServer
+
+import java.nio.file.Files
+
+def socketDirectory = Files.createTempDirectory('kpxc')
+def server = new FakeKeepassXcServer(socketDirectory)
+(1..8).each { i ->
+    server.withEntry("https://server${i}.benchmark.test", "user${i}", "password${i}")
+}
+
+def link = new File(basedir, 'keepassxc-runtime').toPath()
+Files.deleteIfExists(link)
+Files.createSymbolicLink(link, socketDirectory)
+
+System.properties.put('keepassxc.benchmark.server', server)
+System.properties.put('keepassxc.benchmark.socketDirectory', socketDirectory)
+
+return true
@@ -0,0 +1,174 @@
+//Runs the benchmark builds and compiles the report from the logs of each Maven version, scenario and run.
+//For each Maven version, Maven Wrapper is set up with that version, then the same trivial build runs with settings.xml files with no
+//KeepassXC values, the same value repeated (cached), all different values read from the KDBX test database (cold) and all different values
+//read through a stand-in for KeepassXC that prebuild.groovy starts (proxy).  Each scenario runs once to warm up, then 5 more times with the
+//scenarios interleaved so that drift affects them all alike.  Measured runs log class loading and the heap at JVM exit.
+//Wall time is the JVM uptime when the heap summary is logged at exit, heap and metaspace come from that summary, and class loading from the
+//JVM's class+load log.  Each measurement is the median of the runs, with the range of wall times to show how noisy they were.  The report is
+//written as a table for reading and as CSV for comparing runs.
+
+import java.nio.file.Files
+
+def extensionPackage = 'au.net.causal.maven.plugins.keepassxc.'
+def mavenVersions = ['3.9.1', '3.8.7', '3.6.3', '3.5.4', '3.3.9'] //Not compatible with Maven < 3.3
+def scenarios = ['none', 'cached', 'cold', 'proxy']
+def runs = 1..5
+
+//prebuild.groovy links the stand-in's socket directory here, keepassxc-proxy-access finds the socket through XDG_RUNTIME_DIR on Linux and
+//TMPDIR on macOS
+def runtimeDirectory = new File(basedir, 'keepassxc-runtime')
+
+def runMaven = { String label, List<String> args, String mavenOpts ->
+    def command = [new File(basedir, 'mvnw').absolutePath, '-B', "-Dmaven.repo.local=${localRepositoryPath}".toString(),
+                   "-Duser.home=${userHome}".toString()] + args
+    def processBuilder = new ProcessBuilder(command).directory(basedir).redirectErrorStream(true)
+                                                    .redirectOutput(new File(basedir, "build-${label}.log"))
+    def environment = processBuilder.environment()
+    environment.put('KEEPASSXC_IT_KDBX_PASSWORD', 'maventest')
+    environment.put('XDG_RUNTIME_DIR', runtimeDirectory.absolutePath)
+    environment.put('TMPDIR', runtimeDirectory.absolutePath)
+    if (mavenOpts != null)
+        environment.put('MAVEN_OPTS', mavenOpts)
+    else
+        environment.remove('MAVEN_OPTS')
+    def exitCode = processBuilder.start().waitFor()
+    assert exitCode == 0 : "Build ${label} failed, see build-${label}.log"
+}
+
+def runScenario = { String mavenVersion, String scenario, String run, boolean measured ->
+    def securityFile = scenario == 'proxy' ? './settings-security-proxy.xml' : './settings-security.xml'
+    def label = "${mavenVersion}-${scenario}-${run}"
+    def mavenOpts = measured ? "-Xlog:class+load=info:file=class-load-${label}.log:uptime -Xlog:gc+heap+exit=info:file=heap-${label}.log:uptime"
+                             : null
+    runMaven(label, ['-s', "settings-${scenario}.xml".toString(), "-Dsettings.security=${securityFile}".toString(), 'validate'], mavenOpts)
+}
+
+//Stop the KeepassXC stand-in started by prebuild.groovy whether or not the builds succeed
+def server = System.properties.remove('keepassxc.benchmark.server')
+def socketDirectory = System.properties.remove('keepassxc.benchmark.socketDirectory')
+def proxyLookupCount
+try {
+    mavenVersions.each { mavenVersion ->
+        runMaven("wrapper-${mavenVersion}", ['wrapper:wrapper', "-Dmaven=${mavenVersion}".toString()], null)
+        scenarios.each { scenario -> runScenario(mavenVersion, scenario, 'warmup', false) }
+        runs.each { run ->
+            scenarios.each { scenario -> runScenario(mavenVersion, scenario, String.valueOf(run), true) }
+        }
+    }
+    proxyLookupCount = server?.getGetLoginsCount()
+}
+finally {
+    server?.close()
+    if (socketDirectory != null)
+        Files.deleteIfExists(socketDirectory)
+    Files.deleteIfExists(runtimeDirectory.toPath())
+}
+
+def measure = { String mavenVersion, String scenario, int run ->
+    int classCount = 0
+    def extensionClasses = []
+    def extensionLoadTimes = []
+    new File(basedir, "class-load-${mavenVersion}-${scenario}-${run}.log").eachLine { line ->
+        def matcher = line =~ /^\[([0-9.]+)s\].*? (\S+) source: /
+        if (matcher.find()) {
+            classCount++
+            if (matcher.group(2).startsWith(extensionPackage)) {
+                extensionClasses << matcher.group(2)
+                extensionLoadTimes << new BigDecimal(matcher.group(1))
+            }
+        }
+    }
+
+    def wallTimeMs = null
+    def heapUsedKb = null
+    def metaspaceUsedKb = null
+    new File(basedir, "heap-${mavenVersion}-${scenario}-${run}.log").eachLine { line ->
+        def uptimeMatcher = line =~ /^\[([0-9.]+)s\]/
+        if (uptimeMatcher.find()) {
+            wallTimeMs = (new BigDecimal(uptimeMatcher.group(1)) * 1000).toLong()
+        }
+        def heapMatcher = line =~ /heap\s+total \d+K, used (\d+)K/
+        if (heapMatcher.find()) {
+            heapUsedKb = heapMatcher.group(1) as long
+        }
+        def metaspaceMatcher = line =~ /Metaspace\s+used (\d+)K/
+        if (metaspaceMatcher.find()) {
+            metaspaceUsedKb = metaspaceMatcher.group(1) as long
+        }
+    }
+
+    def extensionLoadSpanMs = extensionLoadTimes.isEmpty() ? 0 : ((extensionLoadTimes.max() - extensionLoadTimes.min()) * 1000).toLong()
+    return [wallTimeMs: wallTimeMs, classCount: classCount, extensionClasses: extensionClasses, extensionClassCount: extensionClasses.size(),
+            extensionLoadSpanMs: extensionLoadSpanMs, heapUsedKb: heapUsedKb, metaspaceUsedKb: metaspaceUsedKb]
+}
+
+def median = { List<Long> values ->
+    if (values.contains(null))
+        return null
+    def sorted = values.sort(false)
+    return sorted[sorted.size().intdiv(2)]
+}
+
+def columns = ['wallTimeMs', 'classCount', 'extensionClassCount', 'extensionLoadSpanMs', 'heapUsedKb', 'metaspaceUsedKb']
+
+def runResults = [:]
+def results = [:]
+mavenVersions.each { mavenVersion ->
+    scenarios.each { scenario ->
+        def scenarioRuns = runs.collect { run -> measure(mavenVersion, scenario, run) }
+        runResults[[mavenVersion, scenario]] = scenarioRuns
+
+        def result = [:]
+        columns.each { column ->
+            result[column] = median(scenarioRuns.collect { it[column] })
+        }
+        def wallTimes = scenarioRuns.collect { it.wallTimeMs }.findAll { it != null }
+        result.minWallTimeMs = wallTimes.isEmpty() ? null : wallTimes.min()
+        result.maxWallTimeMs = wallTimes.isEmpty() ? null : wallTimes.max()
+        results[[mavenVersion, scenario]] = result
+    }
+}
+
+def csv = new StringBuilder('mavenVersion,scenario,' + columns.join(',') + ',minWallTimeMs,maxWallTimeMs\n')
+results.each { key, result ->
+    csv << key.join(',') << ',' << columns.collect { result[it] }.join(',') << ',' << result.minWallTimeMs << ',' << result.maxWallTimeMs << '\n'
+}
+
+def report = new StringBuilder()
+report << "Median of ${runs.size()} runs after a warm-up run\n"
+report << 'Maven    Scenario  Wall (ms)  Wall range (ms)  +Wall (ms)  Classes  Ext classes  Ext loading (ms)  Heap used (KB)  Metaspace (KB)\n'
+results.each { key, result ->
+    def baseline = results[[key[0], 'none']]
+    def addedWallTimeMs = (key[1] == 'none' || result.wallTimeMs == null || baseline.wallTimeMs == null) ? '' : String.valueOf(result.wallTimeMs - baseline.wallTimeMs)
+    report << key[0].padRight(9) << key[1].padRight(10) << String.valueOf(result.wallTimeMs).padRight(11) <<
+              "${result.minWallTimeMs}-${result.maxWallTimeMs}".padRight(17) << addedWallTimeMs.padRight(12) <<
+              String.valueOf(result.classCount).padRight(9) << String.valueOf(result.extensionClassCount).padRight(13) <<
+              String.valueOf(result.extensionLoadSpanMs).padRight(18) << String.valueOf(result.heapUsedKb).padRight(16) <<
+              String.valueOf(result.metaspaceUsedKb) << '\n'
+}
+
+println report
+new File(basedir, 'target').mkdirs()
+new File(basedir, 'target/maven-multiversion-benchmark.txt').text = report.toString()
+new File(basedir, 'target/maven-multiversion-benchmark.csv').text = csv.toString()
+
+//Sanity checks that each scenario measured what it was meant to, the numbers themselves are for comparing between runs
+runResults.each { key, scenarioRuns ->
+    scenarioRuns.eachWithIndex { result, i ->
+        def run = "Maven ${key[0]} ${key[1]} run ${runs[i]}"
+        assert result.wallTimeMs != null : "No heap summary logged for ${run}"
+        assert result.extensionClasses.contains(extensionPackage + 'CachingKeepassXcPasswordDecryptor') : "Extension not loaded for ${run}"
+        if (key[1] == 'none')
+            assert !result.extensionClasses.contains(extensionPackage + 'SessionCachingKeepassXcDecryptor')
+        else
+            assert result.extensionClasses.contains(extensionPackage + 'SessionCachingKeepassXcDecryptor')
+        if (key[1] == 'proxy')
+            assert result.extensionClasses.contains(extensionPackage + 'backend.KeepassXcProxyBackend') : "Proxy backend not used for ${run}"
+    }
+}
+
+//Every value in the proxy scenario is a separate lookup, in the warm-up run as well as the measured runs
+def expectedProxyLookupCount = 8 * mavenVersions.size() * (runs.size() + 1)
+assert proxyLookupCount >= expectedProxyLookupCount : "Only ${proxyLookupCount} of ${expectedProxyLookupCount} lookups reached the KeepassXC stand-in"
+
+return
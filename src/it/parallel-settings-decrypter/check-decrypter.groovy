@@ -0,0 +1,13 @@
+//Records which settings decrypter Maven's container hands out for the default role, which is the one Maven uses to decrypt settings.xml
+
+import org.apache.maven.settings.crypto.SettingsDecrypter
+
+def decrypter = session.container.lookup(SettingsDecrypter)
+
+def results = new Properties()
+results.decrypterClass = decrypter.getClass().name
+
+new File(project.build.directory).mkdirs()
+new File(project.build.directory, 'settings-decrypter.properties').withOutputStream {
+    results.store(it, 'Settings decrypter')
+}
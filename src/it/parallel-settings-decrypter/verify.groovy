@@ -0,0 +1,29 @@
+//The build recorded which settings decrypter Maven's container provides, wrote the server passwords Maven decrypted and, through the
+//traceFile setting, a trace of the extension's work.  This script checks that the extension's decrypter replaced Maven's and that Maven's
+//own decryption of settings.xml went through it.
+
+import groovy.json.JsonSlurper
+
+Properties decrypter = new Properties()
+new File(basedir, 'target/settings-decrypter.properties').withInputStream {
+    decrypter.load(it)
+}
+assert decrypter.decrypterClass == 'au.net.causal.maven.plugins.keepassxc.ParallelSettingsDecrypter'
+
+Properties serverPasswords = new Properties()
+new File(basedir, 'target/server-passwords.properties').withInputStream {
+    serverPasswords.load(it)
+}
+assert serverPasswords.readPassword == 'thepassword'
+assert serverPasswords.filterByUsername2 == 'password2'
+assert serverPasswords.entryDoesNotExistInKeepass == ''
+
+//settings.xml has KeepassXC values for three different URLs, each resolved as a group on one of the decrypter's worker threads
+def trace = new JsonSlurper().parse(new File(basedir, 'target/settings-decrypter-trace.json'))
+def threadNames = trace.traceEvents.findAll { it.ph == 'M' && it.name == 'thread_name' }.collectEntries { [it.tid, it.args.name] }
+def groupSpans = trace.traceEvents.findAll { it.ph == 'X' && it.cat == 'settings' && it.name == 'Decrypt settings values' }
+
+assert groupSpans.size() >= 3
+assert groupSpans.every { threadNames[it.tid]?.startsWith('keepassxc-settings-') }
+
+return
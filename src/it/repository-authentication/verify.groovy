@@ -0,0 +1,11 @@
+//The artifact can only be downloaded with credentials, which come from the KDBX database through repository authentication
+File downloadedFile = new File(basedir, 'target/deps/testdata.txt')
+assert downloadedFile.text.trim() == 'This is a text file dependency.'
+
+//Both repositories have an entry in the database, but only the listed one may be authenticated.  The unlisted repository is tried first,
+//so if it had been authenticated the artifact would have been downloaded from it instead.
+File remoteRepositoriesFile = new File(localRepositoryPath,
+                                       'au/net/causal/maven/plugins/keepassxctest/repository-authentication-data/1.0/_remote.repositories')
+String remoteRepositories = remoteRepositoriesFile.text
+assert remoteRepositories.contains('repository-authentication-data-1.0.txt>keepassxc-listed-repo=')
+assert !remoteRepositories.contains('keepassxc-unlisted-repo')
@@ -0,0 +1,52 @@
+//Compares class loading and metaspace of a build without KeepassXC values in settings.xml against one with a single KeepassXC value.
+//Class loading is read from the JVM's class+load log and metaspace from the heap summary the JVM logs at exit.
+//The build without KeepassXC values must not initialize the KeepassXC client stack at all.
+
+def extensionPackage = 'au.net.causal.maven.plugins.keepassxc.'
+
+def measure = { String name ->
+    def extensionClasses = []
+    def extensionLoadTimes = []
+    new File(basedir, "class-load-${name}.log").eachLine { line ->
+        def matcher = line =~ /^\[([0-9.]+)s\].*? (\S+) source: /
+        if (matcher.find() && matcher.group(2).startsWith(extensionPackage)) {
+            extensionClasses << matcher.group(2)
+            extensionLoadTimes << new BigDecimal(matcher.group(1))
+        }
+    }
+
+    def metaspaceUsedKb = null
+    new File(basedir, "heap-${name}.log").eachLine { line ->
+        def matcher = line =~ /Metaspace\s+used (\d+)K/
+        if (matcher.find()) {
+            metaspaceUsedKb = matcher.group(1) as long
+        }
+    }
+
+    def loadSpanMs = extensionLoadTimes.isEmpty() ? 0 : ((extensionLoadTimes.max() - extensionLoadTimes.min()) * 1000).toLong()
+    return [classes: extensionClasses, loadSpanMs: loadSpanMs, metaspaceUsedKb: metaspaceUsedKb]
+}
+
+def plain = measure('plain')
+def keepassxc = measure('keepassxc')
+
+def report = """\
+Startup benchmark               without KeepassXC values    with a KeepassXC value
+Extension classes loaded        ${String.valueOf(plain.classes.size()).padRight(28)}${keepassxc.classes.size()}
+Extension class loading (ms)    ${String.valueOf(plain.loadSpanMs).padRight(28)}${keepassxc.loadSpanMs}
+Metaspace used at exit (KB)     ${String.valueOf(plain.metaspaceUsedKb).padRight(28)}${keepassxc.metaspaceUsedKb}
+"""
+println report
+new File(basedir, 'target').mkdirs()
+new File(basedir, 'target/startup-benchmark.txt').text = report
+
+//The facade component is always loaded, but nothing behind it should be without a KeepassXC value
+assert plain.classes.contains(extensionPackage + 'CachingKeepassXcPasswordDecryptor')
+assert !plain.classes.contains(extensionPackage + 'SessionCachingKeepassXcDecryptor')
+assert !plain.classes.contains(extensionPackage + 'KeepassXcPasswordDecryptor')
+assert !plain.classes.any { it.startsWith(extensionPackage + 'shaded.') }
+
+//Sanity check that the KeepassXC value really did initialize the decryptor
+assert keepassxc.classes.contains(extensionPackage + 'SessionCachingKeepassXcDecryptor')
+
+return
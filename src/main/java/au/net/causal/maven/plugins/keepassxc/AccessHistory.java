@@ -0,0 +1,253 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Records which KeepassXC values a project's builds have requested, so that they can be prefetched when the next build of the same project
+ * starts.
+ * <p>
+ *
+ * Only entry URLs and decrypter entry attributes are recorded, never passwords or other entry values.  History is stored in one small text
+ * file per project.  Each build is numbered, and entries that have not been requested for a configurable number of builds are dropped.
+ */
+public class AccessHistory
+{
+    private static final String BUILD_LINE_PREFIX = "build\t";
+
+    private final Path file;
+    private final int maxBuilds;
+    private final Logger log;
+    private final long build;
+    private final Map<DecryptRequest, Access> accesses = new LinkedHashMap<>();
+
+    private AccessHistory(Path file, int maxBuilds, Logger log, long build)
+    {
+        this.file = Objects.requireNonNull(file);
+        this.maxBuilds = maxBuilds;
+        this.log = Objects.requireNonNull(log);
+        this.build = build;
+    }
+
+    /**
+     * Works out the history file for a project.  The file name is derived from a hash of the project directory so that each project has its
+     * own history without leaking project paths into file names.
+     *
+     * @param historyDirectory directory holding history files of all projects.
+     * @param projectDirectory the project's top-level directory.
+     *
+     * @return the history file for the project.
+     */
+    public static Path historyFile(Path historyDirectory, Path projectDirectory)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(projectDirectory.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            return historyDirectory.resolve(HexFormat.of().formatHex(hash, 0, 16) + ".history");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //SHA-256 is always available
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads history from a file and starts a new build.  If the file does not exist or cannot be read, history starts empty.
+     *
+     * @param file the history file.
+     * @param maxBuilds number of builds after which entries that have not been requested are dropped.
+     * @param log logger for reporting problems reading the file.
+     *
+     * @return the loaded history.
+     */
+    public static AccessHistory load(Path file, int maxBuilds, Logger log)
+    {
+        if (Files.notExists(file))
+            return new AccessHistory(file, maxBuilds, log, 1L);
+
+        try
+        {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            long previousBuild = 0L;
+            if (!lines.isEmpty() && lines.get(0).startsWith(BUILD_LINE_PREFIX))
+                previousBuild = Long.parseLong(lines.get(0).substring(BUILD_LINE_PREFIX.length()));
+
+            AccessHistory history = new AccessHistory(file, maxBuilds, log, previousBuild + 1L);
+            for (String line : lines.subList(Math.min(1, lines.size()), lines.size()))
+            {
+                history.parseLine(line);
+            }
+            return history;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            //History is only an optimization, so a corrupted file just means no prefetching this time
+            log.debug("Failed to read KeepassXC access history " + file + ": " + e, e);
+            return new AccessHistory(file, maxBuilds, log, 1L);
+        }
+    }
+
+    /**
+     * Parses a single entry line of the form {@code <last build> <last access time> <url> <attributes>}, tab-separated.
+     */
+    private void parseLine(String line)
+    {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 4)
+        {
+            log.debug("Skipping malformed KeepassXC access history line: " + line);
+            return;
+        }
+
+        try
+        {
+            long lastBuild = Long.parseLong(fields[0]);
+            Instant lastAccessed = Instant.parse(fields[1]);
+            DecryptRequest request = new DecryptRequest(decode(fields[2]), decodeAttributes(fields[3]));
+            accesses.put(request, new Access(lastBuild, lastAccessed));
+        }
+        catch (IllegalArgumentException | DateTimeParseException e)
+        {
+            log.debug("Skipping malformed KeepassXC access history line: " + line);
+        }
+    }
+
+    /**
+     * @return the file this history is read from and saved to.
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return values requested by previous builds that have not aged out, in the order they were first recorded.
+     */
+    public synchronized List<DecryptRequest> getRecentRequests()
+    {
+        List<DecryptRequest> requests = new ArrayList<>();
+        accesses.forEach((request, access) ->
+        {
+            if (!isExpired(access))
+                requests.add(request);
+        });
+        return requests;
+    }
+
+    /**
+     * Records that a value was requested in the current build.
+     *
+     * @param request the value requested.
+     * @param accessTime when the value was requested.
+     */
+    public synchronized void recordAccess(DecryptRequest request, Instant accessTime)
+    {
+        accesses.put(request, new Access(build, accessTime));
+    }
+
+    /**
+     * Saves history to its file, dropping entries that have aged out.
+     *
+     * @throws IOException if an error occurs writing the file.
+     */
+    public synchronized void save()
+    throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Path tmpPath = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8))
+        {
+            writer.write(BUILD_LINE_PREFIX + build);
+            writer.newLine();
+            for (Map.Entry<DecryptRequest, Access> entry : accesses.entrySet())
+            {
+                if (isExpired(entry.getValue()))
+                    continue;
+
+                writer.write(entry.getValue().lastBuild + "\t" + entry.getValue().lastAccessed + "\t" +
+                             encode(entry.getKey().getStr()) + "\t" + encodeAttributes(entry.getKey().getAttributes()));
+                writer.newLine();
+            }
+        }
+        Files.move(tmpPath, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private boolean isExpired(Access access)
+    {
+        return build - access.lastBuild >= maxBuilds;
+    }
+
+    private static String encodeAttributes(Map<?, ?> attributes)
+    {
+        StringBuilder buf = new StringBuilder();
+        attributes.forEach((key, value) ->
+        {
+            if (buf.length() > 0)
+                buf.append('&');
+            buf.append(encode(String.valueOf(key))).append('=').append(encode(String.valueOf(value)));
+        });
+        return buf.toString();
+    }
+
+    private static Map<String, String> decodeAttributes(String s)
+    {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        if (s.isEmpty())
+            return attributes;
+
+        for (String pair : s.split("&"))
+        {
+            int equalsIndex = pair.indexOf('=');
+            if (equalsIndex < 0)
+                throw new IllegalArgumentException("Malformed attribute: " + pair);
+
+            attributes.put(decode(pair.substring(0, equalsIndex)), decode(pair.substring(equalsIndex + 1)));
+        }
+        return attributes;
+    }
+
+    private static String encode(String s)
+    {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String s)
+    {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * When a value was last requested.
+     */
+    private static class Access
+    {
+        private final long lastBuild;
+        private final Instant lastAccessed;
+
+        public Access(long lastBuild, Instant lastAccessed)
+        {
+            this.lastBuild = lastBuild;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+}
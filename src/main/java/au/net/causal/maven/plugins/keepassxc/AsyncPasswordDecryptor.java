@@ -0,0 +1,44 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A password decryptor that can also decrypt values without blocking and in bulk, for plugins and extensions that resolve many values.
+ * <p>
+ *
+ * The KeepassXC decryptor component implements this interface.  Look it up with role {@link PasswordDecryptor} and hint 'keepassxc' and
+ * check that the component is an instance of this interface before using it.  Values share the same caches and KeepassXC connections as
+ * those decrypted through {@link #decrypt(String, Map, Map)}.
+ */
+public interface AsyncPasswordDecryptor extends PasswordDecryptor
+{
+    /**
+     * Decrypts a value in the background.
+     *
+     * @param str the entry URL or name.
+     * @param attributes the decrypter entry attributes.
+     * @param config the decryptor configuration.
+     *
+     * @return a future that completes with the decrypted value, or completes exceptionally with a {@link SecDispatcherException} if the value
+     *         could not be decrypted and the configured fail mode throws.
+     */
+    public CompletableFuture<String> decryptAsync(String str, Map<?, ?> attributes, Map<?, ?> config);
+
+    /**
+     * Decrypts multiple values at once.  Values for different URLs are read concurrently and values for the same URL share a single lookup.
+     *
+     * @param requests the values to decrypt, keyed by any caller-defined key.
+     * @param config the decryptor configuration.
+     * @param <K> the caller's key type.
+     *
+     * @return decrypted values, with the same keys as {@code requests}.
+     *
+     * @throws SecDispatcherException if any value could not be decrypted and the configured fail mode throws.  The first such failure is thrown.
+     */
+    public <K> Map<K, String> decryptAll(Map<K, DecryptRequest> requests, Map<?, ?> config)
+    throws SecDispatcherException;
+}
@@ -0,0 +1,314 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records when and on which threads the extension does its work during a build, and writes it out as a Chrome trace event file that can be
+ * opened in Perfetto or chrome://tracing.  Timestamps are wall clock time so that traces can be lined up with other timelines of the build,
+ * such as the reactor's.
+ * <p>
+ *
+ * Tracing is off unless a trace file is configured.  While off, {@link #span(String, String)} returns a shared no-op span and
+ * {@link #instant(String, String, Map)} does nothing, so instrumented code costs no more than a volatile read.
+ */
+public final class BuildTrace
+{
+    /**
+     * Events beyond this many are dropped, so that a long-running daemon with tracing left on does not run out of memory.
+     */
+    private static final int MAX_EVENTS = 100_000;
+
+    private static final Span NO_OP_SPAN = new Span(null, null, null);
+
+    private static volatile BuildTrace current;
+
+    private final long pid = ProcessHandle.current().pid();
+    private final long startEpochMicros;
+    private final long startNanos;
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger eventCount = new AtomicInteger();
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+
+    private BuildTrace()
+    {
+        startEpochMicros = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts recording if not already recording.
+     */
+    public static synchronized void start()
+    {
+        if (current == null)
+            current = new BuildTrace();
+    }
+
+    /**
+     * Stops recording and writes everything recorded since {@link #start()} to a file.  Does nothing if not recording.
+     *
+     * @param traceFile the file to write.  Replaced if it already exists.
+     * @param log logger.
+     */
+    public static void finish(Path traceFile, Logger log)
+    {
+        BuildTrace trace;
+        synchronized (BuildTrace.class)
+        {
+            trace = current;
+            current = null;
+        }
+        if (trace == null)
+            return;
+
+        try
+        {
+            trace.write(traceFile);
+            int droppedCount = trace.eventCount.get() - trace.events.size();
+            log.info("KeepassXC extension trace written to " + traceFile + (droppedCount > 0 ? " (" + droppedCount + " event(s) dropped)" : ""));
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write KeepassXC extension trace " + traceFile + ": " + e, e);
+        }
+    }
+
+    /**
+     * @return true if currently recording.
+     */
+    public static boolean isEnabled()
+    {
+        return current != null;
+    }
+
+    /**
+     * Starts a span on the current thread.  The span ends when it is closed, which should be done on the same thread.
+     *
+     * @param category category of the span, such as the component doing the work.
+     * @param name what is being done.
+     *
+     * @return the span.
+     */
+    public static Span span(String category, String name)
+    {
+        BuildTrace trace = current;
+        if (trace == null)
+            return NO_OP_SPAN;
+
+        return new Span(trace, category, name);
+    }
+
+    /**
+     * Records something that happened at a point in time on the current thread.
+     *
+     * @param category category of the event, such as the component it happened in.
+     * @param name what happened.
+     * @param args additional details to show with the event.
+     */
+    public static void instant(String category, String name, Map<String, ?> args)
+    {
+        BuildTrace trace = current;
+        if (trace == null)
+            return;
+
+        trace.record(new Event(category, name, 'i', trace.nowMicros(), 0L, Thread.currentThread().getId(), args));
+    }
+
+    private long nowMicros()
+    {
+        return startEpochMicros + (System.nanoTime() - startNanos) / 1000L;
+    }
+
+    private void record(Event event)
+    {
+        threadNames.putIfAbsent(event.threadId, Thread.currentThread().getName());
+        if (eventCount.incrementAndGet() <= MAX_EVENTS)
+            events.add(event);
+    }
+
+    private void write(Path traceFile)
+    throws IOException
+    {
+        Path parent = traceFile.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        try (Writer out = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8))
+        {
+            out.write("{\"traceEvents\":[");
+            boolean first = true;
+            for (Map.Entry<Long, String> threadName : threadNames.entrySet())
+            {
+                if (!first)
+                    out.write(',');
+                out.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + threadName.getKey() + ",\"args\":{\"name\":");
+                writeJsonValue(out, threadName.getValue());
+                out.write("}}");
+                first = false;
+            }
+            for (Event event : events)
+            {
+                if (!first)
+                    out.write(',');
+                out.write('\n');
+                event.write(out, pid);
+                first = false;
+            }
+            out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        }
+    }
+
+    private static void writeJsonValue(Writer out, Object value)
+    throws IOException
+    {
+        //JSON has no NaN or infinity, so those are written as strings
+        if (value instanceof Number && !isNonFinite((Number)value) || value instanceof Boolean)
+        {
+            out.write(value.toString());
+            return;
+        }
+
+        String s = String.valueOf(value);
+        out.write('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                out.write('\\');
+                out.write(c);
+            }
+            else if (c < 0x20)
+                out.write(String.format("\\u%04x", (int)c));
+            else
+                out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static boolean isNonFinite(Number value)
+    {
+        if (value instanceof Double)
+            return !Double.isFinite((Double)value);
+        if (value instanceof Float)
+            return !Float.isFinite((Float)value);
+
+        return false;
+    }
+
+    /**
+     * A span of time spent doing something on a thread.  Closing a span records it.
+     */
+    public static final class Span implements AutoCloseable
+    {
+        private final BuildTrace trace;
+        private final String category;
+        private final String name;
+        private final long startMicros;
+        private Map<String, Object> args;
+
+        private Span(BuildTrace trace, String category, String name)
+        {
+            this.trace = trace;
+            this.category = category;
+            this.name = name;
+            this.startMicros = trace == null ? 0L : trace.nowMicros();
+        }
+
+        /**
+         * Adds a detail to show with the span.
+         *
+         * @param key the name of the detail.
+         * @param value the value of the detail.
+         *
+         * @return this span.
+         */
+        public Span arg(String key, Object value)
+        {
+            if (trace == null)
+                return this;
+
+            if (args == null)
+                args = new LinkedHashMap<>();
+            args.put(key, value);
+            return this;
+        }
+
+        @Override
+        public void close()
+        {
+            if (trace == null)
+                return;
+
+            long endMicros = trace.nowMicros();
+            trace.record(new Event(category, name, 'X', startMicros, endMicros - startMicros, Thread.currentThread().getId(), args));
+        }
+    }
+
+    private static class Event
+    {
+        private final String category;
+        private final String name;
+        private final char phase;
+        private final long timestampMicros;
+        private final long durationMicros;
+        private final long threadId;
+        private final Map<String, ?> args;
+
+        public Event(String category, String name, char phase, long timestampMicros, long durationMicros, long threadId, Map<String, ?> args)
+        {
+            this.category = category;
+            this.name = name;
+            this.phase = phase;
+            this.timestampMicros = timestampMicros;
+            this.durationMicros = durationMicros;
+            this.threadId = threadId;
+            this.args = args;
+        }
+
+        public void write(Writer out, long pid)
+        throws IOException
+        {
+            out.write("{\"name\":");
+            writeJsonValue(out, name);
+            out.write(",\"cat\":");
+            writeJsonValue(out, category);
+            out.write(",\"ph\":\"" + phase + "\",\"ts\":" + timestampMicros);
+            if (phase == 'X')
+                out.write(",\"dur\":" + durationMicros);
+            else if (phase == 'i')
+                out.write(",\"s\":\"t\"");
+            out.write(",\"pid\":" + pid + ",\"tid\":" + threadId);
+            if (args != null && !args.isEmpty())
+            {
+                out.write(",\"args\":{");
+                boolean first = true;
+                for (Map.Entry<String, ?> arg : args.entrySet())
+                {
+                    if (!first)
+                        out.write(',');
+                    writeJsonValue(out, arg.getKey());
+                    out.write(':');
+                    writeJsonValue(out, arg.getValue());
+                    first = false;
+                }
+                out.write('}');
+            }
+            out.write('}');
+        }
+    }
+}
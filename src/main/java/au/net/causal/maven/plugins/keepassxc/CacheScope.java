@@ -0,0 +1,19 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+/**
+ * Determines how long passwords and KeepassXC connections are kept when Maven runs multiple builds in the same JVM, such as with the
+ * Maven daemon or embedded Maven.
+ */
+public enum CacheScope
+{
+    /**
+     * Passwords and connections are discarded at the end of each build.
+     */
+    BUILD,
+
+    /**
+     * Passwords and connections are kept across builds in the same JVM.  Passwords expire after the configured time to live, and everything
+     * is discarded if the KeepassXC database is found to be locked when the next build starts.
+     */
+    DAEMON
+}
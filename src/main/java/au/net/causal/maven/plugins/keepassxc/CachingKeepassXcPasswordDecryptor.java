@@ -1,18 +1,235 @@
 package au.net.causal.maven.plugins.keepassxc;
 
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
 import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * KeepassXC password decryptor that caches passwords read from KeepassXC to avoid rereading.
+ * <p>
+ *
+ * The extension is loaded into every Maven build, including builds that never decrypt a KeepassXC value.  To keep the cost of that low,
+ * this component is only a small facade.  Caches, backends and the KeepassXC client, along with Guava and the crypto libraries they use, are
+ * held by a {@link SessionCachingKeepassXcDecryptor} that is not created, and whose classes are not loaded, until the first KeepassXC value
+ * is decrypted.
  */
 @Component(role= PasswordDecryptor.class, hint="keepassxc")
-public class CachingKeepassXcPasswordDecryptor extends CachingPasswordDecryptor
+public class CachingKeepassXcPasswordDecryptor extends AbstractLogEnabled implements AsyncPasswordDecryptor, Disposable
 {
-    public CachingKeepassXcPasswordDecryptor()
+    private volatile SessionCachingKeepassXcDecryptor decryptor;
+
+    /**
+     * Settings of the current build, applied to the decryptor if it is created part way through a build.  Null if no build is running.
+     */
+    private volatile KeepassExtensionSettings sessionSettings;
+
+    /**
+     * Values requested in the current build and when they were first requested, recorded into the access history when the build ends.
+     */
+    private final Map<DecryptRequest, Instant> buildAccesses = new LinkedHashMap<>();
+
+    /**
+     * Access history of the current project, or null if prefetching is disabled or no build is running.
+     */
+    private volatile AccessHistory accessHistory;
+
+    /**
+     * @return the decryptor that does the work, created on first use.
+     */
+    private SessionCachingKeepassXcDecryptor decryptor()
+    {
+        SessionCachingKeepassXcDecryptor decryptor = this.decryptor;
+        if (decryptor != null)
+            return decryptor;
+
+        synchronized (this)
+        {
+            if (this.decryptor == null)
+            {
+                long startTime = System.nanoTime();
+                decryptor = new SessionCachingKeepassXcDecryptor();
+                decryptor.enableLogging(getLogger());
+
+                KeepassExtensionSettings settings = sessionSettings;
+                if (settings != null)
+                    decryptor.sessionStarted(settings);
+
+                this.decryptor = decryptor;
+                getLogger().debug("KeepassXC decryptor initialized in " + (System.nanoTime() - startTime) / 1_000_000L + " ms");
+            }
+
+            return this.decryptor;
+        }
+    }
+
+    /**
+     * Called when a Maven build session starts.  Applies the configured cache scope and discards anything cached from a previous build
+     * that can no longer be trusted.
+     *
+     * @param settings extension settings read from settings-security.xml.
+     */
+    public void sessionStarted(KeepassExtensionSettings settings)
+    {
+        //Usually already started by settings decryption, which Maven does before the session starts
+        if (settings.getTraceFile() != null)
+            BuildTrace.start();
+
+        sessionSettings = settings;
+
+        SessionCachingKeepassXcDecryptor decryptor = this.decryptor;
+        if (decryptor != null)
+            decryptor.sessionStarted(settings);
+    }
+
+    /**
+     * Called when a Maven build session ends.  Saves access history, reports cache statistics for the build, writes the trace if tracing
+     * and, when the cache is scoped to a single build, discards cached passwords and closes KeepassXC connections.
+     *
+     * @param settings extension settings read from settings-security.xml.
+     */
+    public void sessionEnded(KeepassExtensionSettings settings)
+    {
+        saveAccessHistory();
+        sessionSettings = null;
+
+        SessionCachingKeepassXcDecryptor decryptor = this.decryptor;
+        if (decryptor != null)
+            decryptor.sessionEnded(settings);
+
+        if (settings.getTraceFile() != null)
+            BuildTrace.finish(KeepassExtensionSettings.BASE_DIRECTORY.resolve(settings.getTraceFile()), getLogger());
+    }
+
+    /**
+     * Loads the access history of the project being built and reads the values that previous builds used in the background, so that they
+     * are already cached when they are requested.  Does nothing if prefetching has already started for the project in the current build.
+     *
+     * @param projectDirectory the top-level directory of the project being built.
+     * @param config configuration from settings-security.xml for the decryptor.
+     * @param settings extension settings read from settings-security.xml.
+     */
+    public void prefetch(Path projectDirectory, Map<?, ?> config, KeepassExtensionSettings settings)
+    {
+        Path historyDirectory = KeepassExtensionSettings.BASE_DIRECTORY.resolve(settings.getAccessHistoryDirectory());
+        Path historyFile = AccessHistory.historyFile(historyDirectory, projectDirectory);
+
+        //Usually already started by settings decryption, which Maven does before the session starts
+        AccessHistory currentHistory = accessHistory;
+        if (currentHistory != null && currentHistory.getFile().equals(historyFile))
+            return;
+
+        AccessHistory history = AccessHistory.load(historyFile, settings.getAccessHistoryMaxBuilds(), getLogger());
+        accessHistory = history;
+
+        //Only initialize the decryptor when previous builds actually used KeepassXC values
+        List<DecryptRequest> requests = history.getRecentRequests();
+        if (!requests.isEmpty())
+            decryptor().prefetch(requests, config);
+    }
+
+    /**
+     * Records the values requested in this build into the project's access history and saves it.
+     */
+    private void saveAccessHistory()
+    {
+        AccessHistory history = accessHistory;
+        accessHistory = null;
+
+        Map<DecryptRequest, Instant> accesses;
+        synchronized (buildAccesses)
+        {
+            accesses = new LinkedHashMap<>(buildAccesses);
+            buildAccesses.clear();
+        }
+
+        if (history == null)
+            return;
+
+        accesses.forEach(history::recordAccess);
+        try
+        {
+            history.save();
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Failed to save KeepassXC access history: " + e, e);
+        }
+    }
+
+    /**
+     * Remembers that a value was requested in this build.
+     */
+    private void recordAccess(String str, Map<?, ?> attributes)
+    {
+        DecryptRequest request = new DecryptRequest(str, attributes == null ? Map.of() : attributes);
+        synchronized (buildAccesses)
+        {
+            buildAccesses.putIfAbsent(request, Instant.now());
+        }
+    }
+
+    @Override
+    public String decrypt(String str, Map attributes, Map config)
+    throws SecDispatcherException
+    {
+        recordAccess(str, attributes);
+        return decryptor().decrypt(str, attributes, config);
+    }
+
+    @Override
+    public CompletableFuture<String> decryptAsync(String str, Map<?, ?> attributes, Map<?, ?> config)
+    {
+        recordAccess(str, attributes);
+        return decryptor().decryptAsync(str, attributes, config);
+    }
+
+    /**
+     * Decrypts multiple values at once.  Values already in the cache are served from it, the remaining values are grouped by canonical URL
+     * and read from KeepassXC in a single pass, and results are added to the cache.
+     *
+     * @see SessionCachingKeepassXcDecryptor#decryptAll(Map, Map)
+     */
+    @Override
+    public <K> Map<K, String> decryptAll(Map<K, DecryptRequest> requests, Map<?, ?> config)
+    throws SecDispatcherException
+    {
+        requests.values().forEach(request -> recordAccess(request.getStr(), request.getAttributes()));
+        return decryptor().decryptAll(requests, config);
+    }
+
+    /**
+     * Reads all entries from KeepassXC that match a URL, sharing connections with the decryptor.  Results are not cached.
+     *
+     * @param url the URL to look up entries for.
+     * @param config configuration from settings-security.xml for the decryptor.  Might be null or empty.
+     *
+     * @return matching entries, possibly empty.
+     *
+     * @throws SecDispatcherException if KeepassXC could not be accessed or an error occurs reading entries.
+     *
+     * @see KeepassXcPasswordDecryptor#readEntries(String, Map)
+     */
+    public List<KeepassEntry> readEntries(String url, Map<?, ?> config)
+    throws SecDispatcherException
+    {
+        return decryptor().readEntries(url, config);
+    }
+
+    @Override
+    public void dispose()
     {
-        super(new KeepassXcPasswordDecryptor(), Duration.ofMinutes(1L));
+        SessionCachingKeepassXcDecryptor decryptor = this.decryptor;
+        if (decryptor != null)
+            decryptor.dispose();
     }
 }
@@ -2,6 +2,7 @@ package au.net.causal.maven.plugins.keepassxc;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
@@ -14,9 +15,16 @@ import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A wrapper for another password decryptor that caches decryption results for a certain amount of time.
@@ -26,7 +34,27 @@ extends AbstractLogEnabled
 implements PasswordDecryptor, Disposable
 {
     private final PasswordDecryptor passwordDecryptor;
-    private final LoadingCache<DecryptKey, String> passwordCache;
+    private volatile CacheExpiry cacheExpiry;
+    private volatile LoadingCache<DecryptKey, String> passwordCache;
+
+    /**
+     * Number of requests that were only served from an existing cache entry because {@link #createKey(String, Map, Map)} normalized them.
+     */
+    private final LongAdder dedupedRequestCount = new LongAdder();
+
+    /**
+     * Maximum number of asynchronous decryptions that are run at once.
+     */
+    private static final int MAX_CONCURRENT_ASYNC_DECRYPTIONS = 8;
+
+    private ExecutorService asyncExecutor;
+    private boolean disposed;
+
+    /**
+     * Asynchronous decryptions that have not completed yet.  Decryptions still queued when this decryptor is disposed never run, so these
+     * are failed on dispose to avoid leaving callers waiting forever.
+     */
+    private final Set<CompletableFuture<String>> pendingAsyncDecryptions = ConcurrentHashMap.newKeySet();
 
     /**
      * Creates a caching password decryptor.
@@ -37,18 +65,79 @@ implements PasswordDecryptor, Disposable
     public CachingPasswordDecryptor(PasswordDecryptor passwordDecryptor, Duration cacheExpireTime)
     {
         this.passwordDecryptor = Objects.requireNonNull(passwordDecryptor);
-        passwordCache =
-            CacheBuilder.newBuilder()
-                        .expireAfterAccess(cacheExpireTime.toMillis(), TimeUnit.MILLISECONDS)
-                        .build(new CacheLoader<>()
+        this.cacheExpiry = new CacheExpiry(cacheExpireTime, null);
+        this.passwordCache = buildCache(cacheExpiry);
+    }
+
+    private LoadingCache<DecryptKey, String> buildCache(CacheExpiry expiry)
+    {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        if (expiry.expireAfterAccess != null)
+            builder.expireAfterAccess(expiry.expireAfterAccess.toMillis(), TimeUnit.MILLISECONDS);
+        if (expiry.expireAfterWrite != null)
+            builder.expireAfterWrite(expiry.expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS);
+
+        return builder.build(new CacheLoader<>()
+        {
+            @Override
+            public String load(DecryptKey key)
+            throws Exception
+            {
+                logCacheStats(key);
+                try (BuildTrace.Span span = BuildTrace.span("password-cache", "Password cache load").arg("url", key.str))
                 {
-                    @Override
-                    public String load(DecryptKey key)
-                    throws Exception
-                    {
-                        return passwordDecryptor.decrypt(key.str, key.attributes, key.config);
-                    }
-                });
+                    return passwordDecryptor.decrypt(key.str, key.attributes, key.config);
+                }
+            }
+        });
+    }
+
+    /**
+     * Changes how long passwords are kept in the cache.  Passwords that are already cached are kept, and expire according to the new expiry
+     * from now on.
+     *
+     * @param expireAfterAccess passwords not accessed for this amount of time are expired.  May be null for no access-based expiry.
+     * @param expireAfterWrite passwords are expired this amount of time after they are first read.  May be null for no write-based expiry.
+     */
+    public synchronized void setCacheExpiry(Duration expireAfterAccess, Duration expireAfterWrite)
+    {
+        CacheExpiry newExpiry = new CacheExpiry(expireAfterAccess, expireAfterWrite);
+        if (newExpiry.equals(cacheExpiry))
+            return;
+
+        //Keep passwords already read, such as those read while decrypting settings before the build session started
+        LoadingCache<DecryptKey, String> newCache = buildCache(newExpiry);
+        newCache.putAll(passwordCache.asMap());
+
+        cacheExpiry = newExpiry;
+        passwordCache = newCache;
+        dedupedRequestCount.reset();
+    }
+
+    /**
+     * Discards all cached passwords.
+     */
+    public void invalidateAll()
+    {
+        passwordCache.invalidateAll();
+    }
+
+    /**
+     * @return a snapshot of cache statistics.  Statistics are reset when the cache expiry changes.
+     */
+    public CacheStats cacheStats()
+    {
+        return passwordCache.stats();
+    }
+
+    /**
+     * @return the number of requests whose own key differed from their normalized cache key and that were served from an entry already
+     *         cached for the normalized key.  These are lookups saved by normalization rather than by the cache alone.  Reset when the
+     *         cache expiry changes.
+     */
+    public long dedupedRequestCount()
+    {
+        return dedupedRequestCount.sum();
     }
 
     @Override
@@ -63,9 +152,13 @@ implements PasswordDecryptor, Disposable
     public String decrypt(String str, Map attributes, Map config)
     throws SecDispatcherException
     {
+        DecryptKey key = createCountedKey(str, attributes, config);
+        if (BuildTrace.isEnabled() && passwordCache.asMap().containsKey(key))
+            BuildTrace.instant("password-cache", "Password cache hit", Map.of("url", key.str));
+
         try
         {
-            return passwordCache.get(new DecryptKey(str, attributes, config));
+            return passwordCache.get(key);
         }
         catch (ExecutionException e)
         {
@@ -80,13 +173,224 @@ implements PasswordDecryptor, Disposable
         }
     }
 
+    /**
+     * Decrypts a value asynchronously.  Values already in the cache are returned in an already completed future, other values are read
+     * from the underlying decryptor on a background thread, sharing the cache with synchronous decryption.
+     *
+     * @param str the string to decrypt.
+     * @param attributes the decrypter entry attributes.
+     * @param config the decryptor configuration.
+     *
+     * @return a future that completes with the decrypted value, or completes exceptionally with a {@link SecDispatcherException} if
+     *         the value could not be decrypted.
+     */
+    public CompletableFuture<String> decryptAsync(String str, Map<?, ?> attributes, Map<?, ?> config)
+    {
+        DecryptKey key = createCountedKey(str, attributes, config);
+
+        String cachedPassword = getCachedPassword(key);
+        if (cachedPassword != null)
+            return CompletableFuture.completedFuture(cachedPassword);
+
+        ExecutorService executor = asyncExecutor();
+        if (executor == null)
+            return CompletableFuture.failedFuture(new SecDispatcherException("Decryptor has been disposed"));
+
+        CompletableFuture<String> future;
+        try
+        {
+            future = CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return passwordCache.get(key);
+                }
+                catch (ExecutionException e)
+                {
+                    throw new CompletionException(e.getCause());
+                }
+                catch (UncheckedExecutionException e)
+                {
+                    throw new CompletionException(e.getCause());
+                }
+            }, executor);
+        }
+        catch (RejectedExecutionException e)
+        {
+            return CompletableFuture.failedFuture(new SecDispatcherException("Decryptor has been disposed", e));
+        }
+
+        pendingAsyncDecryptions.add(future);
+        future.whenComplete((password, ex) -> pendingAsyncDecryptions.remove(future));
+
+        //Disposed between submitting and registering, the decryption may have been dropped without dispose seeing it
+        if (isDisposed())
+            future.completeExceptionally(new SecDispatcherException("Decryptor has been disposed"));
+
+        return future;
+    }
+
+    private synchronized boolean isDisposed()
+    {
+        return disposed;
+    }
+
+    /**
+     * @return the executor used for asynchronous decryption, created on first use, or null if this decryptor has been disposed.
+     */
+    private synchronized ExecutorService asyncExecutor()
+    {
+        if (disposed)
+            return null;
+
+        if (asyncExecutor == null)
+            asyncExecutor = LookupExecutors.newBoundedExecutor(MAX_CONCURRENT_ASYNC_DECRYPTIONS, "keepassxc-async-");
+
+        return asyncExecutor;
+    }
+
+    /**
+     * Reads a password from the cache without loading it.
+     *
+     * @param key the cache key.
+     *
+     * @return the cached password, or null if it is not in the cache.
+     */
+    protected String getCachedPassword(DecryptKey key)
+    {
+        String password = passwordCache.getIfPresent(key);
+        if (password != null)
+            BuildTrace.instant("password-cache", "Password cache hit", Map.of("url", key.str));
+
+        return password;
+    }
+
+    /**
+     * Stores a password that was read outside of the cache.
+     *
+     * @param key the cache key.
+     * @param password the password to store.
+     */
+    protected void putCachedPassword(DecryptKey key, String password)
+    {
+        passwordCache.put(key, password);
+    }
+
+    /**
+     * Creates the cache key for a decryption request.  Subclasses may override this to normalize requests so that equivalent requests
+     * share a cache entry.  The key's values are what is passed to the underlying decryptor on a cache miss.
+     *
+     * @param str the string to decrypt.
+     * @param attributes the decrypter entry attributes.
+     * @param config the decryptor configuration.
+     *
+     * @return the cache key.
+     */
+    protected DecryptKey createKey(String str, Map<?, ?> attributes, Map<?, ?> config)
+    {
+        return new DecryptKey(str, attributes, config);
+    }
+
+    /**
+     * Creates the cache key for a decryption request, counting the request as deduplicated if normalizing it made it match an entry that is
+     * already cached.
+     *
+     * @param str the string to decrypt.
+     * @param attributes the decrypter entry attributes.
+     * @param config the decryptor configuration.
+     *
+     * @return the cache key.
+     *
+     * @see #dedupedRequestCount()
+     */
+    protected DecryptKey createCountedKey(String str, Map<?, ?> attributes, Map<?, ?> config)
+    {
+        DecryptKey key = createKey(str, attributes, config);
+        if (passwordCache.asMap().containsKey(key) && !key.equals(new DecryptKey(str, attributes, config)))
+            dedupedRequestCount.increment();
+
+        return key;
+    }
+
+    /**
+     * Logs cache statistics when debug is enabled.  Called on each cache miss.
+     *
+     * @param key the key that missed the cache.
+     */
+    private void logCacheStats(DecryptKey key)
+    {
+        if (getLogger() == null || !getLogger().isDebugEnabled())
+            return;
+
+        CacheStats stats = passwordCache.stats();
+        getLogger().debug("Password cache miss for " + key.str + " (requests: " + stats.requestCount() + ", lookups: " + stats.missCount() +
+                          ", hit rate: " + Math.round(stats.hitRate() * 100.0) + "%, dedupe rate: " +
+                          Math.round(dedupeRate(dedupedRequestCount(), stats.requestCount()) * 100.0) + "%)");
+    }
+
+    /**
+     * @param dedupedCount number of requests served from an existing entry only because of normalization.
+     * @param requestCount total number of requests.
+     *
+     * @return the fraction of requests that were deduplicated by normalization, or 0 if there were no requests.
+     */
+    protected static double dedupeRate(long dedupedCount, long requestCount)
+    {
+        return requestCount == 0L ? 0.0 : (double)dedupedCount / requestCount;
+    }
+
     @Override
     public void dispose()
     {
+        synchronized (this)
+        {
+            disposed = true;
+            if (asyncExecutor != null)
+            {
+                asyncExecutor.shutdownNow();
+                asyncExecutor = null;
+            }
+        }
+
+        for (CompletableFuture<String> pending : pendingAsyncDecryptions)
+        {
+            pending.completeExceptionally(new SecDispatcherException("Decryptor has been disposed"));
+        }
+
         if (passwordDecryptor instanceof Disposable)
             ((Disposable)passwordDecryptor).dispose();
     }
 
+    /**
+     * Expiry settings for the password cache.
+     */
+    private static class CacheExpiry
+    {
+        private final Duration expireAfterAccess;
+        private final Duration expireAfterWrite;
+
+        public CacheExpiry(Duration expireAfterAccess, Duration expireAfterWrite)
+        {
+            this.expireAfterAccess = expireAfterAccess;
+            this.expireAfterWrite = expireAfterWrite;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof CacheExpiry that)) return false;
+            return Objects.equals(expireAfterAccess, that.expireAfterAccess) &&
+                   Objects.equals(expireAfterWrite, that.expireAfterWrite);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(expireAfterAccess, expireAfterWrite);
+        }
+    }
+
     /**
      * Cache key for a settings.xml server entry that requires decryption.
      */
@@ -103,6 +407,21 @@ implements PasswordDecryptor, Disposable
             this.config = config;
         }
 
+        public String getStr()
+        {
+            return str;
+        }
+
+        public Map<?, ?> getAttributes()
+        {
+            return attributes;
+        }
+
+        public Map<?, ?> getConfig()
+        {
+            return config;
+        }
+
         @Override
         public boolean equals(Object o)
         {
@@ -0,0 +1,147 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Normalizes entry URLs and attribute/configuration maps so that equivalent decryption requests share the same cache keys.
+ * <p>
+ *
+ * KeepassXC matches entries by host, so URLs such as {@code https://Host/}, {@code https://host} and {@code https://host:443} all
+ * return the same entries.  Canonicalizing these before using them as cache keys avoids repeated KeepassXC lookups for the same entries.
+ */
+public final class CanonicalKeys
+{
+    private CanonicalKeys()
+    {
+    }
+
+    /**
+     * Canonicalizes an entry URL.  The scheme and host are lowercased, default ports for HTTP and HTTPS are removed, as are trailing slashes
+     * on the path.  Values that cannot be parsed as absolute URLs with a host are returned trimmed but otherwise unmodified.
+     *
+     * @param url the URL to canonicalize.  May be null.
+     *
+     * @return the canonical URL, or null if {@code url} was null.
+     */
+    public static String canonicalUrl(String url)
+    {
+        if (url == null)
+            return null;
+
+        String trimmed = url.trim();
+        URI uri;
+        try
+        {
+            uri = new URI(trimmed);
+        }
+        catch (URISyntaxException e)
+        {
+            return trimmed;
+        }
+
+        if (uri.getScheme() == null || uri.getHost() == null)
+            return trimmed;
+
+        StringBuilder buf = new StringBuilder(canonicalOrigin(uri));
+
+        String path = uri.getRawPath();
+        if (path != null)
+        {
+            int end = path.length();
+            while (end > 0 && path.charAt(end - 1) == '/')
+                end--;
+
+            buf.append(path, 0, end);
+        }
+        if (uri.getRawQuery() != null)
+            buf.append('?').append(uri.getRawQuery());
+        if (uri.getRawFragment() != null)
+            buf.append('#').append(uri.getRawFragment());
+
+        return buf.toString();
+    }
+
+    /**
+     * Generates the canonical origin of a URL, which is its scheme, host and non-default port.
+     *
+     * @param url the URL.  May be null.
+     *
+     * @return the origin, or null if the URL could not be parsed or has no host.
+     */
+    public static String canonicalOrigin(String url)
+    {
+        if (url == null)
+            return null;
+
+        try
+        {
+            URI uri = new URI(url.trim());
+            if (uri.getScheme() == null || uri.getHost() == null)
+                return null;
+
+            return canonicalOrigin(uri);
+        }
+        catch (URISyntaxException e)
+        {
+            return null;
+        }
+    }
+
+    private static String canonicalOrigin(URI uri)
+    {
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        StringBuilder buf = new StringBuilder(scheme).append("://");
+        if (uri.getRawUserInfo() != null)
+            buf.append(uri.getRawUserInfo()).append('@');
+        buf.append(uri.getHost().toLowerCase(Locale.ROOT));
+
+        int port = uri.getPort();
+        if (port >= 0 && port != defaultPort(scheme))
+            buf.append(':').append(port);
+
+        return buf.toString();
+    }
+
+    private static int defaultPort(String scheme)
+    {
+        switch (scheme)
+        {
+            case "http":
+                return 80;
+            case "https":
+                return 443;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Normalizes an attribute or configuration map.  Keys and values are converted to strings and sorted by key so that, for example,
+     * {@code where:} filters specified in a different order produce equal maps with the same string form.  Keys are trimmed, but values are
+     * left as they are since whitespace in a value, such as a password or a username filter, may be significant.  Entries with null keys or
+     * values are dropped.
+     *
+     * @param map the map to normalize.  May be null.
+     *
+     * @return an unmodifiable, sorted normalized map.
+     */
+    public static SortedMap<String, String> canonicalMap(Map<?, ?> map)
+    {
+        SortedMap<String, String> result = new TreeMap<>();
+        if (map != null)
+        {
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                if (entry.getKey() != null && entry.getValue() != null)
+                    result.put(entry.getKey().toString().trim(), entry.getValue().toString());
+            }
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+}
@@ -0,0 +1,61 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A single value to decrypt as part of a {@linkplain AsyncPasswordDecryptor#decryptAll(Map, Map) bulk decryption}.  Holds the same values
+ * that are passed to {@link org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor#decrypt(String, Map, Map)} for a single
+ * settings entry such as <code>{[type=keepassxc,select=username]https://myserver.com}</code>.
+ */
+public class DecryptRequest
+{
+    private final String str;
+    private final Map<?, ?> attributes;
+
+    /**
+     * Creates a request.
+     *
+     * @param str the entry URL or name.
+     * @param attributes the decrypter entry attributes, such as 'select' and 'where:' filters.
+     */
+    public DecryptRequest(String str, Map<?, ?> attributes)
+    {
+        this.str = Objects.requireNonNull(str);
+        this.attributes = Map.copyOf(attributes);
+    }
+
+    public String getStr()
+    {
+        return str;
+    }
+
+    public Map<?, ?> getAttributes()
+    {
+        return attributes;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof DecryptRequest that)) return false;
+        return str.equals(that.str) && attributes.equals(that.attributes);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(str, attributes);
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringJoiner(", ", DecryptRequest.class.getSimpleName() + "[", "]")
+                .add("str='" + str + "'")
+                .add("attributes=" + attributes)
+                .toString();
+    }
+}
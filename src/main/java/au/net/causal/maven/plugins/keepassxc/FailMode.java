@@ -32,6 +32,22 @@ public enum FailMode
         {
             throw ex;
         }
+    },
+    /**
+     * Wait for KeepassXC for only a short time ('staleValueWaitTime'), and when the password cannot be read, use the last password that
+     * was successfully read for the same entry if it was read recently enough ('staleValueMaxAge').  Passwords are kept for this
+     * purpose in an encrypted local cache file.  If there is no recent enough password, the 'staleValueFallbackMode' applies, which is
+     * {@link #EMPTY_PASSWORD} unless configured otherwise.
+     */
+    STALE_VALUE
+    {
+        @Override
+        public String handleKeepassFailure(SecDispatcherException ex)
+        throws SecDispatcherException
+        {
+            //Stale values are substituted and the fallback mode applied by the decryptor, this is only reached if used directly
+            return EMPTY_PASSWORD.handleKeepassFailure(ex);
+        }
     };
 
     /**
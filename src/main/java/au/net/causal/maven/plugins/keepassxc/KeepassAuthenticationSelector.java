@@ -0,0 +1,208 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.aether.repository.Authentication;
+import org.eclipse.aether.repository.AuthenticationContext;
+import org.eclipse.aether.repository.AuthenticationDigest;
+import org.eclipse.aether.repository.AuthenticationSelector;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Authentication selector for Maven Resolver that reads credentials for remote repositories from KeepassXC using the repository URL.
+ * <p>
+ *
+ * Only repositories whose URLs are on an explicit list are authenticated this way.  The resolver asks for credentials as soon as it
+ * connects to a repository whether or not the repository needs them, so authenticating every repository would read from KeepassXC, and
+ * possibly prompt to unlock it, for public repositories such as Maven Central too.
+ * <p>
+ *
+ * Repositories that already have authentication configured, such as through a server entry in settings.xml, keep that authentication.
+ * For listed repositories, credentials are read from KeepassXC for the listed URL the repository matched when the resolver connects to
+ * it, and are then cached per listed URL so each one costs at most one KeepassXC lookup however many repositories are underneath it.
+ * Failures to read KeepassXC are not cached, so a later connection tries again.
+ */
+public class KeepassAuthenticationSelector implements AuthenticationSelector
+{
+    private final AuthenticationSelector delegate;
+    private final CachingKeepassXcPasswordDecryptor decryptor;
+    private final Map<?, ?> config;
+    private final List<String> repositoryUrls;
+    private final Logger log;
+
+    /**
+     * Cache of listed repository URL to the entry that was read from KeepassXC for that URL.  Empty optionals are cached when there was no
+     * entry so that unauthenticated repositories are not looked up over and over again.
+     */
+    private final Cache<String, Optional<KeepassEntry>> entryCacheByRepositoryUrl;
+
+    /**
+     * Creates an authentication selector.
+     *
+     * @param delegate the existing authentication selector, whose authentication takes precedence when present.  May be null.
+     * @param decryptor the KeepassXC decryptor whose connections are used for reading entries.
+     * @param config KeepassXC configuration from settings-security.xml.
+     * @param repositoryUrls URLs of repositories to authenticate.  Repositories at or underneath these URLs are authenticated.
+     * @param log logger.
+     */
+    public KeepassAuthenticationSelector(AuthenticationSelector delegate, CachingKeepassXcPasswordDecryptor decryptor, Map<?, ?> config,
+                                         List<String> repositoryUrls, Logger log)
+    {
+        this.delegate = delegate;
+        this.decryptor = Objects.requireNonNull(decryptor);
+        this.config = Map.copyOf(config);
+        this.repositoryUrls = repositoryUrls.stream().map(CanonicalKeys::canonicalUrl).collect(Collectors.toUnmodifiableList());
+        this.log = Objects.requireNonNull(log);
+        this.entryCacheByRepositoryUrl = CacheBuilder.newBuilder().build();
+    }
+
+    @Override
+    public Authentication getAuthentication(RemoteRepository repository)
+    {
+        if (delegate != null)
+        {
+            Authentication existing = delegate.getAuthentication(repository);
+            if (existing != null)
+                return existing;
+        }
+
+        String listedUrl = listedRepositoryUrl(repository.getUrl());
+        if (listedUrl == null)
+            return null;
+
+        return new KeepassAuthentication(listedUrl);
+    }
+
+    /**
+     * Finds the repository URL to authenticate that a repository URL is, or is underneath.  When several listed URLs match, the longest one
+     * is used.
+     *
+     * @param url the repository URL.
+     *
+     * @return the canonical listed URL the repository matched, or null if the repository should not be authenticated with credentials
+     *         from KeepassXC.
+     */
+    String listedRepositoryUrl(String url)
+    {
+        String canonicalUrl = CanonicalKeys.canonicalUrl(url);
+        if (canonicalUrl == null)
+            return null;
+
+        String match = null;
+        for (String repositoryUrl : repositoryUrls)
+        {
+            if ((canonicalUrl.equals(repositoryUrl) || canonicalUrl.startsWith(repositoryUrl + "/")) &&
+                (match == null || repositoryUrl.length() > match.length()))
+            {
+                match = repositoryUrl;
+            }
+        }
+
+        return match;
+    }
+
+    /**
+     * Reads the single entry from KeepassXC to use for authenticating to a listed repository URL.
+     *
+     * @param url the listed repository URL.
+     *
+     * @return the entry to use, or null if there is none.
+     *
+     * @throws SecDispatcherException if KeepassXC could not be read.
+     */
+    private KeepassEntry readEntry(String url)
+    throws SecDispatcherException
+    {
+        log.debug("Reading repository credentials for " + url + " from KeepassXC");
+        List<KeepassEntry> entries = decryptor.readEntries(url, config);
+        if (entries.isEmpty())
+        {
+            log.debug("No KeepassXC entry for repository " + url);
+            return null;
+        }
+        if (entries.size() > 1)
+            log.debug("Multiple KeepassXC entries for repository " + url + ", using the first one");
+
+        return entries.get(0);
+    }
+
+    /**
+     * Reads the entry to use for authenticating to a listed repository URL, from the cache if it has been read before.
+     *
+     * @param url the listed repository URL.
+     *
+     * @return the entry to use, or null if there is none or KeepassXC could not be read.
+     */
+    KeepassEntry cachedEntry(String url)
+    {
+        try
+        {
+            return entryCacheByRepositoryUrl.get(url, () -> Optional.ofNullable(readEntry(url))).orElse(null);
+        }
+        catch (ExecutionException e)
+        {
+            //Nothing is cached when the loader throws, so the next connection reads KeepassXC again
+            if (e.getCause() instanceof SecDispatcherException)
+            {
+                if (log.isDebugEnabled())
+                    log.warn("Could not read repository credentials for " + url + " from KeepassXC: " + e.getCause().getMessage(), e.getCause());
+                else
+                    log.warn("Could not read repository credentials for " + url + " from KeepassXC: " + e.getCause().getMessage());
+
+                return null;
+            }
+
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Authentication that lazily fills in the username and password from a KeepassXC entry.
+     */
+    private class KeepassAuthentication implements Authentication
+    {
+        private final String listedUrl;
+
+        public KeepassAuthentication(String listedUrl)
+        {
+            this.listedUrl = listedUrl;
+        }
+
+        @Override
+        public void fill(AuthenticationContext context, String key, Map<String, String> data)
+        {
+            if (!AuthenticationContext.USERNAME.equals(key) && !AuthenticationContext.PASSWORD.equals(key))
+                return;
+
+            KeepassEntry entry = cachedEntry(listedUrl);
+            if (entry == null)
+                return;
+
+            //Username and password always come from the same entry
+            context.put(AuthenticationContext.USERNAME, entry.getLogin());
+            context.put(AuthenticationContext.PASSWORD, entry.getPassword());
+        }
+
+        @Override
+        public void digest(AuthenticationDigest digest)
+        {
+            //Digest on where the credentials come from rather than the credentials themselves to avoid looking them up before they are needed
+            digest.update(SettingsSecurityConfigReader.KEEPASSXC_CONFIG_NAME, listedUrl);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "keepassxc(" + listedUrl + ")";
+        }
+    }
+}
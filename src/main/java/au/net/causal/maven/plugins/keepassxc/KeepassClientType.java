@@ -0,0 +1,18 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+/**
+ * Selects the client used to talk to KeepassXC's browser integration.
+ */
+public enum KeepassClientType
+{
+    /**
+     * Uses keepassxc-proxy-access for all communication with KeepassXC.
+     */
+    LIBRARY,
+
+    /**
+     * Uses a lighter weight client built on a Unix domain socket channel for lookups, falling back to keepassxc-proxy-access for associating
+     * with KeepassXC.  Only used on Linux and macOS, on Windows this behaves the same as {@link #LIBRARY}.
+     */
+    SOCKET_CHANNEL
+}
@@ -0,0 +1,134 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An entry returned from KeepassXC.
+ *
+ * See:
+ * <ul>
+ *     <li><a href="https://github.com/keepassxreboot/keepassxc-browser/blob/develop/keepassxc-protocol.md#get-logins">KeepassXC protocol documentation</a></li>
+ *     <li><a href="https://github.com/keepassxreboot/keepassxc/blob/2.7.4/src/browser/BrowserAction.cpp#L234">BrowserAction::handleGetLogins</a></li>
+ *     <li><a href="https://github.com/keepassxreboot/keepassxc/blob/2.7.4/src/browser/BrowserService.cpp#L920">BrowserService::prepareEntry</a></li>
+ * </ul>
+ */
+public class KeepassEntry
+{
+    private final String name;
+    private final String login;
+    private final String password;
+    private final String group;
+    private final Map<String, String> stringFields;
+
+    public KeepassEntry(String name, String login, String password, String group, Map<String, String> stringFields)
+    {
+        this.name = name;
+        this.login = login;
+        this.password = password;
+        this.group = group;
+        this.stringFields = Map.copyOf(stringFields);
+    }
+
+    /**
+     * Parses an entry from JSON returned from a KeepassXC connection's getLogin call.
+     *
+     * @param json raw JSON in map form.  Nested maps, strings and primitives.
+     *
+     * @return the parsed entry.
+     */
+    public static KeepassEntry parse(Map<?, ?> json)
+    {
+        String name = stringValue(json.get("name"));
+        String login = stringValue(json.get("login"));
+        String password = stringValue(json.get("password"));
+        String group = stringValue(json.get("group"));
+
+        Object rawStringFields = json.get("stringFields");
+        Map<String, String> stringFields = new LinkedHashMap<>();
+        if (rawStringFields instanceof Collection<?>)
+        {
+            Collection<?> stringFieldsList = (Collection<?>)rawStringFields;
+            for (Object rawStringFieldEntry : stringFieldsList)
+            {
+                if (rawStringFieldEntry instanceof Map<?, ?>)
+                {
+                    Map<?, ?> stringFieldEntry = (Map<?, ?>)rawStringFieldEntry;
+                    for (Map.Entry<?, ?> e : stringFieldEntry.entrySet())
+                    {
+                        if (e.getKey() != null && e.getValue() != null)
+                            stringFields.put(e.getKey().toString(), e.getValue().toString());
+                    }
+                }
+            }
+        }
+
+        return new KeepassEntry(name, login, password, group, stringFields);
+    }
+
+    /**
+     * Converts object to string, keeping null as null.
+     */
+    private static String stringValue(Object raw)
+    {
+        if (raw == null)
+            return null;
+        else
+            return raw.toString();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getLogin()
+    {
+        return login;
+    }
+
+    public String getPassword()
+    {
+        return password;
+    }
+
+    public String getGroup()
+    {
+        return group;
+    }
+
+    public Map<String, ?> getStringFields()
+    {
+        return stringFields;
+    }
+
+    /**
+     * Reads a field of this entry by the name used for the 'select' and 'where:' attributes in settings.xml.
+     *
+     * @param field 'password', 'username', 'title' or the name of a custom field.  Null for the password.
+     *
+     * @return the field's value, or null if this entry does not have the field.
+     */
+    public String getFieldValue(String field)
+    {
+        //The values for 'select' should be similar or equal to the ones in KeepassXC UI to make it least confusing for users
+        if (field == null || "password".equals(field))
+            return getPassword();
+        else if ("username".equals(field))
+            return getLogin();
+        else if ("title".equals(field))
+            return getName();
+        else //Custom attribute
+        {
+            String customFieldValue = stringValue(getStringFields().get(field));
+
+            //Try with 'KPH: ' prefix - Keepass wants custom fields that come through the browser helper to be prefixed by this anyway
+            //but we don't want to burden the Maven users with having to specify this on every custom attribute
+            if (customFieldValue == null)
+                customFieldValue = stringValue(getStringFields().get("KPH: " + field));
+
+            return customFieldValue;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package au.net.causal.maven.plugins.keepassxc;
 
+import au.net.causal.maven.plugins.keepassxc.backend.SecretBackendType;
 import org.codehaus.plexus.logging.Logger;
 
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -12,10 +15,39 @@ import java.util.Map;
  */
 public class KeepassExtensionSettings
 {
+    /**
+     * Directory that relative file paths in settings are resolved against.
+     */
+    static final Path BASE_DIRECTORY = Path.of(System.getProperty("user.home"), ".m2");
+
     private static final String CONFIG_KEY_CREDENTIALS_STORE_FILE = "credentialsStoreFile";
     private static final String CONFIG_KEY_UNLOCK_MAX_WAIT_TIME = "unlockMaxWaitTime";
     private static final String CONFIG_KEY_UNLOCK_MESSAGE_REPEAT_TIME = "unlockMessageRepeatTime";
     private static final String CONFIG_KEY_FAIL_MODE = "failMode";
+    private static final String CONFIG_KEY_REPOSITORY_AUTHENTICATION = "repositoryAuthentication";
+    private static final String CONFIG_KEY_REPOSITORY_AUTHENTICATION_URLS = "repositoryAuthenticationUrls";
+    private static final String CONFIG_KEY_EXACT_URL_MATCHING = "exactUrlMatching";
+    private static final String CONFIG_KEY_LOOKUP_TIMEOUT = "lookupTimeout";
+    private static final String CONFIG_KEY_SLOW_LOOKUP_THRESHOLD = "slowLookupThreshold";
+    private static final String CONFIG_KEY_CACHE_SCOPE = "cacheScope";
+    private static final String CONFIG_KEY_CACHE_TIME_TO_LIVE = "cacheTimeToLive";
+    private static final String CONFIG_KEY_ADDITIONAL_CREDENTIALS_STORE_FILES = "additionalCredentialsStoreFiles";
+    private static final String CONFIG_KEY_STORE_LOOKUP_MODE = "storeLookupMode";
+    private static final String CONFIG_KEY_KDBX_FILE = "kdbxFile";
+    private static final String CONFIG_KEY_KDBX_PASSWORD_FILE = "kdbxPasswordFile";
+    private static final String CONFIG_KEY_KDBX_PASSWORD_ENVIRONMENT_VARIABLE = "kdbxPasswordEnvironmentVariable";
+    private static final String CONFIG_KEY_BACKENDS = "backends";
+    private static final String CONFIG_KEY_BACKEND_CACHE_TIME_TO_LIVE = "backendCacheTimeToLive";
+    private static final String CONFIG_KEY_PREFETCH = "prefetch";
+    private static final String CONFIG_KEY_ACCESS_HISTORY_DIRECTORY = "accessHistoryDirectory";
+    private static final String CONFIG_KEY_ACCESS_HISTORY_MAX_BUILDS = "accessHistoryMaxBuilds";
+    private static final String CONFIG_KEY_STALE_VALUE_WAIT_TIME = "staleValueWaitTime";
+    private static final String CONFIG_KEY_STALE_VALUE_MAX_AGE = "staleValueMaxAge";
+    private static final String CONFIG_KEY_STALE_VALUE_CACHE_FILE = "staleValueCacheFile";
+    private static final String CONFIG_KEY_STALE_VALUE_FALLBACK_MODE = "staleValueFallbackMode";
+    private static final String CONFIG_KEY_KEEPASS_CLIENT = "keepassClient";
+    private static final String CONFIG_KEY_TRACE_FILE = "traceFile";
+    private static final String CONFIG_KEY_INTERACTIVE_ASSOCIATION = "interactiveAssociation";
 
     private Path credentialsStoreFile = Path.of("keepassxc-security-maven-extension-credentials");
     private Duration unlockMaxWaitTime = Duration.ofMinutes(2L);
@@ -25,6 +57,31 @@ public class KeepassExtensionSettings
     //a bit of information about the local user's setup
     private FailMode failMode = FailMode.EMPTY_PASSWORD;
 
+    private boolean repositoryAuthentication;
+    private List<String> repositoryAuthenticationUrls = List.of();
+    private boolean exactUrlMatching;
+    private Duration lookupTimeout = Duration.ofSeconds(10L);
+    private Duration slowLookupThreshold = Duration.ofSeconds(5L);
+    private CacheScope cacheScope = CacheScope.BUILD;
+    private Duration cacheTimeToLive = Duration.ofMinutes(30L);
+    private List<Path> additionalCredentialsStoreFiles = List.of();
+    private StoreLookupMode storeLookupMode = StoreLookupMode.FIRST;
+    private Path kdbxFile;
+    private Path kdbxPasswordFile;
+    private String kdbxPasswordEnvironmentVariable;
+    private List<SecretBackendType> backends;
+    private Duration backendCacheTimeToLive = Duration.ofMinutes(1L);
+    private boolean prefetch;
+    private Path accessHistoryDirectory = Path.of("keepassxc-security-maven-extension-access-history");
+    private int accessHistoryMaxBuilds = 5;
+    private Duration staleValueWaitTime = Duration.ofSeconds(10L);
+    private Duration staleValueMaxAge = Duration.ofDays(1L);
+    private Path staleValueCacheFile = Path.of("keepassxc-security-maven-extension-stale-values");
+    private FailMode staleValueFallbackMode = FailMode.EMPTY_PASSWORD;
+    private KeepassClientType keepassClient = KeepassClientType.LIBRARY;
+    private Path traceFile;
+    private boolean interactiveAssociation = true;
+
     /**
      * Configures this settings object from configuration passed in to a decryptor which is sourced from that decryptor's configuration
      * in settings-security.xml's configuration section.
@@ -48,6 +105,104 @@ public class KeepassExtensionSettings
         FailMode failMode = enumFromMapKey(config, CONFIG_KEY_FAIL_MODE, FailMode.class, log);
         if (failMode != null)
             setFailMode(failMode);
+
+        Boolean repositoryAuthentication = booleanFromMapKey(config, CONFIG_KEY_REPOSITORY_AUTHENTICATION, log);
+        if (repositoryAuthentication != null)
+            setRepositoryAuthentication(repositoryAuthentication);
+
+        List<String> repositoryAuthenticationUrls = stringListFromMapKey(config, CONFIG_KEY_REPOSITORY_AUTHENTICATION_URLS);
+        if (repositoryAuthenticationUrls != null)
+            setRepositoryAuthenticationUrls(repositoryAuthenticationUrls);
+
+        Boolean exactUrlMatching = booleanFromMapKey(config, CONFIG_KEY_EXACT_URL_MATCHING, log);
+        if (exactUrlMatching != null)
+            setExactUrlMatching(exactUrlMatching);
+
+        Duration lookupTimeout = durationFromMapKey(config, CONFIG_KEY_LOOKUP_TIMEOUT, log);
+        if (lookupTimeout != null)
+            setLookupTimeout(lookupTimeout);
+
+        Duration slowLookupThreshold = durationFromMapKey(config, CONFIG_KEY_SLOW_LOOKUP_THRESHOLD, log);
+        if (slowLookupThreshold != null)
+            setSlowLookupThreshold(slowLookupThreshold);
+
+        CacheScope cacheScope = enumFromMapKey(config, CONFIG_KEY_CACHE_SCOPE, CacheScope.class, log);
+        if (cacheScope != null)
+            setCacheScope(cacheScope);
+
+        Duration cacheTimeToLive = durationFromMapKey(config, CONFIG_KEY_CACHE_TIME_TO_LIVE, log);
+        if (cacheTimeToLive != null)
+            setCacheTimeToLive(cacheTimeToLive);
+
+        List<Path> additionalCredentialsStoreFiles = pathListFromMapKey(config, CONFIG_KEY_ADDITIONAL_CREDENTIALS_STORE_FILES);
+        if (additionalCredentialsStoreFiles != null)
+            setAdditionalCredentialsStoreFiles(additionalCredentialsStoreFiles);
+
+        StoreLookupMode storeLookupMode = enumFromMapKey(config, CONFIG_KEY_STORE_LOOKUP_MODE, StoreLookupMode.class, log);
+        if (storeLookupMode != null)
+            setStoreLookupMode(storeLookupMode);
+
+        Path kdbxFile = pathFromMapKey(config, CONFIG_KEY_KDBX_FILE);
+        if (kdbxFile != null)
+            setKdbxFile(kdbxFile);
+
+        Path kdbxPasswordFile = pathFromMapKey(config, CONFIG_KEY_KDBX_PASSWORD_FILE);
+        if (kdbxPasswordFile != null)
+            setKdbxPasswordFile(kdbxPasswordFile);
+
+        String kdbxPasswordEnvironmentVariable = stringFromMapKey(config, CONFIG_KEY_KDBX_PASSWORD_ENVIRONMENT_VARIABLE);
+        if (kdbxPasswordEnvironmentVariable != null)
+            setKdbxPasswordEnvironmentVariable(kdbxPasswordEnvironmentVariable);
+
+        List<SecretBackendType> backends = enumListFromMapKey(config, CONFIG_KEY_BACKENDS, SecretBackendType.class, log);
+        if (backends != null && !backends.isEmpty())
+            setBackends(backends);
+
+        Duration backendCacheTimeToLive = durationFromMapKey(config, CONFIG_KEY_BACKEND_CACHE_TIME_TO_LIVE, log);
+        if (backendCacheTimeToLive != null)
+            setBackendCacheTimeToLive(backendCacheTimeToLive);
+
+        Boolean prefetch = booleanFromMapKey(config, CONFIG_KEY_PREFETCH, log);
+        if (prefetch != null)
+            setPrefetch(prefetch);
+
+        Path accessHistoryDirectory = pathFromMapKey(config, CONFIG_KEY_ACCESS_HISTORY_DIRECTORY);
+        if (accessHistoryDirectory != null)
+            setAccessHistoryDirectory(accessHistoryDirectory);
+
+        Integer accessHistoryMaxBuilds = integerFromMapKey(config, CONFIG_KEY_ACCESS_HISTORY_MAX_BUILDS, log);
+        if (accessHistoryMaxBuilds != null)
+            setAccessHistoryMaxBuilds(accessHistoryMaxBuilds);
+
+        Duration staleValueWaitTime = durationFromMapKey(config, CONFIG_KEY_STALE_VALUE_WAIT_TIME, log);
+        if (staleValueWaitTime != null)
+            setStaleValueWaitTime(staleValueWaitTime);
+
+        Duration staleValueMaxAge = durationFromMapKey(config, CONFIG_KEY_STALE_VALUE_MAX_AGE, log);
+        if (staleValueMaxAge != null)
+            setStaleValueMaxAge(staleValueMaxAge);
+
+        Path staleValueCacheFile = pathFromMapKey(config, CONFIG_KEY_STALE_VALUE_CACHE_FILE);
+        if (staleValueCacheFile != null)
+            setStaleValueCacheFile(staleValueCacheFile);
+
+        FailMode staleValueFallbackMode = enumFromMapKey(config, CONFIG_KEY_STALE_VALUE_FALLBACK_MODE, FailMode.class, log);
+        if (staleValueFallbackMode == FailMode.STALE_VALUE)
+            log.error("Keepass extension configuration option '" + CONFIG_KEY_STALE_VALUE_FALLBACK_MODE + "' cannot be " + FailMode.STALE_VALUE);
+        else if (staleValueFallbackMode != null)
+            setStaleValueFallbackMode(staleValueFallbackMode);
+
+        KeepassClientType keepassClient = enumFromMapKey(config, CONFIG_KEY_KEEPASS_CLIENT, KeepassClientType.class, log);
+        if (keepassClient != null)
+            setKeepassClient(keepassClient);
+
+        Path traceFile = pathFromMapKey(config, CONFIG_KEY_TRACE_FILE);
+        if (traceFile != null)
+            setTraceFile(traceFile);
+
+        Boolean interactiveAssociation = booleanFromMapKey(config, CONFIG_KEY_INTERACTIVE_ASSOCIATION, log);
+        if (interactiveAssociation != null)
+            setInteractiveAssociation(interactiveAssociation);
     }
 
     /**
@@ -82,6 +237,52 @@ public class KeepassExtensionSettings
             return Path.of(sValue);
     }
 
+    /**
+     * Reads a comma-separated list of strings from a map.  Elements are trimmed and blank elements are ignored.
+     *
+     * @param map the map to read the value from.
+     * @param key the key to read the value with.
+     *
+     * @return the value converted to a list of strings, or null if no entry for the specified key exists in the map.
+     */
+    private static List<String> stringListFromMapKey(Map<?, ?> map, String key)
+    {
+        String sValue = stringFromMapKey(map, key);
+        if (sValue == null)
+            return null;
+
+        List<String> values = new ArrayList<>();
+        for (String element : sValue.split(","))
+        {
+            if (!element.isBlank())
+                values.add(element.trim());
+        }
+        return values;
+    }
+
+    /**
+     * Reads a comma-separated list of paths from a map.  Blank elements are ignored.
+     *
+     * @param map the map to read the value from.
+     * @param key the key to read the value with.
+     *
+     * @return the value converted to a list of paths, or null if no entry for the specified key exists in the map.
+     */
+    private static List<Path> pathListFromMapKey(Map<?, ?> map, String key)
+    {
+        String sValue = stringFromMapKey(map, key);
+        if (sValue == null)
+            return null;
+
+        List<Path> paths = new ArrayList<>();
+        for (String element : sValue.split(","))
+        {
+            if (!element.isBlank())
+                paths.add(Path.of(element.trim()));
+        }
+        return paths;
+    }
+
     /**
      * Reads a Duration value from a map.
      *
@@ -138,6 +339,93 @@ public class KeepassExtensionSettings
 
     }
 
+    /**
+     * Reads a comma-separated list of enum values from a map.  Blank elements are ignored.
+     *
+     * @param map the map to read the value from.
+     * @param key the key to read the value with.
+     * @param enumType the enum type.
+     *
+     * @return the value converted to a list of enum values, or null if no entry for the specified key exists in the map or any element could not be parsed.
+     */
+    private static <E extends Enum<E>> List<E> enumListFromMapKey(Map<?, ?> map, String key, Class<E> enumType, Logger log)
+    {
+        String sValue = stringFromMapKey(map, key);
+        if (sValue == null)
+            return null;
+
+        List<E> values = new ArrayList<>();
+        for (String element : sValue.split(","))
+        {
+            if (element.isBlank())
+                continue;
+
+            try
+            {
+                values.add(Enum.valueOf(enumType, element.trim()));
+            }
+            catch (IllegalArgumentException e)
+            {
+                log.error("Error parsing Keepass extension configuration option '" + key + "' (" + sValue + "): " + e, e);
+                return null;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads a boolean value from a map.
+     *
+     * @param map the map to read the value from.
+     * @param key the key to read the value with.
+     *
+     * @return the value converted to a boolean, or null if no entry for the specified key exists in the map or the value could not be parsed.
+     */
+    private static Boolean booleanFromMapKey(Map<?, ?> map, String key, Logger log)
+    {
+        String sValue = stringFromMapKey(map, key);
+        if (sValue == null)
+            return null;
+        else if ("true".equalsIgnoreCase(sValue.trim()))
+            return Boolean.TRUE;
+        else if ("false".equalsIgnoreCase(sValue.trim()))
+            return Boolean.FALSE;
+        else
+        {
+            log.error("Error parsing Keepass extension configuration option '" + key + "' (" + sValue + "): must be 'true' or 'false'");
+            return null;
+        }
+    }
+
+    /**
+     * Reads a positive integer value from a map.
+     *
+     * @param map the map to read the value from.
+     * @param key the key to read the value with.
+     *
+     * @return the value converted to an integer, or null if no entry for the specified key exists in the map or the value could not be parsed.
+     */
+    private static Integer integerFromMapKey(Map<?, ?> map, String key, Logger log)
+    {
+        String sValue = stringFromMapKey(map, key);
+        if (sValue == null)
+            return null;
+
+        try
+        {
+            int value = Integer.parseInt(sValue.trim());
+            if (value > 0)
+                return value;
+        }
+        catch (NumberFormatException e)
+        {
+            //Fall through to error
+        }
+
+        log.error("Error parsing Keepass extension configuration option '" + key + "' (" + sValue + "): must be a positive integer");
+        return null;
+    }
+
     /**
      * @return the credentials store file that is used for pairing with KeepassXC as a client.  May be a relative path.
      * 
@@ -217,4 +505,563 @@ public class KeepassExtensionSettings
     {
         this.failMode = failMode;
     }
+
+    /**
+     * @return whether credentials for remote repositories that have no server entry in settings.xml are read from KeepassXC using the
+     *         repository's URL.
+     *
+     * @see #setRepositoryAuthentication(boolean)
+     */
+    public boolean isRepositoryAuthentication()
+    {
+        return repositoryAuthentication;
+    }
+
+    /**
+     * Sets whether credentials for remote repositories are read from KeepassXC using the repository's URL.
+     *
+     * @see #isRepositoryAuthentication()
+     */
+    public void setRepositoryAuthentication(boolean repositoryAuthentication)
+    {
+        this.repositoryAuthentication = repositoryAuthentication;
+    }
+
+    /**
+     * @return URLs of the remote repositories that may be authenticated with credentials from KeepassXC when repository authentication is
+     *         enabled.  A repository is included if its URL is one of these or is underneath one of them.  Repositories not listed, such
+     *         as Maven Central, never cause a KeepassXC lookup.
+     *
+     * @see #setRepositoryAuthenticationUrls(List)
+     * @see #isRepositoryAuthentication()
+     */
+    public List<String> getRepositoryAuthenticationUrls()
+    {
+        return repositoryAuthenticationUrls;
+    }
+
+    /**
+     * Sets the URLs of remote repositories that may be authenticated with credentials from KeepassXC.
+     *
+     * @see #getRepositoryAuthenticationUrls()
+     */
+    public void setRepositoryAuthenticationUrls(List<String> repositoryAuthenticationUrls)
+    {
+        this.repositoryAuthenticationUrls = List.copyOf(repositoryAuthenticationUrls);
+    }
+
+    /**
+     * @return whether entry URLs and attributes are used exactly as written in settings.xml when caching and looking up entries.  When false,
+     *         equivalent URLs such as 'https://Host/' and 'https://host:443' share a single lookup.
+     *
+     * @see #setExactUrlMatching(boolean)
+     */
+    public boolean isExactUrlMatching()
+    {
+        return exactUrlMatching;
+    }
+
+    /**
+     * Sets whether entry URLs and attributes are used exactly as written.
+     *
+     * @see #isExactUrlMatching()
+     */
+    public void setExactUrlMatching(boolean exactUrlMatching)
+    {
+        this.exactUrlMatching = exactUrlMatching;
+    }
+
+    /**
+     * @return the maximum amount of time to wait for KeepassXC to respond to a single entry lookup, which includes any time the user
+     *         spends on KeepassXC's access confirmation dialog, before giving up and applying the fail mode.
+     *
+     * @see #setLookupTimeout(Duration)
+     */
+    public Duration getLookupTimeout()
+    {
+        return lookupTimeout;
+    }
+
+    /**
+     * Sets the maximum amount of time to wait for a single entry lookup.
+     *
+     * @see #getLookupTimeout()
+     */
+    public void setLookupTimeout(Duration lookupTimeout)
+    {
+        this.lookupTimeout = lookupTimeout;
+    }
+
+    /**
+     * @return lookups taking longer than this are logged as slow.
+     *
+     * @see #setSlowLookupThreshold(Duration)
+     */
+    public Duration getSlowLookupThreshold()
+    {
+        return slowLookupThreshold;
+    }
+
+    /**
+     * Sets the threshold over which lookups are logged as slow.
+     *
+     * @see #getSlowLookupThreshold()
+     */
+    public void setSlowLookupThreshold(Duration slowLookupThreshold)
+    {
+        this.slowLookupThreshold = slowLookupThreshold;
+    }
+
+    /**
+     * @return whether passwords and connections are kept only for a single build or across builds in the same JVM.
+     *
+     * @see #setCacheScope(CacheScope)
+     */
+    public CacheScope getCacheScope()
+    {
+        return cacheScope;
+    }
+
+    /**
+     * Sets the cache scope.
+     *
+     * @see #getCacheScope()
+     */
+    public void setCacheScope(CacheScope cacheScope)
+    {
+        this.cacheScope = cacheScope;
+    }
+
+    /**
+     * @return how long passwords are kept after being read from KeepassXC when the cache scope is {@link CacheScope#DAEMON}.
+     *
+     * @see #setCacheTimeToLive(Duration)
+     */
+    public Duration getCacheTimeToLive()
+    {
+        return cacheTimeToLive;
+    }
+
+    /**
+     * Sets how long passwords are kept when the cache scope is {@link CacheScope#DAEMON}.
+     *
+     * @see #getCacheTimeToLive()
+     */
+    public void setCacheTimeToLive(Duration cacheTimeToLive)
+    {
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+
+    /**
+     * @return credentials store files, each of which holds a separate KeepassXC association, in addition to the main
+     *         {@linkplain #getCredentialsStoreFile() credentials store file}.  May be relative paths.
+     *
+     * @see #setAdditionalCredentialsStoreFiles(List)
+     */
+    public List<Path> getAdditionalCredentialsStoreFiles()
+    {
+        return additionalCredentialsStoreFiles;
+    }
+
+    /**
+     * Sets additional credentials store files.
+     *
+     * @see #getAdditionalCredentialsStoreFiles()
+     */
+    public void setAdditionalCredentialsStoreFiles(List<Path> additionalCredentialsStoreFiles)
+    {
+        this.additionalCredentialsStoreFiles = List.copyOf(additionalCredentialsStoreFiles);
+    }
+
+    /**
+     * @return all credentials store files in order of precedence, the main credentials store file first followed by any additional ones.
+     */
+    public List<Path> getCredentialsStoreFiles()
+    {
+        List<Path> files = new ArrayList<>(1 + additionalCredentialsStoreFiles.size());
+        files.add(credentialsStoreFile);
+        for (Path additionalFile : additionalCredentialsStoreFiles)
+        {
+            if (!files.contains(additionalFile))
+                files.add(additionalFile);
+        }
+        return files;
+    }
+
+    /**
+     * @return how entries are combined when multiple credentials stores are configured.
+     *
+     * @see #setStoreLookupMode(StoreLookupMode)
+     */
+    public StoreLookupMode getStoreLookupMode()
+    {
+        return storeLookupMode;
+    }
+
+    /**
+     * Sets how entries are combined when multiple credentials stores are configured.
+     *
+     * @see #getStoreLookupMode()
+     */
+    public void setStoreLookupMode(StoreLookupMode storeLookupMode)
+    {
+        this.storeLookupMode = storeLookupMode;
+    }
+
+    /**
+     * @return a KDBX database file to read entries from directly instead of connecting to KeepassXC, or null to use KeepassXC.
+     *         May be a relative path.
+     *
+     * @see #setKdbxFile(Path)
+     */
+    public Path getKdbxFile()
+    {
+        return kdbxFile;
+    }
+
+    /**
+     * Sets the KDBX database file to read entries from directly.
+     *
+     * @see #getKdbxFile()
+     */
+    public void setKdbxFile(Path kdbxFile)
+    {
+        this.kdbxFile = kdbxFile;
+    }
+
+    /**
+     * @return a file containing the password of the {@linkplain #getKdbxFile() KDBX database file}, or null if the password is not read
+     *         from a file.  May be a relative path.
+     *
+     * @see #setKdbxPasswordFile(Path)
+     */
+    public Path getKdbxPasswordFile()
+    {
+        return kdbxPasswordFile;
+    }
+
+    /**
+     * Sets the file containing the password of the KDBX database file.
+     *
+     * @see #getKdbxPasswordFile()
+     */
+    public void setKdbxPasswordFile(Path kdbxPasswordFile)
+    {
+        this.kdbxPasswordFile = kdbxPasswordFile;
+    }
+
+    /**
+     * @return the name of an environment variable holding the password of the {@linkplain #getKdbxFile() KDBX database file}, or null if the
+     *         password is not read from the environment.
+     *
+     * @see #setKdbxPasswordEnvironmentVariable(String)
+     */
+    public String getKdbxPasswordEnvironmentVariable()
+    {
+        return kdbxPasswordEnvironmentVariable;
+    }
+
+    /**
+     * Sets the name of the environment variable holding the password of the KDBX database file.
+     *
+     * @see #getKdbxPasswordEnvironmentVariable()
+     */
+    public void setKdbxPasswordEnvironmentVariable(String kdbxPasswordEnvironmentVariable)
+    {
+        this.kdbxPasswordEnvironmentVariable = kdbxPasswordEnvironmentVariable;
+    }
+
+    /**
+     * @return the backends that entries are read from, in order of precedence.  When not explicitly configured, this is the KDBX file backend if a
+     *         {@linkplain #getKdbxFile() KDBX file} is configured, otherwise KeepassXC.
+     *
+     * @see #setBackends(List)
+     */
+    public List<SecretBackendType> getBackends()
+    {
+        if (backends != null)
+            return backends;
+        else if (kdbxFile != null)
+            return List.of(SecretBackendType.KDBX);
+        else
+            return List.of(SecretBackendType.KEEPASSXC);
+    }
+
+    /**
+     * Sets the backends that entries are read from, in order of precedence.
+     *
+     * @see #getBackends()
+     */
+    public void setBackends(List<SecretBackendType> backends)
+    {
+        this.backends = List.copyOf(backends);
+    }
+
+    /**
+     * @return how long each backend's entries are cached.
+     *
+     * @see #setBackendCacheTimeToLive(Duration)
+     */
+    public Duration getBackendCacheTimeToLive()
+    {
+        return backendCacheTimeToLive;
+    }
+
+    /**
+     * Sets how long each backend's entries are cached.
+     *
+     * @see #getBackendCacheTimeToLive()
+     */
+    public void setBackendCacheTimeToLive(Duration backendCacheTimeToLive)
+    {
+        this.backendCacheTimeToLive = backendCacheTimeToLive;
+    }
+
+    /**
+     * @return whether entries that were used by previous builds of the same project are read in the background when a build starts.
+     *         Off by default.
+     *
+     * @see #setPrefetch(boolean)
+     */
+    public boolean isPrefetch()
+    {
+        return prefetch;
+    }
+
+    /**
+     * Sets whether entries used by previous builds are prefetched when a build starts.
+     *
+     * @see #isPrefetch()
+     */
+    public void setPrefetch(boolean prefetch)
+    {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @return the directory holding per-project access history files used for prefetching.  May be a relative path.
+     *
+     * @see #setAccessHistoryDirectory(Path)
+     */
+    public Path getAccessHistoryDirectory()
+    {
+        return accessHistoryDirectory;
+    }
+
+    /**
+     * Sets the directory holding per-project access history files.
+     *
+     * @see #getAccessHistoryDirectory()
+     */
+    public void setAccessHistoryDirectory(Path accessHistoryDirectory)
+    {
+        this.accessHistoryDirectory = accessHistoryDirectory;
+    }
+
+    /**
+     * @return the number of builds after which an entry that has not been used is removed from the access history.
+     *
+     * @see #setAccessHistoryMaxBuilds(int)
+     */
+    public int getAccessHistoryMaxBuilds()
+    {
+        return accessHistoryMaxBuilds;
+    }
+
+    /**
+     * Sets the number of builds after which an unused entry is removed from the access history.
+     *
+     * @see #getAccessHistoryMaxBuilds()
+     */
+    public void setAccessHistoryMaxBuilds(int accessHistoryMaxBuilds)
+    {
+        this.accessHistoryMaxBuilds = accessHistoryMaxBuilds;
+    }
+
+    /**
+     * @return how long to wait for KeepassXC before using a stale value when the fail mode is {@link FailMode#STALE_VALUE}.
+     *
+     * @see #setStaleValueWaitTime(Duration)
+     */
+    public Duration getStaleValueWaitTime()
+    {
+        return staleValueWaitTime;
+    }
+
+    /**
+     * Sets how long to wait for KeepassXC before using a stale value.
+     *
+     * @see #getStaleValueWaitTime()
+     */
+    public void setStaleValueWaitTime(Duration staleValueWaitTime)
+    {
+        this.staleValueWaitTime = staleValueWaitTime;
+    }
+
+    /**
+     * @return the maximum age of a stale value that may be used when the fail mode is {@link FailMode#STALE_VALUE}.
+     *
+     * @see #setStaleValueMaxAge(Duration)
+     */
+    public Duration getStaleValueMaxAge()
+    {
+        return staleValueMaxAge;
+    }
+
+    /**
+     * Sets the maximum age of a stale value that may be used.
+     *
+     * @see #getStaleValueMaxAge()
+     */
+    public void setStaleValueMaxAge(Duration staleValueMaxAge)
+    {
+        this.staleValueMaxAge = staleValueMaxAge;
+    }
+
+    /**
+     * @return the encrypted file that last read values are kept in when the fail mode is {@link FailMode#STALE_VALUE}.  May be a relative path.
+     *
+     * @see #setStaleValueCacheFile(Path)
+     */
+    public Path getStaleValueCacheFile()
+    {
+        return staleValueCacheFile;
+    }
+
+    /**
+     * Sets the file that last read values are kept in.
+     *
+     * @see #getStaleValueCacheFile()
+     */
+    public void setStaleValueCacheFile(Path staleValueCacheFile)
+    {
+        this.staleValueCacheFile = staleValueCacheFile;
+    }
+
+    /**
+     * @return the fail mode applied when the fail mode is {@link FailMode#STALE_VALUE} and there is no recent enough stale value to use.
+     *
+     * @see #setStaleValueFallbackMode(FailMode)
+     */
+    public FailMode getStaleValueFallbackMode()
+    {
+        return staleValueFallbackMode;
+    }
+
+    /**
+     * Sets the fail mode applied when there is no recent enough stale value to use.
+     *
+     * @param staleValueFallbackMode {@link FailMode#EMPTY_PASSWORD} or {@link FailMode#EXCEPTION}.
+     *
+     * @throws IllegalArgumentException if {@code staleValueFallbackMode} is {@link FailMode#STALE_VALUE}.
+     *
+     * @see #getStaleValueFallbackMode()
+     */
+    public void setStaleValueFallbackMode(FailMode staleValueFallbackMode)
+    {
+        if (staleValueFallbackMode == FailMode.STALE_VALUE)
+            throw new IllegalArgumentException("Stale value fallback mode cannot be " + FailMode.STALE_VALUE);
+
+        this.staleValueFallbackMode = staleValueFallbackMode;
+    }
+
+    /**
+     * @return the client used to talk to KeepassXC.
+     *
+     * @see #setKeepassClient(KeepassClientType)
+     */
+    public KeepassClientType getKeepassClient()
+    {
+        return keepassClient;
+    }
+
+    /**
+     * Sets the client used to talk to KeepassXC.
+     *
+     * @see #getKeepassClient()
+     */
+    public void setKeepassClient(KeepassClientType keepassClient)
+    {
+        this.keepassClient = keepassClient;
+    }
+
+    /**
+     * @return the file a Chrome trace of the extension's work is written to at the end of each build, or null to not trace.  May be a relative path.
+     *
+     * @see #setTraceFile(Path)
+     * @see BuildTrace
+     */
+    public Path getTraceFile()
+    {
+        return traceFile;
+    }
+
+    /**
+     * Sets the file a trace of the extension's work is written to at the end of each build.
+     *
+     * @see #getTraceFile()
+     */
+    public void setTraceFile(Path traceFile)
+    {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * @return whether builds may ask KeepassXC to associate when a credentials store has no usable association.  When false, builds fail
+     *         to connect straight away, applying the fail mode, and associations are only made by the pair goal.
+     *
+     * @see #setInteractiveAssociation(boolean)
+     */
+    public boolean isInteractiveAssociation()
+    {
+        return interactiveAssociation;
+    }
+
+    /**
+     * Sets whether builds may ask KeepassXC to associate when a credentials store has no usable association.
+     *
+     * @see #isInteractiveAssociation()
+     */
+    public void setInteractiveAssociation(boolean interactiveAssociation)
+    {
+        this.interactiveAssociation = interactiveAssociation;
+    }
+
+    /**
+     * @return the fail mode applied when a value cannot be read and no stale value is used.  This is the
+     *         {@linkplain #getStaleValueFallbackMode() stale value fallback mode} when the fail mode is {@link FailMode#STALE_VALUE}.
+     */
+    public FailMode getEffectiveFailMode()
+    {
+        if (getFailMode() == FailMode.STALE_VALUE)
+            return getStaleValueFallbackMode();
+        else
+            return getFailMode();
+    }
+
+    /**
+     * @return the maximum time to wait for the user to unlock their database, which is shortened to the stale value wait time when the
+     *         fail mode is {@link FailMode#STALE_VALUE}.
+     */
+    public Duration getEffectiveUnlockMaxWaitTime()
+    {
+        return shortenedForStaleValues(getUnlockMaxWaitTime());
+    }
+
+    /**
+     * @return the maximum time to wait for an entry lookup, which is shortened to the stale value wait time when the fail mode is
+     *         {@link FailMode#STALE_VALUE}.
+     */
+    public Duration getEffectiveLookupTimeout()
+    {
+        return shortenedForStaleValues(getLookupTimeout());
+    }
+
+    private Duration shortenedForStaleValues(Duration waitTime)
+    {
+        if (getFailMode() == FailMode.STALE_VALUE && getStaleValueWaitTime().compareTo(waitTime) < 0)
+            return getStaleValueWaitTime();
+        else
+            return waitTime;
+    }
 }
@@ -1,19 +1,23 @@
 package au.net.causal.maven.plugins.keepassxc;
 
-import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
-import com.google.common.base.StandardSystemProperty;
+import au.net.causal.maven.plugins.keepassxc.backend.BackendUnavailableException;
+import au.net.causal.maven.plugins.keepassxc.backend.CachingSecretBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.CompositeSecretBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.KdbxFileBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.KeepassConnectionPool;
+import au.net.causal.maven.plugins.keepassxc.backend.KeepassXcProxyBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.SecretBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.SecretBackendType;
+import au.net.causal.maven.plugins.keepassxc.backend.SecretQuery;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
-import org.purejava.KeepassProxyAccessException;
 import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
 
-import java.io.IOException;
 import java.nio.file.Path;
-import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -23,7 +27,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A password decryptor that reads passwords from a paired KeepassXC instance running on the user's system.
@@ -35,297 +42,466 @@ import java.util.concurrent.ExecutionException;
  * <code>{[type=keepassxc]entryName}</code>
  * <p>
  *
+ * Entries are read from one or more {@linkplain SecretBackend secret backends}, by default {@linkplain KeepassXcProxyBackend KeepassXC itself}.
+ * <p>
+ *
  * This decryptor is not registered with the Plexus container, but a {@linkplain CachingKeepassXcPasswordDecryptor caching wrapper} is.
  */
 public class KeepassXcPasswordDecryptor
 extends AbstractLogEnabled
 implements PasswordDecryptor, Disposable
 {
-    private static final Path CREDENTIALS_STORE_BASE_DIRECTORY = Path.of(StandardSystemProperty.USER_HOME.value(), ".m2");
+    private static final Path CREDENTIALS_STORE_BASE_DIRECTORY = KeepassExtensionSettings.BASE_DIRECTORY;
 
-    private final Clock clock = Clock.systemUTC();
+    /**
+     * A cache with Decrypter config keys (the map sent from Maven in {@link #decrypt(String, Map, Map)}) and backend values.
+     * This is used to re-use backends, and the KeepassXC connections they hold, and not constantly re-authenticate every time Maven asks for a
+     * single password.
+     */
+    private final LoadingCache<Map<?, ?>, SecretBackend> backendCacheByConfig;
 
     /**
-     * A cache with Decrypter config keys (the map sent from Maven in {@link #decrypt(String, Map, Map)}) and proxy values.  This is used to
-     * re-use KeepassXC connections and not constantly re-authenticate every time Maven asks for a single password.  Values hold either a successful connection or
-     * the failure that occurred when attempting to connect with a specific config - caching failures there are no repeated attempts at prompting the user to
-     * unlock KeepassXC once a timeout has occurred.
+     * Stale value caches by file, used with the {@link FailMode#STALE_VALUE} fail mode.
      */
-    private final LoadingCache<Map<?, ?>, ConnectionOrFailure> proxyCacheByConfig;
+    private final Map<Path, StaleValueCache> staleValueCaches = new ConcurrentHashMap<>();
+
+    /**
+     * Shares KeepassXC connections between configurations that use the same credentials store, so that configurations that only differ in
+     * settings such as timeouts or fail mode do not each connect and prompt separately.
+     */
+    private final KeepassConnectionPool connectionPool = new KeepassConnectionPool();
 
     public KeepassXcPasswordDecryptor()
     {
-        proxyCacheByConfig =
+        backendCacheByConfig =
                 CacheBuilder.newBuilder()
-                    .<Map<?, ?>, ConnectionOrFailure>removalListener(notification -> notification.getValue().close())
+                    .<Map<?, ?>, SecretBackend>removalListener(notification -> notification.getValue().close())
                     .build(new CacheLoader<>()
                     {
                         @Override
-                        public ConnectionOrFailure load(Map<?, ?> config)
-                        throws Exception
+                        public SecretBackend load(Map<?, ?> config)
                         {
-                            try
-                            {
-                                return new ConnectionOrFailure(connectKeepassProxy(config));
-                            }
-                            catch (SecDispatcherException e)
+                            try (BuildTrace.Span span = BuildTrace.span("backend", "Create backend"))
                             {
-                                return new ConnectionOrFailure(e);
+                                KeepassExtensionSettings settings = new KeepassExtensionSettings();
+                                settings.configure(config, getLogger());
+                                return createBackend(settings);
                             }
                         }
                     });
     }
 
     /**
-     * Creates a new connection to KeepassXC.
+     * Creates the backend that entries are read from for a configuration.  Entries from the backend are
+     * {@linkplain CachingSecretBackend cached}.  When multiple backends are configured, they are combined into a
+     * {@linkplain CompositeSecretBackend composite backend} where each backend's entries are cached separately.
      *
-     * @param config configuration from settings-security.xml for the decryptor.  Might be empty.
+     * @param settings settings for the decryptor configuration.
+     *
+     * @return the backend.
+     */
+    protected SecretBackend createBackend(KeepassExtensionSettings settings)
+    {
+        List<SecretBackendType> backendTypes = settings.getBackends();
+        if (backendTypes.size() == 1)
+            return new CachingSecretBackend(createBackend(backendTypes.get(0), settings), settings.getBackendCacheTimeToLive());
+
+        List<SecretBackend> backends = new ArrayList<>(backendTypes.size());
+        for (SecretBackendType backendType : backendTypes)
+        {
+            backends.add(new CachingSecretBackend(createBackend(backendType, settings), settings.getBackendCacheTimeToLive()));
+        }
+        return new CompositeSecretBackend(backends, getLogger());
+    }
+
+    /**
+     * Creates a single backend.
      *
-     * @return a new Keepass proxy connection.
+     * @param backendType the kind of backend to create.
+     * @param settings settings for the decryptor configuration.
      *
-     * @throws SecDispatcherException if an error occurs making the connection.
+     * @return the backend.
      */
-    private KeepassProxy connectKeepassProxy(Map<?, ?> config)
+    protected SecretBackend createBackend(SecretBackendType backendType, KeepassExtensionSettings settings)
+    {
+        switch (backendType)
+        {
+            case KEEPASSXC:
+                return new KeepassXcProxyBackend(settings, this::createCredentialsStore, CREDENTIALS_STORE_BASE_DIRECTORY, connectionPool, getLogger());
+            case KDBX:
+                return new KdbxFileBackend(settings, CREDENTIALS_STORE_BASE_DIRECTORY, getLogger());
+            default:
+                throw new Error("Unknown backend type: " + backendType);
+        }
+    }
+
+    /**
+     * Loads the credentials/pairing store for our KeepassXC client.  The credentials from this store are used for pairing with KeepassXC as a client.
+     *
+     * @param credentialsStoreFile where the credentials store exists.  May be relative to the .m2 directory.
+     *
+     * @return the store.
+     */
+    protected KeepassCredentialsStore createCredentialsStore(Path credentialsStoreFile)
+    {
+        //May be absolute, but if relative resolve from the .m2 directory
+        return new MavenKeepassCredentialsStore(CREDENTIALS_STORE_BASE_DIRECTORY.resolve(credentialsStoreFile), getLogger());
+    }
+
+    @Override
+    public String decrypt(String str, Map attributes, Map config)
     throws SecDispatcherException
     {
-        if (config == null)
-            config = Map.of();
-        else
-            config = Map.copyOf(config);
+        config = CanonicalKeys.canonicalMap(config);
 
         KeepassExtensionSettings settings = new KeepassExtensionSettings();
         settings.configure(config, getLogger());
 
-        KeepassCredentialsStore credentialsStore = createCredentialsStore(settings);
+        String entryName = str;
+        List<KeepassEntry> entries;
+        try
+        {
+            entries = cachedBackend(config).findEntries(createQuery(entryName, attributes));
+        }
+        catch (SecDispatcherException e)
+        {
+            return handleLookupFailure(e, entryName, attributes, settings);
+        }
 
-        return connectKeepassProxy(credentialsStore, settings);
+        return selectValueOrFail(entryName, entries, attributes, settings);
     }
 
     /**
-     * Creates a new connection to KeepassXC given some extension settings.
+     * Decrypts multiple values at once.  Values are grouped by {@linkplain CanonicalKeys#canonicalUrl(String) canonical} entry URL, unless
+     * exact URL matching is configured, each URL is looked up only once, and when there are multiple URLs they are looked up concurrently.
      *
-     * @param settings configuration for the decryptor.  Basically a type-safe version of the configuration passed from Maven, sourced from settings-security.xml.
+     * @param requests the values to decrypt, keyed by any caller-defined key.
+     * @param config configuration from settings-security.xml for the decryptor.  Might be null or empty.
+     * @param <K> the caller's key type.
      *
-     * @return a new Keepass proxy connection.
+     * @return decrypted values, with the same keys as {@code requests}.
      *
-     * @throws SecDispatcherException if an error occurs making the connection.
+     * @throws SecDispatcherException if any value could not be decrypted and the configured fail mode throws.
      */
-    private KeepassProxy connectKeepassProxy(KeepassCredentialsStore credentialsStore, KeepassExtensionSettings settings)
+    public <K> Map<K, String> decryptAll(Map<K, DecryptRequest> requests, Map<?, ?> config)
     throws SecDispatcherException
     {
-        KeepassProxy kpa;
-        try
-        {
-            kpa = new KeepassProxy(credentialsStore, getLogger());
-        }
-        catch (IOException e)
+        Map<String, String> canonicalConfig = CanonicalKeys.canonicalMap(config);
+
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(canonicalConfig, getLogger());
+
+        //Group equivalent URLs together, KeepassXC returns the same entries for them
+        Map<String, Map<K, DecryptRequest>> requestsByUrl = new LinkedHashMap<>();
+        requests.forEach((key, request) ->
         {
-            SecDispatcherException ex = new SecDispatcherException("Error initializing Keepass proxy: " + e, e);
-            getLogger().error(ex.getMessage(), ex);
-            throw ex;
-        }
+            String url = settings.isExactUrlMatching() ? request.getStr() : CanonicalKeys.canonicalUrl(request.getStr());
+            requestsByUrl.computeIfAbsent(url, k -> new LinkedHashMap<>()).put(key, request);
+        });
 
+        Map<K, String> results = new ConcurrentHashMap<>();
+        Map<K, SecDispatcherException> failures = new ConcurrentHashMap<>();
 
-        tryRepeat(settings,
-                  "Maven needs to read passwords from KeepassXC, please start KeepassXC, ensure the 'Browser Extensions' option is enabled and open your database",
-                  "Failed to connect to KeepassXC",
-                  () ->
+        //Nothing to gain from using other threads for a single URL
+        if (requestsByUrl.size() <= 1)
+            requestsByUrl.forEach((url, group) -> decryptGroup(url, group, canonicalConfig, settings, results, failures));
+        else
         {
+            ExecutorService executor = LookupExecutors.newBoundedExecutor(Math.min(requestsByUrl.size(), LookupExecutors.MAX_CONCURRENT_LOOKUPS), "keepassxc-bulk-");
             try
             {
-                kpa.connect();
+                List<Future<?>> futures = new ArrayList<>(requestsByUrl.size());
+                requestsByUrl.forEach((url, group) -> futures.add(executor.submit(() -> decryptGroup(url, group, canonicalConfig, settings, results, failures))));
+                for (Future<?> future : futures)
+                {
+                    future.get();
+                }
             }
-            catch (IOException e)
+            catch (InterruptedException e)
             {
-                throw new SecDispatcherException("Failed to connect to KeepassXC: " + e.getMessage(), e);
+                Thread.currentThread().interrupt();
+                throw new SecDispatcherException("Interrupted while reading entries from KeepassXC", e);
             }
-        });
-
-        boolean connected = kpa.connectionAvailable();
-        if (!connected)
-            connected = kpa.associate();
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException)e.getCause();
+                else if (e.getCause() instanceof Error)
+                    throw (Error)e.getCause();
+                else
+                    throw new RuntimeException(e);
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
 
-        tryRepeat(settings,
-                  "Maven needs to read passwords from KeepassXC, please unlock your database",
-                  "Failed to connect to KeepassXC - database remained locked",
-                  () ->
+        //Report the first failure in request order
+        for (K key : requests.keySet())
         {
-            boolean iConnected = kpa.connectionAvailable();
-            if (!iConnected)
-                throw new SecDispatcherException("Could not connect to KeepassXC");
-        });
+            SecDispatcherException failure = failures.get(key);
+            if (failure != null)
+                throw failure;
+        }
 
-        return kpa;
+        //Preserve request order
+        Map<K, String> orderedResults = new LinkedHashMap<>();
+        for (K key : requests.keySet())
+        {
+            orderedResults.put(key, results.get(key));
+        }
+        return orderedResults;
     }
 
     /**
-     * Runs a block of code multiple times until it succeeds or the unlock timeout it hit.  Non-success for the block is when it fails
-     * with a SecDispatcherException.
-     * <p>
-     *
-     * This method returns normally if, either initially or during a repeat, the code block succeeds.  If it times out, a
-     * SecDispatcherException is thrown.
-     *
-     * @param settings Keepass settings used to determine the timeout time and the message repeat time.
-     * @param failMessage message to display and possibly repeat to the user when the code block fails.
-     * @param timeoutMessage message to display on timeout.
-     * @param block the code block to execute, possibly multiple times.
-     *
-     * @throws SecDispatcherException if the block never once succeeded and the timeout time is exceeded.
+     * Decrypts a group of values sharing the same entry URL with a single lookup.  Values whose filters match none of the entries found are
+     * looked up again with their own filters, so that a composite backend can find them in a later backend.
      */
-    private void tryRepeat(KeepassExtensionSettings settings, String failMessage, String timeoutMessage, RepeatBlock block)
-    throws SecDispatcherException
+    private <K> void decryptGroup(String url, Map<K, DecryptRequest> group, Map<?, ?> config, KeepassExtensionSettings settings,
+                                  Map<K, String> results, Map<K, SecDispatcherException> failures)
     {
-        SecDispatcherException failureException = null;
+        SecretBackend backend = cachedBackend(config);
+        List<KeepassEntry> entries;
+        SecDispatcherException lookupFailure;
+        try
+        {
+            entries = backend.findEntries(SecretQuery.forUrl(url));
+            lookupFailure = null;
+        }
+        catch (SecDispatcherException e)
+        {
+            entries = null;
+            lookupFailure = e;
+        }
 
-        //Staggered
-        Instant connectionStartTime = Instant.now(clock);
-        Instant connectionMaxTime = connectionStartTime.plus(settings.getUnlockMaxWaitTime());
-        Instant lastMessageTime = Instant.EPOCH;
-        while (failureException == null || Instant.now(clock).isBefore(connectionMaxTime))
+        for (Map.Entry<K, DecryptRequest> groupEntry : group.entrySet())
         {
+            Map<?, ?> attributes = groupEntry.getValue().getAttributes();
             try
             {
-                block.call();
-
-                //If we succeed we are finished
-                return;
+                if (lookupFailure != null)
+                    results.put(groupEntry.getKey(), handleLookupFailure(lookupFailure, url, attributes, settings));
+                else if (backend instanceof CompositeSecretBackend && selectEntry(entries, attributes) == null)
+                    results.put(groupEntry.getKey(), decryptFiltered(backend, url, attributes, settings));
+                else
+                    results.put(groupEntry.getKey(), selectValueOrFail(url, entries, attributes, settings));
             }
             catch (SecDispatcherException e)
             {
-                failureException = e;
-            }
-
-            //If we get here we failed to connect
-            Instant now = Instant.now(clock);
-            Duration remainingTime = Duration.between(now, connectionMaxTime).truncatedTo(ChronoUnit.SECONDS); //truncate to seconds for a nicer message
-            if (lastMessageTime.plus(settings.getUnlockMessageRepeatTime()).isBefore(now))
-            {
-                getLogger().error(failMessage + " (timeout in " + remainingTime + ")...");
-                lastMessageTime = now;
+                failures.put(groupEntry.getKey(), e);
             }
+        }
+    }
 
-            try
-            {
-                Thread.sleep(500L);
-            }
-            catch (InterruptedException e)
-            {
-                throw new SecDispatcherException("Interrupted while waiting for KeepassXC", e);
-            }
+    /**
+     * Looks up a single value with its own filters.
+     */
+    private String decryptFiltered(SecretBackend backend, String url, Map<?, ?> attributes, KeepassExtensionSettings settings)
+    throws SecDispatcherException
+    {
+        List<KeepassEntry> entries;
+        try
+        {
+            entries = backend.findEntries(createQuery(url, attributes));
+        }
+        catch (SecDispatcherException e)
+        {
+            return handleLookupFailure(e, url, attributes, settings);
         }
 
-        String msg = timeoutMessage + " (within " + settings.getUnlockMaxWaitTime() + ")";
-        getLogger().error(msg);
-        throw new SecDispatcherException(msg);
+        return selectValueOrFail(url, entries, attributes, settings);
     }
 
     /**
-     * Loads the credentials/pairing store for our KeepassXC client.  The credentials from this store are used for pairing with KeepassXC as a client.
+     * Selects an entry and its value from entries read from a backend.
      *
-     * @param settings settings that specify where the credentials store exists.
+     * @param entryName the entry URL or name, used for messages.
+     * @param entries entries read for the entry name.
+     * @param decrypterEntryAttributes attributes from the decrypter entry in settings.xml.
      *
-     * @return the store.
+     * @return the selected value.
+     *
+     * @throws SecDispatcherException if no entry or value could be selected.
      */
-    protected KeepassCredentialsStore createCredentialsStore(KeepassExtensionSettings settings)
+    private String selectValue(String entryName, Collection<? extends KeepassEntry> entries, Map<?, ?> decrypterEntryAttributes)
+    throws SecDispatcherException
     {
-        //May be absolute, but if relative resolve from the .m2 directory
-        Path credentialsStoreFile = CREDENTIALS_STORE_BASE_DIRECTORY.resolve(settings.getCredentialsStoreFile());
+        KeepassEntry entry = selectEntry(entries, decrypterEntryAttributes);
+        if (entry == null)
+            throw new SecDispatcherException("No KeepassXC entry for " + entryName);
 
-        return new MavenKeepassCredentialsStore(credentialsStoreFile, getLogger());
+        String value = selectEntryValue(entry, decrypterEntryAttributes);
+        if (value == null)
+            throw new SecDispatcherException("No KeepassXC entry value for " + entryName);
+
+        return value;
     }
 
-    @Override
-    public String decrypt(String str, Map attributes, Map config)
+    /**
+     * Selects an entry and its value from entries read from a backend, applying the fail mode if no value could be selected.  Successfully
+     * selected values are remembered for the {@link FailMode#STALE_VALUE} fail mode.
+     *
+     * @param entryName the entry URL or name.
+     * @param entries entries read for the entry name.
+     * @param decrypterEntryAttributes attributes from the decrypter entry in settings.xml.
+     * @param settings settings with the fail mode.
+     *
+     * @return the selected value, or the value to use instead according to the fail mode.
+     *
+     * @throws SecDispatcherException if no value could be selected and the fail mode throws.
+     */
+    private String selectValueOrFail(String entryName, Collection<? extends KeepassEntry> entries, Map<?, ?> decrypterEntryAttributes,
+                                     KeepassExtensionSettings settings)
     throws SecDispatcherException
     {
-        if (config == null)
-            config = Map.of();
-        else
-            config = Map.copyOf(config);
-
-        KeepassExtensionSettings settings = new KeepassExtensionSettings();
-        settings.configure(config, getLogger());
-
+        String value;
         try
         {
-            KeepassProxy kpa;
-            try
-            {
-                ConnectionOrFailure possibleConnection = proxyCacheByConfig.get(config);
+            value = selectValue(entryName, entries, decrypterEntryAttributes);
+        }
+        catch (SecDispatcherException e)
+        {
+            //KeepassXC was reachable but has no such entry, so don't fall back to stale values
+            return handleFailure(e, settings);
+        }
 
-                //Handle cached failure
-                if (!possibleConnection.isSuccessfulConnection())
-                {
-                    //Don't normally log connection failures since the user went through the whole waiting/timeout thing with plenty of logging already
-                    getLogger().debug("Cached connection failure: " + possibleConnection.getFailure(), possibleConnection.getFailure());
+        if (settings.getFailMode() == FailMode.STALE_VALUE)
+            staleValueCache(settings).put(StaleValueCache.key(entryName, decrypterEntryAttributes), value);
 
-                    return settings.getFailMode().handleKeepassFailure(possibleConnection.getFailure());
-                }
+        return value;
+    }
 
-                //Successful connection (possibly cached) if we get here
-                kpa = possibleConnection.getConnection();
-            }
-            catch (ExecutionException e)
+    /**
+     * Handles a failure to read entries from a backend.  With the {@link FailMode#STALE_VALUE} fail mode, the last value read for the entry
+     * is used if it is recent enough, otherwise the fail mode is applied.
+     *
+     * @param e the failure.
+     * @param entryName the entry URL or name.
+     * @param decrypterEntryAttributes attributes from the decrypter entry in settings.xml.
+     * @param settings settings with the fail mode.
+     *
+     * @return the value to use instead.
+     *
+     * @throws SecDispatcherException if there is no usable stale value and the fail mode throws.
+     */
+    private String handleLookupFailure(SecDispatcherException e, String entryName, Map<?, ?> decrypterEntryAttributes, KeepassExtensionSettings settings)
+    throws SecDispatcherException
+    {
+        if (settings.getFailMode() == FailMode.STALE_VALUE)
+        {
+            StaleValueCache.StaleValue staleValue = staleValueCache(settings).get(StaleValueCache.key(entryName, decrypterEntryAttributes));
+            if (staleValue != null)
             {
-                //Normal errors do not come out through here, they are returned in ConnectionOrFailure
-                //But still handle runtime errors just in case
-                if (e.getCause() instanceof SecDispatcherException)
-                    throw (SecDispatcherException)e.getCause();
-                else if (e.getCause() instanceof RuntimeException)
-                    throw (RuntimeException)e.getCause();
-                else if (e.getCause() instanceof Error)
-                    throw (Error)e.getCause();
+                Duration age = Duration.between(staleValue.getReadTime(), Instant.now());
+                if (age.compareTo(settings.getStaleValueMaxAge()) <= 0)
+                {
+                    getLogger().warn("Could not read KeepassXC entry for " + entryName + ", using value last read " +
+                                     age.truncatedTo(ChronoUnit.SECONDS) + " ago: " + e.getMessage());
+                    getLogger().debug("KeepassXC lookup failure: " + e, e);
+                    return staleValue.getValue();
+                }
                 else
-                    throw new RuntimeException(e);
+                    getLogger().debug("Last value read for " + entryName + " is too old to use (" + age.truncatedTo(ChronoUnit.SECONDS) + ")");
             }
+        }
 
-            String entryName = str;
-            getLogger().debug("Need to read entry '" + entryName + "' from KeepassXC");
-
-            try
-            {
-                Map<String, ?> results = kpa.getLogins(entryName, null, true, List.of(kpa.exportConnection()));
-                if (results == null)
-                    throw new SecDispatcherException("No KeepassXC entry for " + entryName);
+        return handleFailure(e, settings);
+    }
 
-                Object entriesObj = results.get("entries");
-                if (!(entriesObj instanceof Collection<?>))
-                    throw new SecDispatcherException("No entries value for " + entryName);
+    /**
+     * @return the stale value cache for the configured file.
+     */
+    private StaleValueCache staleValueCache(KeepassExtensionSettings settings)
+    {
+        //May be absolute, but if relative resolve from the .m2 directory
+        Path cacheFile = CREDENTIALS_STORE_BASE_DIRECTORY.resolve(settings.getStaleValueCacheFile());
+        return staleValueCaches.computeIfAbsent(cacheFile, file -> new StaleValueCache(file, getLogger()));
+    }
 
-                Collection<?> rawEntries = (Collection<?>)entriesObj;
-                List<KeepassEntry> entries = new ArrayList<>(rawEntries.size());
-                for (Object rawEntry : rawEntries)
-                {
-                    if (rawEntry instanceof Map<?, ?>)
-                        entries.add(KeepassEntry.parse((Map<?, ?>)rawEntry));
-                }
+    /**
+     * Logs a failure to read a value and applies the configured fail mode, or the stale value fallback mode when stale values are used.
+     *
+     * @param e the failure.
+     * @param settings settings with the fail mode.
+     *
+     * @return the value to use instead, according to the fail mode.
+     *
+     * @throws SecDispatcherException if the fail mode throws.
+     */
+    private String handleFailure(SecDispatcherException e, KeepassExtensionSettings settings)
+    throws SecDispatcherException
+    {
+        if (e instanceof BackendUnavailableException)
+        {
+            //Don't normally log connection failures since the user went through the whole waiting/timeout thing with plenty of logging already
+            getLogger().debug("Cached connection failure: " + e.getCause(), e.getCause());
+        }
+        else if (getLogger().isDebugEnabled()) //Only throw ugly stack trace if user has debug mode enabled
+            getLogger().error(e.getMessage(), e);
+        else
+            getLogger().error(e.getMessage());
 
-                KeepassEntry entry = selectEntry(entries, attributes);
-                if (entry == null)
-                    throw new SecDispatcherException("No KeepassXC entry for " + entryName);
+        return settings.getEffectiveFailMode().handleKeepassFailure(e);
+    }
 
-                String value = selectEntryValue(entry, attributes);
-                if (value == null)
-                    throw new SecDispatcherException("No KeepassXC entry value for " + entryName);
+    /**
+     * Reads all entries from KeepassXC that match a URL.  Unlike {@link #decrypt(String, Map, Map)}, the configured fail mode is not applied
+     * and any failure is thrown to the caller.
+     *
+     * @param url the URL to look up entries for.
+     * @param config configuration from settings-security.xml for the decryptor.  Might be null or empty.
+     *
+     * @return matching entries, possibly empty.
+     *
+     * @throws SecDispatcherException if KeepassXC could not be accessed or an error occurs reading entries.
+     */
+    public List<KeepassEntry> readEntries(String url, Map<?, ?> config)
+    throws SecDispatcherException
+    {
+        return cachedBackend(CanonicalKeys.canonicalMap(config)).findEntries(SecretQuery.forUrl(url));
+    }
 
-                return value;
-            }
-            catch (IOException | KeepassProxyAccessException e)
-            {
-                throw new SecDispatcherException("Error getting entry for " + entryName + ": " + e, e);
-            }
+    /**
+     * Gets the backend for a configuration, creating it if needed.
+     *
+     * @param config canonical decryptor configuration.
+     *
+     * @return the backend.
+     */
+    private SecretBackend cachedBackend(Map<?, ?> config)
+    {
+        try
+        {
+            return backendCacheByConfig.get(config);
         }
-        catch (SecDispatcherException e)
+        catch (ExecutionException e)
         {
-            //Only throw ugly stack trace if user has debug mode enabled
-            if (getLogger().isDebugEnabled())
-                getLogger().error(e.getMessage(), e);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            else if (e.getCause() instanceof Error)
+                throw (Error)e.getCause();
             else
-                getLogger().error(e.getMessage());
+                throw new RuntimeException(e);
+        }
+    }
 
-            return settings.getFailMode().handleKeepassFailure(e);
+    /**
+     * Creates a backend query from a decrypter entry.
+     *
+     * @param entryName the URL or name of the entry.
+     * @param decrypterEntryAttributes attributes from the decrypter entry in settings.xml.
+     *
+     * @return the query.
+     */
+    private SecretQuery createQuery(String entryName, Map<?, ?> decrypterEntryAttributes)
+    {
+        Map<String, String> filters = new LinkedHashMap<>();
+        for (EntryFilter filter : filtersFromDecrypterEntryAttributes(decrypterEntryAttributes))
+        {
+            filters.put(filter.getKey(), filter.getValue());
         }
+        return new SecretQuery(entryName, filters, stringValue(decrypterEntryAttributes.get("select")));
     }
 
     /**
@@ -417,24 +593,7 @@ implements PasswordDecryptor, Disposable
      */
     private String selectEntryValue(KeepassEntry entry, String selectAttribute)
     {
-        //The values for 'select' should be similar or equal to the ones in KeepassXC UI to make it least confusing for users
-        if (selectAttribute == null || "password".equals(selectAttribute))
-            return entry.getPassword();
-        else if ("username".equals(selectAttribute))
-            return entry.getLogin();
-        else if ("title".equals(selectAttribute))
-            return entry.getName();
-        else //Custom attribute
-        {
-            String customFieldValue = stringValue(entry.getStringFields().get(selectAttribute));
-
-            //Try with 'KPH: ' prefix - Keepass wants custom fields that come through the browser helper to be prefixed by this anyway
-            //but we don't want to burden the Maven users with having to specify this on every custom attribute
-            if (customFieldValue == null)
-                customFieldValue = stringValue(entry.getStringFields().get("KPH: " + selectAttribute));
-
-            return customFieldValue;
-        }
+        return entry.getFieldValue(selectAttribute);
     }
 
     /**
@@ -448,100 +607,48 @@ implements PasswordDecryptor, Disposable
             return raw.toString();
     }
 
-    @Override
-    public void dispose()
-    {
-        //Close any KeepassXC connections that are maintained in the cache
-        proxyCacheByConfig.invalidateAll();
-    }
-
     /**
-     * An entry returned from KeepassXC.
-     *
-     * See:
-     * <ul>
-     *     <li><a href="https://github.com/keepassxreboot/keepassxc-browser/blob/develop/keepassxc-protocol.md#get-logins">KeepassXC protocol documentation</a></li>
-     *     <li><a href="https://github.com/keepassxreboot/keepassxc/blob/2.7.4/src/browser/BrowserAction.cpp#L234">BrowserAction::handleGetLogins</a></li>
-     *     <li><a href="https://github.com/keepassxreboot/keepassxc/blob/2.7.4/src/browser/BrowserService.cpp#L920">BrowserService::prepareEntry</a></li>
-     * </ul>
+     * Prepares cached backends for reuse by a new build.  Cached connection failures are discarded so that connecting is attempted again,
+     * and cached connections that are no longer usable, such as when the user has locked their database since they were made, are closed
+     * and discarded.
+     *
+     * @return true if every cached connection was still usable, false if at least one had to be discarded.
      */
-    private static class KeepassEntry
+    public boolean revalidateConnections()
     {
-        private final String name;
-        private final String login;
-        private final String password;
-        private final String group;
-        private final Map<String, String> stringFields;
-
-        public KeepassEntry(String name, String login, String password, String group, Map<String, String> stringFields)
-        {
-            this.name = name;
-            this.login = login;
-            this.password = password;
-            this.group = group;
-            this.stringFields = Map.copyOf(stringFields);
-        }
-
-        /**
-         * Parses an entry from JSON returned from a KeepassXC connection's getLogin call.
-         *
-         * @param json raw JSON in map form.  Nested maps, strings and primitives.
-         *
-         * @return the parsed entry.
-         */
-        public static KeepassEntry parse(Map<?, ?> json)
-        {
-            String name = stringValue(json.get("name"));
-            String login = stringValue(json.get("login"));
-            String password = stringValue(json.get("password"));
-            String group = stringValue(json.get("group"));
-
-            Object rawStringFields = json.get("stringFields");
-            Map<String, String> stringFields = new LinkedHashMap<>();
-            if (rawStringFields instanceof Collection<?>)
-            {
-                Collection<?> stringFieldsList = (Collection<?>)rawStringFields;
-                for (Object rawStringFieldEntry : stringFieldsList)
-                {
-                    if (rawStringFieldEntry instanceof Map<?, ?>)
-                    {
-                        Map<?, ?> stringFieldEntry = (Map<?, ?>)rawStringFieldEntry;
-                        for (Map.Entry<?, ?> e : stringFieldEntry.entrySet())
-                        {
-                            if (e.getKey() != null && e.getValue() != null)
-                                stringFields.put(e.getKey().toString(), e.getValue().toString());
-                        }
-                    }
-                }
-            }
-
-            return new KeepassEntry(name, login, password, group, stringFields);
-        }
-
-        public String getName()
+        boolean allUsable = true;
+        for (SecretBackend backend : backendCacheByConfig.asMap().values())
         {
-            return name;
-        }
-
-        public String getLogin()
-        {
-            return login;
+            allUsable &= backend.revalidate();
         }
+        return allUsable;
+    }
 
-        public String getPassword()
+    /**
+     * Called when a build ends, so that connections used by the build are checked again by {@link #revalidateConnections()} when the next
+     * build starts.
+     */
+    public void sessionEnded()
+    {
+        for (SecretBackend backend : backendCacheByConfig.asMap().values())
         {
-            return password;
+            backend.sessionEnded();
         }
+    }
 
-        public String getGroup()
-        {
-            return group;
-        }
+    /**
+     * Closes and discards all cached backends and the KeepassXC connections they hold.
+     */
+    public void closeConnections()
+    {
+        backendCacheByConfig.invalidateAll();
+    }
 
-        public Map<String, ?> getStringFields()
-        {
-            return stringFields;
-        }
+    @Override
+    public void dispose()
+    {
+        //Close any KeepassXC connections that are maintained in the cache
+        closeConnections();
     }
 
     /**
@@ -575,68 +682,4 @@ implements PasswordDecryptor, Disposable
             return getKey() + "=" + getValue();
         }
     }
-
-    /**
-     * Piece of KeypassXC connection code that can potentially be repeated if it fails.
-     */
-    @FunctionalInterface
-    private static interface RepeatBlock
-    {
-        /**
-         * Executes the code block.  Returns normally when successful, or throws a SecDispatcherException on failure.
-         *
-         * @throws SecDispatcherException on failure.
-         */
-        public void call()
-        throws SecDispatcherException;
-    }
-
-    /**
-     * Holds either a successful Keepass proxy connection or a failure.
-     */
-    private static class ConnectionOrFailure implements AutoCloseable
-    {
-        private final KeepassProxy connection;
-        private final SecDispatcherException failure;
-
-        public ConnectionOrFailure(KeepassProxy connection)
-        {
-            this.connection = Objects.requireNonNull(connection);
-            this.failure = null;
-        }
-
-        public ConnectionOrFailure(SecDispatcherException failure)
-        {
-            this.connection = null;
-            this.failure = Objects.requireNonNull(failure);
-        }
-
-        public KeepassProxy getConnection()
-        {
-            if (!isSuccessfulConnection())
-                throw new IllegalStateException("No connection");
-
-            return connection;
-        }
-
-        public SecDispatcherException getFailure()
-        {
-            if (isSuccessfulConnection())
-                throw new IllegalStateException("No failure");
-
-            return failure;
-        }
-
-        public boolean isSuccessfulConnection()
-        {
-            return connection != null;
-        }
-
-        @Override
-        public void close()
-        {
-            if (isSuccessfulConnection())
-                getConnection().close();
-        }
-    }
 }
@@ -0,0 +1,87 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors used for running KeepassXC lookups concurrently.
+ * <p>
+ *
+ * When running on Java 21 or later, lookup threads are virtual threads since they spend nearly all their time blocked waiting for KeepassXC.
+ * On earlier Java versions, daemon platform threads are used instead.  Virtual threads are looked up reflectively since this extension is
+ * compiled for Java 17.
+ */
+public final class LookupExecutors
+{
+    /**
+     * Maximum number of URLs looked up at once when decrypting several values together, such as for settings decryption or bulk
+     * decryption.
+     */
+    public static final int MAX_CONCURRENT_LOOKUPS = 8;
+
+    private LookupExecutors()
+    {
+    }
+
+    /**
+     * Creates an executor that runs at most a fixed number of tasks at once.
+     *
+     * @param maxThreads the maximum number of tasks that may run concurrently.
+     * @param namePrefix prefix for the names of threads created by the executor.
+     *
+     * @return a new executor.  The caller is responsible for shutting it down.
+     */
+    public static ExecutorService newBoundedExecutor(int maxThreads, String namePrefix)
+    {
+        return Executors.newFixedThreadPool(maxThreads, threadFactory(namePrefix));
+    }
+
+    /**
+     * Creates a thread factory that creates virtual threads if supported by the running JVM or daemon platform threads if not.
+     *
+     * @param namePrefix prefix for the names of created threads.
+     *
+     * @return a thread factory.
+     */
+    static ThreadFactory threadFactory(String namePrefix)
+    {
+        ThreadFactory virtualThreadFactory = virtualThreadFactory(namePrefix);
+        if (virtualThreadFactory != null)
+            return virtualThreadFactory;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        return runnable ->
+        {
+            Thread thread = new Thread(runnable, namePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Attempts to create a virtual thread factory using the Java 21 API.
+     *
+     * @param namePrefix prefix for the names of created threads.
+     *
+     * @return a virtual thread factory, or null if virtual threads are not supported by the running JVM.
+     */
+    private static ThreadFactory virtualThreadFactory(String namePrefix)
+    {
+        try
+        {
+            //Thread.ofVirtual().name(namePrefix, 1).factory()
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            return (ThreadFactory)builderType.getMethod("factory").invoke(builder);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | ClassCastException e)
+        {
+            //Virtual threads not available on this JVM
+            return null;
+        }
+    }
+}
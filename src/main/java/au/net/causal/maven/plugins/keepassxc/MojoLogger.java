@@ -0,0 +1,69 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.AbstractLogger;
+import org.codehaus.plexus.logging.Logger;
+
+import java.util.Objects;
+
+/**
+ * Adapts a mojo's log to the Plexus logger that the extension's components log to, so that mojos can use those components.
+ */
+class MojoLogger extends AbstractLogger
+{
+    private final Log log;
+
+    public MojoLogger(Log log)
+    {
+        super(levelOf(log), "keepassxc");
+        this.log = Objects.requireNonNull(log);
+    }
+
+    private static int levelOf(Log log)
+    {
+        if (log.isDebugEnabled())
+            return LEVEL_DEBUG;
+        else if (log.isInfoEnabled())
+            return LEVEL_INFO;
+        else if (log.isWarnEnabled())
+            return LEVEL_WARN;
+        else
+            return LEVEL_ERROR;
+    }
+
+    @Override
+    public void debug(String message, Throwable throwable)
+    {
+        log.debug(message, throwable);
+    }
+
+    @Override
+    public void info(String message, Throwable throwable)
+    {
+        log.info(message, throwable);
+    }
+
+    @Override
+    public void warn(String message, Throwable throwable)
+    {
+        log.warn(message, throwable);
+    }
+
+    @Override
+    public void error(String message, Throwable throwable)
+    {
+        log.error(message, throwable);
+    }
+
+    @Override
+    public void fatalError(String message, Throwable throwable)
+    {
+        log.error(message, throwable);
+    }
+
+    @Override
+    public Logger getChildLogger(String name)
+    {
+        return this;
+    }
+}
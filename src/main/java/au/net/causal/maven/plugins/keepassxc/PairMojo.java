@@ -0,0 +1,214 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pairs (associates) Maven with KeepassXC ahead of time, so that builds do not stop to show KeepassXC's association dialog.  Every credentials
+ * store configured in settings-security.xml is paired, and stores that already have a working association are left alone.
+ * <p>
+ *
+ * With {@link #checkOnly}, stores are only checked for a working association and the goal fails if any do not have one.  KeepassXC must be
+ * running with its database unlocked either way.
+ */
+@Mojo(name = "pair", requiresProject = false, threadSafe = true)
+public class PairMojo extends AbstractMojo
+{
+    /**
+     * If true, only check that every credentials store has an association that KeepassXC accepts, failing if not, instead of pairing.
+     */
+    @Parameter(property = "keepassxc.checkOnly", defaultValue = "false")
+    private boolean checkOnly;
+
+    @Component(hint = "maven")
+    private SecDispatcher secDispatcher;
+
+    /**
+     * Sets {@link #checkOnly}, for use outside of Maven.
+     */
+    void setCheckOnly(boolean checkOnly)
+    {
+        this.checkOnly = checkOnly;
+    }
+
+    @Override
+    public void execute()
+    throws MojoExecutionException, MojoFailureException
+    {
+        Logger logger = new MojoLogger(getLog());
+        KeepassExtensionSettings settings = readSettings(logger);
+
+        List<String> failures = new ArrayList<>();
+        for (Path credentialsStoreFile : settings.getCredentialsStoreFiles())
+        {
+            //May be absolute, but if relative resolve from the .m2 directory the same as the decryptor does
+            Path resolvedStoreFile = KeepassExtensionSettings.BASE_DIRECTORY.resolve(credentialsStoreFile);
+            try
+            {
+                if (checkOnly)
+                    check(resolvedStoreFile, settings, logger);
+                else
+                    pair(resolvedStoreFile, settings, logger);
+            }
+            catch (MojoFailureException e)
+            {
+                getLog().error(e.getMessage());
+                failures.add(e.getMessage());
+            }
+        }
+
+        if (!failures.isEmpty())
+        {
+            String action = checkOnly ? "are not paired" : "could not be paired";
+            throw new MojoFailureException(failures.size() + " of " + settings.getCredentialsStoreFiles().size() + " KeepassXC credentials store(s) " +
+                                           action + ": " + String.join("; ", failures));
+        }
+    }
+
+    /**
+     * Checks that a credentials store has an association that KeepassXC accepts.
+     *
+     * @throws MojoFailureException if the store has no association or KeepassXC does not accept it.
+     */
+    private void check(Path credentialsStoreFile, KeepassExtensionSettings settings, Logger logger)
+    throws MojoFailureException
+    {
+        if (Files.notExists(credentialsStoreFile))
+            throw new MojoFailureException("Credentials store " + credentialsStoreFile + " does not exist");
+
+        try (KeepassProxy kpa = createKeepassProxy(credentialsStoreFile, settings, logger))
+        {
+            if (!kpa.hasAssociation())
+                throw new MojoFailureException("Credentials store " + credentialsStoreFile + " holds no KeepassXC association");
+
+            connect(kpa);
+
+            if (!kpa.connectionAvailable())
+            {
+                throw new MojoFailureException("KeepassXC does not accept the association in " + credentialsStoreFile +
+                                               " - the database may be locked or the pairing may have been removed from KeepassXC");
+            }
+        }
+
+        getLog().info("Credentials store " + credentialsStoreFile + " is paired with KeepassXC");
+    }
+
+    /**
+     * Pairs a credentials store with KeepassXC if it does not already have an association that KeepassXC accepts, and saves the new
+     * association to the store.
+     *
+     * @throws MojoFailureException if KeepassXC could not be connected to or the user did not accept the association in time.
+     * @throws MojoExecutionException if interrupted while waiting for the user.
+     */
+    private void pair(Path credentialsStoreFile, KeepassExtensionSettings settings, Logger logger)
+    throws MojoExecutionException, MojoFailureException
+    {
+        try (KeepassProxy kpa = createKeepassProxy(credentialsStoreFile, settings, logger))
+        {
+            connect(kpa);
+
+            if (kpa.connectionAvailable())
+            {
+                getLog().info("Credentials store " + credentialsStoreFile + " is already paired with KeepassXC");
+                return;
+            }
+
+            getLog().info("Pairing " + credentialsStoreFile + " with KeepassXC - unlock your database if needed and give the connection a name " +
+                          "in KeepassXC's association dialog");
+
+            //Result of associate() is not useful since it nearly always fails, so rely on the test-associate in the loop below instead
+            //The new association is saved to the credentials store by the proxy once KeepassXC accepts it
+            kpa.associate();
+
+            Duration maxWaitTime = settings.getUnlockMaxWaitTime();
+            Instant deadline = Instant.now().plus(maxWaitTime);
+            while (!kpa.connectionAvailable())
+            {
+                if (Instant.now().isAfter(deadline))
+                    throw new MojoFailureException("KeepassXC did not accept the association for " + credentialsStoreFile + " within " + maxWaitTime);
+
+                try
+                {
+                    Thread.sleep(500L);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while waiting for KeepassXC", e);
+                }
+            }
+        }
+
+        if (Files.notExists(credentialsStoreFile))
+            throw new MojoFailureException("KeepassXC accepted the association but it could not be saved to " + credentialsStoreFile);
+
+        getLog().info("Paired credentials store " + credentialsStoreFile + " with KeepassXC");
+    }
+
+    /**
+     * Reads the extension's settings from settings-security.xml.
+     *
+     * @param logger logger for reporting problems with the configuration.
+     *
+     * @return the settings.
+     */
+    protected KeepassExtensionSettings readSettings(Logger logger)
+    {
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(new SettingsSecurityConfigReader(secDispatcher, logger).readKeepassConfig(), logger);
+        return settings;
+    }
+
+    /**
+     * Creates a proxy for talking to KeepassXC using the association in a credentials store.
+     *
+     * @param credentialsStoreFile the credentials store file.
+     * @param settings the extension's settings.
+     * @param logger logger.
+     *
+     * @return a new, unconnected proxy.
+     *
+     * @throws MojoFailureException if the credentials store could not be read.
+     */
+    protected KeepassProxy createKeepassProxy(Path credentialsStoreFile, KeepassExtensionSettings settings, Logger logger)
+    throws MojoFailureException
+    {
+        try
+        {
+            return new KeepassProxy(new MavenKeepassCredentialsStore(credentialsStoreFile, logger), settings.getKeepassClient(), logger);
+        }
+        catch (IOException e)
+        {
+            throw new MojoFailureException("Error reading credentials store " + credentialsStoreFile + ": " + e, e);
+        }
+    }
+
+    private void connect(KeepassProxy kpa)
+    throws MojoFailureException
+    {
+        try
+        {
+            kpa.connect();
+        }
+        catch (IOException e)
+        {
+            throw new MojoFailureException("Failed to connect to KeepassXC, ensure it is running with the 'Browser Extensions' option enabled: " +
+                                           e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.apache.maven.settings.Proxy;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.building.DefaultSettingsProblem;
+import org.apache.maven.settings.building.SettingsProblem;
+import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.apache.maven.settings.crypto.SettingsDecryptionRequest;
+import org.apache.maven.settings.crypto.SettingsDecryptionResult;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.plexus.components.cipher.DefaultPlexusCipher;
+import org.sonatype.plexus.components.cipher.PlexusCipher;
+import org.sonatype.plexus.components.cipher.PlexusCipherException;
+import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Replacement for Maven's default settings decrypter that resolves KeepassXC passwords of servers and proxies concurrently.
+ * <p>
+ *
+ * Maven's own decrypter decrypts every server and proxy password one after the other, so with many KeepassXC entries in settings.xml the
+ * time taken is one KeepassXC round trip per entry.  This decrypter groups all KeepassXC-typed values by URL and resolves each group on a
+ * bounded executor before assembling the result.  Each group is passed to the KeepassXC decryptor's
+ * {@linkplain AsyncPasswordDecryptor#decryptAll(Map, Map) bulk decryption} in one call, which reads the entries for the URL once and
+ * selects each value from them.  If any value in a group cannot be decrypted, the group's values are decrypted again one at a time so that
+ * each failure is reported against its own server or proxy.  Values that are not KeepassXC-typed are decrypted through the security
+ * dispatcher in the same way that Maven's default decrypter would.
+ * <p>
+ *
+ * KeepassXC's get-logins request only takes a single URL, and with the default client each KeepassXC connection carries one request at a
+ * time, so lookups for different URLs through the same credentials store still reach KeepassXC one after another.  What runs concurrently
+ * is everything around them: connecting and waiting for the database to be unlocked happens once for all groups instead of holding up the
+ * first, and lookups through different credentials stores or backends overlap.  Decrypting settings therefore takes about one KeepassXC
+ * round trip per distinct URL for each credentials store, not one round trip per value.
+ */
+@Component(role = SettingsDecrypter.class, hint = "default")
+public class ParallelSettingsDecrypter
+extends AbstractLogEnabled
+implements SettingsDecrypter
+{
+    private static final String KEEPASSXC_TYPE = "keepassxc";
+
+    /**
+     * Finds the decorated part of settings values the same way as the cipher used by Maven's security dispatcher.
+     */
+    private static final PlexusCipher SETTINGS_CIPHER = new DefaultPlexusCipher();
+
+    /**
+     * System property the Maven launcher sets to the top-level directory of the project being built.
+     */
+    private static final String MULTI_MODULE_PROJECT_DIRECTORY_PROPERTY = "maven.multiModuleProjectDirectory";
+
+    @Requirement(hint = "maven")
+    private SecDispatcher securityDispatcher;
+
+    @Requirement(role = PasswordDecryptor.class, hint = "keepassxc")
+    private PasswordDecryptor keepassDecryptor;
+
+    public ParallelSettingsDecrypter()
+    {
+    }
+
+    /**
+     * Creates a decrypter with its requirements, for use outside of a Plexus container.
+     */
+    ParallelSettingsDecrypter(SecDispatcher securityDispatcher, PasswordDecryptor keepassDecryptor, Logger logger)
+    {
+        this.securityDispatcher = securityDispatcher;
+        this.keepassDecryptor = keepassDecryptor;
+        enableLogging(logger);
+    }
+
+    @Override
+    public SettingsDecryptionResult decrypt(SettingsDecryptionRequest request)
+    {
+        Map<String, DecryptResult> keepassResults = resolveKeepassValues(request);
+
+        List<SettingsProblem> problems = new ArrayList<>();
+
+        List<Server> servers = new ArrayList<>();
+        for (Server server : request.getServers())
+        {
+            server = server.clone();
+
+            try
+            {
+                server.setPassword(decrypt(server.getPassword(), keepassResults));
+            }
+            catch (SecDispatcherException e)
+            {
+                problems.add(new DefaultSettingsProblem("Failed to decrypt password for server " + server.getId() + ": " + e.getMessage(),
+                                                        SettingsProblem.Severity.ERROR, "server: " + server.getId(), -1, -1, e));
+            }
+
+            try
+            {
+                server.setPassphrase(decrypt(server.getPassphrase(), keepassResults));
+            }
+            catch (SecDispatcherException e)
+            {
+                problems.add(new DefaultSettingsProblem("Failed to decrypt passphrase for server " + server.getId() + ": " + e.getMessage(),
+                                                        SettingsProblem.Severity.ERROR, "server: " + server.getId(), -1, -1, e));
+            }
+
+            servers.add(server);
+        }
+
+        List<Proxy> proxies = new ArrayList<>();
+        for (Proxy proxy : request.getProxies())
+        {
+            proxy = proxy.clone();
+
+            try
+            {
+                proxy.setPassword(decrypt(proxy.getPassword(), keepassResults));
+            }
+            catch (SecDispatcherException e)
+            {
+                problems.add(new DefaultSettingsProblem("Failed to decrypt password for proxy " + proxy.getId() + ": " + e.getMessage(),
+                                                        SettingsProblem.Severity.ERROR, "proxy: " + proxy.getId(), -1, -1, e));
+            }
+
+            proxies.add(proxy);
+        }
+
+        return new Result(servers, proxies, problems);
+    }
+
+    /**
+     * Starts prefetching values that previous builds of the project used, if prefetching is configured.  Maven decrypts settings before the
+     * build session starts, so starting here gives lookups for values that plugins request later a head start over the lifecycle
+     * participant, which would otherwise start prefetching only after settings have been decrypted.
+     *
+     * @see SessionCacheLifecycleParticipant
+     */
+    private void startPrefetchIfConfigured(Map<?, ?> config, KeepassExtensionSettings settings)
+    {
+        if (!settings.isPrefetch() || !(keepassDecryptor instanceof CachingKeepassXcPasswordDecryptor))
+            return;
+
+        String projectDirectory = System.getProperty(MULTI_MODULE_PROJECT_DIRECTORY_PROPERTY);
+        if (projectDirectory == null)
+            return;
+
+        ((CachingKeepassXcPasswordDecryptor)keepassDecryptor).prefetch(Path.of(projectDirectory), config, settings);
+    }
+
+    /**
+     * Decrypts a single value, using a pre-resolved result if there is one.
+     *
+     * @param str the value to decrypt, possibly null.
+     * @param keepassResults pre-resolved KeepassXC values.
+     *
+     * @return the decrypted value.
+     *
+     * @throws SecDispatcherException if an error occurs decrypting.
+     */
+    private String decrypt(String str, Map<String, DecryptResult> keepassResults)
+    throws SecDispatcherException
+    {
+        if (str == null)
+            return null;
+
+        DecryptResult result = keepassResults.get(str);
+        if (result != null)
+            return result.get();
+
+        return securityDispatcher.decrypt(str);
+    }
+
+    /**
+     * Resolves all KeepassXC-typed values in a request, grouped by URL, with groups resolved concurrently.
+     *
+     * @param request the decryption request.
+     *
+     * @return a map of raw settings value to decryption result.  Only contains KeepassXC-typed values.
+     */
+    private Map<String, DecryptResult> resolveKeepassValues(SettingsDecryptionRequest request)
+    {
+        Set<String> keepassValues = new LinkedHashSet<>();
+        for (Server server : request.getServers())
+        {
+            addIfKeepassValue(server.getPassword(), keepassValues);
+            addIfKeepassValue(server.getPassphrase(), keepassValues);
+        }
+        for (Proxy proxy : request.getProxies())
+        {
+            addIfKeepassValue(proxy.getPassword(), keepassValues);
+        }
+
+        if (keepassValues.isEmpty())
+            return Map.of();
+
+        //Only read settings-security.xml once there is something to look up, and only once for tracing, prefetching and lookups
+        Map<?, ?> config = new SettingsSecurityConfigReader(securityDispatcher, getLogger()).readKeepassConfig();
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(config, getLogger());
+        if (settings.getTraceFile() != null)
+            BuildTrace.start();
+        startPrefetchIfConfigured(config, settings);
+
+        Map<String, List<String>> valuesByUrl = new LinkedHashMap<>();
+        for (String keepassValue : keepassValues)
+        {
+            valuesByUrl.computeIfAbsent(CanonicalKeys.canonicalUrl(entryUrl(keepassValue)), k -> new ArrayList<>()).add(keepassValue);
+        }
+
+        Map<String, DecryptResult> results = new ConcurrentHashMap<>();
+
+        //Nothing to gain from using other threads for a single URL
+        if (valuesByUrl.size() <= 1)
+        {
+            valuesByUrl.values().forEach(group -> resolveGroup(group, config, results));
+            return results;
+        }
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = LookupExecutors.newBoundedExecutor(Math.min(valuesByUrl.size(), LookupExecutors.MAX_CONCURRENT_LOOKUPS), "keepassxc-settings-");
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>(valuesByUrl.size());
+            for (List<String> group : valuesByUrl.values())
+            {
+                futures.add(executor.submit(() -> resolveGroup(group, config, results)));
+            }
+            awaitAll(futures);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        getLogger().debug("Resolved " + keepassValues.size() + " KeepassXC settings value(s) for " + valuesByUrl.size() + " URL(s) in " +
+                          (System.nanoTime() - startTime) / 1_000_000L + " ms");
+
+        return results;
+    }
+
+    /**
+     * Decrypts a group of KeepassXC values sharing the same URL.  The whole group is decrypted with a single bulk decryption so that the
+     * URL is only looked up once.  If that fails, or the KeepassXC decryptor does not support bulk decryption, values are decrypted one after
+     * another.
+     */
+    private void resolveGroup(Collection<String> group, Map<?, ?> config, Map<String, DecryptResult> results)
+    {
+        try (BuildTrace.Span span = BuildTrace.span("settings", "Decrypt settings values").arg("values", group.size()))
+        {
+            if (keepassDecryptor instanceof AsyncPasswordDecryptor)
+            {
+                Map<String, DecryptRequest> requests = new LinkedHashMap<>();
+                for (String value : group)
+                {
+                    requests.put(value, new DecryptRequest(entryUrl(value), entryAttributes(value)));
+                }
+
+                try
+                {
+                    ((AsyncPasswordDecryptor)keepassDecryptor).decryptAll(requests, config)
+                                                              .forEach((value, decrypted) -> results.put(value, new DecryptResult(decrypted)));
+                    return;
+                }
+                catch (SecDispatcherException e)
+                {
+                    //Only the first failure is reported, so decrypt individually to find out which values failed and why
+                    getLogger().debug("Bulk decryption of " + group.size() + " KeepassXC settings value(s) failed, decrypting individually: " + e, e);
+                    span.arg("fallback", true);
+                }
+            }
+
+            for (String value : group)
+            {
+                try
+                {
+                    results.put(value, new DecryptResult(securityDispatcher.decrypt(value)));
+                }
+                catch (SecDispatcherException e)
+                {
+                    results.put(value, new DecryptResult(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for all futures to complete.  Failures are ignored here since any value that does not end up with a result will be decrypted
+     * again on the calling thread.
+     */
+    private void awaitAll(Collection<? extends Future<?>> futures)
+    {
+        for (Future<?> future : futures)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (ExecutionException e)
+            {
+                getLogger().debug("Error resolving KeepassXC settings values: " + e.getCause(), e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void addIfKeepassValue(String str, Collection<? super String> values)
+    {
+        if (isKeepassValue(str))
+            values.add(str);
+    }
+
+    /**
+     * Determines whether a settings value is a KeepassXC-typed encrypted value, such as {@code {[type=keepassxc]https://myserver.com}}.
+     * The value is parsed in the same way as the security dispatcher does to choose a decryptor.
+     *
+     * @param str the raw settings value.
+     *
+     * @return true if the value will be decrypted by the KeepassXC decryptor.
+     */
+    static boolean isKeepassValue(String str)
+    {
+        return KEEPASSXC_TYPE.equals(entryAttributes(str).get(DefaultSecDispatcher.TYPE_ATTR));
+    }
+
+    /**
+     * Extracts the entry URL from a KeepassXC-typed value, which is everything after the attributes in the same way as the security
+     * dispatcher passes it to a decryptor.
+     *
+     * @param str a value for which {@link #isKeepassValue(String)} returns true.
+     *
+     * @return the entry URL.
+     */
+    static String entryUrl(String str)
+    {
+        String undecorated = undecorate(str);
+        return undecorated.substring(undecorated.indexOf(DefaultSecDispatcher.ATTR_STOP) + 1);
+    }
+
+    /**
+     * Extracts the attributes from a settings value, splitting them the same way as the security dispatcher does.
+     *
+     * @param str the raw settings value, possibly null.
+     *
+     * @return the attributes, including the type attribute.  Empty if the value is not encrypted or has no attributes.
+     */
+    static Map<String, String> entryAttributes(String str)
+    {
+        String undecorated = undecorate(str);
+        if (undecorated == null)
+            return Map.of();
+
+        //The security dispatcher only reads attributes that start the value and are not empty
+        int start = undecorated.indexOf(DefaultSecDispatcher.ATTR_START);
+        int stop = undecorated.indexOf(DefaultSecDispatcher.ATTR_STOP);
+        if (start != 0 || stop <= start + 1)
+            return Map.of();
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        StringTokenizer tokenizer = new StringTokenizer(undecorated.substring(start + 1, stop).trim(), ", ");
+        while (tokenizer.hasMoreTokens())
+        {
+            String pair = tokenizer.nextToken();
+            int equalsIndex = pair.indexOf('=');
+            if (equalsIndex >= 0)
+                attributes.put(pair.substring(0, equalsIndex).trim(), pair.substring(equalsIndex + 1).trim());
+        }
+        return attributes;
+    }
+
+    /**
+     * Removes the decoration around an encrypted settings value.
+     *
+     * @param str the raw settings value, possibly null.
+     *
+     * @return the value without its decoration, or null if it is not an encrypted value.
+     */
+    private static String undecorate(String str)
+    {
+        if (!SETTINGS_CIPHER.isEncryptedString(str))
+            return null;
+
+        try
+        {
+            return SETTINGS_CIPHER.unDecorate(str);
+        }
+        catch (PlexusCipherException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Holds either a decrypted value or the failure that occurred decrypting it.
+     */
+    private static class DecryptResult
+    {
+        private final String value;
+        private final SecDispatcherException failure;
+
+        public DecryptResult(String value)
+        {
+            this.value = value;
+            this.failure = null;
+        }
+
+        public DecryptResult(SecDispatcherException failure)
+        {
+            this.value = null;
+            this.failure = failure;
+        }
+
+        public String get()
+        throws SecDispatcherException
+        {
+            if (failure != null)
+                throw failure;
+
+            return value;
+        }
+    }
+
+    /**
+     * Result of decryption.  Maven's default implementation is not public so we use our own.
+     */
+    private static class Result implements SettingsDecryptionResult
+    {
+        private final List<Server> servers;
+        private final List<Proxy> proxies;
+        private final List<SettingsProblem> problems;
+
+        public Result(List<Server> servers, List<Proxy> proxies, List<SettingsProblem> problems)
+        {
+            this.servers = servers;
+            this.proxies = proxies;
+            this.problems = problems;
+        }
+
+        @Override
+        public Server getServer()
+        {
+            return servers.isEmpty() ? null : servers.get(0);
+        }
+
+        @Override
+        public List<Server> getServers()
+        {
+            return servers;
+        }
+
+        @Override
+        public Proxy getProxy()
+        {
+            return proxies.isEmpty() ? null : proxies.get(0);
+        }
+
+        @Override
+        public List<Proxy> getProxies()
+        {
+            return proxies;
+        }
+
+        @Override
+        public List<SettingsProblem> getProblems()
+        {
+            return problems;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+import java.util.Map;
+
+/**
+ * When enabled with the 'repositoryAuthentication' configuration option, installs an authentication selector into the repository session
+ * so that remote repositories without a server entry in settings.xml can be authenticated with credentials from KeepassXC.  Only
+ * repositories listed in the 'repositoryAuthenticationUrls' configuration option are authenticated.
+ *
+ * @see KeepassAuthenticationSelector
+ */
+@Component(role = AbstractMavenLifecycleParticipant.class, hint = "keepassxc-repository-authentication")
+public class RepositoryAuthenticationLifecycleParticipant extends AbstractMavenLifecycleParticipant
+{
+    @Requirement
+    private Logger logger;
+
+    @Requirement(hint = "maven")
+    private SecDispatcher secDispatcher;
+
+    @Requirement(role = PasswordDecryptor.class, hint = "keepassxc")
+    private PasswordDecryptor decryptor;
+
+    @Override
+    public void afterSessionStart(MavenSession session)
+    {
+        Map<?, ?> config = new SettingsSecurityConfigReader(secDispatcher, logger).readKeepassConfig();
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(config, logger);
+
+        if (!settings.isRepositoryAuthentication())
+            return;
+
+        if (settings.getRepositoryAuthenticationUrls().isEmpty())
+        {
+            logger.warn("KeepassXC repository authentication is enabled but no repositoryAuthenticationUrls are configured - no repositories will be authenticated");
+            return;
+        }
+
+        if (!(decryptor instanceof CachingKeepassXcPasswordDecryptor))
+        {
+            logger.warn("KeepassXC repository authentication not available - unexpected decryptor " + decryptor.getClass().getName());
+            return;
+        }
+
+        RepositorySystemSession repositorySession = session.getRepositorySession();
+        if (!(repositorySession instanceof DefaultRepositorySystemSession))
+        {
+            logger.warn("KeepassXC repository authentication not available - cannot configure repository session");
+            return;
+        }
+
+        DefaultRepositorySystemSession defaultRepositorySession = (DefaultRepositorySystemSession)repositorySession;
+        try
+        {
+            defaultRepositorySession.setAuthenticationSelector(
+                    new KeepassAuthenticationSelector(defaultRepositorySession.getAuthenticationSelector(),
+                                                      (CachingKeepassXcPasswordDecryptor)decryptor, config,
+                                                      settings.getRepositoryAuthenticationUrls(), logger));
+            logger.debug("KeepassXC repository authentication enabled");
+        }
+        catch (IllegalStateException e)
+        {
+            //Session is read-only
+            logger.warn("KeepassXC repository authentication not available - repository session is read-only");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Scopes the KeepassXC decryptor's caches to Maven build sessions.  This matters when multiple builds run in the same JVM, such as with
+ * the Maven daemon, where the decryptor outlives individual builds.  Also starts prefetching values that previous builds of the same
+ * project used, if settings decryption has not already started it.
+ *
+ * @see CacheScope
+ */
+@Component(role = AbstractMavenLifecycleParticipant.class, hint = "keepassxc-session-cache")
+public class SessionCacheLifecycleParticipant extends AbstractMavenLifecycleParticipant
+{
+    @Requirement
+    private Logger logger;
+
+    @Requirement(hint = "maven")
+    private SecDispatcher secDispatcher;
+
+    @Requirement(role = PasswordDecryptor.class, hint = "keepassxc")
+    private PasswordDecryptor decryptor;
+
+    @Override
+    public void afterSessionStart(MavenSession session)
+    {
+        if (!(decryptor instanceof CachingKeepassXcPasswordDecryptor))
+            return;
+
+        CachingKeepassXcPasswordDecryptor keepassDecryptor = (CachingKeepassXcPasswordDecryptor)decryptor;
+        Map<?, ?> config = new SettingsSecurityConfigReader(secDispatcher, logger).readKeepassConfig();
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(config, logger);
+
+        keepassDecryptor.sessionStarted(settings);
+
+        if (settings.isPrefetch())
+        {
+            Path projectDirectory = projectDirectory(session);
+            if (projectDirectory != null)
+                keepassDecryptor.prefetch(projectDirectory, config, settings);
+        }
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session)
+    {
+        if (decryptor instanceof CachingKeepassXcPasswordDecryptor)
+            ((CachingKeepassXcPasswordDecryptor)decryptor).sessionEnded(readSettings());
+    }
+
+    /**
+     * @return the top-level directory of the project being built, or null if it cannot be determined.
+     */
+    private static Path projectDirectory(MavenSession session)
+    {
+        File projectDirectory = session.getRequest().getMultiModuleProjectDirectory();
+        if (projectDirectory != null)
+            return projectDirectory.toPath();
+
+        String baseDirectory = session.getRequest().getBaseDirectory();
+        if (baseDirectory != null)
+            return Path.of(baseDirectory);
+
+        return null;
+    }
+
+    private KeepassExtensionSettings readSettings()
+    {
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(new SettingsSecurityConfigReader(secDispatcher, logger).readKeepassConfig(), logger);
+        return settings;
+    }
+}
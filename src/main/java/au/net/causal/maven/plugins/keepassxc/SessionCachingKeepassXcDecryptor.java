@@ -0,0 +1,193 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import com.google.common.cache.CacheStats;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KeepassXC password decryptor that caches passwords read from KeepassXC to avoid rereading, with caches scoped to Maven build sessions.
+ * <p>
+ *
+ * This holds the Guava caches, backends and KeepassXC connections, so it is only created by {@link CachingKeepassXcPasswordDecryptor}
+ * when the first KeepassXC value is decrypted.
+ */
+public class SessionCachingKeepassXcDecryptor extends CachingPasswordDecryptor implements AsyncPasswordDecryptor
+{
+    /**
+     * Passwords not accessed for this amount of time are expired when the cache is scoped to a single build.
+     */
+    private static final Duration BUILD_CACHE_EXPIRE_TIME = Duration.ofMinutes(1L);
+
+    private final KeepassXcPasswordDecryptor keepassDecryptor;
+
+    /**
+     * Cache statistics at the start of the current build, used for reporting statistics for a single build.
+     */
+    private volatile CacheStats buildStartStats = new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+    private volatile long buildStartDedupedCount;
+
+    public SessionCachingKeepassXcDecryptor()
+    {
+        this(new KeepassXcPasswordDecryptor());
+    }
+
+    private SessionCachingKeepassXcDecryptor(KeepassXcPasswordDecryptor keepassDecryptor)
+    {
+        super(keepassDecryptor, BUILD_CACHE_EXPIRE_TIME);
+        this.keepassDecryptor = keepassDecryptor;
+    }
+
+    /**
+     * Called when a Maven build session starts.  Applies the configured cache scope and discards anything cached from a previous build
+     * that can no longer be trusted.
+     *
+     * @param settings extension settings read from settings-security.xml.
+     */
+    public void sessionStarted(KeepassExtensionSettings settings)
+    {
+        if (settings.getCacheScope() == CacheScope.DAEMON)
+            setCacheExpiry(null, settings.getCacheTimeToLive());
+        else
+            setCacheExpiry(BUILD_CACHE_EXPIRE_TIME, null);
+
+        //If any connection from a previous build became unusable the user may have locked their database, so don't keep serving its passwords
+        if (!keepassDecryptor.revalidateConnections())
+        {
+            getLogger().debug("KeepassXC connection from previous build no longer usable, discarding cached passwords");
+            invalidateAll();
+        }
+
+        buildStartStats = cacheStats();
+        buildStartDedupedCount = dedupedRequestCount();
+    }
+
+    /**
+     * Called when a Maven build session ends.  Reports cache statistics for the build and, when the cache is scoped to a single build,
+     * discards cached passwords and closes KeepassXC connections.
+     *
+     * @param settings extension settings read from settings-security.xml.
+     */
+    public void sessionEnded(KeepassExtensionSettings settings)
+    {
+        CacheStats buildStats = cacheStats().minus(buildStartStats);
+        long buildDedupedCount = dedupedRequestCount() - buildStartDedupedCount;
+        if (buildStats.requestCount() > 0L)
+        {
+            getLogger().debug("KeepassXC password cache for this build: " + buildStats.requestCount() + " request(s), " + buildStats.hitCount() +
+                              " hit(s), hit rate " + Math.round(buildStats.hitRate() * 100.0) + "%, " + buildDedupedCount +
+                              " deduplicated by URL normalization, dedupe rate " +
+                              Math.round(dedupeRate(buildDedupedCount, buildStats.requestCount()) * 100.0) + "%");
+        }
+
+        if (settings.getCacheScope() == CacheScope.BUILD)
+        {
+            invalidateAll();
+            keepassDecryptor.closeConnections();
+        }
+        else
+            keepassDecryptor.sessionEnded();
+    }
+
+    /**
+     * Reads values in the background so that they are already cached when they are requested.
+     *
+     * @param requests the values to read.
+     * @param config configuration from settings-security.xml for the decryptor.
+     */
+    public void prefetch(List<DecryptRequest> requests, Map<?, ?> config)
+    {
+        getLogger().debug("Prefetching " + requests.size() + " KeepassXC value(s) used by previous builds");
+        for (DecryptRequest request : requests)
+        {
+            decryptAsync(request.getStr(), request.getAttributes(), config).whenComplete((value, ex) ->
+            {
+                if (ex != null)
+                    getLogger().debug("Failed to prefetch KeepassXC value for " + request.getStr() + ": " + ex, ex);
+            });
+        }
+    }
+
+    /**
+     * Unless exact URL matching is configured, canonicalizes the entry URL and attributes so that equivalent entries share a cache slot
+     * and a single KeepassXC lookup.
+     *
+     * @see CanonicalKeys
+     */
+    @Override
+    protected DecryptKey createKey(String str, Map<?, ?> attributes, Map<?, ?> config)
+    {
+        Map<String, String> canonicalConfig = CanonicalKeys.canonicalMap(config);
+
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(canonicalConfig, getLogger());
+        if (settings.isExactUrlMatching())
+            return new DecryptKey(str, attributes, canonicalConfig);
+
+        return new DecryptKey(CanonicalKeys.canonicalUrl(str), CanonicalKeys.canonicalMap(attributes), canonicalConfig);
+    }
+
+    /**
+     * Decrypts multiple values at once.  Values already in the cache are served from it, the remaining values are grouped by canonical URL
+     * and read from KeepassXC in a single pass, and results are added to the cache.
+     *
+     * @see KeepassXcPasswordDecryptor#decryptAll(Map, Map)
+     */
+    @Override
+    public <K> Map<K, String> decryptAll(Map<K, DecryptRequest> requests, Map<?, ?> config)
+    throws SecDispatcherException
+    {
+        Map<K, String> results = new LinkedHashMap<>();
+        Map<K, DecryptKey> missedKeys = new LinkedHashMap<>();
+        Map<K, DecryptRequest> missedRequests = new LinkedHashMap<>();
+        for (Map.Entry<K, DecryptRequest> requestEntry : requests.entrySet())
+        {
+            DecryptRequest request = requestEntry.getValue();
+            DecryptKey key = createCountedKey(request.getStr(), request.getAttributes(), config);
+            String cachedPassword = getCachedPassword(key);
+            if (cachedPassword != null)
+                results.put(requestEntry.getKey(), cachedPassword);
+            else
+            {
+                missedKeys.put(requestEntry.getKey(), key);
+                missedRequests.put(requestEntry.getKey(), new DecryptRequest(key.getStr(), key.getAttributes()));
+            }
+        }
+
+        if (!missedRequests.isEmpty())
+        {
+            Map<K, String> readPasswords = keepassDecryptor.decryptAll(missedRequests, config);
+            readPasswords.forEach((requestKey, password) -> putCachedPassword(missedKeys.get(requestKey), password));
+            results.putAll(readPasswords);
+        }
+
+        //Preserve request order
+        Map<K, String> orderedResults = new LinkedHashMap<>();
+        for (K requestKey : requests.keySet())
+        {
+            orderedResults.put(requestKey, results.get(requestKey));
+        }
+        return orderedResults;
+    }
+
+    /**
+     * Reads all entries from KeepassXC that match a URL, sharing connections with the decryptor.  Results are not cached.
+     *
+     * @param url the URL to look up entries for.
+     * @param config configuration from settings-security.xml for the decryptor.  Might be null or empty.
+     *
+     * @return matching entries, possibly empty.
+     *
+     * @throws SecDispatcherException if KeepassXC could not be accessed or an error occurs reading entries.
+     *
+     * @see KeepassXcPasswordDecryptor#readEntries(String, Map)
+     */
+    public List<KeepassEntry> readEntries(String url, Map<?, ?> config)
+    throws SecDispatcherException
+    {
+        return keepassDecryptor.readEntries(url, config);
+    }
+}
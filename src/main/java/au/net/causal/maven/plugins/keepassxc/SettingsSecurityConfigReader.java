@@ -0,0 +1,91 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+import org.sonatype.plexus.components.sec.dispatcher.SecUtil;
+import org.sonatype.plexus.components.sec.dispatcher.model.SettingsSecurity;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads the KeepassXC decryptor configuration from settings-security.xml for components that are not called through the security dispatcher
+ * and so are not passed the configuration directly.
+ * <p>
+ *
+ * The file is located the same way the security dispatcher locates it, so the configuration read will be the same as what the
+ * decryptor receives.
+ */
+public class SettingsSecurityConfigReader
+{
+    /**
+     * Name of the configuration section in settings-security.xml for this extension, also the type of the decryptor.
+     */
+    static final String KEEPASSXC_CONFIG_NAME = "keepassxc";
+
+    private final SecDispatcher secDispatcher;
+    private final Logger log;
+
+    /**
+     * Creates a config reader.
+     *
+     * @param secDispatcher Maven's security dispatcher, used to find the location of settings-security.xml.
+     * @param log logger.
+     */
+    public SettingsSecurityConfigReader(SecDispatcher secDispatcher, Logger log)
+    {
+        this.secDispatcher = Objects.requireNonNull(secDispatcher);
+        this.log = Objects.requireNonNull(log);
+    }
+
+    /**
+     * Reads the KeepassXC configuration.
+     *
+     * @return the configuration map, which is empty if there is no KeepassXC configuration or settings-security.xml could not be read.
+     */
+    public Map<?, ?> readKeepassConfig()
+    {
+        String location = settingsSecurityLocation();
+        if (location == null)
+            return Map.of();
+
+        try
+        {
+            SettingsSecurity sec = SecUtil.read(location, true);
+            if (sec == null)
+                return Map.of();
+
+            Map<?, ?> config = SecUtil.getConfig(sec, KEEPASSXC_CONFIG_NAME);
+            if (config == null)
+                return Map.of();
+
+            return Map.copyOf(config);
+        }
+        catch (SecDispatcherException e)
+        {
+            log.debug("Could not read KeepassXC configuration from " + location + ": " + e, e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * @return the location of settings-security.xml, or null if it could not be determined.
+     */
+    private String settingsSecurityLocation()
+    {
+        String configurationFile = null;
+        if (secDispatcher instanceof DefaultSecDispatcher)
+            configurationFile = ((DefaultSecDispatcher)secDispatcher).getConfigurationFile();
+
+        String location = System.getProperty(DefaultSecDispatcher.SYSTEM_PROPERTY_SEC_LOCATION, configurationFile);
+        if (location == null || location.isEmpty())
+            return null;
+
+        if (location.charAt(0) == '~')
+            location = System.getProperty("user.home") + location.substring(1);
+
+        return location;
+    }
+}
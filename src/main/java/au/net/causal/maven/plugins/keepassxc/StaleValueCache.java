@@ -0,0 +1,410 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the last successfully read value of each entry in a file, for the {@link FailMode#STALE_VALUE} fail mode.
+ * <p>
+ *
+ * Values are protected by the cache file only being readable by its owner, where the file system supports it.  Values are also encrypted
+ * with AES-GCM, but the randomly generated key is stored in a file next to the cache file with the same permissions, so this only keeps
+ * values out of plain sight, such as when searching files for a password, and detects modified or truncated files.  It is no protection
+ * against anyone who can read both files.
+ * <p>
+ *
+ * Multiple builds may share the cache file.  Saving merges with values saved by other builds while holding a lock on the file, keeping the
+ * most recently read value of each entry.
+ */
+public class StaleValueCache
+{
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int KEY_BITS = 256;
+
+    /**
+     * How many times to read a key file that is shorter than a key, which happens when another build has created it but not written it yet.
+     */
+    private static final int KEY_READ_ATTEMPTS = 50;
+
+    /**
+     * Locks held by caches in this JVM, keyed by lock file.  File locks are held by the whole JVM, so caches in the same JVM also need to
+     * exclude each other themselves.
+     */
+    private static final Map<Path, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path cacheFile;
+    private final Path keyFile;
+    private final Path lockFile;
+    private final Logger log;
+
+    private Map<String, StaleValue> values;
+
+    /**
+     * Creates a stale value cache.
+     *
+     * @param cacheFile the file holding encrypted values.  The key is stored in a file with the same name and a '.key' suffix, and a file
+     *                  with a '.lock' suffix is used for locking while saving.
+     * @param log logger.
+     */
+    public StaleValueCache(Path cacheFile, Logger log)
+    {
+        this.cacheFile = Objects.requireNonNull(cacheFile);
+        this.keyFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".key");
+        this.lockFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".lock");
+        this.log = Objects.requireNonNull(log);
+    }
+
+    /**
+     * Creates the key that values are stored with.
+     *
+     * @param str the entry URL or name.
+     * @param attributes the decrypter entry attributes.
+     *
+     * @return a key that is the same for equivalent requests.
+     */
+    public static String key(String str, Map<?, ?> attributes)
+    {
+        Map<String, String> sortedAttributes = new TreeMap<>();
+        if (attributes != null)
+            attributes.forEach((k, v) -> sortedAttributes.put(String.valueOf(k), String.valueOf(v)));
+
+        return str + sortedAttributes;
+    }
+
+    /**
+     * Stores the latest value read for a key.
+     *
+     * @param key the key, from {@link #key(String, Map)}.
+     * @param value the value that was read.
+     */
+    public synchronized void put(String key, String value)
+    {
+        Map<String, StaleValue> values = values();
+        StaleValue existing = values.get(key);
+        values.put(key, new StaleValue(value, Instant.now()));
+
+        //Avoid rewriting the file just to move a timestamp forward by a few seconds
+        if (existing != null && existing.getValue().equals(value) && existing.getReadTime().plusSeconds(60L).isAfter(Instant.now()))
+            return;
+
+        try
+        {
+            this.values = saveMerged(values);
+        }
+        catch (IOException | GeneralSecurityException e)
+        {
+            log.warn("Failed to save KeepassXC stale value cache " + cacheFile + ": " + e, e);
+        }
+    }
+
+    /**
+     * Reads the last value stored for a key.
+     *
+     * @param key the key, from {@link #key(String, Map)}.
+     *
+     * @return the stored value, or null if there is none.
+     */
+    public synchronized StaleValue get(String key)
+    {
+        return values().get(key);
+    }
+
+    private Map<String, StaleValue> values()
+    {
+        if (values == null)
+        {
+            try
+            {
+                values = load();
+            }
+            catch (IOException | GeneralSecurityException | RuntimeException e)
+            {
+                log.warn("Failed to read KeepassXC stale value cache " + cacheFile + ", starting a new one: " + e, e);
+                values = new LinkedHashMap<>();
+            }
+        }
+
+        return values;
+    }
+
+    private Map<String, StaleValue> load()
+    throws IOException, GeneralSecurityException
+    {
+        Map<String, StaleValue> values = new LinkedHashMap<>();
+        if (Files.notExists(cacheFile) || Files.notExists(keyFile))
+            return values;
+
+        byte[] encrypted = Files.readAllBytes(cacheFile);
+        if (encrypted.length < GCM_IV_LENGTH)
+            throw new IOException("Cache file is truncated");
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, readKey(), new GCMParameterSpec(GCM_TAG_BITS, encrypted, 0, GCM_IV_LENGTH));
+        byte[] plain;
+        try
+        {
+            plain = cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
+        }
+        catch (AEADBadTagException e)
+        {
+            throw new IOException("Cache file was modified or the key does not match", e);
+        }
+
+        for (String line : new String(plain, StandardCharsets.UTF_8).split("\n"))
+        {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3)
+                continue;
+
+            values.put(decode(fields[1]), new StaleValue(decode(fields[2]), Instant.ofEpochMilli(Long.parseLong(fields[0]))));
+        }
+
+        return values;
+    }
+
+    /**
+     * Saves values, merged with any saved by other builds since they were loaded, while holding a lock on the cache file.  The most recently
+     * read value of each entry is kept.
+     *
+     * @return the merged values that were saved.
+     */
+    private Map<String, StaleValue> saveMerged(Map<String, StaleValue> values)
+    throws IOException, GeneralSecurityException
+    {
+        Files.createDirectories(lockFile.toAbsolutePath().getParent());
+        synchronized (JVM_LOCKS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), f -> new Object()))
+        {
+            try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = lockChannel.lock())
+            {
+                Map<String, StaleValue> merged = loadForMerging();
+                values.forEach((key, value) -> merged.merge(key, value, (saved, ours) -> saved.getReadTime().isAfter(ours.getReadTime()) ? saved : ours));
+                save(merged);
+                return merged;
+            }
+        }
+    }
+
+    private Map<String, StaleValue> loadForMerging()
+    {
+        try
+        {
+            return load();
+        }
+        catch (IOException | GeneralSecurityException | RuntimeException e)
+        {
+            log.debug("Failed to read KeepassXC stale value cache " + cacheFile + " for merging, overwriting it: " + e, e);
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private void save(Map<String, StaleValue> values)
+    throws IOException, GeneralSecurityException
+    {
+        StringBuilder buf = new StringBuilder();
+        values.forEach((key, value) -> buf.append(value.getReadTime().toEpochMilli()).append('\t')
+                                          .append(encode(key)).append('\t')
+                                          .append(encode(value.getValue())).append('\n'));
+
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, readOrCreateKey(), new GCMParameterSpec(GCM_TAG_BITS, iv));
+        byte[] encrypted = cipher.doFinal(buf.toString().getBytes(StandardCharsets.UTF_8));
+
+        writePrivateFile(cipherFileContents(iv, encrypted), cacheFile);
+    }
+
+    private static byte[] cipherFileContents(byte[] iv, byte[] encrypted)
+    {
+        return ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+    }
+
+    private SecretKey readKey()
+    throws IOException
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            byte[] key = Files.readAllBytes(keyFile);
+            if (key.length == KEY_BITS / 8)
+                return new SecretKeySpec(key, "AES");
+            if (attempt >= KEY_READ_ATTEMPTS)
+                throw new IOException("Key file " + keyFile + " is incomplete");
+
+            try
+            {
+                Thread.sleep(10L);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for key file " + keyFile + " to be written");
+            }
+        }
+    }
+
+    private SecretKey readOrCreateKey()
+    throws IOException, GeneralSecurityException
+    {
+        if (Files.exists(keyFile))
+            return readKey();
+
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(KEY_BITS);
+        SecretKey key = generator.generateKey();
+        try
+        {
+            createPrivateFile(key.getEncoded(), keyFile);
+            return key;
+        }
+        catch (FileAlreadyExistsException e)
+        {
+            //Another build created the key first, use theirs so that values either build saves can be read
+            return readKey();
+        }
+    }
+
+    /**
+     * Creates a new file that, where the file system supports it, only the owner can read.
+     *
+     * @throws FileAlreadyExistsException if the file already exists.
+     */
+    private void createPrivateFile(byte[] contents, Path file)
+    throws IOException
+    {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (SeekableByteChannel channel = newPrivateFileChannel(file))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        catch (FileAlreadyExistsException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            //Don't leave a partial file behind that would stop the file being created again
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private SeekableByteChannel newPrivateFileChannel(Path file)
+    throws IOException
+    {
+        Set<StandardOpenOption> options = Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try
+        {
+            return Files.newByteChannel(file, options,
+                                        PosixFilePermissions.asFileAttribute(Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        }
+        catch (UnsupportedOperationException e)
+        {
+            log.debug("Failed to set POSIX permissions on " + file + ": " + e, e);
+
+            //Posix attributes may not be supported on this file system, fall back to not trying to set permissions
+            return Files.newByteChannel(file, options);
+        }
+    }
+
+    /**
+     * Atomically writes a file that, where the file system supports it, only the owner can read.
+     */
+    private void writePrivateFile(byte[] contents, Path file)
+    throws IOException
+    {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmpPath;
+        try
+        {
+            tmpPath = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp",
+                                           PosixFilePermissions.asFileAttribute(Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            log.debug("Failed to set POSIX permissions on " + file + ": " + e, e);
+
+            //Posix attributes may not be supported on this file system, fall back to not trying to set permissions
+            tmpPath = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        }
+        Files.write(tmpPath, contents);
+        Files.move(tmpPath, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String encode(String s)
+    {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String s)
+    {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A value that was read successfully at some point.
+     */
+    public static class StaleValue
+    {
+        private final String value;
+        private final Instant readTime;
+
+        public StaleValue(String value, Instant readTime)
+        {
+            this.value = Objects.requireNonNull(value);
+            this.readTime = Objects.requireNonNull(readTime);
+        }
+
+        /**
+         * @return the value.
+         */
+        public String getValue()
+        {
+            return value;
+        }
+
+        /**
+         * @return when the value was read.
+         */
+        public Instant getReadTime()
+        {
+            return readTime;
+        }
+    }
+}
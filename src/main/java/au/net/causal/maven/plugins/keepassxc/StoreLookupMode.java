@@ -0,0 +1,18 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+/**
+ * Determines how entries are combined when multiple credentials stores, and therefore multiple KeepassXC associations, are configured.
+ * All stores are always queried concurrently.
+ */
+public enum StoreLookupMode
+{
+    /**
+     * Entries from the first store, in configured order, that has any matching entries are used.  Entries from other stores are ignored.
+     */
+    FIRST,
+
+    /**
+     * Entries from all stores are combined, with entries from earlier stores taking precedence over those from later stores.
+     */
+    MERGE
+}
@@ -0,0 +1,15 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+/**
+ * Thrown by a {@linkplain SecretBackend secret backend} when it cannot be used at all, such as when KeepassXC could not be connected to, and
+ * the user has already been told why.  Callers should not log these failures again at a high level.
+ */
+public class BackendUnavailableException extends SecDispatcherException
+{
+    public BackendUnavailableException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,80 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps another secret backend, caching its entries by URL for a certain amount of time.  Since backends return all entries for a URL
+ * regardless of filters, queries for the same URL with different filters or selected fields share a single lookup.  Failures are not cached.
+ */
+public class CachingSecretBackend implements SecretBackend
+{
+    private final SecretBackend backend;
+    private final Cache<String, List<KeepassEntry>> entryCache;
+
+    /**
+     * Creates a caching backend.
+     *
+     * @param backend the backend to read entries from.
+     * @param cacheExpireTime amount of time to keep entries after they are read.
+     */
+    public CachingSecretBackend(SecretBackend backend, Duration cacheExpireTime)
+    {
+        this.backend = Objects.requireNonNull(backend);
+        this.entryCache = CacheBuilder.newBuilder()
+                                      .expireAfterWrite(cacheExpireTime.toMillis(), TimeUnit.MILLISECONDS)
+                                      .build();
+    }
+
+    @Override
+    public List<KeepassEntry> findEntries(SecretQuery query)
+    throws SecDispatcherException
+    {
+        try
+        {
+            return entryCache.get(query.getUrl(), () -> List.copyOf(backend.findEntries(SecretQuery.forUrl(query.getUrl()))));
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof SecDispatcherException)
+                throw (SecDispatcherException)e.getCause();
+            else if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            else if (e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            else
+                throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean revalidate()
+    {
+        boolean allUsable = backend.revalidate();
+        if (!allUsable)
+            entryCache.invalidateAll();
+
+        return allUsable;
+    }
+
+    @Override
+    public void sessionEnded()
+    {
+        backend.sessionEnded();
+    }
+
+    @Override
+    public void close()
+    {
+        entryCache.invalidateAll();
+        backend.close();
+    }
+}
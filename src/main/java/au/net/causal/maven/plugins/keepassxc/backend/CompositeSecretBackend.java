@@ -0,0 +1,108 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A secret backend that reads from a number of other backends in order.  The entries from the first backend that has any matching a query's
+ * filters are used.  If a backend fails or has no matching entries, the next one is tried.
+ */
+public class CompositeSecretBackend implements SecretBackend
+{
+    private final List<? extends SecretBackend> backends;
+    private final Logger log;
+
+    /**
+     * Creates a composite backend.
+     *
+     * @param backends the backends to read from, in order of precedence.  Must not be empty.
+     * @param log logger.
+     */
+    public CompositeSecretBackend(List<? extends SecretBackend> backends, Logger log)
+    {
+        if (backends.isEmpty())
+            throw new IllegalArgumentException("At least one backend is required");
+
+        this.backends = List.copyOf(backends);
+        this.log = Objects.requireNonNull(log);
+    }
+
+    /**
+     * Finds entries from the first backend that has any matching the query's filters.
+     *
+     * @param query the query.
+     *
+     * @return entries from the first backend that has any matching the query's filters.  If no backend had matching entries and none
+     *         failed, the entries of the first backend that had any, or an empty list.
+     *
+     * @throws SecDispatcherException the failure of the first backend that failed, if no backend had matching entries.
+     */
+    @Override
+    public List<KeepassEntry> findEntries(SecretQuery query)
+    throws SecDispatcherException
+    {
+        SecDispatcherException firstFailure = null;
+        List<KeepassEntry> firstUnmatchedEntries = List.of();
+        for (SecretBackend backend : backends)
+        {
+            try
+            {
+                List<KeepassEntry> entries = backend.findEntries(query);
+                if (entries.stream().anyMatch(query::matches))
+                    return entries;
+
+                if (!entries.isEmpty())
+                {
+                    log.debug("No entries matching " + query.getFilters() + " in backend " + backend.getClass().getSimpleName() + " for " + query.getUrl());
+                    if (firstUnmatchedEntries.isEmpty())
+                        firstUnmatchedEntries = entries;
+                }
+            }
+            catch (SecDispatcherException e)
+            {
+                log.debug("Falling back from backend " + backend.getClass().getSimpleName() + " for " + query.getUrl() + ": " + e.getMessage(), e);
+                if (firstFailure == null)
+                    firstFailure = e;
+            }
+        }
+
+        if (firstFailure != null)
+            throw firstFailure;
+
+        return firstUnmatchedEntries;
+    }
+
+    @Override
+    public boolean revalidate()
+    {
+        boolean allUsable = true;
+        for (SecretBackend backend : backends)
+        {
+            //Revalidate every backend, even after one has already been found to be unusable
+            allUsable &= backend.revalidate();
+        }
+        return allUsable;
+    }
+
+    @Override
+    public void sessionEnded()
+    {
+        for (SecretBackend backend : backends)
+        {
+            backend.sessionEnded();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (SecretBackend backend : backends)
+        {
+            backend.close();
+        }
+    }
+}
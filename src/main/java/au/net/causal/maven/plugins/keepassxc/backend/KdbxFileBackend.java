@@ -0,0 +1,328 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import au.net.causal.maven.plugins.keepassxc.KeepassExtensionSettings;
+import au.net.causal.maven.plugins.keepassxc.kdbx.KdbxIndex;
+import au.net.causal.maven.plugins.keepassxc.kdbx.KdbxReader;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A secret backend that reads entries directly from a KDBX database file, for use where KeepassXC is not available.
+ * <p>
+ *
+ * The database is decrypted once and held as an in-memory {@linkplain KdbxIndex index}.  It is read again only if the file changes.
+ * Indexes are shared by all backends in the JVM, so a backend created for a new build session, as happens with a cache scope of
+ * {@linkplain au.net.causal.maven.plugins.keepassxc.CacheScope#BUILD BUILD}, reuses the index read by an earlier one.
+ */
+public class KdbxFileBackend implements SecretBackend
+{
+    /**
+     * Indexes shared by all backends in the JVM, keyed by the database file, its modification time and where its password comes from.
+     * Only successfully read databases are shared so that failures are always retried by a new backend.
+     */
+    private static final Cache<KdbxSource, KdbxIndex> SHARED_KDBX_INDEX_CACHE = CacheBuilder.newBuilder().maximumSize(4L).build();
+
+    private final KeepassExtensionSettings settings;
+    private final Path baseDirectory;
+    private final Logger log;
+    private final Clock clock = Clock.systemUTC();
+
+    /**
+     * Indexes of the KDBX database file.  Failures are cached as well so a wrong password does not cause the database to be decrypted again
+     * for every lookup.
+     */
+    private final Cache<KdbxSource, KdbxIndexOrFailure> kdbxIndexCache = CacheBuilder.newBuilder().maximumSize(1L).build();
+
+    /**
+     * Creates the backend.
+     *
+     * @param settings settings with the KDBX file and where to read its password from.
+     * @param baseDirectory directory that relative KDBX file and password file paths are resolved against.
+     * @param log logger.
+     */
+    public KdbxFileBackend(KeepassExtensionSettings settings, Path baseDirectory, Logger log)
+    {
+        this.settings = Objects.requireNonNull(settings);
+        this.baseDirectory = Objects.requireNonNull(baseDirectory);
+        this.log = Objects.requireNonNull(log);
+
+        if (settings.getKdbxFile() == null)
+            throw new IllegalArgumentException("No KDBX file configured");
+    }
+
+    @Override
+    public List<KeepassEntry> findEntries(SecretQuery query)
+    throws SecDispatcherException
+    {
+        log.debug("Need to read entry '" + query.getUrl() + "' from KDBX file " + settings.getKdbxFile());
+        return cachedKdbxIndex().lookup(query.getUrl());
+    }
+
+    /**
+     * Forgets previous failures reading the database so they are retried, and discards the index if the database file has changed since it
+     * was read.
+     *
+     * @return false if the database file has changed since it was read.
+     */
+    @Override
+    public boolean revalidate()
+    {
+        kdbxIndexCache.asMap().values().removeIf(KdbxIndexOrFailure::isFailure);
+        if (kdbxIndexCache.size() == 0L)
+            return true;
+
+        KdbxSource current = null;
+        try
+        {
+            current = currentSource();
+            if (kdbxIndexCache.getIfPresent(current) != null)
+                return true;
+        }
+        catch (SecDispatcherException e)
+        {
+            //File can no longer be read, fall through to discard
+            log.debug("KDBX file can no longer be read: " + e.getMessage(), e);
+        }
+
+        kdbxIndexCache.invalidateAll();
+
+        //Other backends would discard their shared indexes of the old file too, so no need to keep them
+        Path kdbxFile = resolve(settings.getKdbxFile());
+        KdbxSource keep = current;
+        SHARED_KDBX_INDEX_CACHE.asMap().keySet().removeIf(source -> source.file.equals(kdbxFile) && !source.equals(keep));
+        return false;
+    }
+
+    /**
+     * Discards this backend's reference to the index.  The index stays in the JVM-wide cache for other backends reading the same file.
+     */
+    @Override
+    public void close()
+    {
+        kdbxIndexCache.invalidateAll();
+    }
+
+    /**
+     * Gets the index of the configured KDBX database file, reading and decrypting the database if it has not been read before or has changed
+     * since it was last read.
+     *
+     * @return the index.
+     *
+     * @throws SecDispatcherException if the database could not be read, possibly from a previous cached attempt.
+     */
+    private KdbxIndex cachedKdbxIndex()
+    throws SecDispatcherException
+    {
+        KdbxSource source = currentSource();
+        try
+        {
+            return kdbxIndexCache.get(source, () -> loadKdbxIndex(source)).get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            else if (e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            else
+                throw new RuntimeException(e);
+        }
+    }
+
+    private Path resolve(Path configuredFile)
+    {
+        //May be absolute, but if relative resolve from the base directory
+        return baseDirectory.resolve(configuredFile).toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return the KDBX file with its current modification time and size, and where its password is read from.
+     *
+     * @throws SecDispatcherException if the file cannot be read.
+     */
+    private KdbxSource currentSource()
+    throws SecDispatcherException
+    {
+        Path kdbxFile = resolve(settings.getKdbxFile());
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(kdbxFile, BasicFileAttributes.class);
+            return new KdbxSource(kdbxFile, attributes.lastModifiedTime().toMillis(), attributes.size(), passwordSource());
+        }
+        catch (IOException e)
+        {
+            throw new SecDispatcherException("Error reading KDBX file " + kdbxFile + ": " + e, e);
+        }
+    }
+
+    /**
+     * Describes where the password for the KDBX database is read from.  A password file's modification time is included so that a changed
+     * password is picked up.
+     */
+    private String passwordSource()
+    {
+        if (settings.getKdbxPasswordFile() != null)
+        {
+            Path passwordFile = resolve(settings.getKdbxPasswordFile());
+            long lastModified;
+            try
+            {
+                lastModified = Files.getLastModifiedTime(passwordFile).toMillis();
+            }
+            catch (IOException e)
+            {
+                //Reading the password will fail and report the problem
+                lastModified = -1L;
+            }
+            return "file:" + passwordFile + "@" + lastModified;
+        }
+
+        if (settings.getKdbxPasswordEnvironmentVariable() != null)
+            return "env:" + settings.getKdbxPasswordEnvironmentVariable();
+
+        return "none";
+    }
+
+    private KdbxIndexOrFailure loadKdbxIndex(KdbxSource source)
+    {
+        try
+        {
+            return new KdbxIndexOrFailure(SHARED_KDBX_INDEX_CACHE.get(source, () -> readKdbxIndex(source)));
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                return new KdbxIndexOrFailure(new SecDispatcherException("Error reading KDBX file " + source.file + ": " + e.getCause().getMessage(), e.getCause()));
+            else if (e.getCause() instanceof SecDispatcherException)
+                return new KdbxIndexOrFailure((SecDispatcherException)e.getCause());
+            else
+                throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private KdbxIndex readKdbxIndex(KdbxSource source)
+    throws IOException, SecDispatcherException
+    {
+        Instant startTime = Instant.now(clock);
+        KdbxIndex index = new KdbxIndex(KdbxReader.read(source.file, readKdbxPassword()));
+        log.debug("Read " + index.size() + " entries from KDBX file " + source.file + " in " +
+                          Duration.between(startTime, Instant.now(clock)).toMillis() + " ms");
+        return index;
+    }
+
+    /**
+     * Reads the password for the KDBX database from a file, or failing that an environment variable.
+     */
+    private String readKdbxPassword()
+    throws IOException, SecDispatcherException
+    {
+        if (settings.getKdbxPasswordFile() != null)
+        {
+            //Strip line endings, which editors commonly add to the end of files, but keep any other whitespace
+            String password = Files.readString(resolve(settings.getKdbxPasswordFile()));
+            while (password.endsWith("\n") || password.endsWith("\r"))
+            {
+                password = password.substring(0, password.length() - 1);
+            }
+            return password;
+        }
+
+        if (settings.getKdbxPasswordEnvironmentVariable() != null)
+        {
+            String password = System.getenv(settings.getKdbxPasswordEnvironmentVariable());
+            if (password == null)
+                throw new SecDispatcherException("Environment variable " + settings.getKdbxPasswordEnvironmentVariable() + " for KDBX password is not set");
+
+            return password;
+        }
+
+        throw new SecDispatcherException("No password configured for KDBX file " + settings.getKdbxFile());
+    }
+
+
+    /**
+     * Cache key for KDBX database indexes.  Includes the file's modification time and size so that changes to the file are picked up, and
+     * where the password comes from so that a database is never shared with a backend that could not have decrypted it.
+     */
+    private static class KdbxSource
+    {
+        private final Path file;
+        private final long lastModified;
+        private final long size;
+        private final String passwordSource;
+
+        public KdbxSource(Path file, long lastModified, long size, String passwordSource)
+        {
+            this.file = Objects.requireNonNull(file);
+            this.lastModified = lastModified;
+            this.size = size;
+            this.passwordSource = Objects.requireNonNull(passwordSource);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof KdbxSource that)) return false;
+            return lastModified == that.lastModified &&
+                   size == that.size &&
+                   file.equals(that.file) &&
+                   passwordSource.equals(that.passwordSource);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(file, lastModified, size, passwordSource);
+        }
+    }
+
+    /**
+     * Holds either a KDBX database index or the failure that occurred reading the database.
+     */
+    private static class KdbxIndexOrFailure
+    {
+        private final KdbxIndex index;
+        private final SecDispatcherException failure;
+
+        public KdbxIndexOrFailure(KdbxIndex index)
+        {
+            this.index = Objects.requireNonNull(index);
+            this.failure = null;
+        }
+
+        public KdbxIndexOrFailure(SecDispatcherException failure)
+        {
+            this.index = null;
+            this.failure = Objects.requireNonNull(failure);
+        }
+
+        public KdbxIndex get()
+        throws SecDispatcherException
+        {
+            if (failure != null)
+                throw failure;
+
+            return index;
+        }
+
+        public boolean isFailure()
+        {
+            return failure != null;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassClientType;
+import au.net.causal.maven.plugins.keepassxc.connection.AdaptiveRequestLimiter;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares KeepassXC connections between backends that use the same association, so that decryptor configurations that only differ in
+ * settings such as timeouts or fail mode do not each make their own connection and prompt the user to unlock KeepassXC again.
+ * <p>
+ *
+ * Connections are identified by their credentials store file, which holds the association, and the client type.  Each user of a connection
+ * holds a {@link Lease}, and a connection is closed when its last lease is released.  Only successful connections are shared.  Each user
+ * makes its own connection attempt, with its own settings, if an attempt by another user fails.
+ * <p>
+ *
+ * All connections in the pool talk to the same KeepassXC, so they share a {@linkplain #getRequestLimiter() request limiter}.
+ */
+public class KeepassConnectionPool
+{
+    private final Map<ConnectionKey, SharedConnection> connections = new HashMap<>();
+    private final AdaptiveRequestLimiter requestLimiter = new AdaptiveRequestLimiter();
+
+    /**
+     * @return limiter for lookups to KeepassXC shared between all connections from this pool.
+     */
+    public AdaptiveRequestLimiter getRequestLimiter()
+    {
+        return requestLimiter;
+    }
+
+    /**
+     * Gets a connection for an association, connecting if there is no usable connection for it yet.  Only one connection attempt is made
+     * at a time for each association, and other users of the same association wait for it, up to their own maximum wait time.  If the
+     * attempt being waited for fails, a waiting user makes its own attempt.
+     *
+     * @param credentialsStoreFile the resolved credentials store file holding the association.
+     * @param clientType the client used to talk to KeepassXC.
+     * @param maxWaitTime how long to wait for another user's connection attempt to finish.
+     * @param connector makes a new connection when needed.
+     *
+     * @return a lease on the connection, which must be closed when no longer needed.
+     *
+     * @throws SecDispatcherException if a connection needed to be made and failed, or another user's connection attempt did not finish
+     *                                in time.
+     */
+    public Lease acquire(Path credentialsStoreFile, KeepassClientType clientType, Duration maxWaitTime, Connector connector)
+    throws SecDispatcherException
+    {
+        ConnectionKey key = new ConnectionKey(credentialsStoreFile, clientType);
+        SharedConnection shared;
+        synchronized (this)
+        {
+            shared = connections.computeIfAbsent(key, SharedConnection::new);
+            shared.references++;
+        }
+
+        //Connect outside of the pool lock so that waiting for one database to be unlocked does not hold up other associations
+        try
+        {
+            shared.connectIfNeeded(connector, maxWaitTime);
+        }
+        catch (SecDispatcherException | RuntimeException | Error e)
+        {
+            release(shared);
+            throw e;
+        }
+
+        return new Lease(shared);
+    }
+
+    private void release(SharedConnection shared)
+    {
+        synchronized (this)
+        {
+            shared.references--;
+            if (shared.references > 0)
+                return;
+
+            connections.remove(shared.key, shared);
+        }
+
+        //No users left, and none can get it from the pool any more
+        KeepassProxy proxy = shared.proxy;
+        if (proxy != null)
+            proxy.close();
+    }
+
+    private synchronized void invalidate(SharedConnection shared)
+    {
+        connections.remove(shared.key, shared);
+    }
+
+    /**
+     * Makes a new KeepassXC connection.
+     */
+    @FunctionalInterface
+    public static interface Connector
+    {
+        /**
+         * @return a new connection.
+         *
+         * @throws SecDispatcherException if connecting fails.
+         */
+        public KeepassProxy connect()
+        throws SecDispatcherException;
+    }
+
+    /**
+     * A user's hold on a shared connection.  Closing the lease releases it, and the connection is closed once all leases on it are closed.
+     */
+    public class Lease implements AutoCloseable
+    {
+        private final SharedConnection shared;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(SharedConnection shared)
+        {
+            this.shared = shared;
+        }
+
+        /**
+         * @return the connection.
+         */
+        public KeepassProxy getConnection()
+        {
+            return shared.proxy;
+        }
+
+        /**
+         * Stops the connection being handed out to new users, such as when it is found to be no longer usable.  Existing leases are not
+         * affected.
+         */
+        public void invalidate()
+        {
+            KeepassConnectionPool.this.invalidate(shared);
+        }
+
+        @Override
+        public void close()
+        {
+            if (released.compareAndSet(false, true))
+                release(shared);
+        }
+    }
+
+    private static class SharedConnection
+    {
+        private final ConnectionKey key;
+
+        /**
+         * Number of leases and pending acquisitions.  Guarded by the pool.
+         */
+        private int references;
+
+        /**
+         * The current or last connection attempt, or null if none has been made.  A failed attempt is replaced by the next user's attempt.
+         */
+        private CompletableFuture<KeepassProxy> connection;
+
+        private volatile KeepassProxy proxy;
+
+        public SharedConnection(ConnectionKey key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * Connects if there is no connection yet, or waits for another user's connection attempt to finish.  The monitor is only held to
+         * decide who connects so that waiting users can give up at their own deadline.
+         */
+        public void connectIfNeeded(Connector connector, Duration maxWaitTime)
+        throws SecDispatcherException
+        {
+            long deadline = System.nanoTime() + maxWaitTime.toNanos();
+            while (true)
+            {
+                CompletableFuture<KeepassProxy> attempt;
+                boolean connecting;
+                synchronized (this)
+                {
+                    connecting = connection == null || connection.isCompletedExceptionally();
+                    if (connecting)
+                        connection = new CompletableFuture<>();
+                    attempt = connection;
+                }
+
+                if (connecting)
+                {
+                    connect(connector, attempt);
+                    return;
+                }
+
+                try
+                {
+                    proxy = attempt.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    return;
+                }
+                catch (ExecutionException e)
+                {
+                    //Another user's attempt failed, possibly with shorter timeouts, so make our own attempt
+                }
+                catch (TimeoutException e)
+                {
+                    throw new SecDispatcherException("Timed out waiting for another connection to KeepassXC (within " + maxWaitTime + ")", e);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new SecDispatcherException("Interrupted while waiting for KeepassXC", e);
+                }
+            }
+        }
+
+        private void connect(Connector connector, CompletableFuture<KeepassProxy> attempt)
+        throws SecDispatcherException
+        {
+            try
+            {
+                KeepassProxy newProxy = connector.connect();
+                proxy = newProxy;
+                attempt.complete(newProxy);
+            }
+            catch (SecDispatcherException | RuntimeException | Error e)
+            {
+                attempt.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private static class ConnectionKey
+    {
+        private final Path credentialsStoreFile;
+        private final KeepassClientType clientType;
+
+        public ConnectionKey(Path credentialsStoreFile, KeepassClientType clientType)
+        {
+            this.credentialsStoreFile = Objects.requireNonNull(credentialsStoreFile);
+            this.clientType = Objects.requireNonNull(clientType);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof ConnectionKey that)) return false;
+            return credentialsStoreFile.equals(that.credentialsStoreFile) && clientType == that.clientType;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(credentialsStoreFile, clientType);
+        }
+    }
+}
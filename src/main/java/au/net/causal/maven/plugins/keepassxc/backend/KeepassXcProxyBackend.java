@@ -0,0 +1,887 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.BuildTrace;
+import au.net.causal.maven.plugins.keepassxc.KeepassClientType;
+import au.net.causal.maven.plugins.keepassxc.KeepassCredentialsStore;
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import au.net.causal.maven.plugins.keepassxc.KeepassExtensionSettings;
+import au.net.causal.maven.plugins.keepassxc.LookupExecutors;
+import au.net.causal.maven.plugins.keepassxc.StoreLookupMode;
+import au.net.causal.maven.plugins.keepassxc.connection.AdaptiveRequestLimiter;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.codehaus.plexus.logging.Logger;
+import org.purejava.KeepassProxyAccessException;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * The default secret backend, which reads entries from a running KeepassXC through its browser proxy.  Connections are made on first use,
+ * prompting the user to start or unlock KeepassXC if needed, and are kept open until the backend is closed.  Connections are shared through a
+ * {@link KeepassConnectionPool} with other backends using the same credentials stores, while connection failures and settings such as
+ * timeouts are kept per backend.
+ */
+public class KeepassXcProxyBackend implements SecretBackend
+{
+    /**
+     * The error KeepassXC responds with to get-logins when there are no matching entries.
+     */
+    private static final String NO_LOGINS_FOUND_ERROR = "No logins found";
+
+    private final KeepassExtensionSettings settings;
+    private final Function<? super Path, ? extends KeepassCredentialsStore> credentialsStoreFactory;
+    private final Path baseDirectory;
+    private final KeepassConnectionPool connectionPool;
+    private final ProxyFactory proxyFactory;
+    private final Logger log;
+    private final Clock clock = Clock.systemUTC();
+
+    /**
+     * Released when the backend is closed, which wakes up any thread waiting for KeepassXC to be started or unlocked.
+     */
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * A cache of credentials store files to KeepassXC connections.
+     * This is used to re-use KeepassXC connections and not constantly re-authenticate every time Maven asks for a single password.  Values hold either a
+     * successful connection or the failure that occurred when attempting to connect - caching failures there are no repeated
+     * attempts at prompting the user to unlock KeepassXC once a timeout has occurred.
+     */
+    private final LoadingCache<Path, ConnectionOrFailure> proxyCache;
+
+    /**
+     * Connects to multiple credentials stores in parallel.
+     */
+    private final ExecutorService connectExecutor;
+
+    /**
+     * Creates the backend.
+     *
+     * @param settings settings for connecting to and reading from KeepassXC.
+     * @param credentialsStoreFactory creates a credentials store from a possibly relative credentials store file.
+     * @param baseDirectory the directory relative credentials store files are resolved against, used to identify shared connections.
+     * @param connectionPool shares connections with other backends using the same credentials stores.
+     * @param log logger.
+     */
+    public KeepassXcProxyBackend(KeepassExtensionSettings settings, Function<? super Path, ? extends KeepassCredentialsStore> credentialsStoreFactory,
+                                 Path baseDirectory, KeepassConnectionPool connectionPool, Logger log)
+    {
+        this(settings, credentialsStoreFactory, baseDirectory, connectionPool, KeepassProxy::new, log);
+    }
+
+    /**
+     * Creates the backend with a custom way of creating KeepassXC proxies.
+     *
+     * @param settings settings for connecting to and reading from KeepassXC.
+     * @param credentialsStoreFactory creates a credentials store from a possibly relative credentials store file.
+     * @param baseDirectory the directory relative credentials store files are resolved against, used to identify shared connections.
+     * @param connectionPool shares connections with other backends using the same credentials stores.
+     * @param proxyFactory creates a proxy for each new connection to KeepassXC.
+     * @param log logger.
+     */
+    public KeepassXcProxyBackend(KeepassExtensionSettings settings, Function<? super Path, ? extends KeepassCredentialsStore> credentialsStoreFactory,
+                                 Path baseDirectory, KeepassConnectionPool connectionPool, ProxyFactory proxyFactory, Logger log)
+    {
+        this.settings = Objects.requireNonNull(settings);
+        this.credentialsStoreFactory = Objects.requireNonNull(credentialsStoreFactory);
+        this.baseDirectory = Objects.requireNonNull(baseDirectory);
+        this.connectionPool = Objects.requireNonNull(connectionPool);
+        this.proxyFactory = Objects.requireNonNull(proxyFactory);
+        this.log = Objects.requireNonNull(log);
+        this.connectExecutor = LookupExecutors.newBoundedExecutor(settings.getCredentialsStoreFiles().size(), "keepassxc-connect-");
+        this.proxyCache =
+                CacheBuilder.newBuilder()
+                    .<Path, ConnectionOrFailure>removalListener(notification -> notification.getValue().close())
+                    .build(new CacheLoader<>()
+                    {
+                        @Override
+                        public ConnectionOrFailure load(Path credentialsStoreFile)
+                        throws Exception
+                        {
+                            try (BuildTrace.Span span = BuildTrace.span("keepassxc", "Connect to KeepassXC").arg("credentialsStore", credentialsStoreFile))
+                            {
+                                try
+                                {
+                                    Path resolvedStoreFile = baseDirectory.resolve(credentialsStoreFile).toAbsolutePath().normalize();
+                                    KeepassConnectionPool.Lease lease = connectionPool.acquire(resolvedStoreFile, settings.getKeepassClient(),
+                                                                                               settings.getEffectiveUnlockMaxWaitTime(),
+                                                                                               () -> connectKeepassProxy(credentialsStoreFile));
+
+                                    //If closed while connecting, the cache has already been cleared so don't let the connection leak into it
+                                    if (isClosed())
+                                    {
+                                        lease.close();
+                                        throw closedException();
+                                    }
+
+                                    return new ConnectionOrFailure(lease);
+                                }
+                                catch (SecDispatcherException e)
+                                {
+                                    span.arg("failure", e.getMessage());
+                                    return new ConnectionOrFailure(e);
+                                }
+                            }
+                        }
+                    });
+    }
+
+    @Override
+    public List<KeepassEntry> findEntries(SecretQuery query)
+    throws SecDispatcherException
+    {
+        List<CompletableFuture<ConnectionOrFailure>> pendingConnections = startConnections();
+
+        log.debug("Need to read entry '" + query.getUrl() + "' from KeepassXC");
+
+        Instant startTime = Instant.now(clock);
+        try
+        {
+            if (settings.getStoreLookupMode() == StoreLookupMode.MERGE)
+                return readMergedEntries(pendingConnections, query.getUrl());
+            else
+                return readFirstEntries(pendingConnections, query.getUrl());
+        }
+        finally
+        {
+            Duration lookupTime = Duration.between(startTime, Instant.now(clock));
+            if (lookupTime.compareTo(settings.getSlowLookupThreshold()) > 0)
+                log.warn("Slow KeepassXC lookup for " + query.getUrl() + " took " + lookupTime.truncatedTo(ChronoUnit.MILLIS));
+        }
+    }
+
+    /**
+     * Reads entries from every credentials store at once.  KeepassXC accepts several associations in a single get-logins request and searches every
+     * database matching any of them, so only one request is made on the first successful connection no matter how many stores are configured.
+     *
+     * @param pendingConnections connections for each credentials store, in order of precedence.
+     * @param entryName the URL of entries to read.
+     *
+     * @return the entries, possibly empty.
+     *
+     * @throws SecDispatcherException if no store could be connected to, or if an error occurs reading entries or the lookup times out.
+     */
+    private List<KeepassEntry> readMergedEntries(List<CompletableFuture<ConnectionOrFailure>> pendingConnections, String entryName)
+    throws SecDispatcherException
+    {
+        List<ConnectionOrFailure> possibleConnections = new ArrayList<>(pendingConnections.size());
+        for (CompletableFuture<ConnectionOrFailure> pendingConnection : pendingConnections)
+        {
+            possibleConnections.add(awaitConnection(pendingConnection));
+        }
+
+        //Handle cached failure
+        SecDispatcherException connectionFailure = connectionFailureIfNoneSuccessful(possibleConnections);
+        if (connectionFailure != null)
+            throw new BackendUnavailableException(connectionFailure.getMessage(), connectionFailure);
+
+        //Successful connections (possibly cached) if we get here
+        List<ConnectionOrFailure> connections = successfulConnections(possibleConnections);
+        List<Map<String, String>> keys = new ArrayList<>(connections.size());
+        for (ConnectionOrFailure connection : connections)
+        {
+            Map<String, String> key = connection.getConnection().exportConnection();
+            if (!keys.contains(key))
+                keys.add(key);
+        }
+
+        Instant deadline = Instant.now(clock).plus(settings.getEffectiveLookupTimeout());
+        return readEntries(connections.get(0), keys, entryName, deadline);
+    }
+
+    /**
+     * Reads entries from the first credentials store that has any.  Stores are only waited for and queried once every earlier store has come up
+     * empty, so a store that is slow to connect or broken does not hold up lookups that an earlier store can answer.
+     *
+     * @param pendingConnections connections for each credentials store, in order of precedence.
+     * @param entryName the URL of entries to read.
+     *
+     * @return the entries, possibly empty.
+     *
+     * @throws SecDispatcherException if no store could be connected to, or if an error occurs reading entries from a store and no later store has
+     *      any, or the lookup times out.
+     */
+    private List<KeepassEntry> readFirstEntries(List<CompletableFuture<ConnectionOrFailure>> pendingConnections, String entryName)
+    throws SecDispatcherException
+    {
+        Instant deadline = Instant.now(clock).plus(settings.getEffectiveLookupTimeout());
+        SecDispatcherException firstConnectionFailure = null;
+        SecDispatcherException firstLookupFailure = null;
+        boolean anyConnected = false;
+        for (int i = 0; i < pendingConnections.size(); i++)
+        {
+            ConnectionOrFailure possibleConnection = awaitConnection(pendingConnections.get(i));
+            if (!possibleConnection.isSuccessfulConnection())
+            {
+                if (firstConnectionFailure == null)
+                    firstConnectionFailure = possibleConnection.getFailure();
+
+                continue;
+            }
+
+            anyConnected = true;
+            try
+            {
+                List<KeepassEntry> entries = readEntries(possibleConnection, List.of(possibleConnection.getConnection().exportConnection()),
+                                                         entryName, deadline);
+                if (!entries.isEmpty())
+                    return entries;
+            }
+            catch (SecDispatcherException e)
+            {
+                //Remaining stores share the same deadline so there is no point querying them
+                if (e.getCause() instanceof TimeoutException || e.getCause() instanceof InterruptedException)
+                    throw e;
+
+                if (firstLookupFailure == null)
+                    firstLookupFailure = e;
+
+                log.debug("Failed to read entry from credentials store " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+
+        if (!anyConnected)
+            throw new BackendUnavailableException(firstConnectionFailure.getMessage(), firstConnectionFailure);
+        if (firstLookupFailure != null)
+            throw firstLookupFailure;
+
+        return List.of();
+    }
+
+    /**
+     * Creates a new connection to KeepassXC.
+     *
+     * @param credentialsStoreFile the credentials store to connect with.
+     *
+     * @return a new Keepass proxy connection.
+     *
+     * @throws SecDispatcherException if an error occurs making the connection.
+     */
+    private KeepassProxy connectKeepassProxy(Path credentialsStoreFile)
+    throws SecDispatcherException
+    {
+        KeepassCredentialsStore credentialsStore = credentialsStoreFactory.apply(credentialsStoreFile);
+
+        return connectKeepassProxy(credentialsStore, settings);
+    }
+
+    /**
+     * Creates a new connection to KeepassXC given some extension settings.
+     *
+     * @param settings configuration for the decryptor.  Basically a type-safe version of the configuration passed from Maven, sourced from settings-security.xml.
+     *
+     * @return a new Keepass proxy connection.
+     *
+     * @throws SecDispatcherException if an error occurs making the connection.
+     */
+    private KeepassProxy connectKeepassProxy(KeepassCredentialsStore credentialsStore, KeepassExtensionSettings settings)
+    throws SecDispatcherException
+    {
+        KeepassProxy kpa = createKeepassProxy(credentialsStore, settings);
+        try
+        {
+            establishConnection(kpa, settings);
+            return kpa;
+        }
+        catch (SecDispatcherException | RuntimeException e)
+        {
+            kpa.close();
+            throw e;
+        }
+    }
+
+    private KeepassProxy createKeepassProxy(KeepassCredentialsStore credentialsStore, KeepassExtensionSettings settings)
+    throws SecDispatcherException
+    {
+        KeepassProxy kpa;
+        try
+        {
+            kpa = proxyFactory.create(credentialsStore, settings.getKeepassClient(), connectionPool.getRequestLimiter(), log);
+        }
+        catch (IOException e)
+        {
+            SecDispatcherException ex = new SecDispatcherException("Error initializing Keepass proxy: " + e, e);
+            log.error(ex.getMessage(), ex);
+            throw ex;
+        }
+
+        return kpa;
+    }
+
+    /**
+     * Connects a proxy to KeepassXC and waits for it to become usable, associating if needed.
+     *
+     * @throws SecDispatcherException if KeepassXC could not be connected to or did not become usable in time.
+     */
+    private void establishConnection(KeepassProxy kpa, KeepassExtensionSettings settings)
+    throws SecDispatcherException
+    {
+        tryRepeat(settings,
+                  "Maven needs to read passwords from KeepassXC, please start KeepassXC, ensure the 'Browser Extensions' option is enabled and open your database",
+                  "Failed to connect to KeepassXC",
+                  () ->
+        {
+            try
+            {
+                kpa.connect();
+            }
+            catch (IOException e)
+            {
+                throw new SecDispatcherException("Failed to connect to KeepassXC: " + e.getMessage(), e);
+            }
+        });
+
+        //A healthy connection that is already paired only needs the key exchange from connect() and a single test-associate
+        if (kpa.connectionAvailable())
+            return;
+
+        //Either not paired yet, the pairing is no longer known to KeepassXC, or the database is locked
+        String unlockMessage = "Maven needs to read passwords from KeepassXC, please unlock your database";
+        if (settings.isInteractiveAssociation())
+        {
+            //Result of associate() is not useful since it nearly always fails, so rely on the test-associate in the loop below instead
+            log.debug("KeepassXC connection not yet usable, attempting association");
+            kpa.associate();
+        }
+        else if (!kpa.hasAssociation())
+        {
+            String msg = "Maven is not paired with KeepassXC and interactive association is disabled - run the keepassxc:pair goal to pair";
+            log.error(msg);
+            throw new SecDispatcherException(msg);
+        }
+        else
+        {
+            //Can't tell a locked database from a pairing KeepassXC no longer knows about, so wait for an unlock without associating
+            log.debug("KeepassXC connection not yet usable, waiting for database to be unlocked");
+            unlockMessage += " (if it is unlocked, the pairing may have been removed from KeepassXC - run the keepassxc:pair goal to pair again)";
+        }
+
+        tryRepeat(settings,
+                  unlockMessage,
+                  "Failed to connect to KeepassXC - database remained locked",
+                  () ->
+        {
+            boolean iConnected = kpa.connectionAvailable();
+            if (!iConnected)
+                throw new SecDispatcherException("Could not connect to KeepassXC");
+        });
+    }
+
+    /**
+     * Runs a block of code multiple times until it succeeds or the unlock timeout it hit.  Non-success for the block is when it fails
+     * with a SecDispatcherException.
+     * <p>
+     *
+     * This method returns normally if, either initially or during a repeat, the code block succeeds.  If it times out, a
+     * SecDispatcherException is thrown.
+     *
+     * @param settings Keepass settings used to determine the timeout time and the message repeat time.
+     * @param failMessage message to display and possibly repeat to the user when the code block fails.
+     * @param timeoutMessage message to display on timeout.
+     * @param block the code block to execute, possibly multiple times.
+     *
+     * @throws SecDispatcherException if the block never once succeeded and the timeout time is exceeded.
+     */
+    private void tryRepeat(KeepassExtensionSettings settings, String failMessage, String timeoutMessage, RepeatBlock block)
+    throws SecDispatcherException
+    {
+        SecDispatcherException failureException = null;
+
+        //Staggered
+        Instant connectionStartTime = Instant.now(clock);
+        Instant connectionMaxTime = connectionStartTime.plus(settings.getEffectiveUnlockMaxWaitTime());
+        Instant lastMessageTime = Instant.EPOCH;
+        int attempt = 0;
+        while (failureException == null || Instant.now(clock).isBefore(connectionMaxTime))
+        {
+            attempt++;
+            try (BuildTrace.Span span = BuildTrace.span("keepassxc", "Wait for KeepassXC").arg("attempt", attempt).arg("waitingFor", timeoutMessage))
+            {
+                try
+                {
+                    block.call();
+
+                    //If we succeed we are finished
+                    return;
+                }
+                catch (SecDispatcherException e)
+                {
+                    span.arg("failure", e.getMessage());
+                    failureException = e;
+                }
+            }
+
+            //If we get here we failed to connect
+            Instant now = Instant.now(clock);
+            Duration remainingTime = Duration.between(now, connectionMaxTime).truncatedTo(ChronoUnit.SECONDS); //truncate to seconds for a nicer message
+            if (lastMessageTime.plus(settings.getUnlockMessageRepeatTime()).isBefore(now))
+            {
+                log.error(failMessage + " (timeout in " + remainingTime + ")...");
+                lastMessageTime = now;
+            }
+
+            try
+            {
+                //Stop waiting as soon as the backend is closed
+                if (closed.await(500L, TimeUnit.MILLISECONDS))
+                    throw closedException();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new SecDispatcherException("Interrupted while waiting for KeepassXC", e);
+            }
+        }
+
+        String msg = timeoutMessage + " (within " + settings.getEffectiveUnlockMaxWaitTime() + ")";
+        log.error(msg);
+        throw new SecDispatcherException(msg);
+    }
+
+    /**
+     * Starts getting connections to KeepassXC, or the cached failures of previous connection attempts, for each configured credentials store.
+     * When there are multiple stores that are not connected yet they are connected in parallel, so that connecting takes about as long as the
+     * slowest store rather than the sum of all of them.
+     *
+     * @return a future successful connection or failure for each credentials store, in configured order.
+     *
+     * @throws SecDispatcherException if an unexpected error occurs.
+     */
+    private List<CompletableFuture<ConnectionOrFailure>> startConnections()
+    throws SecDispatcherException
+    {
+        List<Path> credentialsStoreFiles = settings.getCredentialsStoreFiles();
+        List<CompletableFuture<ConnectionOrFailure>> pendingConnections = new ArrayList<>(credentialsStoreFiles.size());
+        for (Path credentialsStoreFile : credentialsStoreFiles)
+        {
+            ConnectionOrFailure existingConnection = proxyCache.getIfPresent(credentialsStoreFile);
+            if (existingConnection != null)
+                pendingConnections.add(CompletableFuture.completedFuture(existingConnection));
+            else if (credentialsStoreFiles.size() == 1)
+                pendingConnections.add(CompletableFuture.completedFuture(cachedConnection(credentialsStoreFile)));
+            else
+                pendingConnections.add(connectAsync(credentialsStoreFile));
+        }
+        return pendingConnections;
+    }
+
+    private CompletableFuture<ConnectionOrFailure> connectAsync(Path credentialsStoreFile)
+    throws SecDispatcherException
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return cachedConnection(credentialsStoreFile);
+                }
+                catch (SecDispatcherException e)
+                {
+                    throw new CompletionException(e);
+                }
+            }, connectExecutor);
+        }
+        catch (RejectedExecutionException e)
+        {
+            throw closedException();
+        }
+    }
+
+    /**
+     * Waits for a connection to KeepassXC started by {@link #startConnections()}.
+     *
+     * @param pendingConnection the connection.
+     *
+     * @return a successful connection or failure.
+     *
+     * @throws SecDispatcherException if interrupted or an unexpected error occurs.
+     */
+    private static ConnectionOrFailure awaitConnection(CompletableFuture<ConnectionOrFailure> pendingConnection)
+    throws SecDispatcherException
+    {
+        try
+        {
+            return pendingConnection.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SecDispatcherException("Interrupted while connecting to KeepassXC", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw unexpectedConnectionError(e.getCause());
+        }
+    }
+
+    /**
+     * Gets a connection to KeepassXC, or the cached failure of a previous connection attempt, for a credentials store.
+     *
+     * @param credentialsStoreFile the credentials store.
+     *
+     * @return a successful connection or failure.
+     *
+     * @throws SecDispatcherException if an unexpected error occurs.
+     */
+    private ConnectionOrFailure cachedConnection(Path credentialsStoreFile)
+    throws SecDispatcherException
+    {
+        try
+        {
+            return proxyCache.get(credentialsStoreFile);
+        }
+        catch (ExecutionException e)
+        {
+            throw unexpectedConnectionError(e.getCause());
+        }
+    }
+
+    /**
+     * Rethrows an unexpected error that occurred while connecting.  Normal errors do not come out through here, they are returned in
+     * ConnectionOrFailure, but still handle runtime errors just in case.
+     *
+     * @param cause the error.
+     *
+     * @return the error to throw if it is a SecDispatcherException.
+     */
+    private static SecDispatcherException unexpectedConnectionError(Throwable cause)
+    {
+        if (cause instanceof SecDispatcherException)
+            return (SecDispatcherException)cause;
+        else if (cause instanceof RuntimeException)
+            throw (RuntimeException)cause;
+        else if (cause instanceof Error)
+            throw (Error)cause;
+        else
+            throw new RuntimeException(cause);
+    }
+
+    /**
+     * @return the failure of the first connection if none of the connections were successful, or null if at least one was.
+     */
+    private static SecDispatcherException connectionFailureIfNoneSuccessful(List<? extends ConnectionOrFailure> possibleConnections)
+    {
+        if (possibleConnections.stream().anyMatch(ConnectionOrFailure::isSuccessfulConnection))
+            return null;
+
+        return possibleConnections.get(0).getFailure();
+    }
+
+    private static List<ConnectionOrFailure> successfulConnections(List<? extends ConnectionOrFailure> possibleConnections)
+    {
+        List<ConnectionOrFailure> connections = new ArrayList<>(possibleConnections.size());
+        for (ConnectionOrFailure possibleConnection : possibleConnections)
+        {
+            if (possibleConnection.isSuccessfulConnection())
+                connections.add(possibleConnection);
+        }
+        return connections;
+    }
+
+    /**
+     * Reads all entries from KeepassXC that match a URL with a single get-logins request, giving up if KeepassXC does not respond by a deadline.
+     * If the request was sent but KeepassXC never responded, the connection is replaced so that the next lookup is not stuck behind it.
+     *
+     * @param connection the KeepassXC connection to send the request on.
+     * @param keys the associations of every credentials store whose databases should be searched.
+     * @param entryName the URL of entries to read.
+     * @param deadline when to give up waiting.
+     *
+     * @return the entries, possibly empty.
+     *
+     * @throws SecDispatcherException if an error occurs reading entries or the lookup times out.
+     */
+    private List<KeepassEntry> readEntries(ConnectionOrFailure connection, List<Map<String, String>> keys, String entryName, Instant deadline)
+    throws SecDispatcherException
+    {
+        KeepassProxy kpa = connection.getConnection();
+        CompletableFuture<Map<String, ?>> request;
+        try
+        {
+            request = kpa.getLoginsAsync(entryName, null, true, keys);
+        }
+        catch (RejectedExecutionException e)
+        {
+            throw new SecDispatcherException("KeepassXC connection closed while reading entry for " + entryName, e);
+        }
+
+        try
+        {
+            return parseEntries(awaitLogins(request, entryName, deadline), entryName);
+        }
+        catch (SecDispatcherException e)
+        {
+            if (e.getCause() instanceof TimeoutException && kpa.isAwaitingResponse(request))
+                replaceConnection(connection);
+
+            throw e;
+        }
+        finally
+        {
+            //If not sent yet the request is dropped, if in flight it still completes in the background and its response is discarded
+            request.cancel(false);
+        }
+    }
+
+    /**
+     * Discards a connection that KeepassXC has stopped responding on, so that the next lookup makes a new one.  The connection is closed once
+     * other backends sharing it have let go of it too, which also abandons the request that was never answered.
+     */
+    private void replaceConnection(ConnectionOrFailure connection)
+    {
+        log.debug("KeepassXC did not respond on connection in time, it will be replaced");
+        connection.invalidate();
+        proxyCache.asMap().values().remove(connection);
+    }
+
+    /**
+     * Waits for a get-logins request to complete.
+     *
+     * @param request the request.
+     * @param entryName the URL of entries being read.
+     * @param deadline when to give up waiting.
+     *
+     * @return the raw results.
+     *
+     * @throws SecDispatcherException if the request failed, the deadline passed or the thread was interrupted.
+     */
+    private Map<String, ?> awaitLogins(CompletableFuture<Map<String, ?>> request, String entryName, Instant deadline)
+    throws SecDispatcherException
+    {
+        try
+        {
+            long remainingMillis = Math.max(0L, Duration.between(Instant.now(clock), deadline).toMillis());
+            return request.get(remainingMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            //If the request was already sent it still completes in the background and the response is discarded
+            //(the caller decides whether the connection needs replacing)
+            request.cancel(false);
+            throw new SecDispatcherException("Timed out reading entry for " + entryName + " from KeepassXC (within " + settings.getEffectiveLookupTimeout() + ")", e);
+        }
+        catch (InterruptedException e)
+        {
+            request.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new SecDispatcherException("Interrupted while reading entry for " + entryName + " from KeepassXC", e);
+        }
+        catch (ExecutionException e)
+        {
+            //KeepassXC reports having no entries as an error, but it is a successful lookup
+            if (e.getCause() instanceof KeepassProxyAccessException && String.valueOf(e.getCause().getMessage()).contains(NO_LOGINS_FOUND_ERROR))
+                return Map.of("entries", List.of());
+
+            throw new SecDispatcherException("Error getting entry for " + entryName + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Parses entries from raw get-logins results.
+     *
+     * @param results raw results from KeepassXC.
+     * @param entryName the URL of entries that were read.
+     *
+     * @return the entries, possibly empty.
+     *
+     * @throws SecDispatcherException if the results are not in the expected form.
+     */
+    private static List<KeepassEntry> parseEntries(Map<String, ?> results, String entryName)
+    throws SecDispatcherException
+    {
+        if (results == null)
+            throw new SecDispatcherException("No KeepassXC entry for " + entryName);
+
+        Object entriesObj = results.get("entries");
+        if (!(entriesObj instanceof Collection<?>))
+            throw new SecDispatcherException("No entries value for " + entryName);
+
+        Collection<?> rawEntries = (Collection<?>)entriesObj;
+        List<KeepassEntry> entries = new ArrayList<>(rawEntries.size());
+        for (Object rawEntry : rawEntries)
+        {
+            if (rawEntry instanceof Map<?, ?>)
+                entries.add(KeepassEntry.parse((Map<?, ?>)rawEntry));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Discards cached connection failures so that connecting is attempted again, and closes and discards cached connections that are no longer
+     * usable, such as when the user has locked their database since they were made.  Connections already used successfully since the last
+     * build ended, such as while Maven decrypted settings, are kept without checking them with KeepassXC again.
+     *
+     * @return true if every cached connection was still usable, false if at least one had to be discarded.
+     */
+    @Override
+    public boolean revalidate()
+    {
+        boolean allUsable = true;
+        for (Map.Entry<Path, ConnectionOrFailure> entry : proxyCache.asMap().entrySet())
+        {
+            ConnectionOrFailure possibleConnection = entry.getValue();
+            if (!possibleConnection.isSuccessfulConnection())
+                proxyCache.asMap().remove(entry.getKey(), possibleConnection);
+            else if (!possibleConnection.getConnection().isUsedSuccessfully() && !possibleConnection.getConnection().connectionAvailable())
+            {
+                log.debug("Cached KeepassXC connection is no longer usable, discarding");
+
+                //Other backends sharing the connection still hold it until they revalidate, but nobody new should get it
+                possibleConnection.invalidate();
+                proxyCache.asMap().remove(entry.getKey(), possibleConnection);
+                allUsable = false;
+            }
+        }
+        return allUsable;
+    }
+
+    @Override
+    public void sessionEnded()
+    {
+        for (ConnectionOrFailure possibleConnection : proxyCache.asMap().values())
+        {
+            if (possibleConnection.isSuccessfulConnection())
+                possibleConnection.getConnection().forgetSuccessfulUse();
+        }
+    }
+
+    /**
+     * Releases and discards all KeepassXC connections.  Connections are closed unless other backends still use them.  Any connection attempt
+     * waiting for KeepassXC to be started or unlocked gives up.
+     */
+    @Override
+    public void close()
+    {
+        closed.countDown();
+        connectExecutor.shutdown();
+        proxyCache.invalidateAll();
+    }
+
+    private boolean isClosed()
+    {
+        return closed.getCount() == 0L;
+    }
+
+    private static SecDispatcherException closedException()
+    {
+        return new SecDispatcherException("KeepassXC backend was closed while connecting to KeepassXC");
+    }
+
+    /**
+     * Creates proxies for connecting to KeepassXC.
+     */
+    @FunctionalInterface
+    public static interface ProxyFactory
+    {
+        /**
+         * Creates a proxy.  The proxy is not connected yet.
+         *
+         * @param credentialsStore loads and stores the association with KeepassXC.
+         * @param clientType the client to use for talking to KeepassXC.
+         * @param requestLimiter limits lookups in flight to KeepassXC, shared with other proxies from the same connection pool.
+         * @param log logger.
+         *
+         * @return the proxy.
+         *
+         * @throws IOException if an error occurs loading the association from the credentials store.
+         */
+        public KeepassProxy create(KeepassCredentialsStore credentialsStore, KeepassClientType clientType, AdaptiveRequestLimiter requestLimiter,
+                                   Logger log)
+        throws IOException;
+    }
+
+    /**
+     * Piece of KeypassXC connection code that can potentially be repeated if it fails.
+     */
+    @FunctionalInterface
+    private static interface RepeatBlock
+    {
+        /**
+         * Executes the code block.  Returns normally when successful, or throws a SecDispatcherException on failure.
+         *
+         * @throws SecDispatcherException on failure.
+         */
+        public void call()
+        throws SecDispatcherException;
+    }
+
+
+    /**
+     * Holds either a lease on a successful Keepass proxy connection or a failure.
+     */
+    private static class ConnectionOrFailure implements AutoCloseable
+    {
+        private final KeepassConnectionPool.Lease connection;
+        private final SecDispatcherException failure;
+
+        public ConnectionOrFailure(KeepassConnectionPool.Lease connection)
+        {
+            this.connection = Objects.requireNonNull(connection);
+            this.failure = null;
+        }
+
+        public ConnectionOrFailure(SecDispatcherException failure)
+        {
+            this.connection = null;
+            this.failure = Objects.requireNonNull(failure);
+        }
+
+        public KeepassProxy getConnection()
+        {
+            if (!isSuccessfulConnection())
+                throw new IllegalStateException("No connection");
+
+            return connection.getConnection();
+        }
+
+        public void invalidate()
+        {
+            if (isSuccessfulConnection())
+                connection.invalidate();
+        }
+
+        public SecDispatcherException getFailure()
+        {
+            if (isSuccessfulConnection())
+                throw new IllegalStateException("No failure");
+
+            return failure;
+        }
+
+        public boolean isSuccessfulConnection()
+        {
+            return connection != null;
+        }
+
+        @Override
+        public void close()
+        {
+            if (isSuccessfulConnection())
+                connection.close();
+        }
+    }
+}
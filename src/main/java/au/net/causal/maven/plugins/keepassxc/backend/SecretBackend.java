@@ -0,0 +1,60 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.List;
+
+/**
+ * A source of entries that the KeepassXC decryptor reads passwords from.  The default backend is KeepassXC itself, accessed through
+ * its browser proxy.
+ * <p>
+ *
+ * Backends are created for a single decryptor configuration and may be used from multiple threads at once.
+ *
+ * @see KeepassXcProxyBackend
+ */
+public interface SecretBackend extends AutoCloseable
+{
+    /**
+     * Finds entries for a query.  Backends must return all entries matching the query's URL, and may use the query's filters to return
+     * fewer entries.  The decryptor applies filters and selects the field after entries are returned, so backends do not need to.
+     *
+     * @param query the query.
+     *
+     * @return matching entries, possibly empty.
+     *
+     * @throws BackendUnavailableException if the backend is not available and the user has already been told why.
+     * @throws SecDispatcherException if an error occurs reading entries.
+     */
+    public List<KeepassEntry> findEntries(SecretQuery query)
+    throws SecDispatcherException;
+
+    /**
+     * Prepares the backend for reuse by a new build, discarding any state such as connections that is no longer usable and forgetting
+     * previous failures so they can be retried.
+     *
+     * @return true if everything the backend held was still usable, false if previously usable state such as an open connection was discarded,
+     *         in which case previously read values might no longer be valid.
+     */
+    public default boolean revalidate()
+    {
+        return true;
+    }
+
+    /**
+     * Called when a build ends.  The backend forgets which of its state the build used successfully, so that {@link #revalidate()} checks it
+     * again when the next build starts.
+     */
+    public default void sessionEnded()
+    {
+    }
+
+    /**
+     * Releases any resources held by the backend, such as connections.
+     */
+    @Override
+    public default void close()
+    {
+    }
+}
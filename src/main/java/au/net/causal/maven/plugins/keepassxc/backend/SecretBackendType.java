@@ -0,0 +1,21 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+/**
+ * The kinds of {@linkplain SecretBackend secret backend} that can be configured.
+ */
+public enum SecretBackendType
+{
+    /**
+     * A running KeepassXC, accessed through its browser proxy.
+     *
+     * @see KeepassXcProxyBackend
+     */
+    KEEPASSXC,
+
+    /**
+     * A KDBX database file read directly.
+     *
+     * @see KdbxFileBackend
+     */
+    KDBX
+}
@@ -0,0 +1,101 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A query for entries from a {@linkplain SecretBackend secret backend}.
+ */
+public class SecretQuery
+{
+    private final String url;
+    private final Map<String, String> filters;
+    private final String selectedField;
+
+    /**
+     * Creates a query.
+     *
+     * @param url the URL, or for some backends the name, of entries to find.
+     * @param filters field values that entries must have, keyed by field name.  Field names are the same as used for 'where:' attributes.
+     * @param selectedField the field whose value will be used from the selected entry, as used for the 'select' attribute.  Null for the password.
+     */
+    public SecretQuery(String url, Map<String, String> filters, String selectedField)
+    {
+        this.url = Objects.requireNonNull(url);
+        this.filters = Map.copyOf(filters);
+        this.selectedField = selectedField;
+    }
+
+    /**
+     * Creates a query for all entries of a URL.
+     *
+     * @param url the URL.
+     *
+     * @return the query.
+     */
+    public static SecretQuery forUrl(String url)
+    {
+        return new SecretQuery(url, Map.of(), null);
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public Map<String, String> getFilters()
+    {
+        return filters;
+    }
+
+    public String getSelectedField()
+    {
+        return selectedField;
+    }
+
+    /**
+     * Checks whether an entry has all the field values of this query's filters.
+     *
+     * @param entry the entry to check.
+     *
+     * @return true if the entry matches every filter, or if there are no filters.
+     */
+    public boolean matches(KeepassEntry entry)
+    {
+        for (Map.Entry<String, String> filter : filters.entrySet())
+        {
+            if (!Objects.equals(entry.getFieldValue(filter.getKey()), filter.getValue()))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof SecretQuery that)) return false;
+        return url.equals(that.url) &&
+               filters.equals(that.filters) &&
+               Objects.equals(selectedField, that.selectedField);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(url, filters, selectedField);
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringJoiner(", ", SecretQuery.class.getSimpleName() + "[", "]")
+                .add("url='" + url + "'")
+                .add("filters=" + filters)
+                .add("selectedField='" + selectedField + "'")
+                .toString();
+    }
+}
@@ -0,0 +1,243 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import org.codehaus.plexus.logging.Logger;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how many requests are sent to KeepassXC at once, adjusting the limit to the latency KeepassXC responds with.
+ * <p>
+ *
+ * KeepassXC handles browser integration requests on its GUI thread, so sending it more requests at once than it can handle only makes each
+ * one slower and the UI less responsive.  The limit is adjusted with additive increase and multiplicative decrease.  While requests respond
+ * close to the lowest latency seen, which is the latency of an idle KeepassXC, the limit grows by about one for each limit's worth of requests.
+ * When latency grows well beyond that, the limit is cut.  Requests that take long enough that KeepassXC was probably waiting for the user,
+ * such as to confirm access to an entry, say nothing about load and are ignored.
+ * <p>
+ *
+ * Callers waiting for a slot are admitted in the order they arrived.
+ */
+public class AdaptiveRequestLimiter
+{
+    private static final int MIN_LIMIT = 1;
+    static final int MAX_LIMIT = 8;
+    private static final double INITIAL_LIMIT = 2.0;
+
+    /**
+     * Latency beyond this multiple of the idle latency means KeepassXC is overloaded.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * How much the limit is multiplied by when KeepassXC is overloaded.
+     */
+    private static final double BACKOFF_RATIO = 0.75;
+
+    /**
+     * Requests slower than this probably waited on the user rather than on load.
+     */
+    private static final Duration USER_INTERACTION_LATENCY = Duration.ofSeconds(2L);
+
+    private final LongSupplier nanoTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotAvailable = lock.newCondition();
+    private final Deque<Thread> waiters = new ArrayDeque<>();
+
+    private double limit = INITIAL_LIMIT;
+    private int inFlight;
+
+    /**
+     * Lowest latency recently seen in nanoseconds, or zero if there are no samples yet.  Slowly drifts upwards so that a single unusually fast
+     * response does not hold it down forever.
+     */
+    private long idleLatencyNanos;
+
+    /**
+     * Creates a limiter.
+     */
+    public AdaptiveRequestLimiter()
+    {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Creates a limiter that measures latency with a given time source.
+     *
+     * @param nanoTime source of the current time in nanoseconds, like {@link System#nanoTime()}.
+     */
+    AdaptiveRequestLimiter(LongSupplier nanoTime)
+    {
+        this.nanoTime = Objects.requireNonNull(nanoTime);
+    }
+
+    /**
+     * Waits until a request may be sent to KeepassXC.
+     *
+     * @param log logger used for reporting the limit and queue depth.
+     *
+     * @return a permit that must be closed when the request completes.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Permit acquire(Logger log)
+    throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            Thread me = Thread.currentThread();
+            waiters.addLast(me);
+            try
+            {
+                if (waiters.peekFirst() != me || inFlight >= currentLimit())
+                {
+                    log.debug("Waiting to send request to KeepassXC - limit " + currentLimit() + ", in flight " + inFlight + ", queued " +
+                              (waiters.size() - 1));
+                }
+
+                while (waiters.peekFirst() != me || inFlight >= currentLimit())
+                {
+                    slotAvailable.await();
+                }
+            }
+            finally
+            {
+                waiters.remove(me);
+
+                //Whoever is next in line may be able to go now
+                slotAvailable.signalAll();
+            }
+
+            inFlight++;
+            return new Permit(log, nanoTime.getAsLong());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit on requests in flight.
+     */
+    public int getLimit()
+    {
+        lock.lock();
+        try
+        {
+            return currentLimit();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of callers waiting to send a request.
+     */
+    public int getQueueDepth()
+    {
+        lock.lock();
+        try
+        {
+            return waiters.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit()
+    {
+        return (int)limit;
+    }
+
+    private void release(Permit permit, boolean sample)
+    {
+        long latencyNanos = nanoTime.getAsLong() - permit.startNanos;
+
+        lock.lock();
+        try
+        {
+            //Only a saturated limit says anything about whether the limit could be higher
+            boolean saturated = inFlight >= currentLimit();
+            inFlight--;
+
+            if (sample && latencyNanos < USER_INTERACTION_LATENCY.toNanos())
+            {
+                int oldLimit = currentLimit();
+                adjustLimit(latencyNanos, saturated);
+                if (currentLimit() != oldLimit)
+                {
+                    permit.log.debug("KeepassXC request limit changed from " + oldLimit + " to " + currentLimit() + " - latency " +
+                                     TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms, idle latency " +
+                                     TimeUnit.NANOSECONDS.toMillis(idleLatencyNanos) + " ms, in flight " + inFlight + ", queued " + waiters.size());
+                }
+            }
+
+            slotAvailable.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void adjustLimit(long latencyNanos, boolean saturated)
+    {
+        if (idleLatencyNanos == 0L || latencyNanos < idleLatencyNanos)
+            idleLatencyNanos = latencyNanos;
+        else
+            idleLatencyNanos += (latencyNanos - idleLatencyNanos) / 100L;
+
+        if (latencyNanos > idleLatencyNanos * LATENCY_TOLERANCE)
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+        else if (saturated)
+            limit = Math.min(MAX_LIMIT, limit + 1.0 / limit);
+    }
+
+    /**
+     * Permission to send a request to KeepassXC.
+     */
+    public class Permit implements AutoCloseable
+    {
+        private final Logger log;
+        private final long startNanos;
+        private boolean completed;
+        private boolean released;
+
+        private Permit(Logger log, long startNanos)
+        {
+            this.log = log;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Marks the request as having succeeded, so that its latency is used for adjusting the limit.  Requests
+         * that fail, such as when the connection is closed or KeepassXC reports an error, are not used.
+         */
+        public void completed()
+        {
+            completed = true;
+        }
+
+        @Override
+        public void close()
+        {
+            if (released)
+                return;
+
+            released = true;
+            release(this, completed);
+        }
+    }
+}
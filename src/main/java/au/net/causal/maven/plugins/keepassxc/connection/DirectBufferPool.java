@@ -0,0 +1,63 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A small pool of direct byte buffers used for reading and writing socket messages, so that each request does not allocate new native
+ * memory.
+ */
+class DirectBufferPool
+{
+    /**
+     * Size of pooled buffers.  Large enough for typical KeepassXC messages, larger messages use temporary heap buffers.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of idle buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool();
+
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    /**
+     * @return the pool shared by all socket clients.
+     */
+    static DirectBufferPool shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if the pool is empty.
+     *
+     * @return a cleared buffer of {@link #BUFFER_SIZE} bytes.
+     */
+    synchronized ByteBuffer acquire()
+    {
+        ByteBuffer buffer = buffers.pollFirst();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.  Buffers that did not come from this pool are ignored.
+     *
+     * @param buffer the buffer to return.  May be null.
+     */
+    synchronized void release(ByteBuffer buffer)
+    {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE)
+            return;
+
+        if (buffers.size() < MAX_POOLED_BUFFERS)
+            buffers.addFirst(buffer);
+    }
+}
@@ -0,0 +1,95 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import org.purejava.KeepassProxyAccessException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exchanges messages with KeepassXC's browser integration on behalf of a {@link KeepassProxy}.  Each method call is one request/response
+ * round trip with KeepassXC, apart from {@link #associate()} which also waits for the user to accept the association.
+ * <p>
+ *
+ * Implementations do not need to be safe for concurrent use, the proxy serializes calls.  The exception is {@link #getLogins(String, String,
+ * boolean, List) getLogins()} on clients that {@linkplain #supportsConcurrentRequests() support concurrent requests}, which the proxy may
+ * call from several threads at once.
+ *
+ * @see KeepassProxy
+ */
+public interface KeepassClient extends AutoCloseable
+{
+    /**
+     * Connects to KeepassXC and exchanges session keys.
+     *
+     * @throws IOException if KeepassXC is not running or the key exchange fails.
+     */
+    public void connect()
+    throws IOException;
+
+    /**
+     * Asks KeepassXC to associate with a new identity key, which prompts the user to accept the association.  A successful association is
+     * saved to the client's credentials store.
+     *
+     * @throws IOException if an error occurs communicating with KeepassXC.
+     * @throws KeepassProxyAccessException if KeepassXC does not accept the association.
+     */
+    public void associate()
+    throws IOException, KeepassProxyAccessException;
+
+    /**
+     * @return the ID of the current association, or null if there is none.
+     */
+    public String getAssociateId();
+
+    /**
+     * @return the identity public key of the current association, base64 encoded, or null if there is none.
+     */
+    public String getIdKeyPairPublicKey();
+
+    /**
+     * Tests whether KeepassXC accepts an association.
+     *
+     * @param id the association ID.
+     * @param key the association's identity public key, base64 encoded.
+     *
+     * @throws IOException if an error occurs communicating with KeepassXC.
+     * @throws KeepassProxyAccessException if KeepassXC does not accept the association, for example if the database is locked.
+     */
+    public void testAssociate(String id, String key)
+    throws IOException, KeepassProxyAccessException;
+
+    /**
+     * Reads logins for a URL.
+     *
+     * @param url the URL to read logins for.
+     * @param submitUrl optional submit URL.  May be null.
+     * @param httpAuth whether to include entries only intended for HTTP authentication.
+     * @param keys associations to use, each a map with 'id' and 'key' values.
+     *
+     * @return the decrypted response as a map.
+     *
+     * @throws IOException if an error occurs communicating with KeepassXC.
+     * @throws KeepassProxyAccessException if KeepassXC returns an error, including when there are no matching logins.
+     */
+    public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> keys)
+    throws IOException, KeepassProxyAccessException;
+
+    /**
+     * @return true if {@link #getLogins(String, String, boolean, List) getLogins()} may be called from multiple threads at once, with more than
+     *         one request in flight to KeepassXC.  False by default.
+     */
+    public default boolean supportsConcurrentRequests()
+    {
+        return false;
+    }
+
+    /**
+     * Closes the connection.  May be called from another thread to abort a request in progress.
+     *
+     * @throws IOException if an error occurs closing the connection.
+     */
+    @Override
+    public void close()
+    throws IOException;
+}
@@ -1,35 +1,78 @@
 package au.net.causal.maven.plugins.keepassxc.connection;
 
+import au.net.causal.maven.plugins.keepassxc.BuildTrace;
+import au.net.causal.maven.plugins.keepassxc.KeepassClientType;
 import au.net.causal.maven.plugins.keepassxc.KeepassCredentialsStore;
+import au.net.causal.maven.plugins.keepassxc.LookupExecutors;
 import org.apache.commons.lang3.SystemUtils;
 import org.codehaus.plexus.logging.Logger;
-import org.keepassxc.Connection;
-import org.keepassxc.LinuxMacConnection;
-import org.keepassxc.WindowsConnection;
 import org.purejava.Credentials;
 import org.purejava.KeepassProxyAccessException;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Replacement for KeepassProxyAccess that saves configuration in a way more suitable for a Maven extension.
+ * <p>
+ *
+ * Request/response exchanges with KeepassXC are serialized on this proxy, apart from lookups on a client that
+ * {@linkplain KeepassClient#supportsConcurrentRequests() supports concurrent requests}, which are sent without waiting for earlier lookups
+ * to complete.  It is safe to share a single proxy between multiple threads.
+ * <p>
+ *
+ * Messages are exchanged with KeepassXC through a {@link KeepassClient}.  By default this is a {@link LibraryKeepassClient} using
+ * keepassxc-proxy-access.  With the {@linkplain KeepassClientType#SOCKET_CHANNEL socket channel client}, lookups go through a
+ * {@link UnixSocketKeepassClient} and keepassxc-proxy-access is only used to load and save the association and to associate with KeepassXC
+ * when there is no usable association.
+ * <p>
+ *
+ * Lookups also go through an {@link AdaptiveRequestLimiter}, which can be shared between proxies connected to the same KeepassXC so that
+ * together they do not send it more requests at once than it can handle.  With a client that only handles one request at a time, the limit
+ * only matters when several proxies share the limiter.
  *
  * @see org.purejava.KeepassProxyAccess
  */
 public class KeepassProxy implements AutoCloseable
 {
-    private final Connection connection;
-    private final KeepassCredentialsStore credentialsStore;
-    private final CredentialsUpdater credentialsUpdater;
+    private final KeepassClient client;
+
+    /**
+     * Runs asynchronous requests, one at a time unless the client supports concurrent requests.  Requests abandoned by their callers still
+     * run to completion so the connection never has an unread response left on it.
+     */
+    private final ExecutorService requestExecutor;
+
+    /**
+     * Asynchronous requests that have not completed yet.  Requests still queued when the proxy is closed never run, so these are failed on
+     * close to avoid leaving callers waiting for their timeout.
+     */
+    private final Set<CompletableFuture<Map<String, ?>>> pendingRequests = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Asynchronous requests that have been sent to KeepassXC and have not had a response yet.
+     */
+    private final Set<CompletableFuture<Map<String, ?>>> sentRequests = ConcurrentHashMap.newKeySet();
+
+    private final AdaptiveRequestLimiter requestLimiter;
 
     private final Logger log;
 
+    /**
+     * Whether a request to KeepassXC has succeeded since the last {@link #forgetSuccessfulUse()}, which shows that the association is valid
+     * and the database is unlocked.
+     */
+    private volatile boolean usedSuccessfully;
+
     /**
      * Creates the proxy.
      *
@@ -41,59 +84,106 @@ public class KeepassProxy implements AutoCloseable
     public KeepassProxy(KeepassCredentialsStore credentialsStore, Logger log)
     throws IOException
     {
-        this.credentialsStore = Objects.requireNonNull(credentialsStore);
-        this.log = Objects.requireNonNull(log);
+        this(credentialsStore, KeepassClientType.LIBRARY, log);
+    }
 
-        if (SystemUtils.IS_OS_WINDOWS)
-            connection = new WindowsConnection();
-        else
-            connection = new LinuxMacConnection();
+    /**
+     * Creates the proxy.
+     *
+     * @param credentialsStore loads/stores Keepass {@linkplain Credentials} used for accessing Keepass.
+     * @param clientType the client to use for talking to KeepassXC.
+     * @param log logger.
+     *
+     * @throws IOException if an error occurs loading Keepass credentials from the store.
+     */
+    public KeepassProxy(KeepassCredentialsStore credentialsStore, KeepassClientType clientType, Logger log)
+    throws IOException
+    {
+        this(credentialsStore, clientType, new AdaptiveRequestLimiter(), log);
+    }
 
-        credentialsUpdater = new CredentialsUpdater();
-        connection.addPropertyChangeListener(credentialsUpdater);
+    /**
+     * Creates the proxy.
+     *
+     * @param credentialsStore loads/stores Keepass {@linkplain Credentials} used for accessing Keepass.
+     * @param clientType the client to use for talking to KeepassXC.
+     * @param requestLimiter limits lookups in flight to KeepassXC, possibly shared with other proxies.
+     * @param log logger.
+     *
+     * @throws IOException if an error occurs loading Keepass credentials from the store.
+     */
+    public KeepassProxy(KeepassCredentialsStore credentialsStore, KeepassClientType clientType, AdaptiveRequestLimiter requestLimiter, Logger log)
+    throws IOException
+    {
+        this(createClient(credentialsStore, clientType, log), requestLimiter, log);
+    }
+
+    /**
+     * Creates a proxy that talks to KeepassXC through a given client.
+     *
+     * @param client the client used for talking to KeepassXC.  Closed when the proxy is closed.
+     * @param requestLimiter limits lookups in flight to KeepassXC, possibly shared with other proxies.
+     * @param log logger.
+     */
+    public KeepassProxy(KeepassClient client, AdaptiveRequestLimiter requestLimiter, Logger log)
+    {
+        this.client = Objects.requireNonNull(client);
+        this.requestLimiter = Objects.requireNonNull(requestLimiter);
+        this.log = Objects.requireNonNull(log);
 
-        connection.setCredentials(Optional.ofNullable(credentialsStore.loadCredentials()));
+        int maxConcurrentRequests = client.supportsConcurrentRequests() ? AdaptiveRequestLimiter.MAX_LIMIT : 1;
+        requestExecutor = LookupExecutors.newBoundedExecutor(maxConcurrentRequests, "keepassxc-proxy-");
     }
 
-    private void handleConnectionCredentialsUpdate(Credentials credentials)
+    private static KeepassClient createClient(KeepassCredentialsStore credentialsStore, KeepassClientType clientType, Logger log)
+    throws IOException
     {
-        try
-        {
-            credentialsStore.saveCredentials(credentials);
-        }
-        catch (IOException e)
-        {
-            log.error("Error saving KeepassXC pairing credentials to file: " + e.getMessage(), e);
+        LibraryKeepassClient libraryClient = new LibraryKeepassClient(credentialsStore, log);
 
-            //Couldn't save, don't throw runtimeexception because that stops entire decryptor from working
-        }
+        //KeepassXC uses a named pipe on Windows which a Unix domain socket channel can't talk to
+        if (clientType == KeepassClientType.SOCKET_CHANNEL && !SystemUtils.IS_OS_WINDOWS)
+            return new UnixSocketKeepassClient(libraryClient, log);
+        else
+            return libraryClient;
     }
 
+    /**
+     * Closes the connection.  Not synchronized so that a connection with a request stuck waiting on KeepassXC can still be closed, which
+     * also unblocks that request.
+     */
     @Override
     public void close()
     {
-        connection.removePropertyChangeListener(credentialsUpdater);
+        requestExecutor.shutdownNow();
+        for (CompletableFuture<Map<String, ?>> pendingRequest : pendingRequests)
+        {
+            pendingRequest.completeExceptionally(new IOException("KeepassXC connection closed"));
+        }
+
         try
         {
-            connection.close();
+            client.close();
         }
-        catch (Exception e)
+        catch (IOException e)
         {
             throw new RuntimeException("Error closing Keepass connection: " + e, e);
         }
     }
 
-    public void connect()
+    public synchronized void connect()
     throws IOException
     {
-        connection.connect();
+        try (BuildTrace.Span span = BuildTrace.span("keepassxc-proxy", "connect"))
+        {
+            client.connect();
+        }
     }
 
-    public boolean associate()
+    public synchronized boolean associate()
     {
-        try
+        try (BuildTrace.Span span = BuildTrace.span("keepassxc-proxy", "associate"))
         {
-            connection.associate();
+            client.associate();
             return true;
         }
         catch (IOException | KeepassProxyAccessException e)
@@ -104,48 +194,214 @@ public class KeepassProxy implements AutoCloseable
         }
     }
 
-    public boolean connectionAvailable()
+    /**
+     * @return true if there is an association with KeepassXC, either loaded from the credentials store or just made.  KeepassXC might no
+     *         longer know about it, which {@link #connectionAvailable()} checks.
+     */
+    public synchronized boolean hasAssociation()
     {
-        String publicKey = connection.getIdKeyPairPublicKey();
+        String publicKey = client.getIdKeyPairPublicKey();
         if (publicKey == null || publicKey.isEmpty())
             return false;
 
-        String associateId = connection.getAssociateId();
-        if (associateId == null || associateId.isEmpty())
+        String associateId = client.getAssociateId();
+        return associateId != null && !associateId.isEmpty();
+    }
+
+    public synchronized boolean connectionAvailable()
+    {
+        if (!hasAssociation())
             return false;
 
-        try
+        String publicKey = client.getIdKeyPairPublicKey();
+        String associateId = client.getAssociateId();
+
+        try (BuildTrace.Span span = BuildTrace.span("keepassxc-proxy", "test-associate"))
         {
-            connection.testAssociate(connection.getAssociateId(), connection.getIdKeyPairPublicKey());
+            client.testAssociate(associateId, publicKey);
         }
         catch (IOException | KeepassProxyAccessException e)
         {
             return false;
         }
 
+        usedSuccessfully = true;
         return true;
     }
 
+    /**
+     * @return true if a request to KeepassXC has succeeded on this connection since {@link #forgetSuccessfulUse()} was last called.
+     */
+    public boolean isUsedSuccessfully()
+    {
+        return usedSuccessfully;
+    }
+
+    /**
+     * Forgets that requests to KeepassXC have succeeded on this connection, so that its usability is checked again.
+     */
+    public void forgetSuccessfulUse()
+    {
+        usedSuccessfully = false;
+    }
+
+    /**
+     * Returns the association for sending with get-logins requests.  Does not wait for the proxy's lock, so that a lookup is not held up
+     * without a timeout behind a request that KeepassXC has not responded to.
+     *
+     * @return the association ID and public key.
+     */
     public Map<String, String> exportConnection()
     {
-        return Map.of("id", connection.getAssociateId(),
-                      "key", connection.getIdKeyPairPublicKey());
+        return Map.of("id", client.getAssociateId(),
+                      "key", client.getIdKeyPairPublicKey());
     }
 
+    /**
+     * Reads logins from KeepassXC, waiting first if the request limiter does not allow another request to KeepassXC yet.
+     *
+     * @throws IOException if an error occurs talking to KeepassXC, or if interrupted while waiting.
+     * @throws KeepassProxyAccessException if KeepassXC responds with an error.
+     */
     public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> list)
     throws IOException, KeepassProxyAccessException
     {
-        var result = connection.getLogins(url, submitUrl, httpAuth, list);
-        return result.toMap();
+        return getLogins(url, submitUrl, httpAuth, list, null);
+    }
+
+    /**
+     * Reads logins from KeepassXC, waiting first if the request limiter does not allow another request to KeepassXC yet.
+     *
+     * @param asyncRequest the future of an asynchronous request, which is not sent if it has been cancelled by the time it is its turn to be
+     *                     sent, or null for a synchronous request.
+     */
+    private Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> list,
+                                     CompletableFuture<Map<String, ?>> asyncRequest)
+    throws IOException, KeepassProxyAccessException
+    {
+        //Wait outside the proxy's lock so that other operations on this proxy are not held up by requests to other proxies
+        AdaptiveRequestLimiter.Permit permit;
+        try (BuildTrace.Span span = BuildTrace.span("keepassxc-proxy", "wait-for-request-slot"))
+        {
+            permit = requestLimiter.acquire(log);
+            span.arg("limit", requestLimiter.getLimit());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to send request to KeepassXC");
+        }
+
+        try (permit)
+        {
+            Map<String, ?> logins = requestLogins(url, submitUrl, httpAuth, list, asyncRequest);
+            permit.completed();
+            usedSuccessfully = true;
+            return logins;
+        }
+    }
+
+    private Map<String, ?> requestLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> list,
+                                         CompletableFuture<Map<String, ?>> asyncRequest)
+    throws IOException, KeepassProxyAccessException
+    {
+        if (client.supportsConcurrentRequests())
+            return sendGetLogins(url, submitUrl, httpAuth, list, asyncRequest);
+
+        synchronized (this)
+        {
+            return sendGetLogins(url, submitUrl, httpAuth, list, asyncRequest);
+        }
     }
 
-    private class CredentialsUpdater implements PropertyChangeListener
+    private Map<String, ?> sendGetLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> list,
+                                         CompletableFuture<Map<String, ?>> asyncRequest)
+    throws IOException, KeepassProxyAccessException
     {
-        @Override
-        public void propertyChange(PropertyChangeEvent ev)
+        if (asyncRequest != null)
+        {
+            //Abandoned by the caller while waiting for its turn, so don't add to KeepassXC's backlog
+            if (asyncRequest.isDone())
+                throw new CancellationException("Request for " + url + " abandoned before it was sent to KeepassXC");
+
+            sentRequests.add(asyncRequest);
+        }
+
+        try (BuildTrace.Span span = BuildTrace.span("keepassxc-proxy", "get-logins").arg("url", url))
+        {
+            return client.getLogins(url, submitUrl, httpAuth, list);
+        }
+        finally
         {
-            @SuppressWarnings("unchecked") Optional<Credentials> credentials = (Optional<Credentials>)ev.getNewValue();
-            credentials.ifPresent(KeepassProxy.this::handleConnectionCredentialsUpdate);
+            if (asyncRequest != null)
+                sentRequests.remove(asyncRequest);
         }
     }
+
+    /**
+     * Asynchronously reads logins from KeepassXC.  Unless the client supports concurrent requests, the request is queued behind any other
+     * asynchronous request on this proxy.
+     * <p>
+     *
+     * A caller that no longer wants the result may cancel the returned future.  If the request has not been sent yet, including when it is
+     * waiting for the request limiter or for an earlier request, it is never sent.  If it has been sent, it is still allowed to complete and
+     * its response is discarded, so that the connection stays in a consistent state.  {@link #isAwaitingResponse(CompletableFuture)} tells
+     * the two apart.
+     *
+     * @return a future that completes with the result, or exceptionally with an {@link IOException} or {@link KeepassProxyAccessException}.
+     *
+     * @throws RejectedExecutionException if the proxy has been closed.
+     *
+     * @see #getLogins(String, String, boolean, List)
+     */
+    public CompletableFuture<Map<String, ?>> getLoginsAsync(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> list)
+    {
+        CompletableFuture<Map<String, ?>> request = new CompletableFuture<>();
+        pendingRequests.add(request);
+        request.whenComplete((result, ex) -> pendingRequests.remove(request));
+
+        try
+        {
+            requestExecutor.execute(() ->
+            {
+                //Cancelled while still queued
+                if (request.isDone())
+                    return;
+
+                try
+                {
+                    request.complete(getLogins(url, submitUrl, httpAuth, list, request));
+                }
+                catch (IOException | KeepassProxyAccessException | RuntimeException e)
+                {
+                    request.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            pendingRequests.remove(request);
+            throw e;
+        }
+
+        //Closed between submitting and registering, the request may have been dropped without close seeing it
+        if (requestExecutor.isShutdown())
+            request.completeExceptionally(new IOException("KeepassXC connection closed"));
+
+        return request;
+    }
+
+    /**
+     * Returns whether an asynchronous request has been sent to KeepassXC and is still waiting for its response.  A request that has timed out
+     * while in this state means KeepassXC has stopped answering on this connection, and since responses arrive in order any later request on
+     * the connection would be stuck behind it.
+     *
+     * @param request a request made with {@link #getLoginsAsync(String, String, boolean, List)}.
+     *
+     * @return true if the request was sent and has not had a response yet.
+     */
+    public boolean isAwaitingResponse(CompletableFuture<Map<String, ?>> request)
+    {
+        return sentRequests.contains(request);
+    }
 }
@@ -0,0 +1,138 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassCredentialsStore;
+import org.apache.commons.lang3.SystemUtils;
+import org.codehaus.plexus.logging.Logger;
+import org.keepassxc.Connection;
+import org.keepassxc.LinuxMacConnection;
+import org.keepassxc.WindowsConnection;
+import org.purejava.Credentials;
+import org.purejava.KeepassProxyAccessException;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Talks to KeepassXC through keepassxc-proxy-access's connection.  The association is loaded from a credentials store when the client is
+ * created, and saved back to the store whenever the library makes a new one.
+ */
+public class LibraryKeepassClient implements KeepassClient
+{
+    private final Connection connection;
+    private final KeepassCredentialsStore credentialsStore;
+    private final CredentialsUpdater credentialsUpdater;
+    private final Logger log;
+
+    /**
+     * Creates the client.  No connection is made until {@link #connect()} is called.
+     *
+     * @param credentialsStore loads/stores Keepass {@linkplain Credentials} used for accessing Keepass.
+     * @param log logger.
+     *
+     * @throws IOException if an error occurs loading Keepass credentials from the store.
+     */
+    public LibraryKeepassClient(KeepassCredentialsStore credentialsStore, Logger log)
+    throws IOException
+    {
+        this.credentialsStore = Objects.requireNonNull(credentialsStore);
+        this.log = Objects.requireNonNull(log);
+
+        if (SystemUtils.IS_OS_WINDOWS)
+            connection = new WindowsConnection();
+        else
+            connection = new LinuxMacConnection();
+
+        credentialsUpdater = new CredentialsUpdater();
+        connection.addPropertyChangeListener(credentialsUpdater);
+
+        connection.setCredentials(Optional.ofNullable(credentialsStore.loadCredentials()));
+    }
+
+    private void handleConnectionCredentialsUpdate(Credentials credentials)
+    {
+        try
+        {
+            credentialsStore.saveCredentials(credentials);
+        }
+        catch (IOException e)
+        {
+            log.error("Error saving KeepassXC pairing credentials to file: " + e.getMessage(), e);
+
+            //Couldn't save, don't throw runtimeexception because that stops entire decryptor from working
+        }
+    }
+
+    @Override
+    public void connect()
+    throws IOException
+    {
+        connection.connect();
+    }
+
+    @Override
+    public void associate()
+    throws IOException, KeepassProxyAccessException
+    {
+        connection.associate();
+    }
+
+    @Override
+    public String getAssociateId()
+    {
+        return connection.getAssociateId();
+    }
+
+    @Override
+    public String getIdKeyPairPublicKey()
+    {
+        return connection.getIdKeyPairPublicKey();
+    }
+
+    @Override
+    public void testAssociate(String id, String key)
+    throws IOException, KeepassProxyAccessException
+    {
+        connection.testAssociate(id, key);
+    }
+
+    @Override
+    public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> keys)
+    throws IOException, KeepassProxyAccessException
+    {
+        return connection.getLogins(url, submitUrl, httpAuth, keys).toMap();
+    }
+
+    @Override
+    public void close()
+    throws IOException
+    {
+        connection.removePropertyChangeListener(credentialsUpdater);
+        try
+        {
+            connection.close();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Error closing Keepass connection: " + e, e);
+        }
+    }
+
+    private class CredentialsUpdater implements PropertyChangeListener
+    {
+        @Override
+        public void propertyChange(PropertyChangeEvent ev)
+        {
+            @SuppressWarnings("unchecked") Optional<Credentials> credentials = (Optional<Credentials>)ev.getNewValue();
+            credentials.ifPresent(LibraryKeepassClient.this::handleConnectionCredentialsUpdate);
+        }
+    }
+}
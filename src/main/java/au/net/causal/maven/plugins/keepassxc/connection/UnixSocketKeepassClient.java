@@ -0,0 +1,626 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import com.iwebpp.crypto.TweetNaclFast;
+import org.codehaus.plexus.logging.Logger;
+import org.json.JSONObject;
+import org.purejava.KeepassProxyAccessException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Talks to KeepassXC's browser integration socket directly using a {@link SocketChannel} on a Unix domain socket, as a lighter weight
+ * alternative to keepassxc-proxy-access's connection.
+ * <p>
+ *
+ * The wire protocol is the same as that used by the KeepassXC browser extension and keepassxc-proxy-access, so an association made by
+ * either can be used by this client.  Compared to the library's connection, this client:
+ * <ul>
+ *     <li>precomputes the NaCl shared key once after the key exchange instead of for every message</li>
+ *     <li>reads from and writes to the socket through pooled direct buffers</li>
+ *     <li>writes requests as JSON text directly instead of building JSON objects</li>
+ *     <li>does not need a separate thread for reading responses</li>
+ * </ul>
+ *
+ * Each message still allocates: the request text, base64 encoding, encryption, and the parsed JSON response and its map.  How the two
+ * clients compare in time and allocation per lookup can be measured with {@code KeepassClientBenchmark} in the test sources.
+ *
+ * This client cannot associate with KeepassXC itself.  Associating, and loading and saving the association, is left to another client,
+ * normally a {@link LibraryKeepassClient}, and this client uses the association it holds.  Only Linux and macOS are supported since KeepassXC
+ * uses a named pipe on Windows.
+ * <p>
+ *
+ * Requests may be sent from multiple threads at once.  Each request is written as soon as it is made, without waiting for responses to
+ * earlier requests, and KeepassXC answers them in the order they were sent.  Each response is matched to its request by action in that
+ * order, and its nonce is checked against the one expected for the request.  {@link #close()} may be called from another thread to abort
+ * requests in progress.
+ */
+public class UnixSocketKeepassClient implements KeepassClient
+{
+    static final String SOCKET_NAME = "org.keepassxc.KeePassXC.BrowserServer";
+
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+    private final KeepassClient associationClient;
+    private final List<Path> socketPaths;
+    private final Logger log;
+    private final String clientId;
+    private final DirectBufferPool bufferPool = DirectBufferPool.shared();
+
+    /**
+     * Guards sending requests: the nonce, the write buffer and writing to the channel.  When both locks are needed, this one is taken first.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Guards reading responses: the read buffer and reading from the channel.
+     */
+    private final Object readLock = new Object();
+
+    /**
+     * Requests that have been sent and are waiting for their response, in the order they were sent.
+     */
+    private final Deque<PendingResponse> pendingResponses = new ArrayDeque<>();
+
+    private volatile SocketChannel channel;
+
+    /**
+     * Box holding the shared key precomputed from our session secret key and KeepassXC's session public key.
+     */
+    private volatile TweetNaclFast.Box box;
+
+    /**
+     * Nonce for the next request.  Each response uses the request nonce incremented by one, so requests advance the nonce by two.
+     */
+    private byte[] nonce;
+
+    /**
+     * Holds bytes read from the socket that have not been consumed yet.  Always in write mode, with data between zero and the position.
+     */
+    private ByteBuffer readBuffer;
+
+    private ByteBuffer writeBuffer;
+
+    /**
+     * Creates a client.  No connection is made until {@link #connect()} is called.
+     *
+     * @param associationClient holds the association and is used for associating with KeepassXC.  It is only connected when associating.
+     * @param log logger.
+     */
+    public UnixSocketKeepassClient(KeepassClient associationClient, Logger log)
+    {
+        this(associationClient, socketPathCandidates(), log);
+    }
+
+    /**
+     * Creates a client that looks for KeepassXC's browser socket in specific places.
+     *
+     * @param associationClient holds the association and is used for associating with KeepassXC.  It is only connected when associating.
+     * @param socketPaths the places KeepassXC's browser socket might be, in order of preference.
+     * @param log logger.
+     */
+    UnixSocketKeepassClient(KeepassClient associationClient, List<Path> socketPaths, Logger log)
+    {
+        this.associationClient = Objects.requireNonNull(associationClient);
+        this.socketPaths = List.copyOf(socketPaths);
+        this.log = Objects.requireNonNull(log);
+        this.clientId = BASE64_ENCODER.encodeToString(TweetNaclFast.randombytes(TweetNaclFast.Box.nonceLength));
+    }
+
+    /**
+     * @return the places KeepassXC's browser socket might be, in order of preference.
+     */
+    static List<Path> socketPathCandidates()
+    {
+        List<Path> candidates = new ArrayList<>();
+
+        //Linux, with newer KeepassXC versions using a subdirectory that also works when KeepassXC is sandboxed
+        String xdgRuntimeDir = System.getenv("XDG_RUNTIME_DIR");
+        if (xdgRuntimeDir != null && !xdgRuntimeDir.isEmpty())
+        {
+            candidates.add(Path.of(xdgRuntimeDir, "app", "org.keepassxc.KeePassXC", SOCKET_NAME));
+            candidates.add(Path.of(xdgRuntimeDir, SOCKET_NAME));
+        }
+
+        //macOS, and Linux without a runtime directory
+        String tmpDir = System.getenv("TMPDIR");
+        if (tmpDir != null && !tmpDir.isEmpty())
+            candidates.add(Path.of(tmpDir, SOCKET_NAME));
+        candidates.add(Path.of(System.getProperty("java.io.tmpdir"), SOCKET_NAME));
+
+        return candidates;
+    }
+
+    @Override
+    public void connect()
+    throws IOException
+    {
+        synchronized (writeLock)
+        {
+            synchronized (readLock)
+            {
+                connectChannel();
+            }
+        }
+    }
+
+    private void connectChannel()
+    throws IOException
+    {
+        closeChannel();
+
+        Path socketPath = socketPaths.stream()
+                                                .filter(Files::exists)
+                                                .findFirst()
+                                                .orElseThrow(() -> new IOException("KeepassXC browser integration socket not found, is KeepassXC running?"));
+
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try
+        {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+        this.channel = channel;
+
+        if (readBuffer == null)
+            readBuffer = bufferPool.acquire();
+        readBuffer.clear();
+        if (writeBuffer == null)
+            writeBuffer = bufferPool.acquire();
+
+        TweetNaclFast.Box.KeyPair sessionKeyPair = TweetNaclFast.Box.keyPair();
+        nonce = TweetNaclFast.randombytes(TweetNaclFast.Box.nonceLength);
+
+        StringBuilder request = new StringBuilder(192);
+        request.append("{\"action\":\"change-public-keys\",\"publicKey\":\"").append(BASE64_ENCODER.encodeToString(sessionKeyPair.getPublicKey()))
+               .append("\",\"nonce\":\"").append(BASE64_ENCODER.encodeToString(nonce))
+               .append("\",\"clientID\":\"").append(clientId).append("\"}");
+        PendingResponse pending = send("change-public-keys", request);
+
+        JSONObject response = awaitResponse(pending);
+        if (!"true".equals(response.optString("success")))
+            throw new IOException("KeepassXC key exchange failed: " + response.optString("error", "no error given"));
+
+        byte[] serverPublicKey = BASE64_DECODER.decode(response.optString("publicKey"));
+        TweetNaclFast.Box box = new TweetNaclFast.Box(serverPublicKey, sessionKeyPair.getSecretKey());
+        box.before();
+        this.box = box;
+        incrementNonce(nonce, 2);
+
+        log.debug("Connected to KeepassXC at " + socketPath);
+    }
+
+    /**
+     * Associates through the association client, which makes its own connection to KeepassXC for this.
+     */
+    @Override
+    public void associate()
+    throws IOException, KeepassProxyAccessException
+    {
+        associationClient.connect();
+        associationClient.associate();
+    }
+
+    @Override
+    public String getAssociateId()
+    {
+        return associationClient.getAssociateId();
+    }
+
+    @Override
+    public String getIdKeyPairPublicKey()
+    {
+        return associationClient.getIdKeyPairPublicKey();
+    }
+
+    @Override
+    public void testAssociate(String id, String key)
+    throws IOException, KeepassProxyAccessException
+    {
+        StringBuilder message = new StringBuilder(128);
+        message.append("{\"action\":\"test-associate\",\"id\":");
+        appendJsonString(message, id);
+        message.append(",\"key\":");
+        appendJsonString(message, key);
+        message.append('}');
+
+        sendEncrypted("test-associate", message);
+    }
+
+    @Override
+    public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> keys)
+    throws IOException, KeepassProxyAccessException
+    {
+        StringBuilder message = new StringBuilder(256);
+        message.append("{\"action\":\"get-logins\",\"url\":");
+        appendJsonString(message, url);
+        if (submitUrl != null)
+        {
+            message.append(",\"submitUrl\":");
+            appendJsonString(message, submitUrl);
+        }
+        message.append(",\"httpAuth\":").append(httpAuth);
+        message.append(",\"keys\":[");
+        for (int i = 0; i < keys.size(); i++)
+        {
+            if (i > 0)
+                message.append(',');
+            message.append('{');
+            boolean first = true;
+            for (Map.Entry<String, String> keyEntry : keys.get(i).entrySet())
+            {
+                if (!first)
+                    message.append(',');
+                appendJsonString(message, keyEntry.getKey());
+                message.append(':');
+                appendJsonString(message, keyEntry.getValue());
+                first = false;
+            }
+            message.append('}');
+        }
+        message.append("]}");
+
+        return sendEncrypted("get-logins", message).toMap();
+    }
+
+    /**
+     * @return true, since requests are pipelined.
+     */
+    @Override
+    public boolean supportsConcurrentRequests()
+    {
+        return true;
+    }
+
+    /**
+     * Encrypts and sends a message and waits for its response.  Other requests may be sent while waiting.
+     *
+     * @param action the message action.
+     * @param message the unencrypted message JSON.
+     *
+     * @return the decrypted response.
+     */
+    private JSONObject sendEncrypted(String action, CharSequence message)
+    throws IOException, KeepassProxyAccessException
+    {
+        PendingResponse pending;
+        byte[] expectedResponseNonce;
+        TweetNaclFast.Box box;
+        synchronized (writeLock)
+        {
+            box = this.box;
+            if (channel == null || box == null)
+                throw new IOException("Not connected to KeepassXC");
+
+            byte[] plain = message.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] encrypted = box.after(plain, 0, plain.length, nonce);
+            //Don't keep secrets around any longer than needed
+            Arrays.fill(plain, (byte)0);
+
+            StringBuilder request = new StringBuilder(encrypted.length * 4 / 3 + 128);
+            request.append("{\"action\":\"").append(action)
+                   .append("\",\"message\":\"").append(BASE64_ENCODER.encodeToString(encrypted))
+                   .append("\",\"nonce\":\"").append(BASE64_ENCODER.encodeToString(nonce))
+                   .append("\",\"clientID\":\"").append(clientId).append("\"}");
+            pending = send(action, request);
+
+            expectedResponseNonce = nonce.clone();
+            incrementNonce(expectedResponseNonce, 1);
+            incrementNonce(nonce, 2);
+        }
+
+        JSONObject response = awaitResponse(pending);
+        if (response.has("error"))
+            throw new KeepassProxyAccessException(response.optString("error") + " (error code " + response.optString("errorCode") + ")");
+
+        byte[] responseNonce = BASE64_DECODER.decode(response.optString("nonce"));
+        if (!Arrays.equals(expectedResponseNonce, responseNonce))
+            throw new IOException("Unexpected nonce in KeepassXC response");
+
+        byte[] encryptedResponse = BASE64_DECODER.decode(response.optString("message"));
+        byte[] decryptedResponse = box.open_after(encryptedResponse, 0, encryptedResponse.length, responseNonce);
+        if (decryptedResponse == null)
+            throw new IOException("Failed to decrypt KeepassXC response");
+
+        JSONObject result = new JSONObject(new String(decryptedResponse, StandardCharsets.UTF_8));
+        Arrays.fill(decryptedResponse, (byte)0);
+        return result;
+    }
+
+    /**
+     * Registers a request as waiting for a response and writes it.  Must be called holding the write lock.
+     */
+    private PendingResponse send(String action, CharSequence request)
+    throws IOException
+    {
+        PendingResponse pending = new PendingResponse(action);
+
+        //Registered before writing so that the response can't arrive before anyone is waiting for it
+        synchronized (pendingResponses)
+        {
+            pendingResponses.addLast(pending);
+        }
+
+        try
+        {
+            write(request);
+        }
+        catch (IOException e)
+        {
+            synchronized (pendingResponses)
+            {
+                pendingResponses.remove(pending);
+            }
+            throw e;
+        }
+
+        return pending;
+    }
+
+    /**
+     * Reads messages until the response to a request arrives.  Responses to other requests that are read along the way are handed to
+     * their requests.
+     */
+    private JSONObject awaitResponse(PendingResponse pending)
+    throws IOException
+    {
+        synchronized (readLock)
+        {
+            while (pending.response == null)
+            {
+                if (readBuffer == null)
+                    throw new IOException("Not connected to KeepassXC");
+
+                dispatch(new JSONObject(readMessage()));
+            }
+            return pending.response;
+        }
+    }
+
+    /**
+     * Hands a message to the oldest request waiting for a response with the same action.  KeepassXC also sends notifications, such as when a
+     * database is locked, to all connected clients and these are skipped.  Must be called holding the read lock.
+     */
+    private void dispatch(JSONObject message)
+    {
+        String messageAction = message.optString("action");
+        synchronized (pendingResponses)
+        {
+            for (Iterator<PendingResponse> i = pendingResponses.iterator(); i.hasNext(); )
+            {
+                PendingResponse pending = i.next();
+                if (pending.action.equals(messageAction))
+                {
+                    i.remove();
+                    pending.response = message;
+                    return;
+                }
+            }
+        }
+
+        log.debug("Ignoring KeepassXC message with action '" + messageAction + "' that no request is waiting for");
+    }
+
+    /**
+     * Writes a message through the pooled write buffer.  Messages are always ASCII since anything else is either base64 encoded or escaped.
+     */
+    private void write(CharSequence message)
+    throws IOException
+    {
+        SocketChannel channel = this.channel;
+        int length = message.length();
+        int index = 0;
+        while (index < length)
+        {
+            writeBuffer.clear();
+            while (index < length && writeBuffer.hasRemaining())
+            {
+                writeBuffer.put((byte)message.charAt(index));
+                index++;
+            }
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining())
+            {
+                channel.write(writeBuffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a single JSON message from the socket.  KeepassXC does not frame messages, so the end of a message is found by matching braces.
+     */
+    private String readMessage()
+    throws IOException
+    {
+        SocketChannel channel = this.channel;
+        while (true)
+        {
+            int messageEnd = findMessageEnd(readBuffer);
+            if (messageEnd >= 0)
+            {
+                ByteBuffer data = readBuffer.duplicate();
+                data.flip().limit(messageEnd);
+                String message = StandardCharsets.UTF_8.decode(data).toString();
+
+                //Keep any bytes of the next message
+                readBuffer.flip().position(messageEnd);
+                readBuffer.compact();
+                return message;
+            }
+
+            if (!readBuffer.hasRemaining())
+                readBuffer = grow(readBuffer);
+
+            if (channel.read(readBuffer) < 0)
+                throw new EOFException("KeepassXC closed the connection");
+        }
+    }
+
+    /**
+     * Finds the end of the first complete JSON object in a buffer.
+     *
+     * @param buffer buffer in write mode, holding data from zero up to its position.
+     *
+     * @return the index after the closing brace of the first complete object, or -1 if there is no complete object yet.
+     */
+    static int findMessageEnd(ByteBuffer buffer)
+    {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        int end = buffer.position();
+        for (int i = 0; i < end; i++)
+        {
+            byte b = buffer.get(i);
+            if (inString)
+            {
+                if (escaped)
+                    escaped = false;
+                else if (b == '\\')
+                    escaped = true;
+                else if (b == '"')
+                    inString = false;
+            }
+            else if (b == '"')
+                inString = true;
+            else if (b == '{')
+                depth++;
+            else if (b == '}')
+            {
+                depth--;
+                if (depth == 0)
+                    return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Replaces a full buffer with one twice the size holding the same data.  Only needed for unusually large responses, such as a URL with
+     * many entries, so larger buffers are heap buffers that are not pooled.
+     */
+    ByteBuffer grow(ByteBuffer buffer)
+    {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        bufferPool.release(buffer);
+        return larger;
+    }
+
+    /**
+     * Increments a nonce, treated as a little-endian number, the same way KeepassXC does.
+     */
+    static void incrementNonce(byte[] nonce, int amount)
+    {
+        for (int n = 0; n < amount; n++)
+        {
+            for (int i = 0; i < nonce.length; i++)
+            {
+                nonce[i]++;
+                if (nonce[i] != 0)
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A request waiting for its response.
+     */
+    private static class PendingResponse
+    {
+        private final String action;
+
+        /**
+         * The response, once it has arrived.  Guarded by the read lock.
+         */
+        private JSONObject response;
+
+        public PendingResponse(String action)
+        {
+            this.action = action;
+        }
+    }
+
+    private static void appendJsonString(StringBuilder buf, String s)
+    {
+        buf.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                buf.append('\\').append(c);
+            else if (c < 0x20 || c > 0x7e)
+                buf.append(String.format("\\u%04x", (int)c));
+            else
+                buf.append(c);
+        }
+        buf.append('"');
+    }
+
+    /**
+     * Closes the channel.  Must be called holding both locks.
+     */
+    private void closeChannel()
+    throws IOException
+    {
+        SocketChannel channel = this.channel;
+        this.channel = null;
+        box = null;
+        synchronized (pendingResponses)
+        {
+            pendingResponses.clear();
+        }
+        if (channel != null)
+            channel.close();
+    }
+
+    /**
+     * Closes the connection and the association client.  May be called from another thread to abort a request in progress.
+     */
+    @Override
+    public void close()
+    throws IOException
+    {
+        //Closing the channel first unblocks any request in progress so the locks can be taken
+        SocketChannel channel = this.channel;
+        if (channel != null)
+            channel.close();
+
+        synchronized (writeLock)
+        {
+            synchronized (readLock)
+            {
+                closeChannel();
+                bufferPool.release(readBuffer);
+                bufferPool.release(writeBuffer);
+                readBuffer = null;
+                writeBuffer = null;
+            }
+        }
+
+        associationClient.close();
+    }
+}
@@ -0,0 +1,62 @@
+package au.net.causal.maven.plugins.keepassxc.kdbx;
+
+import java.util.Map;
+
+/**
+ * An entry read from a KDBX database file.  Entries in history and the recycle bin are not included.
+ */
+public class KdbxEntry
+{
+    private final String title;
+    private final String userName;
+    private final String password;
+    private final String url;
+    private final String group;
+    private final Map<String, String> customFields;
+
+    public KdbxEntry(String title, String userName, String password, String url, String group, Map<String, String> customFields)
+    {
+        this.title = title;
+        this.userName = userName;
+        this.password = password;
+        this.url = url;
+        this.group = group;
+        this.customFields = Map.copyOf(customFields);
+    }
+
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public String getUserName()
+    {
+        return userName;
+    }
+
+    public String getPassword()
+    {
+        return password;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    /**
+     * @return the name of the group the entry is directly in.
+     */
+    public String getGroup()
+    {
+        return group;
+    }
+
+    /**
+     * @return custom attributes of the entry, which are all string fields apart from the standard title, user name, password, URL and notes.
+     */
+    public Map<String, String> getCustomFields()
+    {
+        return customFields;
+    }
+}
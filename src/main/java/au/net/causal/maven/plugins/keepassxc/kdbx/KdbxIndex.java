@@ -0,0 +1,122 @@
+package au.net.causal.maven.plugins.keepassxc.kdbx;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of KDBX database entries by URL host and by title.  Lookups behave like KeepassXC's get-logins request, which matches
+ * entries by host, with entries whose title is exactly the requested name also returned so that non-URL entry names can be used.
+ */
+public class KdbxIndex
+{
+    /**
+     * Custom attributes with this prefix hold additional URLs for an entry, the same as KeepassXC uses.
+     */
+    private static final String ADDITIONAL_URL_FIELD_PREFIX = "KP2A_URL";
+
+    private final Map<String, List<KeepassEntry>> entriesByHost = new HashMap<>();
+    private final Map<String, List<KeepassEntry>> entriesByTitle = new HashMap<>();
+    private final int size;
+
+    /**
+     * Creates an index.
+     *
+     * @param entries entries to index.
+     */
+    public KdbxIndex(Collection<? extends KdbxEntry> entries)
+    {
+        for (KdbxEntry entry : entries)
+        {
+            KeepassEntry keepassEntry = new KeepassEntry(entry.getTitle(), entry.getUserName(), entry.getPassword(), entry.getGroup(), entry.getCustomFields());
+
+            Set<String> hosts = new LinkedHashSet<>();
+            addHost(entry.getUrl(), hosts);
+            entry.getCustomFields().forEach((key, value) ->
+            {
+                if (key.startsWith(ADDITIONAL_URL_FIELD_PREFIX))
+                    addHost(value, hosts);
+            });
+            for (String host : hosts)
+            {
+                entriesByHost.computeIfAbsent(host, k -> new ArrayList<>()).add(keepassEntry);
+            }
+
+            if (entry.getTitle() != null)
+                entriesByTitle.computeIfAbsent(entry.getTitle(), k -> new ArrayList<>()).add(keepassEntry);
+        }
+        this.size = entries.size();
+    }
+
+    private static void addHost(String url, Collection<? super String> hosts)
+    {
+        String host = host(url);
+        if (host != null)
+            hosts.add(host);
+    }
+
+    /**
+     * Finds entries for a URL or title.
+     *
+     * @param name the URL, or the title of an entry.
+     *
+     * @return entries whose URL host matches the URL's host followed by entries with the name as their title, without duplicates.
+     *         Possibly empty.
+     */
+    public List<KeepassEntry> lookup(String name)
+    {
+        Set<KeepassEntry> results = new LinkedHashSet<>();
+
+        String host = host(name);
+        if (host != null)
+            results.addAll(entriesByHost.getOrDefault(host, List.of()));
+
+        results.addAll(entriesByTitle.getOrDefault(name, List.of()));
+
+        return List.copyOf(results);
+    }
+
+    /**
+     * @return the number of entries in the index.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Extracts the lowercased host from a URL.  URLs without a scheme, such as 'myserver.com', are treated as if they had one.
+     *
+     * @param url the URL, may be null.
+     *
+     * @return the host, or null if the URL has none.
+     */
+    private static String host(String url)
+    {
+        if (url == null || url.isBlank())
+            return null;
+
+        String trimmed = url.trim();
+        if (!trimmed.contains("://"))
+            trimmed = "https://" + trimmed;
+
+        try
+        {
+            String host = new URI(trimmed).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        }
+        catch (URISyntaxException e)
+        {
+            return null;
+        }
+    }
+}
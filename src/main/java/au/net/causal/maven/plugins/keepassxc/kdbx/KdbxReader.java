@@ -0,0 +1,534 @@
+package au.net.causal.maven.plugins.keepassxc.kdbx;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads entries from KDBX 4 database files, as written by KeepassXC 2.5 and later, without needing KeepassXC itself.
+ * <p>
+ *
+ * Supports password-protected databases using the Argon2d, Argon2id or AES key derivation functions and the AES-256 or ChaCha20 ciphers.
+ * Argon2 is provided by Bouncy Castle and the ciphers and hashes by the JDK, so this class only parses the KDBX container.
+ * Older KDBX 3 databases, key files and hardware keys are not supported.
+ *
+ * @see <a href="https://keepass.info/help/kb/kdbx_4.html">KDBX 4 format</a>
+ */
+public final class KdbxReader
+{
+    private static final int SIGNATURE_1 = 0x9AA2D903;
+    private static final int SIGNATURE_2 = 0xB54BFB67;
+    private static final int MAJOR_VERSION_4 = 4;
+
+    private static final UUID CIPHER_AES256 = UUID.fromString("31c1f2e6-bf71-4350-be58-05216afc5aff");
+    private static final UUID CIPHER_CHACHA20 = UUID.fromString("d6038a2b-8b6f-4cb5-a524-339a31dbb59a");
+    private static final UUID KDF_AES = UUID.fromString("c9d9f39a-628a-4460-bf74-0d08c18a4fea");
+    private static final UUID KDF_AES_KDBX4 = UUID.fromString("7c02bb82-79a7-4ac0-927d-114a00648238");
+    private static final UUID KDF_ARGON2D = UUID.fromString("ef636ddf-8c29-444b-91f7-a9a403e30a0c");
+    private static final UUID KDF_ARGON2ID = UUID.fromString("9e298b19-56db-4773-b23d-fc3ec6f0a1e6");
+
+    private static final int HEADER_END = 0;
+    private static final int HEADER_CIPHER_ID = 2;
+    private static final int HEADER_COMPRESSION_FLAGS = 3;
+    private static final int HEADER_MASTER_SEED = 4;
+    private static final int HEADER_ENCRYPTION_IV = 7;
+    private static final int HEADER_KDF_PARAMETERS = 11;
+
+    private static final int INNER_HEADER_END = 0;
+    private static final int INNER_HEADER_STREAM_ID = 1;
+    private static final int INNER_HEADER_STREAM_KEY = 2;
+    private static final int INNER_STREAM_CHACHA20 = 3;
+
+    private static final List<String> STANDARD_FIELDS = List.of("Title", "UserName", "Password", "URL", "Notes");
+
+    private KdbxReader()
+    {
+    }
+
+    /**
+     * Reads all entries from a KDBX database file.
+     *
+     * @param file the database file.
+     * @param password the database password.
+     *
+     * @return all entries in the database, excluding those in history and the recycle bin.
+     *
+     * @throws IOException if the file could not be read, is not a supported KDBX file or the password is incorrect.
+     */
+    public static List<KdbxEntry> read(Path file, String password)
+    throws IOException
+    {
+        try (InputStream is = Files.newInputStream(file))
+        {
+            return read(is.readAllBytes(), password);
+        }
+    }
+
+    /**
+     * Reads all entries from KDBX database data.
+     *
+     * @param data the raw database.
+     * @param password the database password.
+     *
+     * @return all entries in the database, excluding those in history and the recycle bin.
+     *
+     * @throws IOException if the data is not a supported KDBX database or the password is incorrect.
+     */
+    public static List<KdbxEntry> read(byte[] data, String password)
+    throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            if (buf.getInt() != SIGNATURE_1 || buf.getInt() != SIGNATURE_2)
+                throw new IOException("Not a KDBX database");
+
+            int version = buf.getInt();
+            int majorVersion = version >>> 16;
+            if (majorVersion != MAJOR_VERSION_4)
+                throw new IOException("Unsupported KDBX version " + majorVersion + "." + (version & 0xFFFF) + ", only KDBX 4 databases are supported");
+
+            //Outer header
+            UUID cipherId = null;
+            boolean compressed = false;
+            byte[] masterSeed = null;
+            byte[] encryptionIv = null;
+            Map<String, Object> kdfParameters = null;
+            int fieldType;
+            do
+            {
+                fieldType = buf.get() & 0xFF;
+                byte[] fieldData = new byte[buf.getInt()];
+                buf.get(fieldData);
+
+                switch (fieldType)
+                {
+                    case HEADER_CIPHER_ID:
+                        cipherId = uuid(fieldData);
+                        break;
+                    case HEADER_COMPRESSION_FLAGS:
+                        compressed = ByteBuffer.wrap(fieldData).order(ByteOrder.LITTLE_ENDIAN).getInt() != 0;
+                        break;
+                    case HEADER_MASTER_SEED:
+                        masterSeed = fieldData;
+                        break;
+                    case HEADER_ENCRYPTION_IV:
+                        encryptionIv = fieldData;
+                        break;
+                    case HEADER_KDF_PARAMETERS:
+                        kdfParameters = readVariantDictionary(fieldData);
+                        break;
+                    default:
+                        //Other fields are not needed for reading
+                        break;
+                }
+            }
+            while (fieldType != HEADER_END);
+
+            if (cipherId == null || masterSeed == null || encryptionIv == null || kdfParameters == null)
+                throw new IOException("KDBX header is incomplete");
+
+            int headerLength = buf.position();
+            byte[] headerHash = new byte[32];
+            buf.get(headerHash);
+            byte[] headerHmac = new byte[32];
+            buf.get(headerHmac);
+
+            if (!MessageDigest.isEqual(headerHash, sha256(Arrays.copyOf(data, headerLength))))
+                throw new IOException("KDBX header is corrupt");
+
+            //Keys
+            byte[] compositeKey = sha256(sha256(password.getBytes(StandardCharsets.UTF_8)));
+            byte[] transformedKey = transformKey(compositeKey, kdfParameters);
+            byte[] encryptionKey = sha256(masterSeed, transformedKey);
+            byte[] hmacBaseKey = sha512(masterSeed, transformedKey, new byte[] {1});
+
+            if (!MessageDigest.isEqual(headerHmac, hmac(blockHmacKey(-1L, hmacBaseKey), Arrays.copyOf(data, headerLength))))
+                throw new IOException("Invalid password for KDBX database (databases that also need a key file are not supported)");
+
+            //Payload blocks, each verified by HMAC
+            ByteArrayOutputStream encryptedPayload = new ByteArrayOutputStream(buf.remaining());
+            for (long blockIndex = 0L; ; blockIndex++)
+            {
+                byte[] blockHmac = new byte[32];
+                buf.get(blockHmac);
+                int blockLength = buf.getInt();
+                byte[] block = new byte[blockLength];
+                buf.get(block);
+
+                ByteBuffer hmacInput = ByteBuffer.allocate(12 + blockLength).order(ByteOrder.LITTLE_ENDIAN);
+                hmacInput.putLong(blockIndex).putInt(blockLength).put(block);
+                if (!MessageDigest.isEqual(blockHmac, hmac(blockHmacKey(blockIndex, hmacBaseKey), hmacInput.array())))
+                    throw new IOException("KDBX payload block " + blockIndex + " is corrupt");
+
+                if (blockLength == 0)
+                    break;
+
+                encryptedPayload.write(block);
+            }
+
+            byte[] payload = decryptPayload(cipherId, encryptionKey, encryptionIv, encryptedPayload.toByteArray());
+            if (compressed)
+            {
+                try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(payload)))
+                {
+                    payload = is.readAllBytes();
+                }
+            }
+
+            //Inner header
+            ByteBuffer inner = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+            int innerStreamId = -1;
+            byte[] innerStreamKey = null;
+            do
+            {
+                fieldType = inner.get() & 0xFF;
+                byte[] fieldData = new byte[inner.getInt()];
+                inner.get(fieldData);
+
+                if (fieldType == INNER_HEADER_STREAM_ID)
+                    innerStreamId = ByteBuffer.wrap(fieldData).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                else if (fieldType == INNER_HEADER_STREAM_KEY)
+                    innerStreamKey = fieldData;
+            }
+            while (fieldType != INNER_HEADER_END);
+
+            if (innerStreamId != INNER_STREAM_CHACHA20 || innerStreamKey == null)
+                throw new IOException("Unsupported KDBX protected value stream " + innerStreamId);
+
+            Document document = parseXml(Arrays.copyOfRange(payload, inner.position(), payload.length));
+            unprotectValues(document, innerStreamKey);
+            return readEntries(document);
+        }
+        catch (RuntimeException e)
+        {
+            //Buffer underflows, bad lengths, etc. from malformed data
+            throw new IOException("Invalid KDBX database: " + e, e);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IOException("Error decrypting KDBX database: " + e, e);
+        }
+    }
+
+    /**
+     * Reads a KDBX variant dictionary, used for key derivation parameters.
+     */
+    private static Map<String, Object> readVariantDictionary(byte[] data)
+    throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int version = buf.getShort() & 0xFFFF;
+        if ((version & 0xFF00) != 0x0100)
+            throw new IOException("Unsupported KDBX variant dictionary version " + Integer.toHexString(version));
+
+        Map<String, Object> values = new HashMap<>();
+        for (int type = buf.get() & 0xFF; type != 0; type = buf.get() & 0xFF)
+        {
+            byte[] name = new byte[buf.getInt()];
+            buf.get(name);
+            byte[] value = new byte[buf.getInt()];
+            buf.get(value);
+            ByteBuffer valueBuf = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+
+            Object parsedValue;
+            switch (type)
+            {
+                case 0x04: //UInt32
+                case 0x0C: //Int32
+                    parsedValue = (long)valueBuf.getInt();
+                    break;
+                case 0x05: //UInt64
+                case 0x0D: //Int64
+                    parsedValue = valueBuf.getLong();
+                    break;
+                case 0x08: //Boolean
+                    parsedValue = value[0] != 0;
+                    break;
+                case 0x18: //String
+                    parsedValue = new String(value, StandardCharsets.UTF_8);
+                    break;
+                default: //Byte array and anything unknown
+                    parsedValue = value;
+                    break;
+            }
+            values.put(new String(name, StandardCharsets.UTF_8), parsedValue);
+        }
+        return values;
+    }
+
+    /**
+     * Runs the database's key derivation function over the composite key.
+     */
+    private static byte[] transformKey(byte[] compositeKey, Map<String, Object> kdfParameters)
+    throws IOException, GeneralSecurityException
+    {
+        UUID kdf = uuid(byteArrayParameter(kdfParameters, "$UUID"));
+        if (KDF_ARGON2D.equals(kdf) || KDF_ARGON2ID.equals(kdf))
+        {
+            int version = Math.toIntExact(longParameter(kdfParameters, "V"));
+            if (version != Argon2Parameters.ARGON2_VERSION_10 && version != Argon2Parameters.ARGON2_VERSION_13)
+                throw new IOException("Unsupported Argon2 version 0x" + Integer.toHexString(version));
+
+            Argon2Parameters parameters = new Argon2Parameters.Builder(KDF_ARGON2D.equals(kdf) ? Argon2Parameters.ARGON2_d : Argon2Parameters.ARGON2_id)
+                    .withVersion(version)
+                    .withIterations(Math.toIntExact(longParameter(kdfParameters, "I")))
+                    .withParallelism(Math.toIntExact(longParameter(kdfParameters, "P")))
+                    .withMemoryAsKB(Math.toIntExact(longParameter(kdfParameters, "M") / 1024L))
+                    .withSalt(byteArrayParameter(kdfParameters, "S"))
+                    .withSecret((byte[])kdfParameters.get("K"))
+                    .withAdditional((byte[])kdfParameters.get("A"))
+                    .build();
+            Argon2BytesGenerator argon2 = new Argon2BytesGenerator();
+            argon2.init(parameters);
+            byte[] transformedKey = new byte[32];
+            argon2.generateBytes(compositeKey, transformedKey);
+            return transformedKey;
+        }
+        else if (KDF_AES.equals(kdf) || KDF_AES_KDBX4.equals(kdf))
+        {
+            long rounds = longParameter(kdfParameters, "R");
+            Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+            aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(byteArrayParameter(kdfParameters, "S"), "AES"));
+            byte[] key = compositeKey.clone();
+            for (long i = 0; i < rounds; i++)
+            {
+                aes.update(key, 0, key.length, key, 0);
+            }
+            return sha256(key);
+        }
+        else
+            throw new IOException("Unsupported KDBX key derivation function " + kdf);
+    }
+
+    private static byte[] decryptPayload(UUID cipherId, byte[] key, byte[] iv, byte[] encryptedPayload)
+    throws IOException, GeneralSecurityException
+    {
+        Cipher cipher;
+        if (CIPHER_AES256.equals(cipherId))
+        {
+            cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        }
+        else if (CIPHER_CHACHA20.equals(cipherId))
+        {
+            cipher = Cipher.getInstance("ChaCha20");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "ChaCha20"), new ChaCha20ParameterSpec(iv, 0));
+        }
+        else
+            throw new IOException("Unsupported KDBX cipher " + cipherId);
+
+        return cipher.doFinal(encryptedPayload);
+    }
+
+    private static Document parseXml(byte[] xml)
+    throws IOException
+    {
+        try
+        {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(new ByteArrayInputStream(xml));
+        }
+        catch (ParserConfigurationException | SAXException e)
+        {
+            throw new IOException("Error parsing KDBX database XML: " + e, e);
+        }
+    }
+
+    /**
+     * Replaces every protected value in the document with its plain text.  Protected values are encrypted with a single stream cipher in
+     * document order, so every one must be processed in order, including those in history.
+     */
+    private static void unprotectValues(Document document, byte[] innerStreamKey)
+    throws GeneralSecurityException
+    {
+        byte[] streamKeyHash = sha512(innerStreamKey);
+        Cipher stream = Cipher.getInstance("ChaCha20");
+        stream.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Arrays.copyOf(streamKeyHash, 32), "ChaCha20"),
+                    new ChaCha20ParameterSpec(Arrays.copyOfRange(streamKeyHash, 32, 44), 0));
+
+        NodeList values = document.getElementsByTagName("Value");
+        for (int i = 0; i < values.getLength(); i++)
+        {
+            Element value = (Element)values.item(i);
+            if ("True".equalsIgnoreCase(value.getAttribute("Protected")))
+            {
+                byte[] protectedValue = Base64.getDecoder().decode(value.getTextContent().trim());
+                byte[] plainValue = stream.update(protectedValue);
+                value.setTextContent(plainValue == null ? "" : new String(plainValue, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static List<KdbxEntry> readEntries(Document document)
+    throws IOException
+    {
+        Element root = childElement(document.getDocumentElement(), "Root");
+        if (root == null)
+            throw new IOException("KDBX database has no root");
+
+        String recycleBinUuid = null;
+        Element meta = childElement(document.getDocumentElement(), "Meta");
+        if (meta != null && "True".equalsIgnoreCase(childText(meta, "RecycleBinEnabled")))
+            recycleBinUuid = childText(meta, "RecycleBinUUID");
+
+        List<KdbxEntry> entries = new ArrayList<>();
+        for (Element group : childElements(root, "Group"))
+        {
+            readGroup(group, recycleBinUuid, entries);
+        }
+        return entries;
+    }
+
+    private static void readGroup(Element group, String recycleBinUuid, List<? super KdbxEntry> entries)
+    {
+        if (recycleBinUuid != null && recycleBinUuid.equals(childText(group, "UUID")))
+            return;
+
+        String groupName = childText(group, "Name");
+        for (Element entry : childElements(group, "Entry"))
+        {
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (Element field : childElements(entry, "String"))
+            {
+                String key = childText(field, "Key");
+                if (key != null)
+                    fields.put(key, childText(field, "Value"));
+            }
+
+            Map<String, String> customFields = new LinkedHashMap<>(fields);
+            customFields.keySet().removeAll(STANDARD_FIELDS);
+            customFields.values().removeIf(v -> v == null);
+
+            entries.add(new KdbxEntry(fields.get("Title"), fields.get("UserName"), fields.get("Password"), fields.get("URL"), groupName, customFields));
+        }
+
+        for (Element subgroup : childElements(group, "Group"))
+        {
+            readGroup(subgroup, recycleBinUuid, entries);
+        }
+    }
+
+    private static List<Element> childElements(Element parent, String name)
+    {
+        List<Element> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling())
+        {
+            if (child instanceof Element && name.equals(child.getNodeName()))
+                children.add((Element)child);
+        }
+        return children;
+    }
+
+    private static Element childElement(Element parent, String name)
+    {
+        List<Element> children = childElements(parent, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static String childText(Element parent, String name)
+    {
+        Element child = childElement(parent, name);
+        return child == null ? null : child.getTextContent();
+    }
+
+    private static UUID uuid(byte[] data)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        return new UUID(buf.getLong(), buf.getLong());
+    }
+
+    private static byte[] byteArrayParameter(Map<String, Object> parameters, String name)
+    throws IOException
+    {
+        Object value = parameters.get(name);
+        if (!(value instanceof byte[]))
+            throw new IOException("Missing KDBX key derivation parameter " + name);
+        return (byte[])value;
+    }
+
+    private static long longParameter(Map<String, Object> parameters, String name)
+    throws IOException
+    {
+        Object value = parameters.get(name);
+        if (!(value instanceof Long))
+            throw new IOException("Missing KDBX key derivation parameter " + name);
+        return (Long)value;
+    }
+
+    private static byte[] blockHmacKey(long blockIndex, byte[] hmacBaseKey)
+    throws NoSuchAlgorithmException
+    {
+        return sha512(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(blockIndex).array(), hmacBaseKey);
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data)
+    throws GeneralSecurityException
+    {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+
+    private static byte[] sha256(byte[]... data)
+    throws NoSuchAlgorithmException
+    {
+        return digest("SHA-256", data);
+    }
+
+    private static byte[] sha512(byte[]... data)
+    throws NoSuchAlgorithmException
+    {
+        return digest("SHA-512", data);
+    }
+
+    private static byte[] digest(String algorithm, byte[]... data)
+    throws NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        for (byte[] d : data)
+        {
+            digest.update(d);
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,169 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class AccessHistoryTest
+{
+    private static final Instant ACCESS_TIME = Instant.parse("2024-03-01T10:15:30Z");
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    @TempDir
+    Path tempDir;
+
+    private Path historyFile()
+    {
+        return tempDir.resolve("project.history");
+    }
+
+    /**
+     * Loads history, records the given requests as a new build and saves it.
+     */
+    private void build(int maxBuilds, DecryptRequest... requests)
+    throws IOException
+    {
+        AccessHistory history = AccessHistory.load(historyFile(), maxBuilds, log);
+        for (DecryptRequest request : requests)
+        {
+            history.recordAccess(request, ACCESS_TIME);
+        }
+        history.save();
+    }
+
+    @Test
+    void missingFileStartsEmpty()
+    {
+        AccessHistory history = AccessHistory.load(historyFile(), 10, log);
+
+        assertThat(history.getRecentRequests()).isEmpty();
+        assertThat(history.getFile()).isEqualTo(historyFile());
+    }
+
+    @Test
+    void savedRequestsLoaded()
+    throws IOException
+    {
+        DecryptRequest first = new DecryptRequest("https://a.example.com", Map.of("type", "keepassxc"));
+        DecryptRequest second = new DecryptRequest("https://b.example.com", Map.of("type", "keepassxc", "select", "username"));
+        build(10, first, second);
+
+        assertThat(AccessHistory.load(historyFile(), 10, log).getRecentRequests()).containsExactly(first, second);
+    }
+
+    @Test
+    void fileFormatParsed()
+    throws IOException
+    {
+        Files.writeString(historyFile(), "build\t7\n" +
+                                         "7\t2024-03-01T10:15:30Z\thttps%3A%2F%2Fa.example.com\ttype=keepassxc\n" +
+                                         "6\t2024-02-28T09:00:00Z\thttps%3A%2F%2Fb.example.com\t\n",
+                          StandardCharsets.UTF_8);
+
+        assertThat(AccessHistory.load(historyFile(), 10, log).getRecentRequests())
+                .containsExactly(new DecryptRequest("https://a.example.com", Map.of("type", "keepassxc")),
+                                 new DecryptRequest("https://b.example.com", Map.of()));
+    }
+
+    @Test
+    void requestsAgeOutAfterMaxBuilds()
+    throws IOException
+    {
+        DecryptRequest old = new DecryptRequest("https://old.example.com", Map.of());
+        DecryptRequest recent = new DecryptRequest("https://recent.example.com", Map.of());
+
+        build(2, old);
+        build(2, recent);
+
+        //Third build: old was last requested 2 builds ago so it has aged out
+        AccessHistory history = AccessHistory.load(historyFile(), 2, log);
+        assertThat(history.getRecentRequests()).containsExactly(recent);
+
+        //Requesting again keeps it, and aged out requests are not written back
+        history.recordAccess(recent, ACCESS_TIME);
+        history.save();
+        assertThat(Files.readString(historyFile(), StandardCharsets.UTF_8)).doesNotContain("old.example.com");
+        assertThat(AccessHistory.load(historyFile(), 2, log).getRecentRequests()).containsExactly(recent);
+    }
+
+    @Test
+    void attributesWithSeparatorsRoundTrip()
+    throws IOException
+    {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("type", "keepassxc");
+        attributes.put("where:title", "A&B=C\tD %20 \u00fc");
+        DecryptRequest request = new DecryptRequest("https://a.example.com/path?x=1&y=2", attributes);
+        build(10, request);
+
+        assertThat(Files.readAllLines(historyFile(), StandardCharsets.UTF_8).get(1).split("\t", -1)).hasSize(4);
+        assertThat(AccessHistory.load(historyFile(), 10, log).getRecentRequests()).containsExactly(request);
+    }
+
+    @Test
+    void malformedLinesSkipped()
+    throws IOException
+    {
+        Files.writeString(historyFile(), "build\t3\n" +
+                                         "garbage\n" +
+                                         "3\tnot a time\thttps%3A%2F%2Fa.example.com\t\n" +
+                                         "3\t2024-03-01T10:15:30Z\thttps%3A%2F%2Fb.example.com\tnoequals\n" +
+                                         "3\t2024-03-01T10:15:30Z\thttps%3A%2F%2Fc.example.com\t\n",
+                          StandardCharsets.UTF_8);
+
+        assertThat(AccessHistory.load(historyFile(), 10, log).getRecentRequests())
+                .containsExactly(new DecryptRequest("https://c.example.com", Map.of()));
+    }
+
+    @Test
+    void corruptFileStartsOver()
+    throws IOException
+    {
+        Files.writeString(historyFile(), "build\tnot a number\n3\t2024-03-01T10:15:30Z\thttps%3A%2F%2Fa.example.com\t\n",
+                          StandardCharsets.UTF_8);
+
+        AccessHistory history = AccessHistory.load(historyFile(), 10, log);
+        assertThat(history.getRecentRequests()).isEmpty();
+
+        //Saving replaces the corrupt file with a usable one
+        DecryptRequest request = new DecryptRequest("https://b.example.com", Map.of());
+        history.recordAccess(request, ACCESS_TIME);
+        history.save();
+        assertThat(Files.readAllLines(historyFile(), StandardCharsets.UTF_8).get(0)).isEqualTo("build\t1");
+        assertThat(AccessHistory.load(historyFile(), 10, log).getRecentRequests()).containsExactly(request);
+    }
+
+    @Test
+    void historyFilePerProject()
+    {
+        Path historyDirectory = tempDir.resolve("history");
+
+        Path projectA = AccessHistory.historyFile(historyDirectory, tempDir.resolve("a"));
+        assertThat(projectA.getParent()).isEqualTo(historyDirectory);
+        assertThat(projectA.getFileName().toString()).endsWith(".history").doesNotContain("a.history");
+        assertThat(AccessHistory.historyFile(historyDirectory, tempDir.resolve("a/../a"))).isEqualTo(projectA);
+        assertThat(AccessHistory.historyFile(historyDirectory, tempDir.resolve("b"))).isNotEqualTo(projectA);
+    }
+
+    @Test
+    void noRequestsSavedAsEmptyHistory()
+    throws IOException
+    {
+        build(10);
+
+        assertThat(Files.readAllLines(historyFile(), StandardCharsets.UTF_8)).isEqualTo(List.of("build\t1"));
+    }
+}
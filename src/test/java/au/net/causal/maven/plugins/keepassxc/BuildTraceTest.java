@@ -0,0 +1,129 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+class BuildTraceTest
+{
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown()
+    {
+        //Never leave tracing on for other tests
+        BuildTrace.finish(tempDir.resolve("leftover.json"), log);
+    }
+
+    /**
+     * Reads the events of a trace file, failing if it is not a JSON object.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> readEvents(Path traceFile)
+    throws IOException
+    {
+        Map<String, Object> trace = new JSONObject(Files.readString(traceFile, StandardCharsets.UTF_8)).toMap();
+        assertThat(trace).containsEntry("displayTimeUnit", "ms");
+        return (List<Map<String, Object>>)trace.get("traceEvents");
+    }
+
+    private static Map<String, Object> event(List<Map<String, Object>> events, String name)
+    {
+        List<Map<String, Object>> matching = events.stream().filter(event -> name.equals(event.get("name"))).collect(Collectors.toList());
+        assertThat(matching).hasSize(1);
+        return matching.get(0);
+    }
+
+    @Test
+    void spansAndInstantsRecorded()
+    throws IOException
+    {
+        Path traceFile = tempDir.resolve("trace/trace.json");
+
+        BuildTrace.start();
+        assertThat(BuildTrace.isEnabled()).isTrue();
+        try (BuildTrace.Span span = BuildTrace.span("settings", "Decrypt settings values").arg("values", 3))
+        {
+            BuildTrace.instant("cache", "Cache hit", Map.of("url", "https://a.example.com"));
+        }
+        BuildTrace.finish(traceFile, log);
+
+        assertThat(BuildTrace.isEnabled()).isFalse();
+        List<Map<String, Object>> events = readEvents(traceFile);
+
+        Map<String, Object> span = event(events, "Decrypt settings values");
+        assertThat(span).containsEntry("cat", "settings").containsEntry("ph", "X").containsKey("dur").containsKey("ts");
+        assertThat(span.get("args")).isEqualTo(Map.of("values", 3));
+
+        Map<String, Object> instant = event(events, "Cache hit");
+        assertThat(instant).containsEntry("cat", "cache").containsEntry("ph", "i").doesNotContainKey("dur");
+        assertThat(instant.get("args")).isEqualTo(Map.of("url", "https://a.example.com"));
+
+        Map<String, Object> threadName = event(events, "thread_name");
+        assertThat(threadName).containsEntry("ph", "M");
+        assertThat(threadName.get("args")).isEqualTo(Map.of("name", Thread.currentThread().getName()));
+    }
+
+    @Test
+    void nothingRecordedWhenNotStarted()
+    {
+        Path traceFile = tempDir.resolve("trace.json");
+
+        assertThat(BuildTrace.isEnabled()).isFalse();
+        try (BuildTrace.Span span = BuildTrace.span("settings", "Decrypt settings values").arg("values", 3))
+        {
+            BuildTrace.instant("cache", "Cache hit", Map.of());
+        }
+        BuildTrace.finish(traceFile, log);
+
+        assertThat(traceFile).doesNotExist();
+    }
+
+    @Test
+    void nonFiniteNumbersWrittenAsStrings()
+    throws IOException
+    {
+        Path traceFile = tempDir.resolve("trace.json");
+
+        BuildTrace.start();
+        BuildTrace.instant("stats", "Dedupe rate", Map.of("rate", Double.NaN, "ratio", Double.POSITIVE_INFINITY, "floatRatio", Float.NEGATIVE_INFINITY));
+        BuildTrace.finish(traceFile, log);
+
+        //Unquoted, these would make the file invalid JSON that trace viewers refuse to load
+        assertThat(Files.readString(traceFile, StandardCharsets.UTF_8)).contains("\"rate\":\"NaN\"")
+                                                                       .contains("\"ratio\":\"Infinity\"")
+                                                                       .contains("\"floatRatio\":\"-Infinity\"");
+        assertThat(event(readEvents(traceFile), "Dedupe rate").get("args"))
+                .isEqualTo(Map.of("rate", "NaN", "ratio", "Infinity", "floatRatio", "-Infinity"));
+    }
+
+    @Test
+    void stringsEscaped()
+    throws IOException
+    {
+        Path traceFile = tempDir.resolve("trace.json");
+        String name = "Quote \" backslash \\ newline \n tab \t";
+
+        BuildTrace.start();
+        BuildTrace.instant("test", name, Map.of("value", name));
+        BuildTrace.finish(traceFile, log);
+
+        assertThat(event(readEvents(traceFile), name).get("args")).isEqualTo(Map.of("value", name));
+    }
+}
@@ -0,0 +1,214 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.AbstractLogger;
+import org.codehaus.plexus.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CachingPasswordDecryptorTest
+{
+    private final List<String> lookups = Collections.synchronizedList(new ArrayList<>());
+    private final PasswordDecryptor lookupRecordingDecryptor = (str, attributes, config) ->
+    {
+        lookups.add(str);
+        return "password-" + str;
+    };
+
+    private final DebugRecordingLogger log = new DebugRecordingLogger();
+    private final CachingPasswordDecryptor decryptor = new LowerCaseKeyDecryptor(lookupRecordingDecryptor);
+
+    CachingPasswordDecryptorTest()
+    {
+        decryptor.enableLogging(log);
+    }
+
+    @Test
+    void normalizedRequestsShareEntryAndAreCountedAsDeduped()
+    throws Exception
+    {
+        assertThat(decryptor.decrypt("server", Map.of(), Map.of())).isEqualTo("password-server");
+        assertThat(decryptor.decrypt("SERVER", Map.of(), Map.of())).isEqualTo("password-server");
+
+        assertThat(lookups).containsExactly("server");
+        assertThat(decryptor.dedupedRequestCount()).isEqualTo(1L);
+    }
+
+    @Test
+    void plainCacheHitIsNotCountedAsDeduped()
+    throws Exception
+    {
+        decryptor.decrypt("server", Map.of(), Map.of());
+        decryptor.decrypt("server", Map.of(), Map.of());
+
+        assertThat(lookups).containsExactly("server");
+        assertThat(decryptor.cacheStats().hitCount()).isEqualTo(1L);
+        assertThat(decryptor.dedupedRequestCount()).isEqualTo(0L);
+    }
+
+    @Test
+    void normalizedMissIsNotCountedAsDeduped()
+    throws Exception
+    {
+        decryptor.decrypt("SERVER", Map.of(), Map.of());
+
+        assertThat(decryptor.dedupedRequestCount()).isEqualTo(0L);
+    }
+
+    @Test
+    void dedupeRateIsLogged()
+    throws Exception
+    {
+        decryptor.decrypt("server", Map.of(), Map.of());
+        decryptor.decrypt("Server", Map.of(), Map.of());
+        decryptor.decrypt("SERVER", Map.of(), Map.of());
+        decryptor.decrypt("other", Map.of(), Map.of());
+
+        //Statistics are logged before the miss being logged is recorded
+        assertThat(log.messages.get(log.messages.size() - 1)).contains("requests: 3").contains("dedupe rate: 67%");
+    }
+
+    @Test
+    void asyncRequestsAreCounted()
+    throws Exception
+    {
+        decryptor.decrypt("server", Map.of(), Map.of());
+        assertThat(decryptor.decryptAsync("SERVER", Map.of(), Map.of()).get()).isEqualTo("password-server");
+
+        assertThat(decryptor.dedupedRequestCount()).isEqualTo(1L);
+    }
+
+    @Test
+    void concurrentAsyncRequestsShareOneLookup()
+    throws Exception
+    {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+        {
+            futures.add(decryptor.decryptAsync(i % 2 == 0 ? "server" : "SERVER", Map.of(), Map.of()));
+        }
+
+        for (CompletableFuture<String> future : futures)
+        {
+            assertThat(future.get(10L, TimeUnit.SECONDS)).isEqualTo("password-server");
+        }
+        assertThat(lookups).containsExactly("server");
+    }
+
+    @Test
+    void asyncFailureCompletesExceptionally()
+    {
+        CachingPasswordDecryptor failingDecryptor = new LowerCaseKeyDecryptor((str, attributes, config) ->
+        {
+            throw new SecDispatcherException("No KeepassXC entry for " + str);
+        });
+        failingDecryptor.enableLogging(log);
+
+        CompletableFuture<String> future = failingDecryptor.decryptAsync("server", Map.of(), Map.of());
+
+        assertThatThrownBy(() -> future.get(10L, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                                                                  .hasCauseInstanceOf(SecDispatcherException.class);
+        failingDecryptor.dispose();
+    }
+
+    @Test
+    void asyncAfterDisposeFails()
+    {
+        decryptor.dispose();
+
+        CompletableFuture<String> future = decryptor.decryptAsync("server", Map.of(), Map.of());
+
+        assertThatThrownBy(() -> future.get(10L, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                                                                  .hasCauseInstanceOf(SecDispatcherException.class);
+        assertThat(lookups).isEmpty();
+    }
+
+    @Test
+    void cachedPasswordsKeptWhenExpiryChanges()
+    throws Exception
+    {
+        decryptor.decrypt("server", Map.of(), Map.of());
+        decryptor.setCacheExpiry(null, Duration.ofHours(1));
+        decryptor.decrypt("server", Map.of(), Map.of());
+
+        assertThat(lookups).containsExactly("server");
+    }
+
+    @Test
+    void dedupeRateWithNoRequests()
+    {
+        assertThat(CachingPasswordDecryptor.dedupeRate(0L, 0L)).isEqualTo(0.0);
+        assertThat(CachingPasswordDecryptor.dedupeRate(1L, 4L)).isEqualTo(0.25);
+    }
+
+    /**
+     * Normalizes keys by lower-casing them, standing in for URL canonicalization.
+     */
+    private static class LowerCaseKeyDecryptor extends CachingPasswordDecryptor
+    {
+        public LowerCaseKeyDecryptor(PasswordDecryptor passwordDecryptor)
+        {
+            super(passwordDecryptor, Duration.ofMinutes(1));
+        }
+
+        @Override
+        protected DecryptKey createKey(String str, Map<?, ?> attributes, Map<?, ?> config)
+        {
+            return new DecryptKey(str.toLowerCase(Locale.ROOT), attributes, config);
+        }
+    }
+
+    private static class DebugRecordingLogger extends AbstractLogger
+    {
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+        public DebugRecordingLogger()
+        {
+            super(LEVEL_DEBUG, "test");
+        }
+
+        @Override
+        public void debug(String message, Throwable throwable)
+        {
+            messages.add(message);
+        }
+
+        @Override
+        public void info(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void warn(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void error(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void fatalError(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public Logger getChildLogger(String name)
+        {
+            return this;
+        }
+    }
+}
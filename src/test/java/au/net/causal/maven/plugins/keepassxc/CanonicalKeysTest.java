@@ -0,0 +1,45 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CanonicalKeysTest
+{
+    @Test
+    void equivalentUrlsHaveSameCanonicalForm()
+    {
+        assertThat(CanonicalKeys.canonicalUrl("https://Host/")).isEqualTo("https://host");
+        assertThat(CanonicalKeys.canonicalUrl("https://host:443")).isEqualTo("https://host");
+        assertThat(CanonicalKeys.canonicalUrl(" HTTP://host:80/repo// ")).isEqualTo("http://host/repo");
+        assertThat(CanonicalKeys.canonicalUrl("https://host:8443/repo")).isEqualTo("https://host:8443/repo");
+    }
+
+    @Test
+    void nonUrlsAreOnlyTrimmed()
+    {
+        assertThat(CanonicalKeys.canonicalUrl(" My Entry ")).isEqualTo("My Entry");
+        assertThat(CanonicalKeys.canonicalUrl(null)).isNull();
+    }
+
+    @Test
+    void mapKeysAreSortedAndTrimmed()
+    {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put(" where:title", "one");
+        map.put("select", "password");
+
+        assertThat(CanonicalKeys.canonicalMap(map)).containsExactly(entry("select", "password"), entry("where:title", "one"));
+    }
+
+    @Test
+    void mapValuesAreNotTrimmed()
+    {
+        assertThat(CanonicalKeys.canonicalMap(Map.of("where:username", " user "))).containsExactly(entry("where:username", " user "));
+        assertThat(CanonicalKeys.canonicalMap(Map.of("where:username", " user ")))
+                .isNotEqualTo(CanonicalKeys.canonicalMap(Map.of("where:username", "user")));
+    }
+}
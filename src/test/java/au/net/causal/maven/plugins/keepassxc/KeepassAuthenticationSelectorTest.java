@@ -0,0 +1,108 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.Test;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeepassAuthenticationSelectorTest
+{
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+    private final FakeDecryptor decryptor = new FakeDecryptor();
+    private final KeepassAuthenticationSelector selector =
+            new KeepassAuthenticationSelector(null, decryptor, Map.of(),
+                                              List.of("https://repo.example.com/repository", "https://repo.example.com/repository/private"), log);
+
+    private static RemoteRepository repository(String url)
+    {
+        return new RemoteRepository.Builder("test", "default", url).build();
+    }
+
+    @Test
+    void onlyListedRepositoriesAuthenticated()
+    {
+        assertThat(selector.getAuthentication(repository("https://repo.example.com/repository/releases"))).isNotNull();
+        assertThat(selector.getAuthentication(repository("https://repo.example.com/other"))).isNull();
+        assertThat(selector.getAuthentication(repository("https://other.example.com/repository"))).isNull();
+    }
+
+    @Test
+    void longestListedUrlMatched()
+    {
+        assertThat(selector.listedRepositoryUrl("https://repo.example.com/repository/releases"))
+                .isEqualTo("https://repo.example.com/repository");
+        assertThat(selector.listedRepositoryUrl("https://repo.example.com/repository/private/snapshots"))
+                .isEqualTo("https://repo.example.com/repository/private");
+        assertThat(selector.listedRepositoryUrl("https://repo.example.com/repositoryx")).isNull();
+    }
+
+    @Test
+    void entriesCachedPerListedUrl()
+    {
+        decryptor.entries.put("https://repo.example.com/repository", List.of(entry("public")));
+        decryptor.entries.put("https://repo.example.com/repository/private", List.of(entry("private")));
+
+        //Same host, but each listed URL has its own entry
+        assertThat(selector.cachedEntry(selector.listedRepositoryUrl("https://repo.example.com/repository/releases")).getLogin())
+                .isEqualTo("public");
+        assertThat(selector.cachedEntry(selector.listedRepositoryUrl("https://repo.example.com/repository/private/snapshots")).getLogin())
+                .isEqualTo("private");
+        assertThat(selector.cachedEntry(selector.listedRepositoryUrl("https://repo.example.com/repository/snapshots")).getLogin())
+                .isEqualTo("public");
+
+        assertThat(decryptor.lookups).containsExactly("https://repo.example.com/repository", "https://repo.example.com/repository/private");
+    }
+
+    @Test
+    void missingEntryCached()
+    {
+        assertThat(selector.cachedEntry("https://repo.example.com/repository")).isNull();
+        assertThat(selector.cachedEntry("https://repo.example.com/repository")).isNull();
+
+        assertThat(decryptor.lookups).hasSize(1);
+    }
+
+    @Test
+    void failureNotCached()
+    {
+        decryptor.failure = new SecDispatcherException("KeepassXC is locked");
+        assertThat(selector.cachedEntry("https://repo.example.com/repository")).isNull();
+
+        decryptor.failure = null;
+        decryptor.entries.put("https://repo.example.com/repository", List.of(entry("public")));
+        assertThat(selector.cachedEntry("https://repo.example.com/repository").getLogin()).isEqualTo("public");
+
+        assertThat(decryptor.lookups).hasSize(2);
+    }
+
+    private static KeepassEntry entry(String login)
+    {
+        return new KeepassEntry("Repository", login, login + "-password", "Maven", Map.of());
+    }
+
+    private static class FakeDecryptor extends CachingKeepassXcPasswordDecryptor
+    {
+        private final Map<String, List<KeepassEntry>> entries = new HashMap<>();
+        private final List<String> lookups = new ArrayList<>();
+        private SecDispatcherException failure;
+
+        @Override
+        public List<KeepassEntry> readEntries(String url, Map<?, ?> config)
+        throws SecDispatcherException
+        {
+            lookups.add(url);
+            if (failure != null)
+                throw failure;
+
+            return entries.getOrDefault(url, List.of());
+        }
+    }
+}
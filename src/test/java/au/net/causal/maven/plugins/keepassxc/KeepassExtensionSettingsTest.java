@@ -0,0 +1,54 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeepassExtensionSettingsTest
+{
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    private KeepassExtensionSettings configure(Map<String, String> config)
+    {
+        KeepassExtensionSettings settings = new KeepassExtensionSettings();
+        settings.configure(config, log);
+        return settings;
+    }
+
+    @Test
+    void staleValuesFallBackToEmptyPasswordByDefault()
+    {
+        KeepassExtensionSettings settings = configure(Map.of("failMode", "STALE_VALUE"));
+
+        assertThat(settings.getEffectiveFailMode()).isEqualTo(FailMode.EMPTY_PASSWORD);
+    }
+
+    @Test
+    void staleValueFallbackModeConfigurable()
+    {
+        KeepassExtensionSettings settings = configure(Map.of("failMode", "STALE_VALUE", "staleValueFallbackMode", "EXCEPTION"));
+
+        assertThat(settings.getEffectiveFailMode()).isEqualTo(FailMode.EXCEPTION);
+    }
+
+    @Test
+    void staleValueFallbackModeCannotBeStaleValue()
+    {
+        KeepassExtensionSettings settings = configure(Map.of("failMode", "STALE_VALUE", "staleValueFallbackMode", "STALE_VALUE"));
+
+        assertThat(settings.getEffectiveFailMode()).isEqualTo(FailMode.EMPTY_PASSWORD);
+        assertThatThrownBy(() -> settings.setStaleValueFallbackMode(FailMode.STALE_VALUE)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void staleValueFallbackModeOnlyUsedWithStaleValues()
+    {
+        KeepassExtensionSettings settings = configure(Map.of("failMode", "EXCEPTION", "staleValueFallbackMode", "EMPTY_PASSWORD"));
+
+        assertThat(settings.getEffectiveFailMode()).isEqualTo(FailMode.EXCEPTION);
+    }
+}
@@ -0,0 +1,217 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import au.net.causal.maven.plugins.keepassxc.backend.FakeKeepassClient;
+import au.net.causal.maven.plugins.keepassxc.backend.KeepassConnectionPool;
+import au.net.causal.maven.plugins.keepassxc.backend.KeepassXcProxyBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.SecretBackend;
+import au.net.causal.maven.plugins.keepassxc.backend.SecretBackendType;
+import au.net.causal.maven.plugins.keepassxc.backend.SecretQuery;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.purejava.Credentials;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeepassXcPasswordDecryptorTest
+{
+    private static final String URL = "https://repo.example.com";
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+    private final FakeBackend backend = new FakeBackend();
+    private Function<KeepassExtensionSettings, SecretBackend> backendFactory = settings -> backend;
+
+    @TempDir
+    Path tempDir;
+
+    private KeepassXcPasswordDecryptor decryptor;
+    private Map<String, String> config;
+
+    @BeforeEach
+    void setUp()
+    {
+        decryptor = new KeepassXcPasswordDecryptor()
+        {
+            @Override
+            protected SecretBackend createBackend(SecretBackendType backendType, KeepassExtensionSettings settings)
+            {
+                return backendFactory.apply(settings);
+            }
+        };
+        decryptor.enableLogging(log);
+
+        config = Map.of("failMode", "STALE_VALUE",
+                        "staleValueCacheFile", tempDir.resolve("stale-values").toString(),
+                        "backendCacheTimeToLive", "PT0S");
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        decryptor.dispose();
+    }
+
+    @Test
+    void unavailableBackendUsesStaleValue()
+    throws SecDispatcherException
+    {
+        backend.entries = List.of(new KeepassEntry(URL, "maven", "secret", null, Map.of()));
+        assertThat(decryptor.decrypt(URL, Map.of(), config)).isEqualTo("secret");
+
+        backend.failure = new SecDispatcherException("KeepassXC is locked");
+
+        assertThat(decryptor.decrypt(URL, Map.of(), config)).isEqualTo("secret");
+    }
+
+    @Test
+    void missingEntryDoesNotUseStaleValue()
+    throws SecDispatcherException
+    {
+        backend.entries = List.of(new KeepassEntry(URL, "maven", "secret", null, Map.of()));
+        assertThat(decryptor.decrypt(URL, Map.of(), config)).isEqualTo("secret");
+
+        //Entry removed from KeepassXC, so the stale value fallback mode applies instead
+        backend.entries = List.of();
+
+        assertThat(decryptor.decrypt(URL, Map.of(), config)).isEmpty();
+    }
+
+    @Test
+    void nonInteractiveAssociationUsesFailModeWithoutAssociating()
+    throws SecDispatcherException
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient().withEntry(URL, "maven", "secret");
+        backendFactory = settings -> new KeepassXcProxyBackend(settings, file -> new NoCredentialsStore(), tempDir, new KeepassConnectionPool(),
+                                                                (credentialsStore, clientType, requestLimiter, proxyLog) ->
+                                                                        new KeepassProxy(keepass, requestLimiter, proxyLog),
+                                                                log);
+
+        Map<String, String> emptyPasswordConfig = Map.of("failMode", "EMPTY_PASSWORD",
+                                                         "interactiveAssociation", "false",
+                                                         "backendCacheTimeToLive", "PT0S");
+        assertThat(decryptor.decrypt(URL, Map.of(), emptyPasswordConfig)).isEmpty();
+
+        Map<String, String> exceptionConfig = Map.of("failMode", "EXCEPTION",
+                                                     "interactiveAssociation", "false",
+                                                     "backendCacheTimeToLive", "PT0S");
+        assertThatThrownBy(() -> decryptor.decrypt(URL, Map.of(), exceptionConfig)).isInstanceOf(SecDispatcherException.class)
+                                                                                   .hasMessageContaining("keepassxc:pair");
+
+        assertThat(keepass.getAssociateCount()).isZero();
+    }
+
+    @Test
+    void decryptAllLooksUpEachCanonicalUrlOnce()
+    throws SecDispatcherException
+    {
+        backend.entries = List.of(new KeepassEntry(URL, "maven", "secret", null, Map.of()));
+
+        Map<String, DecryptRequest> requests = new LinkedHashMap<>();
+        requests.put("password", new DecryptRequest(URL, Map.of()));
+        requests.put("username", new DecryptRequest("HTTPS://Repo.Example.com:443/", Map.of("select", "username")));
+        requests.put("other", new DecryptRequest("https://other.example.com", Map.of()));
+
+        Map<String, String> results = decryptor.decryptAll(requests, config);
+
+        assertThat(results).containsExactly(Map.entry("password", "secret"), Map.entry("username", "maven"), Map.entry("other", "secret"));
+        assertThat(backend.queriedUrls()).containsExactlyInAnyOrder(URL, "https://other.example.com");
+    }
+
+    @Test
+    void decryptAllWithExactUrlMatchingLooksUpEachUrl()
+    throws SecDispatcherException
+    {
+        backend.entries = List.of(new KeepassEntry(URL, "maven", "secret", null, Map.of()));
+        Map<String, String> exactConfig = new HashMap<>(config);
+        exactConfig.put("exactUrlMatching", "true");
+
+        Map<String, DecryptRequest> requests = new LinkedHashMap<>();
+        requests.put("canonical", new DecryptRequest(URL, Map.of()));
+        requests.put("trailingSlash", new DecryptRequest(URL + "/", Map.of()));
+
+        assertThat(decryptor.decryptAll(requests, exactConfig)).containsExactly(Map.entry("canonical", "secret"),
+                                                                               Map.entry("trailingSlash", "secret"));
+        assertThat(backend.queriedUrls()).containsExactlyInAnyOrder(URL, URL + "/");
+    }
+
+    @Test
+    void decryptAllThrowsFirstFailureInRequestOrder()
+    {
+        backend.entries = List.of();
+        Map<String, String> exceptionConfig = Map.of("failMode", "EXCEPTION", "backendCacheTimeToLive", "PT0S");
+
+        Map<String, DecryptRequest> requests = new LinkedHashMap<>();
+        requests.put("first", new DecryptRequest("https://first.example.com", Map.of()));
+        requests.put("second", new DecryptRequest("https://second.example.com", Map.of()));
+
+        assertThatThrownBy(() -> decryptor.decryptAll(requests, exceptionConfig)).isInstanceOf(SecDispatcherException.class)
+                                                                                 .hasMessageContaining("https://first.example.com");
+    }
+
+    @Test
+    void decryptAllAppliesFailModePerValue()
+    throws SecDispatcherException
+    {
+        backend.entries = List.of(new KeepassEntry(URL, "maven", "secret", null, Map.of()));
+        Map<String, String> emptyPasswordConfig = Map.of("failMode", "EMPTY_PASSWORD", "backendCacheTimeToLive", "PT0S");
+
+        Map<String, DecryptRequest> requests = new LinkedHashMap<>();
+        requests.put("found", new DecryptRequest(URL, Map.of()));
+        requests.put("missingField", new DecryptRequest(URL, Map.of("select", "no-such-field")));
+
+        assertThat(decryptor.decryptAll(requests, emptyPasswordConfig)).containsExactly(Map.entry("found", "secret"),
+                                                                                       Map.entry("missingField", ""));
+        assertThat(backend.queriedUrls()).containsExactly(URL);
+    }
+
+    private static class FakeBackend implements SecretBackend
+    {
+        private final List<SecretQuery> queries = new CopyOnWriteArrayList<>();
+        private volatile List<KeepassEntry> entries = List.of();
+        private volatile SecDispatcherException failure;
+
+        public List<String> queriedUrls()
+        {
+            return queries.stream().map(SecretQuery::getUrl).collect(Collectors.toList());
+        }
+
+        @Override
+        public List<KeepassEntry> findEntries(SecretQuery query)
+        throws SecDispatcherException
+        {
+            queries.add(query);
+            if (failure != null)
+                throw failure;
+
+            return entries;
+        }
+    }
+
+    private static class NoCredentialsStore implements KeepassCredentialsStore
+    {
+        @Override
+        public void saveCredentials(Credentials credentials)
+        {
+        }
+
+        @Override
+        public Credentials loadCredentials()
+        {
+            return null;
+        }
+    }
+}
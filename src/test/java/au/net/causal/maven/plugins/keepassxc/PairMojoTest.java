@@ -0,0 +1,168 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import au.net.causal.maven.plugins.keepassxc.backend.FakeKeepassClient;
+import au.net.causal.maven.plugins.keepassxc.connection.AdaptiveRequestLimiter;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class PairMojoTest
+{
+    private final KeepassExtensionSettings settings = new KeepassExtensionSettings();
+    private final Map<Path, FakeKeepassClient> clientsByStore = new HashMap<>();
+
+    @TempDir
+    Path tempDir;
+
+    private Path storeFile;
+    private PairMojo mojo;
+
+    @BeforeEach
+    void setUp()
+    throws IOException
+    {
+        //The real client saves the association to the store, which the fake does not, so the store already exists
+        storeFile = Files.createFile(tempDir.resolve("store.json"));
+        settings.setCredentialsStoreFile(storeFile);
+        settings.setUnlockMaxWaitTime(Duration.ofSeconds(2));
+
+        mojo = new PairMojo()
+        {
+            @Override
+            protected KeepassExtensionSettings readSettings(Logger logger)
+            {
+                return settings;
+            }
+
+            @Override
+            protected KeepassProxy createKeepassProxy(Path credentialsStoreFile, KeepassExtensionSettings settings, Logger logger)
+            {
+                return new KeepassProxy(clientsByStore.get(credentialsStoreFile), new AdaptiveRequestLimiter(), logger);
+            }
+        };
+        mojo.setLog(new DefaultLog(new ConsoleLogger(Logger.LEVEL_DISABLED, "test")));
+    }
+
+    @Test
+    void pairAssociatesUnpairedStore()
+    throws MojoExecutionException, MojoFailureException
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient();
+        clientsByStore.put(storeFile, keepass);
+
+        mojo.execute();
+
+        assertThat(keepass.getAssociateCount()).isEqualTo(1);
+        assertThat(keepass.getCalls()).containsExactly("connect", "associate", "test-associate");
+        assertThat(keepass.isClosed()).isTrue();
+    }
+
+    @Test
+    void pairReplacesForgottenAssociation()
+    throws MojoExecutionException, MojoFailureException
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient().forgotten();
+        clientsByStore.put(storeFile, keepass);
+
+        mojo.execute();
+
+        assertThat(keepass.getCalls()).containsExactly("connect", "test-associate", "associate", "test-associate");
+    }
+
+    @Test
+    void pairLeavesPairedStoreAlone()
+    throws MojoExecutionException, MojoFailureException
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient().paired();
+        clientsByStore.put(storeFile, keepass);
+
+        mojo.execute();
+
+        assertThat(keepass.getAssociateCount()).isZero();
+        assertThat(keepass.getCalls()).containsExactly("connect", "test-associate");
+    }
+
+    @Test
+    void pairFailsWhenDatabaseStaysLocked()
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient();
+        keepass.setLocked(true);
+        clientsByStore.put(storeFile, keepass);
+        settings.setUnlockMaxWaitTime(Duration.ZERO);
+
+        assertThatThrownBy(mojo::execute).isInstanceOf(MojoFailureException.class)
+                                         .hasMessageContaining("1 of 1 KeepassXC credentials store(s) could not be paired");
+    }
+
+    @Test
+    void checkOnlyPassesForPairedStore()
+    throws MojoExecutionException, MojoFailureException
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient().paired();
+        clientsByStore.put(storeFile, keepass);
+        mojo.setCheckOnly(true);
+
+        mojo.execute();
+
+        assertThat(keepass.getCalls()).containsExactly("connect", "test-associate");
+    }
+
+    @Test
+    void checkOnlyFailsWithoutAssociating()
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient().forgotten();
+        clientsByStore.put(storeFile, keepass);
+        mojo.setCheckOnly(true);
+
+        assertThatThrownBy(mojo::execute).isInstanceOf(MojoFailureException.class)
+                                         .hasMessageContaining("are not paired")
+                                         .hasMessageContaining("does not accept the association");
+        assertThat(keepass.getAssociateCount()).isZero();
+    }
+
+    @Test
+    void checkOnlyFailsForStoreWithoutAssociation()
+    {
+        FakeKeepassClient keepass = new FakeKeepassClient();
+        clientsByStore.put(storeFile, keepass);
+        mojo.setCheckOnly(true);
+
+        assertThatThrownBy(mojo::execute).isInstanceOf(MojoFailureException.class)
+                                         .hasMessageContaining("holds no KeepassXC association");
+        assertThat(keepass.getCalls()).isEmpty();
+    }
+
+    @Test
+    void checkOnlyReportsEveryUnpairedStore()
+    throws IOException
+    {
+        Path otherStoreFile = Files.createFile(tempDir.resolve("other.json"));
+        Path missingStoreFile = tempDir.resolve("missing.json");
+        settings.setAdditionalCredentialsStoreFiles(List.of(otherStoreFile, missingStoreFile));
+        FakeKeepassClient keepass = new FakeKeepassClient().paired();
+        clientsByStore.put(storeFile, keepass);
+        clientsByStore.put(otherStoreFile, keepass.otherStore("other-store"));
+        clientsByStore.put(missingStoreFile, new FakeKeepassClient());
+        mojo.setCheckOnly(true);
+
+        assertThatThrownBy(mojo::execute).isInstanceOf(MojoFailureException.class)
+                                         .hasMessageContaining("1 of 3 KeepassXC credentials store(s) are not paired")
+                                         .hasMessageContaining(missingStoreFile.toString());
+    }
+}
@@ -0,0 +1,179 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.apache.maven.settings.Proxy;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.crypto.DefaultSettingsDecryptionRequest;
+import org.apache.maven.settings.crypto.SettingsDecryptionResult;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.Test;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ParallelSettingsDecrypterTest
+{
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    private final RecordingDecryptor keepassDecryptor = new RecordingDecryptor();
+    private final List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Decrypts KeepassXC values one at a time with the KeepassXC decryptor, and other values by prefixing them, like the real dispatcher.
+     */
+    private final SecDispatcher securityDispatcher = str ->
+    {
+        dispatched.add(str);
+        if (ParallelSettingsDecrypter.isKeepassValue(str))
+            return keepassDecryptor.decrypt(ParallelSettingsDecrypter.entryUrl(str), ParallelSettingsDecrypter.entryAttributes(str), Map.of());
+        else
+            return "plain:" + str;
+    };
+
+    private final ParallelSettingsDecrypter decrypter = new ParallelSettingsDecrypter(securityDispatcher, keepassDecryptor, log);
+
+    private static Server server(String id, String password)
+    {
+        Server server = new Server();
+        server.setId(id);
+        server.setPassword(password);
+        return server;
+    }
+
+    private SettingsDecryptionResult decrypt(Server... servers)
+    {
+        DefaultSettingsDecryptionRequest request = new DefaultSettingsDecryptionRequest();
+        request.setServers(List.of(servers));
+        request.setProxies(List.of());
+        return decrypter.decrypt(request);
+    }
+
+    @Test
+    void keepassValueRecognized()
+    {
+        assertThat(ParallelSettingsDecrypter.isKeepassValue("{[type=keepassxc]https://a.example.com}")).isTrue();
+        assertThat(ParallelSettingsDecrypter.isKeepassValue("{[select=username, type=keepassxc]https://a.example.com}")).isTrue();
+        assertThat(ParallelSettingsDecrypter.isKeepassValue("{[type=other]https://a.example.com}")).isFalse();
+        assertThat(ParallelSettingsDecrypter.isKeepassValue("{COQLCE6DU6GtcS5P=}")).isFalse();
+        assertThat(ParallelSettingsDecrypter.isKeepassValue(null)).isFalse();
+
+        //The security dispatcher only reads attributes at the start of the value
+        assertThat(ParallelSettingsDecrypter.isKeepassValue("{https://a.example.com[type=keepassxc]}")).isFalse();
+        assertThat(ParallelSettingsDecrypter.isKeepassValue("{[]type=keepassxc}")).isFalse();
+    }
+
+    @Test
+    void attributesParsedLikeSecurityDispatcher()
+    {
+        assertThat(ParallelSettingsDecrypter.entryAttributes("{[type=keepassxc, select=username,where:title=My Server]https://a.example.com}"))
+                .containsEntry("type", "keepassxc")
+                .containsEntry("select", "username")
+                .containsEntry("where:title", "My")
+                .hasSize(3);
+    }
+
+    @Test
+    void valuesWithSameUrlShareOneBulkDecryption()
+    {
+        SettingsDecryptionResult result = decrypt(server("s1", "{[type=keepassxc]https://a.example.com}"),
+                                                  server("s2", "{[type=keepassxc,select=username]https://a.example.com}"),
+                                                  server("s3", "{[type=keepassxc,where:username=user2]https://a.example.com/}"),
+                                                  server("s4", "{[type=keepassxc]https://b.example.com}"),
+                                                  server("s5", "notkeepass"));
+
+        assertThat(result.getProblems()).isEmpty();
+        assertThat(result.getServers()).extracting(Server::getPassword)
+                                       .containsExactly("https://a.example.com:password",
+                                                        "https://a.example.com:username",
+                                                        "https://a.example.com/:password:username=user2",
+                                                        "https://b.example.com:password",
+                                                        "plain:notkeepass");
+
+        //One bulk decryption for each URL, and the dispatcher only sees the value that is not for KeepassXC
+        assertThat(keepassDecryptor.bulkGroupSizes()).containsExactlyInAnyOrder(3, 1);
+        assertThat(dispatched).containsExactly("notkeepass");
+    }
+
+    @Test
+    void failedValueReportedAgainstItsOwnServer()
+    {
+        SettingsDecryptionResult result = decrypt(server("good", "{[type=keepassxc]https://a.example.com}"),
+                                                  server("bad", "{[type=keepassxc,select=missing]https://a.example.com}"));
+
+        assertThat(result.getServers().get(0).getPassword()).isEqualTo("https://a.example.com:password");
+        assertThat(result.getProblems()).hasSize(1);
+        assertThat(result.getProblems().get(0).getMessage()).contains("server bad");
+    }
+
+    @Test
+    void proxyPasswordsDecrypted()
+    {
+        Proxy proxy = new Proxy();
+        proxy.setId("p1");
+        proxy.setPassword("{[type=keepassxc]https://a.example.com}");
+
+        DefaultSettingsDecryptionRequest request = new DefaultSettingsDecryptionRequest();
+        request.setServers(List.of(server("s1", "{[type=keepassxc,select=username]https://a.example.com}")));
+        request.setProxies(List.of(proxy));
+        SettingsDecryptionResult result = decrypter.decrypt(request);
+
+        assertThat(result.getProblems()).isEmpty();
+        assertThat(result.getProxies().get(0).getPassword()).isEqualTo("https://a.example.com:password");
+        assertThat(keepassDecryptor.bulkGroupSizes()).containsExactly(2);
+    }
+
+    /**
+     * Decrypts a value into its URL and selected field, and records the size of each bulk decryption.  Selecting the field 'missing' fails.
+     */
+    private static class RecordingDecryptor implements AsyncPasswordDecryptor
+    {
+        private final List<Integer> bulkGroupSizes = Collections.synchronizedList(new ArrayList<>());
+
+        public List<Integer> bulkGroupSizes()
+        {
+            return bulkGroupSizes;
+        }
+
+        @Override
+        public String decrypt(String str, Map attributes, Map config)
+        throws SecDispatcherException
+        {
+            Object select = attributes.get("select");
+            if ("missing".equals(select))
+                throw new SecDispatcherException("No KeepassXC entry value for " + str);
+
+            StringBuilder value = new StringBuilder(str).append(':').append(select == null ? "password" : select);
+            Object whereUsername = attributes.get("where:username");
+            if (whereUsername != null)
+                value.append(":username=").append(whereUsername);
+            return value.toString();
+        }
+
+        @Override
+        public CompletableFuture<String> decryptAsync(String str, Map<?, ?> attributes, Map<?, ?> config)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <K> Map<K, String> decryptAll(Map<K, DecryptRequest> requests, Map<?, ?> config)
+        throws SecDispatcherException
+        {
+            bulkGroupSizes.add(requests.size());
+            Map<K, String> results = new LinkedHashMap<>();
+            for (Map.Entry<K, DecryptRequest> request : requests.entrySet())
+            {
+                results.put(request.getKey(), decrypt(request.getValue().getStr(), request.getValue().getAttributes(), config));
+            }
+            return results;
+        }
+    }
+}
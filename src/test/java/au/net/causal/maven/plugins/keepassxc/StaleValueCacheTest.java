@@ -0,0 +1,109 @@
+package au.net.causal.maven.plugins.keepassxc;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+class StaleValueCacheTest
+{
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void valuesReadBackByNewCache()
+    {
+        Path cacheFile = tempDir.resolve("stale-values");
+        String key = StaleValueCache.key("https://repo.example.com", Map.of("select", "username"));
+
+        new StaleValueCache(cacheFile, log).put(key, "maven");
+
+        StaleValueCache.StaleValue value = new StaleValueCache(cacheFile, log).get(key);
+        assertThat(value).isNotNull();
+        assertThat(value.getValue()).isEqualTo("maven");
+        assertThat(Files.exists(cacheFile.resolveSibling("stale-values.key"))).isTrue();
+    }
+
+    @Test
+    void buildsKeepEachOthersValues()
+    {
+        Path cacheFile = tempDir.resolve("stale-values");
+        String key1 = StaleValueCache.key("https://repo1.example.com", Map.of());
+        String key2 = StaleValueCache.key("https://repo2.example.com", Map.of());
+
+        //Both builds load the cache before either saves
+        StaleValueCache build1 = new StaleValueCache(cacheFile, log);
+        StaleValueCache build2 = new StaleValueCache(cacheFile, log);
+        assertThat(build1.get(key1)).isNull();
+        assertThat(build2.get(key2)).isNull();
+
+        build1.put(key1, "password1");
+        build2.put(key2, "password2");
+
+        StaleValueCache readCache = new StaleValueCache(cacheFile, log);
+        assertThat(readCache.get(key1)).isNotNull();
+        assertThat(readCache.get(key2)).isNotNull();
+    }
+
+    @Test
+    void keyCreatedOnceWhenBuildsSaveAtTheSameTime()
+    throws Exception
+    {
+        for (int round = 0; round < 20; round++)
+        {
+            Path cacheFile = tempDir.resolve("stale-values-" + round);
+            int builds = 8;
+            CyclicBarrier barrier = new CyclicBarrier(builds);
+            ExecutorService executor = Executors.newFixedThreadPool(builds);
+            try
+            {
+                List<Future<?>> saves = new ArrayList<>();
+                for (int i = 0; i < builds; i++)
+                {
+                    String key = StaleValueCache.key("https://repo" + i + ".example.com", Map.of());
+                    saves.add(executor.submit(() ->
+                    {
+                        //Each build has its own cache, like separate Maven processes
+                        StaleValueCache cache = new StaleValueCache(cacheFile, log);
+                        barrier.await();
+                        cache.put(key, "password");
+                        return null;
+                    }));
+                }
+                for (Future<?> save : saves)
+                {
+                    save.get();
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+
+            //Every build's value must be readable with the one key all builds ended up using
+            assertThat(Files.size(cacheFile.resolveSibling(cacheFile.getFileName() + ".key"))).isEqualTo(32L);
+            StaleValueCache readCache = new StaleValueCache(cacheFile, log);
+            long readableValues = 0L;
+            for (int i = 0; i < builds; i++)
+            {
+                if (readCache.get(StaleValueCache.key("https://repo" + i + ".example.com", Map.of())) != null)
+                    readableValues++;
+            }
+            assertThat(readableValues).as("Readable values in round %d", round).isEqualTo(builds);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.Test;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CompositeSecretBackendTest
+{
+    private static final String URL = "https://repo.example.com";
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    private static KeepassEntry entry(String login, String password)
+    {
+        return new KeepassEntry(URL, login, password, "Main", Map.of("KPH: environment", "dev"));
+    }
+
+    private static SecretBackend backendWith(KeepassEntry... entries)
+    {
+        return query -> List.of(entries);
+    }
+
+    private static SecretQuery queryWhere(String field, String value)
+    {
+        return new SecretQuery(URL, Map.of(field, value), null);
+    }
+
+    @Test
+    void firstBackendWithEntriesUsedWithoutFilters()
+    throws SecDispatcherException
+    {
+        CompositeSecretBackend backend = new CompositeSecretBackend(List.of(backendWith(),
+                                                                            backendWith(entry("user1", "password1")),
+                                                                            backendWith(entry("user2", "password2"))), log);
+
+        assertThat(backend.findEntries(SecretQuery.forUrl(URL))).extracting(KeepassEntry::getPassword).containsExactly("password1");
+    }
+
+    @Test
+    void fallsBackWhenNoEntryMatchesFilters()
+    throws SecDispatcherException
+    {
+        CompositeSecretBackend backend = new CompositeSecretBackend(List.of(backendWith(entry("user1", "password1")),
+                                                                            backendWith(entry("user2", "password2"))), log);
+
+        assertThat(backend.findEntries(queryWhere("username", "user2"))).extracting(KeepassEntry::getPassword).containsExactly("password2");
+    }
+
+    @Test
+    void firstBackendUsedWhenAnyEntryMatchesFilters()
+    throws SecDispatcherException
+    {
+        CompositeSecretBackend backend = new CompositeSecretBackend(List.of(backendWith(entry("user1", "password1"), entry("user2", "password2")),
+                                                                            backendWith(entry("user2", "other"))), log);
+
+        assertThat(backend.findEntries(queryWhere("username", "user2"))).extracting(KeepassEntry::getPassword)
+                                                                         .containsExactly("password1", "password2");
+    }
+
+    @Test
+    void customFieldFiltersMatchWithoutPrefix()
+    throws SecDispatcherException
+    {
+        CompositeSecretBackend backend = new CompositeSecretBackend(List.of(backendWith(entry("user1", "password1")),
+                                                                            backendWith(entry("user2", "password2"))), log);
+
+        assertThat(backend.findEntries(queryWhere("environment", "dev"))).extracting(KeepassEntry::getPassword).containsExactly("password1");
+    }
+
+    @Test
+    void firstUnmatchedEntriesReturnedWhenNothingMatches()
+    throws SecDispatcherException
+    {
+        CompositeSecretBackend backend = new CompositeSecretBackend(List.of(backendWith(),
+                                                                            backendWith(entry("user1", "password1")),
+                                                                            backendWith(entry("user2", "password2"))), log);
+
+        assertThat(backend.findEntries(queryWhere("username", "user3"))).extracting(KeepassEntry::getPassword).containsExactly("password1");
+    }
+
+    @Test
+    void failureReportedWhenNothingMatches()
+    {
+        SecretBackend failingBackend = query ->
+        {
+            throw new SecDispatcherException("KeepassXC is not running");
+        };
+        CompositeSecretBackend backend = new CompositeSecretBackend(List.of(backendWith(entry("user1", "password1")), failingBackend), log);
+
+        assertThatThrownBy(() -> backend.findEntries(queryWhere("username", "user2"))).isInstanceOf(SecDispatcherException.class)
+                                                                                       .hasMessageContaining("not running");
+    }
+}
@@ -0,0 +1,338 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassClient;
+import org.purejava.KeepassProxyAccessException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for KeepassXC's browser integration, counting each round trip a proxy makes.  KeepassXC can be made to be slow, have a locked
+ * database or have forgotten the association.
+ */
+public class FakeKeepassClient implements KeepassClient
+{
+    private final Set<String> knownAssociations;
+    private final Map<String, List<StoreEntry>> entries;
+    private final List<String> calls;
+
+    private final AtomicInteger connectCount;
+    private final AtomicInteger associateCount;
+    private final AtomicInteger testAssociateCount;
+    private final AtomicInteger getLoginsCount;
+    private final AtomicInteger inFlightCount;
+    private final AtomicInteger maxInFlightCount;
+
+    private volatile String associateId;
+    private volatile String publicKey;
+    private volatile boolean locked;
+    private volatile Duration latency = Duration.ZERO;
+    private volatile boolean closed;
+    private volatile boolean hangNextGetLogins;
+    private final CountDownLatch hangReleased = new CountDownLatch(1);
+
+    public FakeKeepassClient()
+    {
+        this.knownAssociations = ConcurrentHashMap.newKeySet();
+        this.entries = new ConcurrentHashMap<>();
+        this.calls = new ArrayList<>();
+        this.connectCount = new AtomicInteger();
+        this.associateCount = new AtomicInteger();
+        this.testAssociateCount = new AtomicInteger();
+        this.getLoginsCount = new AtomicInteger();
+        this.inFlightCount = new AtomicInteger();
+        this.maxInFlightCount = new AtomicInteger();
+    }
+
+    /**
+     * Creates another client talking to the same KeepassXC as an existing one, sharing its associations, entries and round trip counts.
+     */
+    private FakeKeepassClient(FakeKeepassClient keepassXc)
+    {
+        this.knownAssociations = keepassXc.knownAssociations;
+        this.entries = keepassXc.entries;
+        this.calls = keepassXc.calls;
+        this.connectCount = keepassXc.connectCount;
+        this.associateCount = keepassXc.associateCount;
+        this.testAssociateCount = keepassXc.testAssociateCount;
+        this.getLoginsCount = keepassXc.getLoginsCount;
+        this.inFlightCount = keepassXc.inFlightCount;
+        this.maxInFlightCount = keepassXc.maxInFlightCount;
+        this.latency = keepassXc.latency;
+    }
+
+    /**
+     * Creates a client for another credentials store talking to the same KeepassXC, paired with its own database.  Entries added with
+     * {@link #withStoreEntry(String, String, String)} on the new client are only returned when its association is sent with get-logins.
+     *
+     * @param storeAssociateId the association ID of the other store.
+     *
+     * @return a new client.
+     */
+    public FakeKeepassClient otherStore(String storeAssociateId)
+    {
+        FakeKeepassClient other = new FakeKeepassClient(this);
+        other.associateId = storeAssociateId;
+        other.publicKey = "c3RvcmUta2V5";
+        knownAssociations.add(storeAssociateId);
+        return other;
+    }
+
+    /**
+     * Gives the client an association that KeepassXC knows about, as if it had been paired before.
+     *
+     * @return this client.
+     */
+    public FakeKeepassClient paired()
+    {
+        associateId = "maven-test";
+        publicKey = "cHVibGljLWtleQ==";
+        knownAssociations.add(associateId);
+        return this;
+    }
+
+    /**
+     * Gives the client an association that KeepassXC does not know about, as if the user removed it from KeepassXC.
+     *
+     * @return this client.
+     */
+    public FakeKeepassClient forgotten()
+    {
+        associateId = "removed";
+        publicKey = "cmVtb3ZlZA==";
+        return this;
+    }
+
+    public FakeKeepassClient withLatency(Duration latency)
+    {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Adds an entry that is returned whichever associations are sent with get-logins.
+     */
+    public FakeKeepassClient withEntry(String url, String login, String password)
+    {
+        return addEntry(null, url, login, password);
+    }
+
+    /**
+     * Adds an entry to the database this client is paired with, which is only returned when this client's association is sent with get-logins.
+     */
+    public FakeKeepassClient withStoreEntry(String url, String login, String password)
+    {
+        return addEntry(associateId, url, login, password);
+    }
+
+    private FakeKeepassClient addEntry(String storeAssociateId, String url, String login, String password)
+    {
+        entries.computeIfAbsent(url, u -> new CopyOnWriteArrayList<>())
+               .add(new StoreEntry(storeAssociateId, Map.of("name", url, "login", login, "password", password)));
+        return this;
+    }
+
+    /**
+     * Makes KeepassXC never respond to the next get-logins request, which only fails once the client is closed.
+     */
+    public void hangNextGetLogins()
+    {
+        hangNextGetLogins = true;
+    }
+
+    public void setLocked(boolean locked)
+    {
+        this.locked = locked;
+    }
+
+    private void roundTrip(String call)
+    throws IOException
+    {
+        synchronized (calls)
+        {
+            calls.add(call);
+        }
+
+        maxInFlightCount.accumulateAndGet(inFlightCount.incrementAndGet(), Math::max);
+        try
+        {
+            Thread.sleep(latency.toMillis());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        finally
+        {
+            inFlightCount.decrementAndGet();
+        }
+
+        if (closed)
+            throw new IOException("Connection closed");
+    }
+
+    @Override
+    public void connect()
+    throws IOException
+    {
+        //Reconnecting after close, as a new connection would
+        closed = false;
+        connectCount.incrementAndGet();
+        roundTrip("connect");
+    }
+
+    @Override
+    public void associate()
+    throws IOException, KeepassProxyAccessException
+    {
+        associateCount.incrementAndGet();
+        roundTrip("associate");
+
+        if (locked)
+            throw new KeepassProxyAccessException("Database not opened");
+
+        associateId = "associated-" + associateCount.get();
+        publicKey = "YXNzb2NpYXRlZA==";
+        knownAssociations.add(associateId);
+    }
+
+    @Override
+    public String getAssociateId()
+    {
+        return associateId;
+    }
+
+    @Override
+    public String getIdKeyPairPublicKey()
+    {
+        return publicKey;
+    }
+
+    @Override
+    public void testAssociate(String id, String key)
+    throws IOException, KeepassProxyAccessException
+    {
+        testAssociateCount.incrementAndGet();
+        roundTrip("test-associate");
+
+        if (locked)
+            throw new KeepassProxyAccessException("Database not opened");
+        if (!knownAssociations.contains(id))
+            throw new KeepassProxyAccessException("Association failed");
+    }
+
+    @Override
+    public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> keys)
+    throws IOException, KeepassProxyAccessException
+    {
+        getLoginsCount.incrementAndGet();
+        roundTrip("get-logins");
+
+        if (hangNextGetLogins)
+        {
+            hangNextGetLogins = false;
+            try
+            {
+                hangReleased.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Connection closed");
+        }
+
+        if (locked)
+            throw new KeepassProxyAccessException("Database not opened");
+
+        Set<String> keyIds = new HashSet<>();
+        for (Map<String, String> key : keys)
+        {
+            keyIds.add(key.get("id"));
+        }
+
+        List<Map<String, String>> urlEntries = new ArrayList<>();
+        for (StoreEntry entry : entries.getOrDefault(url, List.of()))
+        {
+            if (entry.storeAssociateId == null || keyIds.contains(entry.storeAssociateId))
+                urlEntries.add(entry.values);
+        }
+        if (urlEntries.isEmpty())
+            throw new KeepassProxyAccessException("No logins found");
+
+        return Map.of("count", urlEntries.size(), "entries", urlEntries, "success", "true");
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        hangReleased.countDown();
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * @return the names of the round trips made so far, in order.
+     */
+    public List<String> getCalls()
+    {
+        synchronized (calls)
+        {
+            return List.copyOf(calls);
+        }
+    }
+
+    public int getConnectCount()
+    {
+        return connectCount.get();
+    }
+
+    public int getAssociateCount()
+    {
+        return associateCount.get();
+    }
+
+    public int getTestAssociateCount()
+    {
+        return testAssociateCount.get();
+    }
+
+    public int getGetLoginsCount()
+    {
+        return getLoginsCount.get();
+    }
+
+    /**
+     * @return the most round trips that were in progress at the same time.
+     */
+    public int getMaxInFlightCount()
+    {
+        return maxInFlightCount.get();
+    }
+
+    private static class StoreEntry
+    {
+        private final String storeAssociateId;
+        private final Map<String, String> values;
+
+        public StoreEntry(String storeAssociateId, Map<String, String> values)
+        {
+            this.storeAssociateId = storeAssociateId;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import au.net.causal.maven.plugins.keepassxc.KeepassExtensionSettings;
+import org.codehaus.plexus.logging.AbstractLogger;
+import org.codehaus.plexus.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KdbxFileBackendTest
+{
+    private static final String URL = "https://aserver.test.test.test";
+
+    private final DatabaseReadCountingLogger log = new DatabaseReadCountingLogger();
+
+    /**
+     * Each test gets its own copy of the database so that indexes shared between backends are not shared between tests.
+     */
+    @TempDir
+    Path directory;
+
+    private KeepassExtensionSettings settings;
+
+    @BeforeEach
+    void setUp()
+    throws IOException
+    {
+        Files.copy(Path.of("src/itdata/it.kdbx"), directory.resolve("it.kdbx"));
+        Files.writeString(directory.resolve("password.txt"), "maventest\n");
+
+        settings = new KeepassExtensionSettings();
+        settings.setKdbxFile(Path.of("it.kdbx"));
+        settings.setKdbxPasswordFile(Path.of("password.txt"));
+    }
+
+    private static String password(SecretBackend backend)
+    throws SecDispatcherException
+    {
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(URL));
+        assertThat(entries).hasSize(1);
+        return entries.get(0).getPassword();
+    }
+
+    @Test
+    void readsEntries()
+    throws SecDispatcherException
+    {
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+
+        assertThat(log.databaseReads()).isEqualTo(1);
+    }
+
+    @Test
+    void laterBackendReusesIndexAfterClose()
+    throws SecDispatcherException
+    {
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+
+        assertThat(log.databaseReads()).isEqualTo(1);
+    }
+
+    @Test
+    void changedFileIsReadAgain()
+    throws IOException, SecDispatcherException
+    {
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+
+        Files.setLastModifiedTime(directory.resolve("it.kdbx"), FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+
+        assertThat(log.databaseReads()).isEqualTo(2);
+    }
+
+    @Test
+    void differentPasswordSourceIsNotShared()
+    throws IOException, SecDispatcherException
+    {
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+
+        Files.writeString(directory.resolve("wrong-password.txt"), "wrong");
+        KeepassExtensionSettings wrongPasswordSettings = new KeepassExtensionSettings();
+        wrongPasswordSettings.setKdbxFile(Path.of("it.kdbx"));
+        wrongPasswordSettings.setKdbxPasswordFile(Path.of("wrong-password.txt"));
+
+        try (KdbxFileBackend backend = new KdbxFileBackend(wrongPasswordSettings, directory, log))
+        {
+            assertThatThrownBy(() -> password(backend)).isInstanceOf(SecDispatcherException.class)
+                                                       .hasMessageContaining("Invalid password");
+        }
+    }
+
+    @Test
+    void failureIsRetriedByLaterBackend()
+    throws IOException, SecDispatcherException
+    {
+        Files.writeString(directory.resolve("password.txt"), "wrong");
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThatThrownBy(() -> password(backend)).isInstanceOf(SecDispatcherException.class);
+        }
+
+        Files.writeString(directory.resolve("password.txt"), "maventest");
+        Files.setLastModifiedTime(directory.resolve("password.txt"), FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+        try (KdbxFileBackend backend = new KdbxFileBackend(settings, directory, log))
+        {
+            assertThat(password(backend)).isEqualTo("thepassword");
+        }
+    }
+
+    /**
+     * Counts how many times the backend reports decrypting the database.
+     */
+    private static class DatabaseReadCountingLogger extends AbstractLogger
+    {
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+        public DatabaseReadCountingLogger()
+        {
+            super(LEVEL_DEBUG, "test");
+        }
+
+        public long databaseReads()
+        {
+            synchronized (messages)
+            {
+                return messages.stream().filter(message -> message.startsWith("Read ") && message.contains(" entries from KDBX file ")).count();
+            }
+        }
+
+        @Override
+        public void debug(String message, Throwable throwable)
+        {
+            messages.add(message);
+        }
+
+        @Override
+        public void info(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void warn(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void error(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void fatalError(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public Logger getChildLogger(String name)
+        {
+            return this;
+        }
+    }
+}
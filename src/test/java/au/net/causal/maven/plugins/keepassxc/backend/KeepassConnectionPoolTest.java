@@ -0,0 +1,157 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassClientType;
+import au.net.causal.maven.plugins.keepassxc.connection.AdaptiveRequestLimiter;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeepassConnectionPoolTest
+{
+    private static final Path STORE = Path.of("/test/credentials");
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+    private final KeepassConnectionPool pool = new KeepassConnectionPool();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connectCount = new AtomicInteger();
+
+    @AfterEach
+    void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    private KeepassProxy newProxy()
+    {
+        connectCount.incrementAndGet();
+        return new KeepassProxy(new FakeKeepassClient().paired(), new AdaptiveRequestLimiter(), log);
+    }
+
+    /**
+     * Starts an acquisition whose connection attempt does not finish until the release latch is counted down.
+     */
+    private Future<KeepassConnectionPool.Lease> acquireBlocked(CountDownLatch connecting, CountDownLatch release, boolean fail)
+    {
+        return executor.submit(() -> pool.acquire(STORE, KeepassClientType.LIBRARY, Duration.ofMinutes(1), () ->
+        {
+            connecting.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                throw new SecDispatcherException("Interrupted", e);
+            }
+            if (fail)
+                throw new SecDispatcherException("KeepassXC stayed locked");
+            return newProxy();
+        }));
+    }
+
+    @Test
+    void usersOfSameAssociationShareConnection()
+    throws Exception
+    {
+        try (KeepassConnectionPool.Lease lease1 = pool.acquire(STORE, KeepassClientType.LIBRARY, Duration.ofSeconds(1), this::newProxy);
+             KeepassConnectionPool.Lease lease2 = pool.acquire(STORE, KeepassClientType.LIBRARY, Duration.ofSeconds(1), this::newProxy))
+        {
+            assertThat(lease2.getConnection()).isSameAs(lease1.getConnection());
+        }
+
+        assertThat(connectCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(30)
+    void waiterGivesUpAtItsOwnDeadline()
+    throws Exception
+    {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<KeepassConnectionPool.Lease> slow = acquireBlocked(connecting, release, false);
+        connecting.await();
+
+        long startTime = System.nanoTime();
+        assertThatThrownBy(() -> pool.acquire(STORE, KeepassClientType.LIBRARY, Duration.ofMillis(200), this::newProxy))
+                .isInstanceOf(SecDispatcherException.class)
+                .hasMessageContaining("Timed out");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)).isLessThan(5000L);
+
+        //The first attempt is unaffected by the waiter giving up
+        release.countDown();
+        try (KeepassConnectionPool.Lease lease = slow.get())
+        {
+            assertThat(lease.getConnection()).isNotNull();
+        }
+        assertThat(connectCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(30)
+    void waiterMakesOwnAttemptWhenOtherAttemptFails()
+    throws Exception
+    {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<KeepassConnectionPool.Lease> failing = acquireBlocked(connecting, release, true);
+        connecting.await();
+
+        Future<KeepassConnectionPool.Lease> waiter =
+                executor.submit(() -> pool.acquire(STORE, KeepassClientType.LIBRARY, Duration.ofMinutes(1), this::newProxy));
+        release.countDown();
+
+        assertThatThrownBy(failing::get).hasRootCauseInstanceOf(SecDispatcherException.class);
+        try (KeepassConnectionPool.Lease lease = waiter.get())
+        {
+            assertThat(lease.getConnection()).isNotNull();
+        }
+        assertThat(connectCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(30)
+    void interruptWhileWaitingForOtherAttemptIsKept()
+    throws Exception
+    {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<KeepassConnectionPool.Lease> slow = acquireBlocked(connecting, release, false);
+        connecting.await();
+
+        Future<Boolean> waiterStillInterrupted = executor.submit(() ->
+        {
+            Thread.currentThread().interrupt();
+            assertThatThrownBy(() -> pool.acquire(STORE, KeepassClientType.LIBRARY, Duration.ofMinutes(1), this::newProxy))
+                    .isInstanceOf(SecDispatcherException.class)
+                    .hasMessageContaining("Interrupted");
+
+            //Clear the flag so the executor thread can be reused
+            return Thread.interrupted();
+        });
+        try
+        {
+            assertThat(waiterStillInterrupted.get()).isTrue();
+        }
+        finally
+        {
+            release.countDown();
+            slow.get().close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassCredentialsStore;
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import au.net.causal.maven.plugins.keepassxc.KeepassExtensionSettings;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.codehaus.plexus.logging.AbstractLogger;
+import org.codehaus.plexus.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.purejava.Credentials;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Drives a proxy backend from many threads against a stand-in KeepassXC that is slow and starts off locked.
+ */
+class KeepassXcProxyBackendStressTest
+{
+    private static final int THREAD_COUNT = 64;
+    private static final int URL_COUNT = 8;
+
+    private final RecordingLogger log = new RecordingLogger();
+    private final KeepassExtensionSettings settings = new KeepassExtensionSettings();
+    private final FakeKeepassClient keepass = new FakeKeepassClient().paired();
+    private final AtomicInteger proxyCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    private KeepassXcProxyBackend createBackend()
+    {
+        for (int i = 0; i < URL_COUNT; i++)
+        {
+            keepass.withEntry(url(i), "user" + i, "password" + i);
+        }
+
+        return new KeepassXcProxyBackend(settings, file -> new NoCredentialsStore(), Path.of("."), new KeepassConnectionPool(),
+                                         (credentialsStore, clientType, requestLimiter, log) ->
+                                         {
+                                             proxyCount.incrementAndGet();
+                                             return new KeepassProxy(keepass, requestLimiter, log);
+                                         },
+                                         log);
+    }
+
+    private static String url(int i)
+    {
+        return "https://repo" + i + ".example.com";
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a task on every thread at once.
+     */
+    private <T> List<Future<T>> runConcurrently(Callable<T> task)
+    {
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>(THREAD_COUNT);
+        for (int i = 0; i < THREAD_COUNT; i++)
+        {
+            results.add(executor.submit(() ->
+            {
+                startGate.await();
+                return task.call();
+            }));
+        }
+        startGate.countDown();
+        return results;
+    }
+
+    private int lookupAll(SecretBackend backend, int iterations)
+    throws SecDispatcherException
+    {
+        int wrongValues = 0;
+        for (int i = 0; i < iterations; i++)
+        {
+            int urlIndex = i % URL_COUNT;
+            List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(url(urlIndex)));
+            if (entries.size() != 1 || !("password" + urlIndex).equals(entries.get(0).getPassword()))
+                wrongValues++;
+        }
+        return wrongValues;
+    }
+
+    @Test
+    @Timeout(60)
+    void concurrentLookupsWhileLockedShareOneConnection()
+    throws Exception
+    {
+        settings.setUnlockMaxWaitTime(Duration.ofSeconds(30));
+        settings.setUnlockMessageRepeatTime(Duration.ofSeconds(30));
+        keepass.withLatency(Duration.ofMillis(2));
+        keepass.setLocked(true);
+
+        try (SecretBackend backend = new CachingSecretBackend(createBackend(), Duration.ofMinutes(1)))
+        {
+            List<Future<Integer>> results = runConcurrently(() -> lookupAll(backend, 50));
+
+            //Unlock once lookups are waiting on the unlock loop and the user has been asked to unlock
+            while (log.errorsContaining("please unlock your database") < 1)
+            {
+                Thread.sleep(10L);
+            }
+            keepass.setLocked(false);
+
+            for (Future<Integer> result : results)
+            {
+                assertThat(result.get()).isEqualTo(0);
+            }
+        }
+
+        assertThat(proxyCount.get()).isEqualTo(1);
+        assertThat(keepass.getConnectCount()).isEqualTo(1);
+        assertThat(keepass.getGetLoginsCount()).isEqualTo(URL_COUNT);
+        assertThat(log.errorsContaining("please unlock your database")).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(60)
+    void everyUncachedLookupIsOneGetLogins()
+    throws Exception
+    {
+        keepass.withLatency(Duration.ofMillis(1));
+
+        try (SecretBackend backend = createBackend())
+        {
+            List<Future<Integer>> results = runConcurrently(() -> lookupAll(backend, 10));
+            for (Future<Integer> result : results)
+            {
+                assertThat(result.get()).isEqualTo(0);
+            }
+        }
+
+        assertThat(proxyCount.get()).isEqualTo(1);
+        assertThat(keepass.getConnectCount()).isEqualTo(1);
+        assertThat(keepass.getTestAssociateCount()).isEqualTo(1);
+        assertThat(keepass.getGetLoginsCount()).isEqualTo(THREAD_COUNT * 10);
+        assertThat(log.errors).isEmpty();
+    }
+
+    @Test
+    @Timeout(60)
+    void closeStopsWaitingForUnlock()
+    throws Exception
+    {
+        settings.setUnlockMaxWaitTime(Duration.ofMinutes(5));
+        settings.setUnlockMessageRepeatTime(Duration.ofMinutes(5));
+        keepass.setLocked(true);
+
+        SecretBackend backend = createBackend();
+        List<Future<Integer>> results = runConcurrently(() -> lookupAll(backend, 1));
+
+        while (log.errorsContaining("please unlock your database") < 1)
+        {
+            Thread.sleep(10L);
+        }
+        long closeStartTime = System.nanoTime();
+        backend.close();
+
+        for (Future<Integer> result : results)
+        {
+            assertThatThrownBy(result::get).hasRootCauseInstanceOf(SecDispatcherException.class);
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - closeStartTime)).isLessThan(5L);
+        assertThat(proxyCount.get()).isEqualTo(1);
+        assertThat(keepass.getGetLoginsCount()).isZero();
+        assertThat(keepass.isClosed()).isTrue();
+        assertThat(log.errorsContaining("please unlock your database")).isEqualTo(1);
+    }
+
+    private static class NoCredentialsStore implements KeepassCredentialsStore
+    {
+        @Override
+        public void saveCredentials(Credentials credentials)
+        {
+        }
+
+        @Override
+        public Credentials loadCredentials()
+        {
+            return null;
+        }
+    }
+
+    private static class RecordingLogger extends AbstractLogger
+    {
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        public RecordingLogger()
+        {
+            super(LEVEL_DEBUG, "test");
+        }
+
+        public long errorsContaining(String text)
+        {
+            synchronized (errors)
+            {
+                return errors.stream().filter(message -> message.contains(text)).count();
+            }
+        }
+
+        @Override
+        public void debug(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void info(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void warn(String message, Throwable throwable)
+        {
+        }
+
+        @Override
+        public void error(String message, Throwable throwable)
+        {
+            errors.add(message);
+        }
+
+        @Override
+        public void fatalError(String message, Throwable throwable)
+        {
+            errors.add(message);
+        }
+
+        @Override
+        public Logger getChildLogger(String name)
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package au.net.causal.maven.plugins.keepassxc.backend;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassCredentialsStore;
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import au.net.causal.maven.plugins.keepassxc.KeepassExtensionSettings;
+import au.net.causal.maven.plugins.keepassxc.StoreLookupMode;
+import au.net.causal.maven.plugins.keepassxc.connection.KeepassProxy;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.purejava.Credentials;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeepassXcProxyBackendTest
+{
+    private static final String URL = "https://repo.example.com";
+    private static final String STORE_URL = "https://stores.example.com";
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+    private final KeepassExtensionSettings settings = new KeepassExtensionSettings();
+    private final FakeKeepassClient keepass = new FakeKeepassClient().withEntry(URL, "maven", "secret");
+
+    private KeepassXcProxyBackend backend;
+
+    @BeforeEach
+    void setUp()
+    {
+        settings.setUnlockMaxWaitTime(Duration.ofSeconds(2));
+        settings.setUnlockMessageRepeatTime(Duration.ofSeconds(2));
+        backend = new KeepassXcProxyBackend(settings, file -> new NoCredentialsStore(), Path.of("."), new KeepassConnectionPool(),
+                                            (credentialsStore, clientType, requestLimiter, log) -> new KeepassProxy(keepass, requestLimiter, log),
+                                            log);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        backend.close();
+    }
+
+    @Test
+    void pairedConnectionNeedsOneKeyExchangeAndOneTestAssociate()
+    throws SecDispatcherException
+    {
+        keepass.paired();
+
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getPassword()).isEqualTo("secret");
+        assertThat(keepass.getCalls()).containsExactly("connect", "test-associate", "get-logins");
+    }
+
+    @Test
+    void connectionIsReusedForLaterLookups()
+    throws SecDispatcherException
+    {
+        keepass.paired();
+
+        backend.findEntries(SecretQuery.forUrl(URL));
+        backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(keepass.getConnectCount()).isEqualTo(1);
+        assertThat(keepass.getTestAssociateCount()).isEqualTo(1);
+        assertThat(keepass.getGetLoginsCount()).isEqualTo(2);
+    }
+
+    @Test
+    void associatesOnlyAfterTestAssociateFails()
+    throws SecDispatcherException
+    {
+        keepass.forgotten();
+
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(entries).hasSize(1);
+        assertThat(keepass.getCalls()).containsExactly("connect", "test-associate", "associate", "test-associate", "get-logins");
+    }
+
+    @Test
+    void unpairedConnectionAssociatesWithoutTestAssociate()
+    throws SecDispatcherException
+    {
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(entries).hasSize(1);
+        assertThat(keepass.getCalls()).containsExactly("connect", "associate", "test-associate", "get-logins");
+    }
+
+    @Test
+    void nonInteractiveAssociationFailsWithoutAssociating()
+    {
+        settings.setInteractiveAssociation(false);
+
+        assertThatThrownBy(() -> backend.findEntries(SecretQuery.forUrl(URL))).isInstanceOf(SecDispatcherException.class)
+                                                                              .hasMessageContaining("keepassxc:pair");
+        assertThat(keepass.getAssociateCount()).isZero();
+        assertThat(keepass.getConnectCount()).isEqualTo(1);
+        assertThat(keepass.isClosed()).isTrue();
+    }
+
+    @Test
+    void interruptWhileWaitingForUnlockIsKept()
+    {
+        keepass.paired();
+        keepass.setLocked(true);
+
+        Thread.currentThread().interrupt();
+        try
+        {
+            assertThatThrownBy(() -> backend.findEntries(SecretQuery.forUrl(URL))).isInstanceOf(SecDispatcherException.class)
+                                                                                  .hasMessageContaining("Interrupted");
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        }
+        finally
+        {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Replaces the backend with one that reads from multiple credentials stores, each paired with KeepassXC through its own client.
+     */
+    private void useStores(FakeKeepassClient... storeClients)
+    {
+        backend.close();
+
+        List<Path> storeFiles = new ArrayList<>(storeClients.length);
+        Map<KeepassCredentialsStore, FakeKeepassClient> clientsByStore = new ConcurrentHashMap<>();
+        Map<Path, KeepassCredentialsStore> storesByFile = new HashMap<>();
+        for (int i = 0; i < storeClients.length; i++)
+        {
+            Path storeFile = Path.of("store" + i + ".json");
+            KeepassCredentialsStore store = new NoCredentialsStore();
+            storeFiles.add(storeFile);
+            storesByFile.put(storeFile, store);
+            clientsByStore.put(store, storeClients[i]);
+        }
+        settings.setCredentialsStoreFile(storeFiles.get(0));
+        settings.setAdditionalCredentialsStoreFiles(storeFiles.subList(1, storeFiles.size()));
+
+        backend = new KeepassXcProxyBackend(settings, storesByFile::get, Path.of("."), new KeepassConnectionPool(),
+                                            (credentialsStore, clientType, requestLimiter, log) ->
+                                                    new KeepassProxy(clientsByStore.get(credentialsStore), requestLimiter, log),
+                                            log);
+    }
+
+    @Test
+    void multipleStoresConnectInParallel()
+    throws SecDispatcherException
+    {
+        keepass.paired().withLatency(Duration.ofMillis(200L));
+        useStores(keepass, keepass.otherStore("team"), keepass.otherStore("archive"));
+
+        backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(keepass.getConnectCount()).isEqualTo(3);
+        assertThat(keepass.getMaxInFlightCount()).isGreaterThan(1);
+    }
+
+    @Test
+    void mergeSendsEveryStoreKeyInOneRequest()
+    throws SecDispatcherException
+    {
+        settings.setStoreLookupMode(StoreLookupMode.MERGE);
+        keepass.paired().withStoreEntry(STORE_URL, "personal", "secret1");
+        FakeKeepassClient team = keepass.otherStore("team").withStoreEntry(STORE_URL, "team", "secret2");
+        useStores(keepass, team);
+
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(STORE_URL));
+
+        assertThat(entries).extracting(KeepassEntry::getLogin).containsExactlyInAnyOrder("personal", "team");
+        assertThat(keepass.getGetLoginsCount()).isEqualTo(1);
+    }
+
+    @Test
+    void firstUsesEarliestStoreWithEntries()
+    throws SecDispatcherException
+    {
+        settings.setStoreLookupMode(StoreLookupMode.FIRST);
+        keepass.paired().withStoreEntry(STORE_URL, "personal", "secret1");
+        FakeKeepassClient team = keepass.otherStore("team").withStoreEntry(STORE_URL, "team", "secret2");
+        useStores(keepass, team);
+
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(STORE_URL));
+
+        assertThat(entries).extracting(KeepassEntry::getLogin).containsExactly("personal");
+        assertThat(keepass.getGetLoginsCount()).isEqualTo(1);
+    }
+
+    @Test
+    void firstFallsThroughToLaterStore()
+    throws SecDispatcherException
+    {
+        settings.setStoreLookupMode(StoreLookupMode.FIRST);
+        keepass.paired();
+        FakeKeepassClient team = keepass.otherStore("team").withStoreEntry(STORE_URL, "team", "secret2");
+        useStores(keepass, team);
+
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(STORE_URL));
+
+        assertThat(entries).extracting(KeepassEntry::getLogin).containsExactly("team");
+        assertThat(keepass.getGetLoginsCount()).isEqualTo(2);
+    }
+
+    @Test
+    void firstDoesNotWaitForLockedLaterStore()
+    throws SecDispatcherException
+    {
+        settings.setStoreLookupMode(StoreLookupMode.FIRST);
+        keepass.paired().withStoreEntry(STORE_URL, "personal", "secret1");
+        FakeKeepassClient team = keepass.otherStore("team");
+        team.setLocked(true);
+        useStores(keepass, team);
+
+        long startTime = System.nanoTime();
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(STORE_URL));
+        long lookupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        //Connecting to the locked store waits for the full unlock wait time of 2 seconds
+        assertThat(entries).extracting(KeepassEntry::getLogin).containsExactly("personal");
+        assertThat(lookupMillis).isLessThan(1000L);
+    }
+
+    @Test
+    void noLoginsFoundIsEmptyResult()
+    throws SecDispatcherException
+    {
+        keepass.paired();
+
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl("https://other.example.com"));
+
+        assertThat(entries).isEmpty();
+    }
+
+    @Test
+    void timedOutLookupDoesNotDelayNextLookup()
+    throws SecDispatcherException
+    {
+        settings.setLookupTimeout(Duration.ofMillis(500L));
+        keepass.paired().hangNextGetLogins();
+
+        assertThatThrownBy(() -> backend.findEntries(SecretQuery.forUrl(URL))).isInstanceOf(SecDispatcherException.class)
+                                                                              .hasMessageContaining("Timed out");
+
+        //Would otherwise be queued behind the request KeepassXC never answered and time out as well
+        List<KeepassEntry> entries = backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(entries).hasSize(1);
+        assertThat(keepass.getConnectCount()).isEqualTo(2);
+    }
+
+    @Test
+    void revalidateTrustsConnectionUsedInCurrentSession()
+    throws SecDispatcherException
+    {
+        keepass.paired();
+        backend.findEntries(SecretQuery.forUrl(URL));
+
+        assertThat(backend.revalidate()).isTrue();
+        assertThat(keepass.getTestAssociateCount()).isEqualTo(1);
+    }
+
+    @Test
+    void revalidateTestsConnectionFromPreviousSession()
+    throws SecDispatcherException
+    {
+        keepass.paired();
+        backend.findEntries(SecretQuery.forUrl(URL));
+        backend.sessionEnded();
+
+        assertThat(backend.revalidate()).isTrue();
+        assertThat(keepass.getTestAssociateCount()).isEqualTo(2);
+    }
+
+    @Test
+    void revalidateDiscardsConnectionLockedSincePreviousSession()
+    throws SecDispatcherException
+    {
+        keepass.paired();
+        backend.findEntries(SecretQuery.forUrl(URL));
+        backend.sessionEnded();
+        keepass.setLocked(true);
+
+        assertThat(backend.revalidate()).isFalse();
+    }
+
+    private static class NoCredentialsStore implements KeepassCredentialsStore
+    {
+        @Override
+        public void saveCredentials(Credentials credentials)
+        {
+        }
+
+        @Override
+        public Credentials loadCredentials()
+        {
+            return null;
+        }
+    }
+}
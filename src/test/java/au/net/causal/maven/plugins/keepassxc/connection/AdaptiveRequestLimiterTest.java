@@ -0,0 +1,190 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class AdaptiveRequestLimiterTest
+{
+    private static final long IDLE_LATENCY = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private long now;
+    private final AdaptiveRequestLimiter limiter = new AdaptiveRequestLimiter(() -> now);
+
+    @AfterEach
+    void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends as many requests as the limit allows at once and completes them all after a given latency.
+     */
+    private void saturatedRound(long latencyNanos)
+    throws InterruptedException
+    {
+        List<AdaptiveRequestLimiter.Permit> permits = new ArrayList<>();
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++)
+        {
+            permits.add(limiter.acquire(log));
+        }
+
+        now += latencyNanos;
+        for (AdaptiveRequestLimiter.Permit permit : permits)
+        {
+            permit.completed();
+            permit.close();
+        }
+    }
+
+    private void awaitQueueDepth(int depth)
+    throws InterruptedException
+    {
+        while (limiter.getQueueDepth() < depth)
+        {
+            Thread.sleep(1L);
+        }
+    }
+
+    @Test
+    void limitGrowsByAboutOnePerLimitOfSaturatedRequests()
+    throws InterruptedException
+    {
+        assertThat(limiter.getLimit()).isEqualTo(2);
+
+        //2.0 -> 2.5 -> 2.9 -> 3.24
+        saturatedRound(IDLE_LATENCY);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        saturatedRound(IDLE_LATENCY);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        saturatedRound(IDLE_LATENCY);
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void limitDoesNotGrowWhenNotSaturated()
+    throws InterruptedException
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            try (AdaptiveRequestLimiter.Permit permit = limiter.acquire(log))
+            {
+                now += IDLE_LATENCY;
+                permit.completed();
+            }
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void limitIsCappedAtMaximum()
+    throws InterruptedException
+    {
+        for (int i = 0; i < 200; i++)
+        {
+            saturatedRound(IDLE_LATENCY);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(AdaptiveRequestLimiter.MAX_LIMIT);
+    }
+
+    @Test
+    void slowResponsesBackOff()
+    throws InterruptedException
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            saturatedRound(IDLE_LATENCY);
+        }
+        int grownLimit = limiter.getLimit();
+        assertThat(grownLimit).isGreaterThan(4);
+
+        //Three times the idle latency, each response multiplies the limit by 0.75
+        try (AdaptiveRequestLimiter.Permit permit = limiter.acquire(log))
+        {
+            now += IDLE_LATENCY * 3L;
+            permit.completed();
+        }
+        //Fractional part of the limit is not visible, so it was somewhere between grownLimit and grownLimit + 1 before
+        assertThat(limiter.getLimit()).isBetween((int)(grownLimit * 0.75), (int)((grownLimit + 1) * 0.75));
+
+        for (int i = 0; i < 20; i++)
+        {
+            try (AdaptiveRequestLimiter.Permit permit = limiter.acquire(log))
+            {
+                now += IDLE_LATENCY * 3L;
+                permit.completed();
+            }
+        }
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    void failedAndUserInteractionRequestsAreIgnored()
+    throws InterruptedException
+    {
+        saturatedRound(IDLE_LATENCY);
+
+        //Not completed, so a failure
+        try (AdaptiveRequestLimiter.Permit permit = limiter.acquire(log))
+        {
+            now += IDLE_LATENCY * 10L;
+        }
+        assertThat(limiter.getLimit()).isEqualTo(2);
+
+        //Long enough that KeepassXC was waiting on the user
+        try (AdaptiveRequestLimiter.Permit permit = limiter.acquire(log))
+        {
+            now += TimeUnit.SECONDS.toNanos(5L);
+            permit.completed();
+        }
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    @Timeout(30)
+    void waitersAreAdmittedInArrivalOrder()
+    throws Exception
+    {
+        AdaptiveRequestLimiter.Permit first = limiter.acquire(log);
+        AdaptiveRequestLimiter.Permit second = limiter.acquire(log);
+
+        List<Future<AdaptiveRequestLimiter.Permit>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            waiters.add(executor.submit(() -> limiter.acquire(log)));
+            awaitQueueDepth(i + 1);
+        }
+
+        first.close();
+        AdaptiveRequestLimiter.Permit third = waiters.get(0).get(10L, TimeUnit.SECONDS);
+        assertThat(waiters.get(1).isDone()).isFalse();
+        assertThat(waiters.get(2).isDone()).isFalse();
+        assertThat(limiter.getQueueDepth()).isEqualTo(2);
+
+        second.close();
+        AdaptiveRequestLimiter.Permit fourth = waiters.get(1).get(10L, TimeUnit.SECONDS);
+        assertThat(waiters.get(2).isDone()).isFalse();
+
+        third.close();
+        waiters.get(2).get(10L, TimeUnit.SECONDS).close();
+        fourth.close();
+        assertThat(limiter.getQueueDepth()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,353 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import com.iwebpp.crypto.TweetNaclFast;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for KeepassXC's browser integration socket.  Speaks enough of the protocol for the socket client and keepassxc-proxy-access to
+ * exchange keys, associate, test associations and read logins.  Like KeepassXC, each connection's requests are answered one at a time in
+ * the order they arrive.
+ * <p>
+ *
+ * The server can be made to respond slowly, to have a locked database, and to send an unsolicited notification before every response.
+ */
+public class FakeKeepassXcServer implements AutoCloseable
+{
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+    private final Path socketPath;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable ->
+    {
+        Thread thread = new Thread(runnable, "fake-keepassxc");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, List<Map<String, Object>>> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> associations = new ConcurrentHashMap<>();
+    private final List<SocketChannel> clients = new ArrayList<>();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger getLoginsCount = new AtomicInteger();
+    private final AtomicInteger associationCount = new AtomicInteger();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile boolean locked;
+    private volatile boolean notifying;
+
+    /**
+     * Starts a server listening in a directory.
+     *
+     * @param directory directory the socket is created in, using the same name KeepassXC uses.
+     *
+     * @throws IOException if the server socket could not be created.
+     */
+    public FakeKeepassXcServer(Path directory)
+    throws IOException
+    {
+        socketPath = directory.resolve(UnixSocketKeepassClient.SOCKET_NAME);
+        Files.deleteIfExists(socketPath);
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        executor.execute(this::acceptConnections);
+    }
+
+    public Path getSocketPath()
+    {
+        return socketPath;
+    }
+
+    public FakeKeepassXcServer withEntry(String url, String login, String password)
+    {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("name", url);
+        entry.put("login", login);
+        entry.put("password", password);
+        entry.put("uuid", Integer.toHexString(entry.hashCode()));
+        entry.put("stringFields", List.of());
+        entries.computeIfAbsent(url, u -> new ArrayList<>()).add(entry);
+        return this;
+    }
+
+    /**
+     * Makes an association known to the server, as if it had been accepted by the user before.
+     */
+    public FakeKeepassXcServer withAssociation(String id, String key)
+    {
+        associations.put(id, key);
+        return this;
+    }
+
+    public void setLatency(Duration latency)
+    {
+        this.latency = latency;
+    }
+
+    public void setLocked(boolean locked)
+    {
+        this.locked = locked;
+    }
+
+    /**
+     * @param notifying if true, a notification that no client asked for is sent before every response.
+     */
+    public void setNotifying(boolean notifying)
+    {
+        this.notifying = notifying;
+    }
+
+    public int getConnectionCount()
+    {
+        return connectionCount.get();
+    }
+
+    public int getGetLoginsCount()
+    {
+        return getLoginsCount.get();
+    }
+
+    private void acceptConnections()
+    {
+        while (serverChannel.isOpen())
+        {
+            try
+            {
+                SocketChannel client = serverChannel.accept();
+                synchronized (clients)
+                {
+                    clients.add(client);
+                }
+                connectionCount.incrementAndGet();
+                executor.execute(() -> serve(client));
+            }
+            catch (IOException e)
+            {
+                //Server closed
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel client)
+    {
+        Session session = new Session(client);
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        try (client)
+        {
+            while (client.read(buffer) >= 0)
+            {
+                int messageEnd;
+                while ((messageEnd = UnixSocketKeepassClient.findMessageEnd(buffer)) >= 0)
+                {
+                    String message = new String(buffer.array(), 0, messageEnd, StandardCharsets.UTF_8);
+                    buffer.flip().position(messageEnd);
+                    buffer.compact();
+
+                    session.handle(new JSONObject(message));
+                }
+            }
+        }
+        catch (IOException | InterruptedException e)
+        {
+            //Client went away or server closed
+        }
+    }
+
+    @Override
+    public void close()
+    throws IOException
+    {
+        serverChannel.close();
+        synchronized (clients)
+        {
+            for (SocketChannel client : clients)
+            {
+                client.close();
+            }
+        }
+        executor.shutdownNow();
+        Files.deleteIfExists(socketPath);
+    }
+
+    /**
+     * State of one client connection.
+     */
+    private class Session
+    {
+        private final SocketChannel client;
+        private TweetNaclFast.Box box;
+
+        public Session(SocketChannel client)
+        {
+            this.client = client;
+        }
+
+        public void handle(JSONObject request)
+        throws IOException, InterruptedException
+        {
+            Thread.sleep(latency.toMillis());
+
+            if (notifying)
+                send(new JSONObject().put("action", "database-unlocked"));
+
+            String action = request.optString("action");
+            byte[] nonce = BASE64_DECODER.decode(request.optString("nonce"));
+            byte[] responseNonce = nonce.clone();
+            UnixSocketKeepassClient.incrementNonce(responseNonce, 1);
+
+            if ("change-public-keys".equals(action))
+            {
+                TweetNaclFast.Box.KeyPair serverKeyPair = TweetNaclFast.Box.keyPair();
+                box = new TweetNaclFast.Box(BASE64_DECODER.decode(request.optString("publicKey")), serverKeyPair.getSecretKey());
+                box.before();
+                send(new JSONObject().put("action", action)
+                                     .put("version", "2.7.9")
+                                     .put("publicKey", BASE64_ENCODER.encodeToString(serverKeyPair.getPublicKey()))
+                                     .put("nonce", BASE64_ENCODER.encodeToString(responseNonce))
+                                     .put("success", "true"));
+                return;
+            }
+
+            if (box == null)
+            {
+                sendError(action, 3, "Encryption key is not recognized");
+                return;
+            }
+
+            byte[] encrypted = BASE64_DECODER.decode(request.optString("message"));
+            byte[] decrypted = box.open_after(encrypted, 0, encrypted.length, nonce);
+            if (decrypted == null)
+            {
+                sendError(action, 4, "Message decryption failed");
+                return;
+            }
+            JSONObject message = new JSONObject(new String(decrypted, StandardCharsets.UTF_8));
+
+            JSONObject reply;
+            switch (action)
+            {
+                case "associate":
+                    reply = associate(message);
+                    break;
+                case "test-associate":
+                    reply = testAssociate(message);
+                    break;
+                case "get-logins":
+                    reply = getLogins(message);
+                    break;
+                default:
+                    sendError(action, 13, "Unknown action");
+                    return;
+            }
+
+            if (reply == null)
+                return;
+
+            reply.put("version", "2.7.9")
+                 .put("nonce", BASE64_ENCODER.encodeToString(responseNonce))
+                 .put("success", "true");
+            byte[] plainReply = reply.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] encryptedReply = box.after(plainReply, 0, plainReply.length, responseNonce);
+            send(new JSONObject().put("action", action)
+                                 .put("message", BASE64_ENCODER.encodeToString(encryptedReply))
+                                 .put("nonce", BASE64_ENCODER.encodeToString(responseNonce)));
+        }
+
+        private JSONObject associate(JSONObject message)
+        throws IOException
+        {
+            if (locked)
+            {
+                sendError("associate", 1, "Database not opened");
+                return null;
+            }
+
+            String id = "fake-association-" + associationCount.incrementAndGet();
+            associations.put(id, message.optString("idKey"));
+            return new JSONObject().put("id", id).put("hash", "fakehash");
+        }
+
+        private JSONObject testAssociate(JSONObject message)
+        throws IOException
+        {
+            if (locked)
+            {
+                sendError("test-associate", 1, "Database not opened");
+                return null;
+            }
+
+            String id = message.optString("id");
+            if (!message.optString("key").equals(associations.get(id)))
+            {
+                sendError("test-associate", 8, "KeePassXC association failed, try again");
+                return null;
+            }
+
+            return new JSONObject().put("id", id).put("hash", "fakehash");
+        }
+
+        private JSONObject getLogins(JSONObject message)
+        throws IOException
+        {
+            getLoginsCount.incrementAndGet();
+
+            if (locked)
+            {
+                sendError("get-logins", 1, "Database not opened");
+                return null;
+            }
+
+            List<Map<String, Object>> urlEntries = entries.get(message.optString("url"));
+            if (urlEntries == null)
+            {
+                sendError("get-logins", 15, "No logins found");
+                return null;
+            }
+
+            return new JSONObject().put("count", urlEntries.size())
+                                   .put("entries", urlEntries)
+                                   .put("hash", "fakehash")
+                                   .put("id", "fake");
+        }
+
+        private void sendError(String action, int errorCode, String error)
+        throws IOException
+        {
+            send(new JSONObject().put("action", action)
+                                 .put("errorCode", String.valueOf(errorCode))
+                                 .put("error", error));
+        }
+
+        private void send(JSONObject message)
+        throws IOException
+        {
+            ByteBuffer data = ByteBuffer.wrap(message.toString().getBytes(StandardCharsets.UTF_8));
+            while (data.hasRemaining())
+            {
+                client.write(data);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassClientType;
+import au.net.causal.maven.plugins.keepassxc.KeepassCredentialsStore;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.purejava.Credentials;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the time and memory allocated per lookup for a KeepassXC client.  Runs in its own JVM, started by
+ * {@link KeepassClientBenchmarkTest} with environment variables that point both clients at the same {@link FakeKeepassXcServer}, since
+ * keepassxc-proxy-access only finds KeepassXC's socket through the environment.
+ * <p>
+ *
+ * Allocation is measured across all threads, so that the library's response reader thread is included.  Results are printed as a single
+ * line starting with {@value #RESULT_PREFIX}.
+ */
+public class KeepassClientBenchmark
+{
+    static final String RESULT_PREFIX = "RESULT ";
+
+    /**
+     * @param args client type, number of URLs on the server, warm-up lookups, measured lookups.
+     */
+    public static void main(String... args)
+    throws Exception
+    {
+        KeepassClientType clientType = KeepassClientType.valueOf(args[0]);
+        int urlCount = Integer.parseInt(args[1]);
+        int warmUpLookups = Integer.parseInt(args[2]);
+        int measuredLookups = Integer.parseInt(args[3]);
+
+        Logger log = new ConsoleLogger(Logger.LEVEL_WARN, "benchmark");
+        LibraryKeepassClient libraryClient = new LibraryKeepassClient(new NoCredentialsStore(), log);
+        KeepassClient client = clientType == KeepassClientType.SOCKET_CHANNEL ? new UnixSocketKeepassClient(libraryClient, log) : libraryClient;
+
+        try (client)
+        {
+            //The fake server accepts every association straight away
+            libraryClient.connect();
+            try
+            {
+                libraryClient.associate();
+            }
+            catch (Exception e)
+            {
+                //The library reports failure even for some successful associations, the association ID is what counts
+            }
+            if (client.getAssociateId() == null)
+                throw new IllegalStateException("Association with fake KeepassXC failed");
+
+            if (client != libraryClient)
+                client.connect();
+            List<Map<String, String>> keys = List.of(Map.of("id", client.getAssociateId(), "key", client.getIdKeyPairPublicKey()));
+            client.testAssociate(client.getAssociateId(), client.getIdKeyPairPublicKey());
+
+            for (int i = 0; i < warmUpLookups; i++)
+            {
+                lookup(client, keys, i % urlCount);
+            }
+
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            long startBytes = totalAllocatedBytes(threads);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < measuredLookups; i++)
+            {
+                lookup(client, keys, i % urlCount);
+            }
+            long elapsed = System.nanoTime() - startTime;
+            long allocated = totalAllocatedBytes(threads) - startBytes;
+
+            System.out.println(RESULT_PREFIX + clientType + " " + measuredLookups + " " + (elapsed / measuredLookups) + " " + (allocated / measuredLookups));
+        }
+    }
+
+    private static void lookup(KeepassClient client, List<Map<String, String>> keys, int urlIndex)
+    throws Exception
+    {
+        Map<String, ?> response = client.getLogins(url(urlIndex), null, true, keys);
+        List<?> entries = (List<?>)response.get("entries");
+        Object password = ((Map<?, ?>)entries.get(0)).get("password");
+        if (!password(urlIndex).equals(password))
+            throw new IllegalStateException("Wrong password for " + url(urlIndex) + ": " + password);
+    }
+
+    private static long totalAllocatedBytes(com.sun.management.ThreadMXBean threads)
+    {
+        long total = 0L;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+        {
+            if (allocated > 0L)
+                total += allocated;
+        }
+        return total;
+    }
+
+    static String url(int i)
+    {
+        return "https://repo" + i + ".example.com";
+    }
+
+    static String password(int i)
+    {
+        return "password" + i;
+    }
+
+    private static class NoCredentialsStore implements KeepassCredentialsStore
+    {
+        @Override
+        public void saveCredentials(Credentials credentials)
+        {
+        }
+
+        @Override
+        public Credentials loadCredentials()
+        {
+            return null;
+        }
+    }
+}
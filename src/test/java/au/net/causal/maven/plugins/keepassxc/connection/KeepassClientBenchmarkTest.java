@@ -0,0 +1,103 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassClientType;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Runs {@link KeepassClientBenchmark} for the library and socket channel clients against the same fake KeepassXC and prints how they
+ * compare.  Only fails if a client can't complete the lookups, since timings on a build machine are too noisy to assert on.
+ * <p>
+ *
+ * Tagged as a benchmark so it only runs with the 'benchmark-its' profile.  The comparison is published as a test report entry and
+ * written to {@code target/keepass-client-benchmark.txt}.
+ */
+@Tag("benchmark")
+@DisabledOnOs(OS.WINDOWS)
+class KeepassClientBenchmarkTest
+{
+    private static final int URL_COUNT = 8;
+    private static final int WARM_UP_LOOKUPS = 1000;
+    private static final int MEASURED_LOOKUPS = 5000;
+
+    @TempDir
+    Path socketDirectory;
+
+    private String runBenchmark(KeepassClientType clientType)
+    throws IOException, InterruptedException
+    {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        ProcessBuilder builder = new ProcessBuilder(java.toString(),
+                                                    "-cp", System.getProperty("java.class.path"),
+                                                    "-Djava.io.tmpdir=" + socketDirectory,
+                                                    KeepassClientBenchmark.class.getName(),
+                                                    clientType.name(),
+                                                    String.valueOf(URL_COUNT),
+                                                    String.valueOf(WARM_UP_LOOKUPS),
+                                                    String.valueOf(MEASURED_LOOKUPS));
+
+        //keepassxc-proxy-access finds the socket through XDG_RUNTIME_DIR on Linux and TMPDIR on macOS
+        builder.environment().put("XDG_RUNTIME_DIR", socketDirectory.toString());
+        builder.environment().put("TMPDIR", socketDirectory.toString());
+        builder.redirectErrorStream(true);
+
+        Process process = builder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(process.waitFor()).as("Benchmark for %s failed:%n%s", clientType, output).isEqualTo(0);
+
+        return output.lines()
+                     .filter(line -> line.startsWith(KeepassClientBenchmark.RESULT_PREFIX))
+                     .findFirst()
+                     .orElseThrow(() -> new AssertionError("No result from benchmark for " + clientType + ":\n" + output))
+                     .substring(KeepassClientBenchmark.RESULT_PREFIX.length());
+    }
+
+    @Test
+    @Timeout(300)
+    void compareClients(TestReporter reporter)
+    throws Exception
+    {
+        List<String> results = new ArrayList<>();
+        try (FakeKeepassXcServer server = new FakeKeepassXcServer(socketDirectory))
+        {
+            for (int i = 0; i < URL_COUNT; i++)
+            {
+                server.withEntry(KeepassClientBenchmark.url(i), "user" + i, KeepassClientBenchmark.password(i));
+            }
+
+            for (KeepassClientType clientType : KeepassClientType.values())
+            {
+                results.add(runBenchmark(clientType));
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("KeepassXC client benchmark (" + MEASURED_LOOKUPS + " lookups after " + WARM_UP_LOOKUPS + " warm-up lookups)")
+              .append(System.lineSeparator());
+        report.append(String.format("%-16s %14s %16s%n", "Client", "ns/lookup", "bytes/lookup"));
+        for (String result : results)
+        {
+            String[] fields = result.split(" ");
+            report.append(String.format("%-16s %14s %16s%n", fields[0], fields[2], fields[3]));
+        }
+
+        reporter.publishEntry("keepassClientBenchmark", report.toString());
+        Path reportFile = Path.of("target", "keepass-client-benchmark.txt");
+        Files.createDirectories(reportFile.getParent());
+        Files.writeString(reportFile, report, StandardCharsets.UTF_8);
+    }
+}
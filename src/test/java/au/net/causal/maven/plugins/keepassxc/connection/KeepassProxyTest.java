@@ -0,0 +1,123 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class KeepassProxyTest
+{
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    private int maxInFlight(boolean concurrentClient)
+    throws Exception
+    {
+        ConcurrencyMeasuringClient client = new ConcurrencyMeasuringClient(concurrentClient);
+        try (KeepassProxy proxy = new KeepassProxy(client, new AdaptiveRequestLimiter(), log))
+        {
+            List<CompletableFuture<Map<String, ?>>> requests = new ArrayList<>();
+            for (int i = 0; i < 16; i++)
+            {
+                requests.add(proxy.getLoginsAsync("https://repo" + i + ".example.com", null, true, List.of()));
+            }
+            for (CompletableFuture<Map<String, ?>> request : requests)
+            {
+                assertThat(request.get()).containsEntry("success", "true");
+            }
+        }
+        return client.maxInFlight.get();
+    }
+
+    @Test
+    @Timeout(30)
+    void concurrentClientHasMoreThanOneRequestInFlight()
+    throws Exception
+    {
+        assertThat(maxInFlight(true)).isGreaterThan(1);
+    }
+
+    @Test
+    @Timeout(30)
+    void serialClientHasOneRequestInFlight()
+    throws Exception
+    {
+        assertThat(maxInFlight(false)).isEqualTo(1);
+    }
+
+    private static class ConcurrencyMeasuringClient implements KeepassClient
+    {
+        private final boolean concurrent;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        public ConcurrencyMeasuringClient(boolean concurrent)
+        {
+            this.concurrent = concurrent;
+        }
+
+        @Override
+        public void connect()
+        {
+        }
+
+        @Override
+        public void associate()
+        {
+        }
+
+        @Override
+        public String getAssociateId()
+        {
+            return "maven-test";
+        }
+
+        @Override
+        public String getIdKeyPairPublicKey()
+        {
+            return "cHVibGljLWtleQ==";
+        }
+
+        @Override
+        public void testAssociate(String id, String key)
+        {
+        }
+
+        @Override
+        public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> keys)
+        {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try
+            {
+                Thread.sleep(20L);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                inFlight.decrementAndGet();
+            }
+            return Map.of("success", "true", "entries", List.of());
+        }
+
+        @Override
+        public boolean supportsConcurrentRequests()
+        {
+            return concurrent;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
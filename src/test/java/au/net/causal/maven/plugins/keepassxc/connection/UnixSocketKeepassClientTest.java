@@ -0,0 +1,306 @@
+package au.net.causal.maven.plugins.keepassxc.connection;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.purejava.KeepassProxyAccessException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class UnixSocketKeepassClientTest
+{
+    private static final String ASSOCIATION_ID = "maven-test";
+    private static final String ASSOCIATION_KEY = "cHVibGljLWtleQ==";
+
+    private final Logger log = new ConsoleLogger(Logger.LEVEL_DISABLED, "test");
+
+    @TempDir
+    Path socketDirectory;
+
+    private FakeKeepassXcServer server;
+    private UnixSocketKeepassClient client;
+
+    @BeforeEach
+    void setUp()
+    throws IOException
+    {
+        server = new FakeKeepassXcServer(socketDirectory).withAssociation(ASSOCIATION_ID, ASSOCIATION_KEY);
+        for (int i = 0; i < 8; i++)
+        {
+            server.withEntry(url(i), "user" + i, "password" + i);
+        }
+        client = new UnixSocketKeepassClient(new PairedClient(), List.of(server.getSocketPath()), log);
+    }
+
+    @AfterEach
+    void tearDown()
+    throws IOException
+    {
+        client.close();
+        server.close();
+    }
+
+    private static String url(int i)
+    {
+        return "https://repo" + i + ".example.com";
+    }
+
+    private static ByteBuffer bufferOf(String data)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put(data.getBytes(StandardCharsets.UTF_8));
+        return buffer;
+    }
+
+    private String lookupPassword(String url)
+    throws IOException, KeepassProxyAccessException
+    {
+        Map<String, ?> response = client.getLogins(url, null, true, List.of(Map.of("id", ASSOCIATION_ID, "key", ASSOCIATION_KEY)));
+        List<?> entries = (List<?>)response.get("entries");
+        return (String)((Map<?, ?>)entries.get(0)).get("password");
+    }
+
+    @Test
+    void messageEndOfSingleMessage()
+    {
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf("{\"a\":{\"b\":1}}"))).isEqualTo(13);
+    }
+
+    @Test
+    void messageEndIgnoresBracesInStrings()
+    {
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf("{\"a\":\"}{}\"}"))).isEqualTo(11);
+    }
+
+    @Test
+    void messageEndHandlesEscapes()
+    {
+        //Escaped quote does not end the string
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf("{\"a\":\"\\\"}\"}"))).isEqualTo(11);
+
+        //Escaped backslash does not escape the closing quote
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf("{\"a\":\"\\\\\"}{"))).isEqualTo(10);
+    }
+
+    @Test
+    void messageEndOfFirstOfTwoMessages()
+    {
+        ByteBuffer buffer = bufferOf("{\"a\":1}{\"b\":2}");
+        assertThat(UnixSocketKeepassClient.findMessageEnd(buffer)).isEqualTo(7);
+        assertThat(buffer.position()).isEqualTo(14);
+    }
+
+    @Test
+    void noMessageEndForIncompleteMessage()
+    {
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf("{\"a\":{\"b\":1}"))).isEqualTo(-1);
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf("{\"a\":\"}"))).isEqualTo(-1);
+        assertThat(UnixSocketKeepassClient.findMessageEnd(bufferOf(""))).isEqualTo(-1);
+    }
+
+    @Test
+    void nonceIncrementsLittleEndianWithCarry()
+    {
+        byte[] nonce = {(byte)0xfe, (byte)0xff, 0x01, 0x00};
+        UnixSocketKeepassClient.incrementNonce(nonce, 1);
+        assertThat(nonce).isEqualTo(new byte[] {(byte)0xff, (byte)0xff, 0x01, 0x00});
+        UnixSocketKeepassClient.incrementNonce(nonce, 2);
+        assertThat(nonce).isEqualTo(new byte[] {0x01, 0x00, 0x02, 0x00});
+    }
+
+    @Test
+    void nonceWrapsAround()
+    {
+        byte[] nonce = {(byte)0xff, (byte)0xff};
+        UnixSocketKeepassClient.incrementNonce(nonce, 1);
+        assertThat(nonce).isEqualTo(new byte[] {0x00, 0x00});
+    }
+
+    @Test
+    void growKeepsData()
+    {
+        ByteBuffer buffer = bufferOf("{\"a\":");
+        ByteBuffer grown = client.grow(buffer);
+
+        assertThat(grown.capacity()).isEqualTo(512);
+        assertThat(grown.position()).isEqualTo(5);
+        grown.put("1}".getBytes(StandardCharsets.UTF_8));
+        assertThat(UnixSocketKeepassClient.findMessageEnd(grown)).isEqualTo(7);
+        assertThat(new String(grown.array(), 0, 7, StandardCharsets.UTF_8)).isEqualTo("{\"a\":1}");
+    }
+
+    @Test
+    void readsLogins()
+    throws Exception
+    {
+        client.connect();
+        client.testAssociate(ASSOCIATION_ID, ASSOCIATION_KEY);
+
+        assertThat(lookupPassword(url(3))).isEqualTo("password3");
+    }
+
+    @Test
+    void skipsUnsolicitedNotifications()
+    throws Exception
+    {
+        server.setNotifying(true);
+
+        client.connect();
+        client.testAssociate(ASSOCIATION_ID, ASSOCIATION_KEY);
+
+        assertThat(lookupPassword(url(1))).isEqualTo("password1");
+        assertThat(lookupPassword(url(2))).isEqualTo("password2");
+    }
+
+    @Test
+    void errorResponsesAreReported()
+    throws Exception
+    {
+        client.connect();
+
+        assertThatThrownBy(() -> client.testAssociate("unknown", ASSOCIATION_KEY)).isInstanceOf(KeepassProxyAccessException.class);
+        assertThatThrownBy(() -> lookupPassword("https://unknown.example.com")).isInstanceOf(KeepassProxyAccessException.class)
+                                                                              .hasMessageContaining("No logins found");
+
+        server.setLocked(true);
+        assertThatThrownBy(() -> lookupPassword(url(1))).isInstanceOf(KeepassProxyAccessException.class)
+                                                        .hasMessageContaining("Database not opened");
+
+        //Connection is still usable after errors
+        server.setLocked(false);
+        assertThat(lookupPassword(url(1))).isEqualTo("password1");
+    }
+
+    @Test
+    @Timeout(60)
+    void pipelinedRequestsGetTheirOwnResponses()
+    throws Exception
+    {
+        server.setNotifying(true);
+        client.connect();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 16; t++)
+            {
+                int thread = t;
+                results.add(executor.submit(() ->
+                {
+                    int wrong = 0;
+                    for (int i = 0; i < 50; i++)
+                    {
+                        int urlIndex = (thread + i) % 8;
+                        if (!("password" + urlIndex).equals(lookupPassword(url(urlIndex))))
+                            wrong++;
+                    }
+                    return wrong;
+                }));
+            }
+
+            for (Future<Integer> result : results)
+            {
+                assertThat(result.get()).isEqualTo(0);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat(server.getGetLoginsCount()).isEqualTo(16 * 50);
+        assertThat(server.getConnectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(30)
+    void closeAbortsRequestInProgress()
+    throws Exception
+    {
+        client.connect();
+        server.setLatency(Duration.ofMinutes(1));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<String> lookup = executor.submit(() -> lookupPassword(url(1)));
+            Thread.sleep(200L);
+            client.close();
+
+            assertThatThrownBy(() -> lookup.get(10L, TimeUnit.SECONDS)).hasRootCauseInstanceOf(IOException.class);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failsWhenNoSocket()
+    {
+        UnixSocketKeepassClient noServer = new UnixSocketKeepassClient(new PairedClient(), List.of(socketDirectory.resolve("missing")), log);
+        assertThatThrownBy(noServer::connect).isInstanceOf(IOException.class).hasMessageContaining("is KeepassXC running");
+    }
+
+    /**
+     * Holds an association without talking to KeepassXC.
+     */
+    private static class PairedClient implements KeepassClient
+    {
+        @Override
+        public void connect()
+        {
+        }
+
+        @Override
+        public void associate()
+        {
+        }
+
+        @Override
+        public String getAssociateId()
+        {
+            return ASSOCIATION_ID;
+        }
+
+        @Override
+        public String getIdKeyPairPublicKey()
+        {
+            return ASSOCIATION_KEY;
+        }
+
+        @Override
+        public void testAssociate(String id, String key)
+        {
+        }
+
+        @Override
+        public Map<String, ?> getLogins(String url, String submitUrl, boolean httpAuth, List<Map<String, String>> keys)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package au.net.causal.maven.plugins.keepassxc.kdbx;
+
+import au.net.causal.maven.plugins.keepassxc.KeepassEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Reads the database that the integration tests use.
+ */
+class KdbxReaderTest
+{
+    private static final Path IT_KDBX_FILE = Path.of("src/itdata/it.kdbx");
+    private static final String IT_KDBX_PASSWORD = "maventest";
+
+    @Test
+    void readsEntries()
+    throws IOException
+    {
+        List<KdbxEntry> entries = KdbxReader.read(IT_KDBX_FILE, IT_KDBX_PASSWORD);
+
+        assertThat(entries).extracting(KdbxEntry::getTitle).containsExactlyInAnyOrder("aserver", "multiserver1", "multiserver2", "multiserver3");
+
+        KdbxEntry aserver = entries.stream().filter(entry -> entry.getTitle().equals("aserver")).findFirst().orElseThrow();
+        assertThat(aserver.getUserName()).isEqualTo("theuser");
+        assertThat(aserver.getPassword()).isEqualTo("thepassword");
+        assertThat(aserver.getUrl()).isEqualTo("https://aserver.test.test.test");
+        assertThat(aserver.getGroup()).isEqualTo("Main");
+        assertThat(aserver.getCustomFields()).containsEntry("KPH: somethingCustom", "customValue1");
+    }
+
+    @Test
+    void wrongPassword()
+    {
+        assertThatThrownBy(() -> KdbxReader.read(IT_KDBX_FILE, "wrong")).isInstanceOf(IOException.class)
+                                                                        .hasMessageContaining("Invalid password");
+    }
+
+    @Test
+    void notKdbx()
+    {
+        assertThatThrownBy(() -> KdbxReader.read(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, IT_KDBX_PASSWORD))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Not a KDBX database");
+    }
+
+    @Test
+    void indexLooksUpByHost()
+    throws IOException
+    {
+        KdbxIndex index = new KdbxIndex(KdbxReader.read(Files.readAllBytes(IT_KDBX_FILE), IT_KDBX_PASSWORD));
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.lookup("https://multiserver.test.test.test/some/path")).extracting(KeepassEntry::getPassword)
+                                                                                .containsExactlyInAnyOrder("password1", "password2", "password3");
+        assertThat(index.lookup("AServer.test.test.test")).extracting(KeepassEntry::getLogin).containsExactly("theuser");
+        assertThat(index.lookup("https://unknown.test.test.test")).isEmpty();
+    }
+
+    @Test
+    void indexLooksUpByTitle()
+    throws IOException
+    {
+        KdbxIndex index = new KdbxIndex(KdbxReader.read(IT_KDBX_FILE, IT_KDBX_PASSWORD));
+
+        assertThat(index.lookup("multiserver2")).extracting(KeepassEntry::getPassword).containsExactly("password2");
+    }
+}